@@ -20,8 +20,10 @@
 package org.elasticsearch.action.bulk;
 
 import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocumentRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
@@ -31,6 +33,8 @@ import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
 
 import java.io.Closeable;
 import java.util.concurrent.*;
@@ -41,6 +45,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * (either based on number of actions, based on the size, or time), and to easily control the number of concurrent bulk
  * requests allowed to be executed in parallel.
  * <p/>
+ * The bulk processor can also retry the actions that the cluster rejected because it is overloaded, and adapt the
+ * size of the bulk requests and their concurrency to the load of the cluster, see {@link Builder#setRejectionRetries}
+ * and {@link Builder#setAdaptive}.
+ * <p/>
  * In order to create a new bulk processor, use the {@link Builder}.
  */
 public class BulkProcessor implements Closeable {
@@ -79,6 +87,9 @@ public class BulkProcessor implements Closeable {
         private int bulkActions = 1000;
         private ByteSizeValue bulkSize = new ByteSizeValue(5, ByteSizeUnit.MB);
         private TimeValue flushInterval = null;
+        private int maxRejectionRetries = 0;
+        private TimeValue initialRejectionBackoff = TimeValue.timeValueMillis(100);
+        private TimeValue adaptiveTargetLatency = null;
 
         /**
          * Creates a builder of bulk processor with the client to use and the listener that will be used
@@ -136,11 +147,36 @@ public class BulkProcessor implements Closeable {
             return this;
         }
 
+        /**
+         * Sets how many times the actions that were rejected because the cluster is overloaded (for example when its
+         * bulk thread pool queue is full) are retried. Retries wait for an exponentially growing delay, starting with
+         * the given initial backoff, and hold their concurrent request slot while waiting. The listener is only called
+         * once all retries are done, with the final response of each action. Defaults to <tt>0</tt>, which reports
+         * rejected actions as failures right away.
+         */
+        public Builder setRejectionRetries(int maxRetries, TimeValue initialBackoff) {
+            this.maxRejectionRetries = maxRetries;
+            this.initialRejectionBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * Adapts the size of the bulk requests and the number of concurrent requests to the load of the cluster. Both
+         * are cut in half when actions are rejected or a bulk request takes longer than the given target latency, and
+         * grow back step by step otherwise, up to the configured bulk actions, bulk size and concurrent requests.
+         * Defaults to not set, which always uses the configured values.
+         */
+        public Builder setAdaptive(TimeValue targetLatency) {
+            this.adaptiveTargetLatency = targetLatency;
+            return this;
+        }
+
         /**
          * Builds a new bulk processor.
          */
         public BulkProcessor build() {
-            return new BulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval);
+            return new BulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval,
+                    maxRejectionRetries, initialRejectionBackoff, adaptiveTargetLatency);
         }
     }
 
@@ -157,36 +193,59 @@ public class BulkProcessor implements Closeable {
     private final int bulkActions;
     private final long bulkSize;
     private final TimeValue flushInterval;
+    private final int maxRejectionRetries;
+    private final long initialRejectionBackoffMillis;
 
-    private final Semaphore semaphore;
+    private final ResizableSemaphore semaphore;
     private final ScheduledThreadPoolExecutor scheduler;
     private final ScheduledFuture scheduledFuture;
+    @Nullable
+    private final AdaptiveLimits adaptiveLimits;
 
     private final AtomicLong executionIdGen = new AtomicLong();
 
+    private final long startTimeNanos = System.nanoTime();
+    private final AtomicLong sentBulks = new AtomicLong();
+    private final AtomicLong sentActions = new AtomicLong();
+    private final AtomicLong rejectedActions = new AtomicLong();
+    private final AtomicLong failedBulks = new AtomicLong();
+    private final AtomicLong totalLatencyInMillis = new AtomicLong();
+
     private BulkRequest bulkRequest;
 
     private volatile boolean closed = false;
 
     BulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval) {
+        this(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval, 0, TimeValue.timeValueMillis(100), null);
+    }
+
+    BulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval,
+                  int maxRejectionRetries, TimeValue initialRejectionBackoff, @Nullable TimeValue adaptiveTargetLatency) {
         this.client = client;
         this.listener = listener;
         this.name = name;
         this.concurrentRequests = concurrentRequests;
         this.bulkActions = bulkActions;
         this.bulkSize = bulkSize.bytes();
+        this.maxRejectionRetries = maxRejectionRetries;
+        this.initialRejectionBackoffMillis = initialRejectionBackoff.millis();
 
-        this.semaphore = new Semaphore(concurrentRequests);
+        this.semaphore = new ResizableSemaphore(concurrentRequests);
         this.bulkRequest = new BulkRequest();
+        this.adaptiveLimits = adaptiveTargetLatency == null ? null : new AdaptiveLimits(concurrentRequests, adaptiveTargetLatency.millis());
 
         this.flushInterval = flushInterval;
-        if (flushInterval != null) {
+        if (flushInterval != null || maxRejectionRetries > 0) {
             this.scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, EsExecutors.daemonThreadFactory(client.settings(), (name != null ? "[" + name + "]" : "") + "bulk_processor"));
-            this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            // pending retries still run once the processor is closed, they hold a concurrent request slot that close waits for
+            this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(maxRejectionRetries > 0);
             this.scheduler.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
-            this.scheduledFuture = this.scheduler.scheduleWithFixedDelay(new Flush(), flushInterval.millis(), flushInterval.millis(), TimeUnit.MILLISECONDS);
         } else {
             this.scheduler = null;
+        }
+        if (flushInterval != null) {
+            this.scheduledFuture = this.scheduler.scheduleWithFixedDelay(new Flush(), flushInterval.millis(), flushInterval.millis(), TimeUnit.MILLISECONDS);
+        } else {
             this.scheduledFuture = null;
         }
     }
@@ -222,6 +281,8 @@ public class BulkProcessor implements Closeable {
         closed = true;
         if (this.scheduledFuture != null) {
             this.scheduledFuture.cancel(false);
+        }
+        if (this.scheduler != null) {
             this.scheduler.shutdown();
         }
         if (bulkRequest.numberOfActions() > 0) {
@@ -230,13 +291,25 @@ public class BulkProcessor implements Closeable {
         if (this.concurrentRequests < 1) {
             return true;
         }
-        if (semaphore.tryAcquire(this.concurrentRequests, timeout, unit)) {
-            semaphore.release(this.concurrentRequests);
+        // the number of permits doesn't change anymore once the limits are frozen
+        final int permits = adaptiveLimits == null ? this.concurrentRequests : adaptiveLimits.freeze();
+        if (semaphore.tryAcquire(permits, timeout, unit)) {
+            semaphore.release(permits);
             return true;
         }
         return false;
     }
 
+    /**
+     * Returns the statistics of the bulk requests executed so far.
+     */
+    public Stats stats() {
+        return new Stats(sentBulks.get(), sentActions.get(), rejectedActions.get(), failedBulks.get(), totalLatencyInMillis.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNanos),
+                adaptiveLimits == null ? bulkActions : adaptiveLimits.bulkActions(bulkActions),
+                adaptiveLimits == null ? concurrentRequests : adaptiveLimits.concurrentRequests());
+    }
+
     /**
      * Adds an {@link IndexRequest} to the list of actions to execute. Follows the same behavior of {@link IndexRequest}
      * (for example, if no id is provided, one will be generated, or usage of the create flag).
@@ -310,9 +383,30 @@ public class BulkProcessor implements Closeable {
             boolean afterCalled = false;
             try {
                 listener.beforeBulk(executionId, bulkRequest);
-                BulkResponse bulkItemResponses = client.bulk(bulkRequest).actionGet();
+                Execution execution = new Execution(bulkRequest);
+                while (true) {
+                    long startTime = System.nanoTime();
+                    boolean retry;
+                    try {
+                        retry = execution.onResponse(client.bulk(execution.request).actionGet(), System.nanoTime() - startTime);
+                    } catch (Exception e) {
+                        retry = execution.onFailure(e, System.nanoTime() - startTime);
+                        if (retry == false && execution.responses == null) {
+                            throw e;
+                        }
+                    }
+                    if (retry == false) {
+                        break;
+                    }
+                    Thread.sleep(execution.backoffMillis());
+                }
                 afterCalled = true;
-                listener.afterBulk(executionId, bulkRequest, bulkItemResponses);
+                listener.afterBulk(executionId, bulkRequest, execution.response());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!afterCalled) {
+                    listener.afterBulk(executionId, bulkRequest, e);
+                }
             } catch (Exception e) {
                 if (!afterCalled) {
                     listener.afterBulk(executionId, bulkRequest, e);
@@ -323,25 +417,7 @@ public class BulkProcessor implements Closeable {
             try {
                 listener.beforeBulk(executionId, bulkRequest);
                 semaphore.acquire();
-                client.bulk(bulkRequest, new ActionListener<BulkResponse>() {
-                    @Override
-                    public void onResponse(BulkResponse response) {
-                        try {
-                            listener.afterBulk(executionId, bulkRequest, response);
-                        } finally {
-                            semaphore.release();
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(Throwable e) {
-                        try {
-                            listener.afterBulk(executionId, bulkRequest, e);
-                        } finally {
-                            semaphore.release();
-                        }
-                    }
-                });
+                new AsyncExecution(executionId, bulkRequest).start();
                 success = true;
             } catch (InterruptedException e) {
                 Thread.interrupted();
@@ -357,9 +433,11 @@ public class BulkProcessor implements Closeable {
     }
 
     private boolean isOverTheLimit() {
+        final int bulkActions = adaptiveLimits == null ? this.bulkActions : adaptiveLimits.bulkActions(this.bulkActions);
         if (bulkActions != -1 && bulkRequest.numberOfActions() >= bulkActions) {
             return true;
         }
+        final long bulkSize = adaptiveLimits == null ? this.bulkSize : adaptiveLimits.bulkSize(this.bulkSize);
         if (bulkSize != -1 && bulkRequest.estimatedSizeInBytes() >= bulkSize) {
             return true;
         }
@@ -391,4 +469,361 @@ public class BulkProcessor implements Closeable {
             }
         }
     }
+
+    /**
+     * The execution of a bulk request, including the retries of its rejected actions. The responses of the retries are
+     * merged into the responses of the original request.
+     */
+    class Execution {
+
+        final BulkRequest original;
+        /** the request of the current attempt */
+        BulkRequest request;
+        /** the position in the original request of each action of the current attempt, <tt>null</tt> if they're the same */
+        int[] slots;
+        /** the merged responses, <tt>null</tt> until the original request got a response */
+        BulkItemResponse[] responses;
+        int attempt;
+        long tookInMillis;
+
+        Execution(BulkRequest original) {
+            this.original = original;
+            this.request = original;
+        }
+
+        /**
+         * Merges the response of the current attempt, and returns <tt>true</tt> if its rejected actions should be retried.
+         */
+        boolean onResponse(BulkResponse response, long tookInNanos) {
+            final long took = TimeUnit.NANOSECONDS.toMillis(tookInNanos);
+            tookInMillis += took;
+            if (responses == null) {
+                responses = new BulkItemResponse[original.numberOfActions()];
+            }
+            final BulkItemResponse[] items = response.getItems();
+            int rejected = 0;
+            for (int i = 0; i < items.length; i++) {
+                BulkItemResponse item = items[i];
+                if (item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                    rejected++;
+                }
+                if (slots == null) {
+                    responses[i] = item;
+                } else if (item.isFailed()) {
+                    responses[slots[i]] = new BulkItemResponse(slots[i], item.getOpType(), item.getFailure());
+                } else {
+                    responses[slots[i]] = new BulkItemResponse(slots[i], item.getOpType(), item.getResponse());
+                }
+            }
+            onAttempt(items.length, rejected, took);
+            if (rejected == 0 || attempt >= maxRejectionRetries) {
+                return false;
+            }
+            final BulkRequest retry = new BulkRequest();
+            final int[] retrySlots = new int[rejected];
+            int numRetries = 0;
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].isFailed() && items[i].getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                    int slot = slots == null ? i : slots[i];
+                    retry.add(original.requests().get(slot), original.payloads() == null ? null : original.payloads().get(slot));
+                    retrySlots[numRetries++] = slot;
+                }
+            }
+            for (String header : original.getHeaders()) {
+                retry.putHeader(header, original.getHeader(header));
+            }
+            retry.copyContextFrom(original);
+            retry.timeout(original.timeout());
+            retry.replicationType(original.replicationType());
+            retry.consistencyLevel(original.consistencyLevel());
+            retry.refresh(original.refresh());
+            request = retry;
+            slots = retrySlots;
+            attempt++;
+            return true;
+        }
+
+        /**
+         * Handles the failure of the current attempt, and returns <tt>true</tt> if it should be retried because it was
+         * rejected as a whole. Otherwise the actions of the attempt are marked as failed, unless it was the original
+         * request, which then failed as a whole.
+         */
+        boolean onFailure(Throwable e, long tookInNanos) {
+            final long took = TimeUnit.NANOSECONDS.toMillis(tookInNanos);
+            tookInMillis += took;
+            final boolean rejected = ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException;
+            onAttempt(request.numberOfActions(), rejected ? request.numberOfActions() : 0, took);
+            if (rejected && attempt < maxRejectionRetries) {
+                attempt++;
+                return true;
+            }
+            failedBulks.incrementAndGet();
+            if (responses != null) {
+                for (int i = 0; i < slots.length; i++) {
+                    ActionRequest action = original.requests().get(slots[i]);
+                    responses[slots[i]] = new BulkItemResponse(slots[i], opType(action), new BulkItemResponse.Failure(
+                            ((DocumentRequest) action).index(), ((DocumentRequest) action).type(), ((DocumentRequest) action).id(), e));
+                }
+            }
+            return false;
+        }
+
+        long backoffMillis() {
+            return initialRejectionBackoffMillis << Math.min(attempt - 1, 20);
+        }
+
+        BulkResponse response() {
+            return new BulkResponse(responses, tookInMillis);
+        }
+    }
+
+    private void onAttempt(int actions, int rejected, long tookInMillis) {
+        sentBulks.incrementAndGet();
+        sentActions.addAndGet(actions);
+        rejectedActions.addAndGet(rejected);
+        totalLatencyInMillis.addAndGet(tookInMillis);
+        if (adaptiveLimits != null) {
+            adaptiveLimits.onBulk(tookInMillis, rejected, semaphore);
+        }
+    }
+
+    private static String opType(ActionRequest action) {
+        if (action instanceof IndexRequest) {
+            return ((IndexRequest) action).opType().lowercase();
+        } else if (action instanceof DeleteRequest) {
+            return "delete";
+        } else {
+            return "update";
+        }
+    }
+
+    /**
+     * An {@link Execution} that sends its attempts asynchronously, and schedules its retries, while holding a permit
+     * of the semaphore.
+     */
+    class AsyncExecution extends Execution implements ActionListener<BulkResponse> {
+
+        private final long executionId;
+        private long attemptStartTime;
+
+        AsyncExecution(long executionId, BulkRequest original) {
+            super(original);
+            this.executionId = executionId;
+        }
+
+        void start() {
+            attemptStartTime = System.nanoTime();
+            client.bulk(request, this);
+        }
+
+        @Override
+        public void onResponse(BulkResponse response) {
+            if (onResponse(response, System.nanoTime() - attemptStartTime) && scheduleRetry()) {
+                return;
+            }
+            try {
+                listener.afterBulk(executionId, original, response());
+            } finally {
+                semaphore.release();
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            if (onFailure(e, System.nanoTime() - attemptStartTime) && scheduleRetry()) {
+                return;
+            }
+            try {
+                if (responses == null) {
+                    listener.afterBulk(executionId, original, e);
+                } else {
+                    listener.afterBulk(executionId, original, response());
+                }
+            } finally {
+                semaphore.release();
+            }
+        }
+
+        private boolean scheduleRetry() {
+            try {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start();
+                        } catch (Throwable t) {
+                            onFailure(t);
+                        }
+                    }
+                }, backoffMillis(), TimeUnit.MILLISECONDS);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A semaphore whose number of permits can be reduced.
+     */
+    static final class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        public void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * The limits of an adaptive bulk processor: the fraction of the configured bulk actions and size to use, and the
+     * number of concurrent requests. They are cut in half on signs of overload, and grow back step by step otherwise.
+     */
+    static final class AdaptiveLimits {
+
+        static final int MAX_BATCH_DIVISOR = 16;
+
+        private final int maxConcurrentRequests;
+        private final long targetLatencyInMillis;
+
+        /** the configured bulk actions and size are divided by this */
+        private int batchDivisor = 1;
+        private int concurrentRequests;
+        private boolean frozen = false;
+
+        AdaptiveLimits(int maxConcurrentRequests, long targetLatencyInMillis) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            this.targetLatencyInMillis = targetLatencyInMillis;
+            this.concurrentRequests = maxConcurrentRequests;
+        }
+
+        /**
+         * Adapts the limits to a bulk request that took the given time and had the given number of actions rejected,
+         * resizing the given semaphore accordingly.
+         */
+        synchronized void onBulk(long tookInMillis, int rejected, ResizableSemaphore semaphore) {
+            if (frozen) {
+                return;
+            }
+            final int previousConcurrentRequests = concurrentRequests;
+            if (rejected > 0 || tookInMillis > targetLatencyInMillis) {
+                batchDivisor = Math.min(MAX_BATCH_DIVISOR, batchDivisor * 2);
+                concurrentRequests = Math.max(Math.min(1, maxConcurrentRequests), concurrentRequests / 2);
+            } else {
+                batchDivisor = Math.max(1, batchDivisor - 1);
+                concurrentRequests = Math.min(maxConcurrentRequests, concurrentRequests + 1);
+            }
+            if (concurrentRequests > previousConcurrentRequests) {
+                semaphore.release(concurrentRequests - previousConcurrentRequests);
+            } else if (concurrentRequests < previousConcurrentRequests) {
+                semaphore.reducePermits(previousConcurrentRequests - concurrentRequests);
+            }
+        }
+
+        /**
+         * Stops adapting the limits, and returns the final number of concurrent requests.
+         */
+        synchronized int freeze() {
+            frozen = true;
+            return concurrentRequests;
+        }
+
+        synchronized int bulkActions(int bulkActions) {
+            return bulkActions == -1 ? -1 : Math.max(1, bulkActions / batchDivisor);
+        }
+
+        synchronized long bulkSize(long bulkSize) {
+            return bulkSize == -1 ? -1 : Math.max(1, bulkSize / batchDivisor);
+        }
+
+        synchronized int concurrentRequests() {
+            return concurrentRequests;
+        }
+    }
+
+    /**
+     * Statistics of the bulk requests a bulk processor executed, retries included.
+     */
+    public static class Stats {
+
+        private final long bulks;
+        private final long actions;
+        private final long rejectedActions;
+        private final long failedBulks;
+        private final long totalLatencyInMillis;
+        private final long uptimeInMillis;
+        private final int bulkActions;
+        private final int concurrentRequests;
+
+        Stats(long bulks, long actions, long rejectedActions, long failedBulks, long totalLatencyInMillis, long uptimeInMillis,
+              int bulkActions, int concurrentRequests) {
+            this.bulks = bulks;
+            this.actions = actions;
+            this.rejectedActions = rejectedActions;
+            this.failedBulks = failedBulks;
+            this.totalLatencyInMillis = totalLatencyInMillis;
+            this.uptimeInMillis = uptimeInMillis;
+            this.bulkActions = bulkActions;
+            this.concurrentRequests = concurrentRequests;
+        }
+
+        /**
+         * The number of bulk requests sent, retries included.
+         */
+        public long getBulks() {
+            return bulks;
+        }
+
+        /**
+         * The number of actions sent, retries included.
+         */
+        public long getActions() {
+            return actions;
+        }
+
+        /**
+         * The number of actions the cluster rejected because it was overloaded.
+         */
+        public long getRejectedActions() {
+            return rejectedActions;
+        }
+
+        /**
+         * The number of bulk requests that failed as a whole.
+         */
+        public long getFailedBulks() {
+            return failedBulks;
+        }
+
+        /**
+         * The average time a bulk request took, in milliseconds.
+         */
+        public long getAverageLatencyInMillis() {
+            return bulks == 0 ? 0 : totalLatencyInMillis / bulks;
+        }
+
+        /**
+         * The number of actions sent per second since the bulk processor was created.
+         */
+        public double getActionsPerSecond() {
+            return uptimeInMillis == 0 ? 0 : actions * 1000d / uptimeInMillis;
+        }
+
+        /**
+         * The number of actions that currently triggers a bulk request, <tt>-1</tt> if disabled.
+         */
+        public int getBulkActions() {
+            return bulkActions;
+        }
+
+        /**
+         * The number of concurrent requests currently allowed.
+         */
+        public int getConcurrentRequests() {
+            return concurrentRequests;
+        }
+    }
 }
@@ -20,6 +20,7 @@
 package org.elasticsearch.action.bulk;
 
 import org.elasticsearch.Version;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.replication.ShardReplicationOperationRequest;
 import org.elasticsearch.action.support.single.instance.InstanceShardOperationRequest;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -80,6 +81,9 @@ public class BulkShardRequest extends ShardReplicationOperationRequest<BulkShard
     @Override
     public void beforeLocalFork() {
         for (BulkItemRequest item : items) {
+            if (item == null) {
+                continue;
+            }
             if (item.request() instanceof InstanceShardOperationRequest) {
                 ((InstanceShardOperationRequest) item.request()).beforeLocalFork();
             } else {
@@ -88,6 +92,21 @@ public class BulkShardRequest extends ShardReplicationOperationRequest<BulkShard
         }
     }
 
+    /**
+     * The sources of the items are slices of the bulk body they were parsed from, which isn't modified while the
+     * request is sent, so the transport can send them without copying them, unless some of them are still unsafe.
+     * Unsafe sources are copied over by {@link #beforeLocalFork()}.
+     */
+    @Override
+    public boolean sendsStableBytes() {
+        for (BulkItemRequest item : items) {
+            if (item != null && item.request() instanceof IndexRequest && ((IndexRequest) item.request()).sourceUnsafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
@@ -310,6 +310,8 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
             bulkShardRequest.replicationType(bulkRequest.replicationType());
             bulkShardRequest.consistencyLevel(bulkRequest.consistencyLevel());
             bulkShardRequest.timeout(bulkRequest.timeout());
+            // copy over unsafe sources once, so that the request can be sent to the primary and the replicas without copying them again
+            bulkShardRequest.beforeLocalFork();
             shardBulkAction.execute(bulkShardRequest, new ActionListener<BulkShardResponse>() {
                 @Override
                 public void onResponse(BulkShardResponse bulkShardResponse) {
@@ -20,6 +20,7 @@
 package org.elasticsearch.action.bulk;
 
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ElasticsearchIllegalStateException;
 import org.elasticsearch.ElasticsearchWrapperException;
@@ -46,6 +47,8 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
@@ -62,8 +65,12 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportRequestOptions;
 import org.elasticsearch.transport.TransportService;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Performs the index operation.
@@ -75,9 +82,16 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
 
     private static final String ACTION_NAME = BulkAction.NAME + "[s]";
 
+    /**
+     * The minimum number of index items each parsing thread should get, below that parsing is not worth forking.
+     */
+    private static final int MIN_ITEMS_PER_PARSE_THREAD = 8;
+
     private final MappingUpdatedAction mappingUpdatedAction;
     private final UpdateHelper updateHelper;
     private final boolean allowIdGeneration;
+    private final int parseConcurrency;
+    private final boolean batchIndexWrites;
 
     @Inject
     public TransportShardBulkAction(Settings settings, TransportService transportService, ClusterService clusterService,
@@ -87,6 +101,8 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
         this.mappingUpdatedAction = mappingUpdatedAction;
         this.updateHelper = updateHelper;
         this.allowIdGeneration = settings.getAsBoolean("action.allow_id_generation", true);
+        this.parseConcurrency = settings.getAsInt("action.bulk.parse_concurrency", Math.min(4, EsExecutors.boundedNumberOfProcessors(settings)));
+        this.batchIndexWrites = settings.getAsBoolean("action.bulk.batch_index_writes", true);
     }
 
     @Override
@@ -139,6 +155,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
 
         long[] preVersions = new long[request.items().length];
         VersionType[] preVersionTypes = new VersionType[request.items().length];
+        final PreparedIndexOperations prepared = prepareIndexOperations(request, clusterState, indexShard);
         for (int requestIndex = 0; requestIndex < request.items().length; requestIndex++) {
             BulkItemRequest item = request.items()[requestIndex];
             if (item.request() instanceof IndexRequest) {
@@ -147,7 +164,15 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                 preVersionTypes[requestIndex] = indexRequest.versionType();
                 try {
                     try {
-                        WriteResult result = shardIndexOperation(request, indexRequest, clusterState, indexShard, true);
+                        final WriteResult result;
+                        if (prepared != null) {
+                            if (requestIndex >= prepared.executedUpTo) {
+                                executeIndexOperations(request, prepared, requestIndex, indexShard);
+                            }
+                            result = indexOperationResult(request, indexRequest, prepared.get(requestIndex));
+                        } else {
+                            result = shardIndexOperation(request, indexRequest, clusterState, indexShard, true);
+                        }
                         // add the response
                         IndexResponse indexResponse = result.response();
                         setResponse(item, new BulkItemResponse(item.id(), indexRequest.opType().lowercase(), indexResponse));
@@ -406,8 +431,136 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
         }
     }
 
+    /**
+     * The index operations of a bulk shard request that were prepared (their documents parsed) ahead of execution,
+     * or the failure that preparing or executing them raised.
+     */
+    static final class PreparedIndexOperations {
+
+        final Engine.IndexingOperation[] ops;
+        final RuntimeException[] failures;
+        /** the items before this one have been executed */
+        int executedUpTo;
+
+        PreparedIndexOperations(int size) {
+            this.ops = new Engine.IndexingOperation[size];
+            this.failures = new RuntimeException[size];
+        }
+
+        Engine.IndexingOperation get(int requestIndex) {
+            if (failures[requestIndex] != null) {
+                throw failures[requestIndex];
+            }
+            assert ops[requestIndex] != null;
+            return ops[requestIndex];
+        }
+    }
+
+    /**
+     * Parses the documents of the index items of the request concurrently, ahead of executing them. Parsing doesn't
+     * need to happen in order, only the writes to the shard do, so these are still executed sequentially on the
+     * current thread afterwards. The current thread parses items too, and only waits for the items that another
+     * thread already started to parse, so this never blocks on a busy or rejecting parse pool.
+     * Returns <tt>null</tt> if the index items should rather be parsed and executed one at a time.
+     */
+    @Nullable
+    private PreparedIndexOperations prepareIndexOperations(final BulkShardRequest request, final ClusterState clusterState, final IndexShard indexShard) {
+        final BulkItemRequest[] items = request.items();
+        int numIndexItems = 0;
+        final int[] indexItems = new int[items.length];
+        for (int requestIndex = 0; requestIndex < items.length; requestIndex++) {
+            if (items[requestIndex].request() instanceof IndexRequest) {
+                indexItems[numIndexItems++] = requestIndex;
+            }
+        }
+        final int numThreads = Math.min(parseConcurrency, numIndexItems / MIN_ITEMS_PER_PARSE_THREAD);
+        if (numIndexItems < 2 || (numThreads <= 1 && batchIndexWrites == false)) {
+            return null;
+        }
+
+        final PreparedIndexOperations prepared = new PreparedIndexOperations(items.length);
+        final int numToPrepare = numIndexItems;
+        final AtomicInteger nextItem = new AtomicInteger();
+        final CountDownLatch preparedLatch = new CountDownLatch(numToPrepare);
+        final Runnable parser = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = nextItem.getAndIncrement(); i < numToPrepare; i = nextItem.getAndIncrement()) {
+                    final int requestIndex = indexItems[i];
+                    try {
+                        prepared.ops[requestIndex] = prepareIndexOperation(request, (IndexRequest) items[requestIndex].request(), clusterState, indexShard, true);
+                    } catch (RuntimeException e) {
+                        prepared.failures[requestIndex] = e;
+                    } catch (Throwable t) {
+                        prepared.failures[requestIndex] = new WriteFailure(t, null);
+                    } finally {
+                        preparedLatch.countDown();
+                    }
+                }
+            }
+        };
+        final Executor executor = threadPool.executor(ThreadPool.Names.BULK_PARSE);
+        for (int i = 1; i < numThreads; i++) {
+            try {
+                executor.execute(parser);
+            } catch (EsRejectedExecutionException e) {
+                // the current thread will parse the remaining items
+                break;
+            }
+        }
+        parser.run();
+        // all items are claimed at this point, we only wait for the ones that are still being parsed by other threads
+        Uninterruptibles.awaitUninterruptibly(preparedLatch);
+        return prepared;
+    }
+
+    /**
+     * Executes the prepared operations of the run of consecutive index items starting at <tt>from</tt> as one batch,
+     * see {@link IndexShard#bulkIndex}.
+     */
+    private void executeIndexOperations(BulkShardRequest request, PreparedIndexOperations prepared, int from, IndexShard indexShard) {
+        final BulkItemRequest[] items = request.items();
+        int to = from + 1;
+        if (batchIndexWrites) {
+            while (to < items.length && items[to].request() instanceof IndexRequest) {
+                to++;
+            }
+        }
+        final Engine.IndexingOperation[] ops = Arrays.copyOfRange(prepared.ops, from, to);
+        final Throwable[] failures = new Throwable[to - from];
+        System.arraycopy(prepared.failures, from, failures, 0, failures.length);
+        try {
+            indexShard.bulkIndex(ops, failures);
+        } catch (Throwable t) {
+            for (int i = 0; i < failures.length; i++) {
+                if (failures[i] == null) {
+                    failures[i] = t;
+                }
+            }
+        }
+        for (int i = from; i < to; i++) {
+            if (prepared.failures[i] == null) {
+                final Engine.IndexingOperation op = ops[i - from];
+                prepared.ops[i] = op;
+                if (failures[i - from] != null) {
+                    prepared.failures[i] = new WriteFailure(failures[i - from], mappingTypeToUpdate((IndexRequest) items[i].request(), op));
+                }
+            }
+        }
+        prepared.executedUpTo = to;
+    }
+
     private WriteResult shardIndexOperation(BulkShardRequest request, IndexRequest indexRequest, ClusterState clusterState,
                                             IndexShard indexShard, boolean processed) {
+        Engine.IndexingOperation op = prepareIndexOperation(request, indexRequest, clusterState, indexShard, processed);
+        return executeIndexOperation(request, indexRequest, op, indexShard);
+    }
+
+    /**
+     * Validates the index request and parses its document. Parsing failures are wrapped in a {@link WriteFailure}.
+     */
+    private Engine.IndexingOperation prepareIndexOperation(BulkShardRequest request, IndexRequest indexRequest, ClusterState clusterState,
+                                                           IndexShard indexShard, boolean processed) {
 
         // validate, if routing is required, that we got routing
         MappingMetaData mappingMd = clusterState.metaData().index(request.index()).mappingOrDefault(indexRequest.type());
@@ -424,45 +577,57 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
         SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.PRIMARY, indexRequest.source()).type(indexRequest.type()).id(indexRequest.id())
                 .routing(indexRequest.routing()).parent(indexRequest.parent()).timestamp(indexRequest.timestamp()).ttl(indexRequest.ttl());
 
-        // update mapping on master if needed, we won't update changes to the same type, since once its changed, it won't have mappers added
-        String mappingTypeToUpdate = null;
-
-        long version;
-        boolean created;
-        Engine.IndexingOperation op;
         try {
             if (indexRequest.opType() == IndexRequest.OpType.INDEX) {
-                Engine.Index index = indexShard.prepareIndex(sourceToParse, indexRequest.version(), indexRequest.versionType(), Engine.Operation.Origin.PRIMARY, request.canHaveDuplicates() || indexRequest.canHaveDuplicates());
-                if (index.parsedDoc().mappingsModified()) {
-                    mappingTypeToUpdate = indexRequest.type();
-                }
-                indexShard.index(index);
-                version = index.version();
-                op = index;
-                created = index.created();
+                return indexShard.prepareIndex(sourceToParse, indexRequest.version(), indexRequest.versionType(), Engine.Operation.Origin.PRIMARY, request.canHaveDuplicates() || indexRequest.canHaveDuplicates());
             } else {
-                Engine.Create create = indexShard.prepareCreate(sourceToParse, indexRequest.version(), indexRequest.versionType(), Engine.Operation.Origin.PRIMARY,
+                return indexShard.prepareCreate(sourceToParse, indexRequest.version(), indexRequest.versionType(), Engine.Operation.Origin.PRIMARY,
                         request.canHaveDuplicates() || indexRequest.canHaveDuplicates(), indexRequest.autoGeneratedId());
-                if (create.parsedDoc().mappingsModified()) {
-                    mappingTypeToUpdate = indexRequest.type();
-                }
-                indexShard.create(create);
-                version = create.version();
-                op = create;
-                created = true;
             }
-            // update the version on request so it will happen on the replicas
-            indexRequest.versionType(indexRequest.versionType().versionTypeForReplicationAndRecovery());
-            indexRequest.version(version);
         } catch (Throwable t) {
-            throw new WriteFailure(t, mappingTypeToUpdate);
+            throw new WriteFailure(t, null);
         }
+    }
+
+    private WriteResult executeIndexOperation(BulkShardRequest request, IndexRequest indexRequest, Engine.IndexingOperation op, IndexShard indexShard) {
+        try {
+            if (indexRequest.opType() == IndexRequest.OpType.INDEX) {
+                indexShard.index((Engine.Index) op);
+            } else {
+                indexShard.create((Engine.Create) op);
+            }
+        } catch (Throwable t) {
+            throw new WriteFailure(t, mappingTypeToUpdate(indexRequest, op));
+        }
+        return indexOperationResult(request, indexRequest, op);
+    }
+
+    /**
+     * Builds the result of an index operation that was executed successfully.
+     */
+    private WriteResult indexOperationResult(BulkShardRequest request, IndexRequest indexRequest, Engine.IndexingOperation op) {
+        final long version = op.version();
+        final boolean created;
+        if (indexRequest.opType() == IndexRequest.OpType.INDEX) {
+            created = ((Engine.Index) op).created();
+        } else {
+            created = true;
+        }
+        // update the version on request so it will happen on the replicas
+        indexRequest.versionType(indexRequest.versionType().versionTypeForReplicationAndRecovery());
+        indexRequest.version(version);
 
         assert indexRequest.versionType().validateVersionForWrites(indexRequest.version());
 
 
         IndexResponse indexResponse = new IndexResponse(request.index(), indexRequest.type(), indexRequest.id(), version, created);
-        return new WriteResult(indexResponse, mappingTypeToUpdate, op);
+        return new WriteResult(indexResponse, mappingTypeToUpdate(indexRequest, op), op);
+    }
+
+    @Nullable
+    private static String mappingTypeToUpdate(IndexRequest indexRequest, Engine.IndexingOperation op) {
+        // update mapping on master if needed, we won't update changes to the same type, since once its changed, it won't have mappers added
+        return op.parsedDoc().mappingsModified() ? indexRequest.type() : null;
     }
 
     private WriteResult shardDeleteOperation(BulkShardRequest request, DeleteRequest deleteRequest, IndexShard indexShard) {
@@ -359,6 +359,13 @@ public class IndexRequest extends ShardReplicationOperationRequest<IndexRequest>
         return source;
     }
 
+    /**
+     * Returns <tt>true</tt> if the source references bytes that might be reused, see {@link #safeSource()}.
+     */
+    public boolean sourceUnsafe() {
+        return sourceUnsafe;
+    }
+
     public Map<String, Object> sourceAsMap() {
         return XContentHelper.convertToMap(source, false).v2();
     }
@@ -21,6 +21,7 @@ package org.elasticsearch.action.search.type;
 
 import com.carrotsearch.hppc.IntArrayList;
 import org.apache.lucene.search.ScoreDoc;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRunnable;
 import org.elasticsearch.action.search.ReduceSearchPhaseException;
@@ -37,6 +38,8 @@ import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.action.SearchServiceListener;
 import org.elasticsearch.search.action.SearchServiceTransportAction;
 import org.elasticsearch.search.controller.SearchPhaseController;
+import org.elasticsearch.search.controller.ShardAggregationsReducer;
+import org.elasticsearch.search.controller.ShardTopDocsMerger;
 import org.elasticsearch.search.dfs.AggregatedDfs;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.ShardFetchSearchRequest;
@@ -71,12 +74,17 @@ public class TransportSearchDfsQueryThenFetchAction extends TransportSearchTypeA
         final AtomicArray<QuerySearchResult> queryResults;
         final AtomicArray<FetchSearchResult> fetchResults;
         final AtomicArray<IntArrayList> docIdsToLoad;
+        final ShardTopDocsMerger topDocsMerger;
+        final ShardAggregationsReducer aggregationsReducer;
+        private volatile Throwable queryResultsMergeFailure;
 
         private AsyncAction(SearchRequest request, ActionListener<SearchResponse> listener) {
             super(request, listener);
             queryResults = new AtomicArray<>(firstResults.length());
             fetchResults = new AtomicArray<>(firstResults.length());
             docIdsToLoad = new AtomicArray<>(firstResults.length());
+            topDocsMerger = searchPhaseController.newTopDocsMerger(!useSlowScroll && request.scroll() != null);
+            aggregationsReducer = searchPhaseController.newAggregationsReducer();
         }
 
         @Override
@@ -107,6 +115,12 @@ public class TransportSearchDfsQueryThenFetchAction extends TransportSearchTypeA
                 public void onResult(QuerySearchResult result) {
                     result.shardTarget(dfsResult.shardTarget());
                     queryResults.set(shardIndex, result);
+                    try {
+                        topDocsMerger.add(shardIndex, result);
+                        aggregationsReducer.add(result);
+                    } catch (Throwable t) {
+                        queryResultsMergeFailure = t;
+                    }
                     if (counter.decrementAndGet() == 0) {
                         executeFetchPhase();
                     }
@@ -143,8 +157,10 @@ public class TransportSearchDfsQueryThenFetchAction extends TransportSearchTypeA
         }
 
         void innerExecuteFetchPhase() throws Exception {
-            boolean useScroll = !useSlowScroll && request.scroll() != null;
-            sortedShardList = searchPhaseController.sortDocs(useScroll, queryResults);
+            if (queryResultsMergeFailure != null) {
+                throw ExceptionsHelper.convertToElastic(queryResultsMergeFailure);
+            }
+            sortedShardList = topDocsMerger.sortedDocs();
             searchPhaseController.fillDocIdsToLoad(docIdsToLoad, sortedShardList);
 
             if (docIdsToLoad.asList().isEmpty()) {
@@ -197,7 +213,7 @@ public class TransportSearchDfsQueryThenFetchAction extends TransportSearchTypeA
             threadPool.executor(ThreadPool.Names.SEARCH).execute(new ActionRunnable<SearchResponse>(listener) {
                 @Override
                 public void doRun() throws IOException {
-                    final InternalSearchResponse internalResponse = searchPhaseController.merge(sortedShardList, queryResults, fetchResults);
+                    final InternalSearchResponse internalResponse = searchPhaseController.merge(sortedShardList, queryResults, fetchResults, aggregationsReducer);
                     String scrollId = null;
                     if (request.scroll() != null) {
                         scrollId = TransportSearchHelper.buildScrollId(request.searchType(), firstResults, null);
@@ -21,6 +21,7 @@ package org.elasticsearch.action.search.type;
 
 import com.carrotsearch.hppc.IntArrayList;
 import org.apache.lucene.search.ScoreDoc;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRunnable;
 import org.elasticsearch.action.search.ReduceSearchPhaseException;
@@ -36,6 +37,8 @@ import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.action.SearchServiceListener;
 import org.elasticsearch.search.action.SearchServiceTransportAction;
 import org.elasticsearch.search.controller.SearchPhaseController;
+import org.elasticsearch.search.controller.ShardAggregationsReducer;
+import org.elasticsearch.search.controller.ShardTopDocsMerger;
 import org.elasticsearch.search.fetch.ShardFetchSearchRequest;
 import org.elasticsearch.search.fetch.FetchSearchResult;
 import org.elasticsearch.search.internal.InternalSearchResponse;
@@ -66,11 +69,16 @@ public class TransportSearchQueryThenFetchAction extends TransportSearchTypeActi
 
         final AtomicArray<FetchSearchResult> fetchResults;
         final AtomicArray<IntArrayList> docIdsToLoad;
+        final ShardTopDocsMerger topDocsMerger;
+        final ShardAggregationsReducer aggregationsReducer;
+        private volatile Throwable queryResultsMergeFailure;
 
         private AsyncAction(SearchRequest request, ActionListener<SearchResponse> listener) {
             super(request, listener);
             fetchResults = new AtomicArray<>(firstResults.length());
             docIdsToLoad = new AtomicArray<>(firstResults.length());
+            topDocsMerger = searchPhaseController.newTopDocsMerger(!useSlowScroll && request.scroll() != null);
+            aggregationsReducer = searchPhaseController.newAggregationsReducer();
         }
 
         @Override
@@ -83,10 +91,22 @@ public class TransportSearchQueryThenFetchAction extends TransportSearchTypeActi
             searchService.sendExecuteQuery(node, request, listener);
         }
 
+        @Override
+        protected void consumeFirstPhaseResult(int shardIndex, QuerySearchResultProvider result) {
+            try {
+                topDocsMerger.add(shardIndex, result.queryResult());
+                aggregationsReducer.add(result.queryResult());
+            } catch (Throwable t) {
+                queryResultsMergeFailure = t;
+            }
+        }
+
         @Override
         protected void moveToSecondPhase() throws Exception {
-            boolean useScroll = !useSlowScroll && request.scroll() != null;
-            sortedShardList = searchPhaseController.sortDocs(useScroll, firstResults);
+            if (queryResultsMergeFailure != null) {
+                throw ExceptionsHelper.convertToElastic(queryResultsMergeFailure);
+            }
+            sortedShardList = topDocsMerger.sortedDocs();
             searchPhaseController.fillDocIdsToLoad(docIdsToLoad, sortedShardList);
 
             if (docIdsToLoad.asList().isEmpty()) {
@@ -141,7 +161,7 @@ public class TransportSearchQueryThenFetchAction extends TransportSearchTypeActi
             threadPool.executor(ThreadPool.Names.SEARCH).execute(new ActionRunnable<SearchResponse>(listener) {
                 @Override
                 public void doRun() throws IOException {
-                    final InternalSearchResponse internalResponse = searchPhaseController.merge(sortedShardList, firstResults, fetchResults);
+                    final InternalSearchResponse internalResponse = searchPhaseController.merge(sortedShardList, firstResults, fetchResults, aggregationsReducer);
                     String scrollId = null;
                     if (request.scroll() != null) {
                         scrollId = TransportSearchHelper.buildScrollId(request.searchType(), firstResults, null);
@@ -361,6 +361,7 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
 
         protected final void processFirstPhaseResult(int shardIndex, ShardRouting shard, FirstResult result) {
             firstResults.set(shardIndex, result);
+            consumeFirstPhaseResult(shardIndex, result);
 
             if (logger.isTraceEnabled()) {
                 logger.trace("got first-phase result from {}", result != null ? result.shardTarget() : null);
@@ -375,6 +376,13 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
             }
         }
 
+        /**
+         * Called with each successful first phase result as it arrives, allowing to reduce results incrementally
+         * rather than once all shards responded. Must not throw.
+         */
+        protected void consumeFirstPhaseResult(int shardIndex, FirstResult result) {
+        }
+
         final void innerMoveToSecondPhase() throws Exception {
             if (logger.isTraceEnabled()) {
                 StringBuilder sb = new StringBuilder();
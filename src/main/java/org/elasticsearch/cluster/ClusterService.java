@@ -108,6 +108,13 @@ public interface ClusterService extends LifecycleComponent<ClusterService> {
      */
     void submitStateUpdateTask(final String source, final ClusterStateUpdateTask updateTask);
 
+    /**
+     * Submits a task that will update the cluster state in a batch with all other pending tasks submitted with the same
+     * executor. The tasks of a batch are executed against one cluster state and the result is published once.
+     */
+    <T> void submitStateUpdateTask(final String source, Priority priority, final T task, final ClusterStateTaskExecutor<T> executor,
+                                   final ClusterStateTaskListener listener);
+
     /**
      * Returns the tasks that are pending.
      */
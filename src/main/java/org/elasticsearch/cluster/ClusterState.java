@@ -679,5 +679,65 @@ public class ClusterState implements ToXContent {
             }
             return builder.build();
         }
+
+        /**
+         * Writes the changes from {@code previous} to {@code state}. The receiving side can only apply them on top of
+         * the very same previous state, see {@link #readDiffFrom(StreamInput, ClusterState, DiscoveryNode, ClusterName)}.
+         * Only available for nodes on or after {@link Version#V_2_0_0}.
+         */
+        public static void writeDiffTo(ClusterState previous, ClusterState state, StreamOutput out) throws IOException {
+            assert out.getVersion().onOrAfter(Version.V_2_0_0);
+            out.writeBoolean(state.clusterName != null);
+            if (state.clusterName != null) {
+                state.clusterName.writeTo(out);
+            }
+            out.writeLong(previous.version());
+            out.writeOptionalString(previous.nodes().masterNodeId());
+            out.writeLong(state.version());
+            MetaData.Builder.writeDiffTo(previous.metaData(), state.metaData(), out);
+            RoutingTable.Builder.writeDiffTo(previous.routingTable(), state.routingTable(), out);
+            DiscoveryNodes.Builder.writeTo(state.nodes(), out);
+            ClusterBlocks.Builder.writeClusterBlocks(state.blocks(), out);
+            out.writeVInt(state.customs().size());
+            for (ObjectObjectCursor<String, Custom> cursor : state.customs()) {
+                out.writeString(cursor.key);
+                lookupFactorySafe(cursor.key).writeTo(cursor.value, out);
+            }
+        }
+
+        /**
+         * Applies changes written by {@link #writeDiffTo(ClusterState, ClusterState, StreamOutput)} to {@code previous}.
+         *
+         * @throws IncompatibleClusterStateVersionException if the diff was not computed against {@code previous}
+         */
+        public static ClusterState readDiffFrom(StreamInput in, @Nullable ClusterState previous, @Nullable DiscoveryNode localNode, @Nullable ClusterName defaultClusterName) throws IOException {
+            ClusterName clusterName = defaultClusterName;
+            if (in.readBoolean()) {
+                clusterName = ClusterName.readClusterName(in);
+            }
+            long fromVersion = in.readLong();
+            String fromMasterNodeId = in.readOptionalString();
+            if (previous == null) {
+                throw new IncompatibleClusterStateVersionException("cluster state diff was computed against version [" + fromVersion
+                        + "] from master [" + fromMasterNodeId + "] but there is no previous cluster state");
+            }
+            String masterNodeId = previous.nodes().masterNodeId();
+            if (previous.version() != fromVersion || fromMasterNodeId == null || !fromMasterNodeId.equals(masterNodeId)) {
+                throw new IncompatibleClusterStateVersionException(fromVersion, fromMasterNodeId, previous.version(), masterNodeId);
+            }
+            Builder builder = new Builder(clusterName);
+            builder.version = in.readLong();
+            builder.metaData = MetaData.Builder.readDiffFrom(in, previous.metaData());
+            builder.routingTable = RoutingTable.Builder.readDiffFrom(in, previous.routingTable());
+            builder.nodes = DiscoveryNodes.Builder.readFrom(in, localNode);
+            builder.blocks = ClusterBlocks.Builder.readClusterBlocks(in);
+            int customSize = in.readVInt();
+            for (int i = 0; i < customSize; i++) {
+                String type = in.readString();
+                Custom customIndexMetaData = lookupFactorySafe(type).readFrom(in);
+                builder.putCustom(type, customIndexMetaData);
+            }
+            return builder.build();
+        }
     }
 }
@@ -0,0 +1,38 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster;
+
+import org.elasticsearch.ElasticsearchException;
+
+/**
+ * Thrown when a cluster state diff can't be applied because the receiving node doesn't have the cluster state
+ * the diff was computed against.
+ */
+public class IncompatibleClusterStateVersionException extends ElasticsearchException {
+
+    public IncompatibleClusterStateVersionException(String message) {
+        super(message);
+    }
+
+    public IncompatibleClusterStateVersionException(long expectedVersion, String expectedMasterNodeId, long actualVersion, String actualMasterNodeId) {
+        super("cluster state diff was computed against version [" + expectedVersion + "] from master [" + expectedMasterNodeId
+                + "] but the current version is [" + actualVersion + "] from master [" + actualMasterNodeId + "]");
+    }
+}
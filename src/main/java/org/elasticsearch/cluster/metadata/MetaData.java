@@ -1424,5 +1424,75 @@ public class MetaData implements Iterable<IndexMetaData> {
                 lookupFactorySafe(cursor.key).writeTo(cursor.value, out);
             }
         }
+
+        /**
+         * Writes the changes from {@code previous} to {@code metaData}. Only index metadata of indices that were added or
+         * changed is written, the names of removed indices are written instead of the full list. Settings, templates and
+         * customs are small and are always written in full.
+         */
+        public static void writeDiffTo(MetaData previous, MetaData metaData, StreamOutput out) throws IOException {
+            out.writeLong(metaData.version);
+            out.writeString(metaData.uuid);
+            writeSettingsToStream(metaData.transientSettings(), out);
+            writeSettingsToStream(metaData.persistentSettings(), out);
+            List<String> removedIndices = newArrayList();
+            for (ObjectCursor<String> cursor : previous.indices.keys()) {
+                if (!metaData.indices.containsKey(cursor.value)) {
+                    removedIndices.add(cursor.value);
+                }
+            }
+            out.writeStringArray(removedIndices.toArray(new String[removedIndices.size()]));
+            List<IndexMetaData> changedIndices = newArrayList();
+            for (IndexMetaData indexMetaData : metaData) {
+                // unchanged index metadata is carried over by reference when a new metadata is built from the previous one
+                if (previous.indices.get(indexMetaData.index()) != indexMetaData) {
+                    changedIndices.add(indexMetaData);
+                }
+            }
+            out.writeVInt(changedIndices.size());
+            for (IndexMetaData indexMetaData : changedIndices) {
+                IndexMetaData.Builder.writeTo(indexMetaData, out);
+            }
+            out.writeVInt(metaData.templates.size());
+            for (ObjectCursor<IndexTemplateMetaData> cursor : metaData.templates.values()) {
+                IndexTemplateMetaData.Builder.writeTo(cursor.value, out);
+            }
+            out.writeVInt(metaData.customs().size());
+            for (ObjectObjectCursor<String, Custom> cursor : metaData.customs()) {
+                out.writeString(cursor.key);
+                lookupFactorySafe(cursor.key).writeTo(cursor.value, out);
+            }
+        }
+
+        /**
+         * Applies changes written by {@link #writeDiffTo(MetaData, MetaData, StreamOutput)} to {@code previous}.
+         */
+        public static MetaData readDiffFrom(StreamInput in, MetaData previous) throws IOException {
+            Builder builder = new Builder(previous);
+            builder.version = in.readLong();
+            builder.uuid = in.readString();
+            builder.transientSettings(readSettingsFromStream(in));
+            builder.persistentSettings(readSettingsFromStream(in));
+            for (String index : in.readStringArray()) {
+                builder.remove(index);
+            }
+            int size = in.readVInt();
+            for (int i = 0; i < size; i++) {
+                builder.put(IndexMetaData.Builder.readFrom(in), false);
+            }
+            builder.templates.clear();
+            size = in.readVInt();
+            for (int i = 0; i < size; i++) {
+                builder.put(IndexTemplateMetaData.Builder.readFrom(in));
+            }
+            builder.customs.clear();
+            int customSize = in.readVInt();
+            for (int i = 0; i < customSize; i++) {
+                String type = in.readString();
+                Custom customIndexMetaData = lookupFactorySafe(type).readFrom(in);
+                builder.putCustom(type, customIndexMetaData);
+            }
+            return builder.build();
+        }
     }
 }
@@ -473,6 +473,75 @@ public class RoutingTable implements Iterable<IndexRoutingTable> {
                 IndexRoutingTable.Builder.writeTo(index, out);
             }
         }
+
+        /**
+         * Writes the changes from {@code previous} to {@code table}: the names of the removed indices and the routing
+         * tables of the indices that were added or whose shard routings changed.
+         */
+        public static void writeDiffTo(RoutingTable previous, RoutingTable table, StreamOutput out) throws IOException {
+            out.writeLong(table.version);
+            List<String> removedIndices = newArrayList();
+            for (String index : previous.indicesRouting.keySet()) {
+                if (!table.indicesRouting.containsKey(index)) {
+                    removedIndices.add(index);
+                }
+            }
+            out.writeStringArray(removedIndices.toArray(new String[removedIndices.size()]));
+            List<IndexRoutingTable> changedIndices = newArrayList();
+            for (IndexRoutingTable index : table.indicesRouting.values()) {
+                if (routingChanged(previous.indicesRouting.get(index.index()), index)) {
+                    changedIndices.add(index);
+                }
+            }
+            out.writeVInt(changedIndices.size());
+            for (IndexRoutingTable index : changedIndices) {
+                IndexRoutingTable.Builder.writeTo(index, out);
+            }
+        }
+
+        /**
+         * Applies changes written by {@link #writeDiffTo(RoutingTable, RoutingTable, StreamOutput)} to {@code previous}.
+         */
+        public static RoutingTable readDiffFrom(StreamInput in, RoutingTable previous) throws IOException {
+            Builder builder = new Builder(previous);
+            builder.version = in.readLong();
+            for (String index : in.readStringArray()) {
+                builder.remove(index);
+            }
+            int size = in.readVInt();
+            for (int i = 0; i < size; i++) {
+                builder.add(IndexRoutingTable.Builder.readFrom(in));
+            }
+            return builder.build();
+        }
+
+        /**
+         * The routing table is rebuilt on every reroute, so we compare the shard routings, including their versions,
+         * rather than the instances.
+         */
+        private static boolean routingChanged(IndexRoutingTable previous, IndexRoutingTable current) {
+            if (previous == current) {
+                return false;
+            }
+            if (previous == null || previous.shards().size() != current.shards().size()) {
+                return true;
+            }
+            for (IndexShardRoutingTable shard : current) {
+                IndexShardRoutingTable previousShard = previous.shard(shard.shardId().id());
+                if (previousShard == null || previousShard.primaryAllocatedPostApi() != shard.primaryAllocatedPostApi()
+                        || previousShard.size() != shard.size()) {
+                    return true;
+                }
+                for (int i = 0; i < shard.size(); i++) {
+                    ShardRouting previousRouting = previousShard.shards().get(i);
+                    ShardRouting routing = shard.shards().get(i);
+                    if (!previousRouting.equals(routing) || previousRouting.version() != routing.version()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
     }
 
     public String prettyPrint() {
@@ -77,6 +77,9 @@ public class InternalClusterService extends AbstractLifecycleComponent<ClusterSe
 
     private volatile PrioritizedEsThreadPoolExecutor updateTasksExecutor;
 
+    // pending batched tasks per executor, drained when the first of them is executed
+    private final Map<ClusterStateTaskExecutor<?>, List<BatchedUpdateTask<?>>> batchedUpdateTasks = new IdentityHashMap<>();
+
     /**
      * Those 3 state listeners are changing infrequently - CopyOnWriteArrayList is just fine
      */
@@ -289,6 +292,32 @@ public class InternalClusterService extends AbstractLifecycleComponent<ClusterSe
         }
     }
 
+    @Override
+    public <T> void submitStateUpdateTask(final String source, Priority priority, final T task, final ClusterStateTaskExecutor<T> executor,
+                                          final ClusterStateTaskListener listener) {
+        if (!lifecycle.started()) {
+            return;
+        }
+        try {
+            final BatchedUpdateTask<T> updateTask = new BatchedUpdateTask<>(source, priority, task, executor, listener);
+            synchronized (batchedUpdateTasks) {
+                List<BatchedUpdateTask<?>> pending = batchedUpdateTasks.get(executor);
+                if (pending == null) {
+                    pending = new ArrayList<>();
+                    batchedUpdateTasks.put(executor, pending);
+                }
+                pending.add(updateTask);
+            }
+            updateTasksExecutor.execute(updateTask);
+        } catch (EsRejectedExecutionException e) {
+            // ignore cases where we are shutting down..., there is really nothing interesting
+            // to be done here...
+            if (!lifecycle.stoppedOrClosed()) {
+                throw e;
+            }
+        }
+    }
+
     @Override
     public List<PendingClusterTask> pendingTasks() {
         long now = System.currentTimeMillis();
@@ -297,195 +326,307 @@ public class InternalClusterService extends AbstractLifecycleComponent<ClusterSe
         for (PrioritizedEsThreadPoolExecutor.Pending pending : pendings) {
             final String source;
             final long timeInQueue;
-            if (pending.task instanceof UpdateTask) {
-                UpdateTask updateTask = (UpdateTask) pending.task;
-                source = updateTask.source;
-                timeInQueue = now - updateTask.addedAt;
+            boolean executing = pending.executing;
+            if (pending.task instanceof SourcePrioritizedRunnable) {
+                SourcePrioritizedRunnable runnable = (SourcePrioritizedRunnable) pending.task;
+                source = runnable.source;
+                timeInQueue = now - runnable.addedAt;
+                if (runnable instanceof BatchedUpdateTask) {
+                    // already drained into a batch that is being executed
+                    executing |= ((BatchedUpdateTask<?>) runnable).processed;
+                }
             } else {
                 source = "unknown";
                 timeInQueue = -1;
             }
 
-            pendingClusterTasks.add(new PendingClusterTask(pending.insertionOrder, pending.priority, new StringText(source), timeInQueue, pending.executing));
+            pendingClusterTasks.add(new PendingClusterTask(pending.insertionOrder, pending.priority, new StringText(source), timeInQueue, executing));
         }
         return pendingClusterTasks;
     }
 
-    class UpdateTask extends PrioritizedRunnable {
+    static abstract class SourcePrioritizedRunnable extends PrioritizedRunnable {
 
         public final String source;
-        public final ClusterStateUpdateTask updateTask;
         public final long addedAt = System.currentTimeMillis();
 
-        UpdateTask(String source, Priority priority, ClusterStateUpdateTask updateTask) {
+        SourcePrioritizedRunnable(String source, Priority priority) {
             super(priority);
             this.source = source;
+        }
+    }
+
+    class UpdateTask extends SourcePrioritizedRunnable {
+
+        public final ClusterStateUpdateTask updateTask;
+
+        UpdateTask(String source, Priority priority, ClusterStateUpdateTask updateTask) {
+            super(source, priority);
             this.updateTask = updateTask;
         }
 
         @Override
         public void run() {
-            if (!lifecycle.started()) {
-                logger.debug("processing [{}]: ignoring, cluster_service not started", source);
-                return;
-            }
-            logger.debug("processing [{}]: execute", source);
-            ClusterState previousClusterState = clusterState;
-            if (!previousClusterState.nodes().localNodeMaster() && updateTask.runOnlyOnMaster()) {
-                logger.debug("failing [{}]: local node is no longer master", source);
-                updateTask.onNoLongerMaster(source);
+            runUpdateTask(source, updateTask);
+        }
+    }
+
+    class BatchedUpdateTask<T> extends SourcePrioritizedRunnable {
+
+        public final T task;
+        public final ClusterStateTaskExecutor<T> executor;
+        public final ClusterStateTaskListener listener;
+        volatile boolean processed;
+
+        BatchedUpdateTask(String source, Priority priority, T task, ClusterStateTaskExecutor<T> executor, ClusterStateTaskListener listener) {
+            super(source, priority);
+            this.task = task;
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (processed) {
+                // executed as part of an earlier batch
                 return;
             }
-            ClusterState newClusterState;
-            try {
-                newClusterState = updateTask.execute(previousClusterState);
-            } catch (Throwable e) {
-                if (logger.isTraceEnabled()) {
-                    StringBuilder sb = new StringBuilder("failed to execute cluster state update, state:\nversion [").append(previousClusterState.version()).append("], source [").append(source).append("]\n");
-                    sb.append(previousClusterState.nodes().prettyPrint());
-                    sb.append(previousClusterState.routingTable().prettyPrint());
-                    sb.append(previousClusterState.readOnlyRoutingNodes().prettyPrint());
-                    logger.trace(sb.toString(), e);
+            final List<BatchedUpdateTask<T>> batch = new ArrayList<>();
+            synchronized (batchedUpdateTasks) {
+                List<BatchedUpdateTask<?>> pending = batchedUpdateTasks.remove(executor);
+                if (pending != null) {
+                    for (BatchedUpdateTask<?> batchedTask : pending) {
+                        @SuppressWarnings("unchecked")
+                        BatchedUpdateTask<T> sameKindTask = (BatchedUpdateTask<T>) batchedTask;
+                        batch.add(sameKindTask);
+                    }
                 }
-                updateTask.onFailure(source, e);
+            }
+            if (batch.isEmpty()) {
                 return;
             }
-
-            if (previousClusterState == newClusterState) {
-                logger.debug("processing [{}]: no change in cluster_state", source);
-                if (updateTask instanceof AckedClusterStateUpdateTask) {
-                    //no need to wait for ack if nothing changed, the update can be counted as acknowledged
-                    ((AckedClusterStateUpdateTask) updateTask).onAllNodesAcked(null);
+            final List<T> tasks = new ArrayList<>(batch.size());
+            long maxTimeInQueue = 0;
+            final long now = System.currentTimeMillis();
+            for (BatchedUpdateTask<T> batchedTask : batch) {
+                batchedTask.processed = true;
+                tasks.add(batchedTask.task);
+                maxTimeInQueue = Math.max(maxTimeInQueue, now - batchedTask.addedAt);
+            }
+            final String batchSource = batch.size() == 1 ? source : source + " and [" + (batch.size() - 1) + "] more batched tasks";
+            if (logger.isDebugEnabled()) {
+                logger.debug("processing [{}]: batch of [{}] tasks, longest time in queue [{}]", batchSource, batch.size(), TimeValue.timeValueMillis(maxTimeInQueue));
+            }
+            runUpdateTask(batchSource, new ProcessedClusterStateUpdateTask() {
+                @Override
+                public ClusterState execute(ClusterState currentState) throws Exception {
+                    return executor.execute(currentState, tasks);
                 }
-                if (updateTask instanceof ProcessedClusterStateUpdateTask) {
-                    ((ProcessedClusterStateUpdateTask) updateTask).clusterStateProcessed(source, previousClusterState, newClusterState);
+
+                @Override
+                public boolean runOnlyOnMaster() {
+                    return executor.runOnlyOnMaster();
                 }
-                return;
-            }
 
-            try {
-                Discovery.AckListener ackListener = new NoOpAckListener();
-                if (newClusterState.nodes().localNodeMaster()) {
-                    // only the master controls the version numbers
-                    Builder builder = ClusterState.builder(newClusterState).version(newClusterState.version() + 1);
-                    if (previousClusterState.routingTable() != newClusterState.routingTable()) {
-                        builder.routingTable(RoutingTable.builder(newClusterState.routingTable()).version(newClusterState.routingTable().version() + 1));
+                @Override
+                public void onNoLongerMaster(String source) {
+                    for (BatchedUpdateTask<T> batchedTask : batch) {
+                        try {
+                            batchedTask.listener.onFailure(batchedTask.source, new EsRejectedExecutionException("no longer master. source: [" + batchedTask.source + "]"));
+                        } catch (Throwable t) {
+                            logger.warn("failed to notify listener of [{}]", t, batchedTask.source);
+                        }
                     }
-                    if (previousClusterState.metaData() != newClusterState.metaData()) {
-                        builder.metaData(MetaData.builder(newClusterState.metaData()).version(newClusterState.metaData().version() + 1));
+                }
+
+                @Override
+                public void onFailure(String source, @Nullable Throwable failure) {
+                    for (BatchedUpdateTask<T> batchedTask : batch) {
+                        try {
+                            batchedTask.listener.onFailure(batchedTask.source, failure);
+                        } catch (Throwable t) {
+                            logger.warn("failed to notify listener of [{}]", t, batchedTask.source);
+                        }
                     }
-                    newClusterState = builder.build();
+                }
 
-                    if (updateTask instanceof AckedClusterStateUpdateTask) {
-                        final AckedClusterStateUpdateTask ackedUpdateTask = (AckedClusterStateUpdateTask) updateTask;
-                        if (ackedUpdateTask.ackTimeout() == null || ackedUpdateTask.ackTimeout().millis() == 0) {
-                            ackedUpdateTask.onAckTimeout();
-                        } else {
-                            try {
-                                ackListener = new AckCountDownListener(ackedUpdateTask, newClusterState.version(), newClusterState.nodes(), threadPool);
-                            } catch (EsRejectedExecutionException ex) {
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("Couldn't schedule timeout thread - node might be shutting down", ex);
-                                }
-                                //timeout straightaway, otherwise we could wait forever as the timeout thread has not started
-                                ackedUpdateTask.onAckTimeout();
-                            }
+                @Override
+                public void clusterStateProcessed(String source, ClusterState oldState, ClusterState newState) {
+                    for (BatchedUpdateTask<T> batchedTask : batch) {
+                        try {
+                            batchedTask.listener.clusterStateProcessed(batchedTask.source, oldState, newState);
+                        } catch (Throwable t) {
+                            logger.warn("failed to notify listener of [{}]", t, batchedTask.source);
                         }
                     }
                 }
+            });
+            // the other tasks of the batch are done as well, don't leave them queued (and listed as pending) until their own turn
+            updateTasksExecutor.removeQueued(batch);
+        }
+    }
+
+    private void runUpdateTask(String source, ClusterStateUpdateTask updateTask) {
+        if (!lifecycle.started()) {
+            logger.debug("processing [{}]: ignoring, cluster_service not started", source);
+            return;
+        }
+        logger.debug("processing [{}]: execute", source);
+        ClusterState previousClusterState = clusterState;
+        if (!previousClusterState.nodes().localNodeMaster() && updateTask.runOnlyOnMaster()) {
+            logger.debug("failing [{}]: local node is no longer master", source);
+            updateTask.onNoLongerMaster(source);
+            return;
+        }
+        ClusterState newClusterState;
+        try {
+            newClusterState = updateTask.execute(previousClusterState);
+        } catch (Throwable e) {
+            if (logger.isTraceEnabled()) {
+                StringBuilder sb = new StringBuilder("failed to execute cluster state update, state:\nversion [").append(previousClusterState.version()).append("], source [").append(source).append("]\n");
+                sb.append(previousClusterState.nodes().prettyPrint());
+                sb.append(previousClusterState.routingTable().prettyPrint());
+                sb.append(previousClusterState.readOnlyRoutingNodes().prettyPrint());
+                logger.trace(sb.toString(), e);
+            }
+            updateTask.onFailure(source, e);
+            return;
+        }
 
-                newClusterState.status(ClusterState.ClusterStateStatus.BEING_APPLIED);
+        if (previousClusterState == newClusterState) {
+            logger.debug("processing [{}]: no change in cluster_state", source);
+            if (updateTask instanceof AckedClusterStateUpdateTask) {
+                //no need to wait for ack if nothing changed, the update can be counted as acknowledged
+                ((AckedClusterStateUpdateTask) updateTask).onAllNodesAcked(null);
+            }
+            if (updateTask instanceof ProcessedClusterStateUpdateTask) {
+                ((ProcessedClusterStateUpdateTask) updateTask).clusterStateProcessed(source, previousClusterState, newClusterState);
+            }
+            return;
+        }
 
-                if (logger.isTraceEnabled()) {
-                    StringBuilder sb = new StringBuilder("cluster state updated, source [").append(source).append("]\n");
-                    sb.append(newClusterState.prettyPrint());
-                    logger.trace(sb.toString());
-                } else if (logger.isDebugEnabled()) {
-                    logger.debug("cluster state updated, version [{}], source [{}]", newClusterState.version(), source);
+        try {
+            Discovery.AckListener ackListener = new NoOpAckListener();
+            if (newClusterState.nodes().localNodeMaster()) {
+                // only the master controls the version numbers
+                Builder builder = ClusterState.builder(newClusterState).version(newClusterState.version() + 1);
+                if (previousClusterState.routingTable() != newClusterState.routingTable()) {
+                    builder.routingTable(RoutingTable.builder(newClusterState.routingTable()).version(newClusterState.routingTable().version() + 1));
                 }
-
-                ClusterChangedEvent clusterChangedEvent = new ClusterChangedEvent(source, newClusterState, previousClusterState);
-                // new cluster state, notify all listeners
-                final DiscoveryNodes.Delta nodesDelta = clusterChangedEvent.nodesDelta();
-                if (nodesDelta.hasChanges() && logger.isInfoEnabled()) {
-                    String summary = nodesDelta.shortSummary();
-                    if (summary.length() > 0) {
-                        logger.info("{}, reason: {}", summary, source);
-                    }
+                if (previousClusterState.metaData() != newClusterState.metaData()) {
+                    builder.metaData(MetaData.builder(newClusterState.metaData()).version(newClusterState.metaData().version() + 1));
                 }
+                newClusterState = builder.build();
 
-                // TODO, do this in parallel (and wait)
-                for (DiscoveryNode node : nodesDelta.addedNodes()) {
-                    if (!nodeRequiresConnection(node)) {
-                        continue;
-                    }
-                    try {
-                        transportService.connectToNode(node);
-                    } catch (Throwable e) {
-                        // the fault detection will detect it as failed as well
-                        logger.warn("failed to connect to node [" + node + "]", e);
+                if (updateTask instanceof AckedClusterStateUpdateTask) {
+                    final AckedClusterStateUpdateTask ackedUpdateTask = (AckedClusterStateUpdateTask) updateTask;
+                    if (ackedUpdateTask.ackTimeout() == null || ackedUpdateTask.ackTimeout().millis() == 0) {
+                        ackedUpdateTask.onAckTimeout();
+                    } else {
+                        try {
+                            ackListener = new AckCountDownListener(ackedUpdateTask, newClusterState.version(), newClusterState.nodes(), threadPool);
+                        } catch (EsRejectedExecutionException ex) {
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("Couldn't schedule timeout thread - node might be shutting down", ex);
+                            }
+                            //timeout straightaway, otherwise we could wait forever as the timeout thread has not started
+                            ackedUpdateTask.onAckTimeout();
+                        }
                     }
                 }
+            }
 
-                // if we are the master, publish the new state to all nodes
-                // we publish here before we send a notification to all the listeners, since if it fails
-                // we don't want to notify
-                if (newClusterState.nodes().localNodeMaster()) {
-                    logger.debug("publishing cluster state version {}", newClusterState.version());
-                    discoveryService.publish(newClusterState, ackListener);
-                }
+            newClusterState.status(ClusterState.ClusterStateStatus.BEING_APPLIED);
 
-                // update the current cluster state
-                clusterState = newClusterState;
-                logger.debug("set local cluster state to version {}", newClusterState.version());
-                for (ClusterStateListener listener : preAppliedListeners) {
-                    try {
-                        listener.clusterChanged(clusterChangedEvent);
-                    } catch (Exception ex) {
-                        logger.warn("failed to notify ClusterStateListener", ex);
-                    }
+            if (logger.isTraceEnabled()) {
+                StringBuilder sb = new StringBuilder("cluster state updated, source [").append(source).append("]\n");
+                sb.append(newClusterState.prettyPrint());
+                logger.trace(sb.toString());
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("cluster state updated, version [{}], source [{}]", newClusterState.version(), source);
+            }
+
+            ClusterChangedEvent clusterChangedEvent = new ClusterChangedEvent(source, newClusterState, previousClusterState);
+            // new cluster state, notify all listeners
+            final DiscoveryNodes.Delta nodesDelta = clusterChangedEvent.nodesDelta();
+            if (nodesDelta.hasChanges() && logger.isInfoEnabled()) {
+                String summary = nodesDelta.shortSummary();
+                if (summary.length() > 0) {
+                    logger.info("{}, reason: {}", summary, source);
                 }
+            }
 
-                for (DiscoveryNode node : nodesDelta.removedNodes()) {
-                    try {
-                        transportService.disconnectFromNode(node);
-                    } catch (Throwable e) {
-                        logger.warn("failed to disconnect to node [" + node + "]", e);
-                    }
+            // TODO, do this in parallel (and wait)
+            for (DiscoveryNode node : nodesDelta.addedNodes()) {
+                if (!nodeRequiresConnection(node)) {
+                    continue;
+                }
+                try {
+                    transportService.connectToNode(node);
+                } catch (Throwable e) {
+                    // the fault detection will detect it as failed as well
+                    logger.warn("failed to connect to node [" + node + "]", e);
                 }
+            }
 
-                newClusterState.status(ClusterState.ClusterStateStatus.APPLIED);
+            // if we are the master, publish the new state to all nodes
+            // we publish here before we send a notification to all the listeners, since if it fails
+            // we don't want to notify
+            if (newClusterState.nodes().localNodeMaster()) {
+                logger.debug("publishing cluster state version {}", newClusterState.version());
+                discoveryService.publish(newClusterState, ackListener);
+            }
 
-                for (ClusterStateListener listener : postAppliedListeners) {
-                    try {
-                        listener.clusterChanged(clusterChangedEvent);
-                    } catch (Exception ex) {
-                        logger.warn("failed to notify ClusterStateListener", ex);
-                    }
+            // update the current cluster state
+            clusterState = newClusterState;
+            logger.debug("set local cluster state to version {}", newClusterState.version());
+            for (ClusterStateListener listener : preAppliedListeners) {
+                try {
+                    listener.clusterChanged(clusterChangedEvent);
+                } catch (Exception ex) {
+                    logger.warn("failed to notify ClusterStateListener", ex);
                 }
+            }
 
-                //manual ack only from the master at the end of the publish
-                if (newClusterState.nodes().localNodeMaster()) {
-                    try {
-                        ackListener.onNodeAck(newClusterState.nodes().localNode(), null);
-                    } catch (Throwable t) {
-                        logger.debug("error while processing ack for master node [{}]", t, newClusterState.nodes().localNode());
-                    }
+            for (DiscoveryNode node : nodesDelta.removedNodes()) {
+                try {
+                    transportService.disconnectFromNode(node);
+                } catch (Throwable e) {
+                    logger.warn("failed to disconnect to node [" + node + "]", e);
                 }
+            }
+
+            newClusterState.status(ClusterState.ClusterStateStatus.APPLIED);
 
-                if (updateTask instanceof ProcessedClusterStateUpdateTask) {
-                    ((ProcessedClusterStateUpdateTask) updateTask).clusterStateProcessed(source, previousClusterState, newClusterState);
+            for (ClusterStateListener listener : postAppliedListeners) {
+                try {
+                    listener.clusterChanged(clusterChangedEvent);
+                } catch (Exception ex) {
+                    logger.warn("failed to notify ClusterStateListener", ex);
                 }
+            }
 
-                logger.debug("processing [{}]: done applying updated cluster_state (version: {})", source, newClusterState.version());
-            } catch (Throwable t) {
-                StringBuilder sb = new StringBuilder("failed to apply updated cluster state:\nversion [").append(newClusterState.version()).append("], source [").append(source).append("]\n");
-                sb.append(newClusterState.nodes().prettyPrint());
-                sb.append(newClusterState.routingTable().prettyPrint());
-                sb.append(newClusterState.readOnlyRoutingNodes().prettyPrint());
-                logger.warn(sb.toString(), t);
-                // TODO: do we want to call updateTask.onFailure here?
+            //manual ack only from the master at the end of the publish
+            if (newClusterState.nodes().localNodeMaster()) {
+                try {
+                    ackListener.onNodeAck(newClusterState.nodes().localNode(), null);
+                } catch (Throwable t) {
+                    logger.debug("error while processing ack for master node [{}]", t, newClusterState.nodes().localNode());
+                }
             }
+
+            if (updateTask instanceof ProcessedClusterStateUpdateTask) {
+                ((ProcessedClusterStateUpdateTask) updateTask).clusterStateProcessed(source, previousClusterState, newClusterState);
+            }
+
+            logger.debug("processing [{}]: done applying updated cluster_state (version: {})", source, newClusterState.version());
+        } catch (Throwable t) {
+            StringBuilder sb = new StringBuilder("failed to apply updated cluster state:\nversion [").append(newClusterState.version()).append("], source [").append(source).append("]\n");
+            sb.append(newClusterState.nodes().prettyPrint());
+            sb.append(newClusterState.routingTable().prettyPrint());
+            sb.append(newClusterState.readOnlyRoutingNodes().prettyPrint());
+            logger.warn(sb.toString(), t);
+            // TODO: do we want to call updateTask.onFailure here?
         }
     }
 
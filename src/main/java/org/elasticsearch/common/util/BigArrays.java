@@ -420,6 +420,14 @@ public class BigArrays extends AbstractComponent {
         return new BigArrays(this.settings, this.recycler, this.breakerService, true);
     }
 
+    /**
+     * Return a new instance of this BigArrays class that doesn't account its arrays in the circuit breaker, for long
+     * lived structures whose memory is accounted elsewhere
+     */
+    public BigArrays withoutCircuitBreakerAccounting() {
+        return new BigArrays(this.settings, this.recycler, null, false);
+    }
+
     private <T extends AbstractBigArray> T resizeInPlace(T array, long newSize) {
         final long oldMemSize = array.ramBytesUsed();
         array.resize(newSize);
@@ -19,11 +19,14 @@
 package org.elasticsearch.common.util.concurrent;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.elasticsearch.common.Priority;
 import org.elasticsearch.common.unit.TimeValue;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -62,6 +65,21 @@ public class PrioritizedEsThreadPoolExecutor extends EsThreadPoolExecutor {
         }
     }
 
+    /**
+     * Removes the given tasks from the queue, for tasks whose work has been done by other means. Tasks that are
+     * not queued anymore are ignored.
+     */
+    public void removeQueued(Collection<? extends Runnable> tasks) {
+        Set<Runnable> toRemove = Sets.newIdentityHashSet();
+        toRemove.addAll(tasks);
+        for (Runnable queued : getQueue()) {
+            Runnable task = queued instanceof TieBreakingPrioritizedRunnable ? ((TieBreakingPrioritizedRunnable) queued).runnable : queued;
+            if (toRemove.contains(task)) {
+                getQueue().remove(queued);
+            }
+        }
+    }
+
     @Override
     protected void beforeExecute(Thread t, Runnable r) {
         current.add(r);
@@ -20,10 +20,13 @@
 package org.elasticsearch.discovery.zen.publish;
 
 import com.google.common.collect.Maps;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.Version;
 import org.elasticsearch.cluster.ClusterName;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.IncompatibleClusterStateVersionException;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.compress.Compressor;
@@ -31,6 +34,7 @@ import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.*;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.discovery.AckClusterStatePublishResponseHandler;
 import org.elasticsearch.discovery.ClusterStatePublishResponseHandler;
 import org.elasticsearch.discovery.Discovery;
@@ -39,7 +43,9 @@ import org.elasticsearch.discovery.zen.DiscoveryNodesProvider;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.*;
 
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -67,6 +73,13 @@ public class PublishClusterStateAction extends AbstractComponent {
     private final DiscoverySettings discoverySettings;
     private final ClusterName clusterName;
 
+    // the last cluster state this node published as master, diffs are computed against it
+    private volatile ClusterState lastPublishedClusterState;
+
+    // the last cluster state this node received, diffs are applied on top of it
+    private final Object lastReceivedMutex = new Object();
+    private ClusterState lastReceivedClusterState;
+
     public PublishClusterStateAction(Settings settings, TransportService transportService, DiscoveryNodesProvider nodesProvider,
                                      NewClusterStateListener listener, DiscoverySettings discoverySettings, ClusterName clusterName) {
         super(settings);
@@ -90,7 +103,12 @@ public class PublishClusterStateAction extends AbstractComponent {
 
         DiscoveryNode localNode = nodesProvider.nodes().localNode();
 
-        Map<Version, BytesReference> serializedStates = Maps.newHashMap();
+        final ClusterState previousClusterState = discoverySettings.getPublishDiff() ? lastPublishedClusterState : null;
+        lastPublishedClusterState = clusterState;
+
+        // full states might also be needed when a node rejects a diff, which happens on a transport thread
+        final ConcurrentMap<Version, BytesReference> serializedStates = ConcurrentCollections.newConcurrentMap();
+        final Map<Version, BytesReference> serializedDiffs = Maps.newHashMap();
 
         final AtomicBoolean timedOutWaitingForNodes = new AtomicBoolean(false);
         final TimeValue publishTimeout = discoverySettings.getPublishTimeout();
@@ -99,52 +117,29 @@ public class PublishClusterStateAction extends AbstractComponent {
             if (node.equals(localNode)) {
                 continue;
             }
+            // nodes that were part of the previously published state have (most likely) received it, so they only
+            // need the changes. If they don't have it after all, they reject the diff and we send them the full state.
+            boolean sendDiff = previousClusterState != null && node.version().onOrAfter(Version.V_2_0_0)
+                    && previousClusterState.nodes().nodeExists(node.id());
             // try and serialize the cluster state once (or per version), so we don't serialize it
             // per node when we send it over the wire, compress it while we are at it...
-            BytesReference bytes = serializedStates.get(node.version());
-            if (bytes == null) {
-                try {
-                    BytesStreamOutput bStream = new BytesStreamOutput();
-                    StreamOutput stream = new HandlesStreamOutput(CompressorFactory.defaultCompressor().streamOutput(bStream));
-                    stream.setVersion(node.version());
-                    ClusterState.Builder.writeTo(clusterState, stream);
-                    stream.close();
-                    bytes = bStream.bytes();
-                    serializedStates.put(node.version(), bytes);
-                } catch (Throwable e) {
-                    logger.warn("failed to serialize cluster_state before publishing it to node {}", e, node);
-                    publishResponseHandler.onFailure(node, e);
-                    continue;
-                }
-            }
+            BytesReference bytes;
             try {
-                TransportRequestOptions options = TransportRequestOptions.options().withType(TransportRequestOptions.Type.STATE).withCompress(false);
-                // no need to put a timeout on the options here, because we want the response to eventually be received
-                // and not log an error if it arrives after the timeout
-                transportService.sendRequest(node, ACTION_NAME,
-                        new BytesTransportRequest(bytes, node.version()),
-                        options, // no need to compress, we already compressed the bytes
-
-                        new EmptyTransportResponseHandler(ThreadPool.Names.SAME) {
-
-                            @Override
-                            public void handleResponse(TransportResponse.Empty response) {
-                                if (timedOutWaitingForNodes.get()) {
-                                    logger.debug("node {} responded for cluster state [{}] (took longer than [{}])", node, clusterState.version(), publishTimeout);
-                                }
-                                publishResponseHandler.onResponse(node);
-                            }
-
-                            @Override
-                            public void handleException(TransportException exp) {
-                                logger.debug("failed to send cluster state to {}", exp, node);
-                                publishResponseHandler.onFailure(node, exp);
-                            }
-                        });
-            } catch (Throwable t) {
-                logger.debug("error sending cluster state to {}", t, node);
-                publishResponseHandler.onFailure(node, t);
+                if (sendDiff) {
+                    bytes = serializedDiffs.get(node.version());
+                    if (bytes == null) {
+                        bytes = serializeClusterState(previousClusterState, clusterState, node.version());
+                        serializedDiffs.put(node.version(), bytes);
+                    }
+                } else {
+                    bytes = serializeFullClusterState(clusterState, node.version(), serializedStates);
+                }
+            } catch (Throwable e) {
+                logger.warn("failed to serialize cluster_state before publishing it to node {}", e, node);
+                publishResponseHandler.onFailure(node, e);
+                continue;
             }
+            sendClusterStateToNode(clusterState, bytes, sendDiff, node, serializedStates, publishResponseHandler, timedOutWaitingForNodes, publishTimeout);
         }
 
         if (publishTimeout.millis() > 0) {
@@ -161,6 +156,86 @@ public class PublishClusterStateAction extends AbstractComponent {
         }
     }
 
+    private void sendClusterStateToNode(final ClusterState clusterState, BytesReference bytes, final boolean diff, final DiscoveryNode node,
+                                        final ConcurrentMap<Version, BytesReference> serializedStates,
+                                        final ClusterStatePublishResponseHandler publishResponseHandler,
+                                        final AtomicBoolean timedOutWaitingForNodes, final TimeValue publishTimeout) {
+        try {
+            TransportRequestOptions options = TransportRequestOptions.options().withType(TransportRequestOptions.Type.STATE).withCompress(false);
+            // no need to put a timeout on the options here, because we want the response to eventually be received
+            // and not log an error if it arrives after the timeout
+            transportService.sendRequest(node, ACTION_NAME,
+                    new BytesTransportRequest(bytes, node.version()),
+                    options, // no need to compress, we already compressed the bytes
+
+                    new EmptyTransportResponseHandler(ThreadPool.Names.SAME) {
+
+                        @Override
+                        public void handleResponse(TransportResponse.Empty response) {
+                            if (timedOutWaitingForNodes.get()) {
+                                logger.debug("node {} responded for cluster state [{}] (took longer than [{}])", node, clusterState.version(), publishTimeout);
+                            }
+                            publishResponseHandler.onResponse(node);
+                        }
+
+                        @Override
+                        public void handleException(TransportException exp) {
+                            if (diff && ExceptionsHelper.unwrapCause(exp) instanceof IncompatibleClusterStateVersionException) {
+                                logger.debug("node {} could not apply the diff for cluster state [{}], sending the full cluster state", node, clusterState.version());
+                                BytesReference fullBytes;
+                                try {
+                                    fullBytes = serializeFullClusterState(clusterState, node.version(), serializedStates);
+                                } catch (Throwable e) {
+                                    logger.warn("failed to serialize cluster_state before publishing it to node {}", e, node);
+                                    publishResponseHandler.onFailure(node, e);
+                                    return;
+                                }
+                                sendClusterStateToNode(clusterState, fullBytes, false, node, serializedStates, publishResponseHandler, timedOutWaitingForNodes, publishTimeout);
+                                return;
+                            }
+                            logger.debug("failed to send cluster state to {}", exp, node);
+                            publishResponseHandler.onFailure(node, exp);
+                        }
+                    });
+        } catch (Throwable t) {
+            logger.debug("error sending cluster state to {}", t, node);
+            publishResponseHandler.onFailure(node, t);
+        }
+    }
+
+    private static BytesReference serializeFullClusterState(ClusterState clusterState, Version nodeVersion,
+                                                            ConcurrentMap<Version, BytesReference> serializedStates) throws IOException {
+        BytesReference bytes = serializedStates.get(nodeVersion);
+        if (bytes == null) {
+            bytes = serializeClusterState(null, clusterState, nodeVersion);
+            BytesReference existing = serializedStates.putIfAbsent(nodeVersion, bytes);
+            if (existing != null) {
+                bytes = existing;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Serializes and compresses either the full cluster state, or the changes relative to {@code previousClusterState}
+     * if it is not <tt>null</tt>.
+     */
+    static BytesReference serializeClusterState(@Nullable ClusterState previousClusterState, ClusterState clusterState, Version nodeVersion) throws IOException {
+        BytesStreamOutput bStream = new BytesStreamOutput();
+        StreamOutput stream = new HandlesStreamOutput(CompressorFactory.defaultCompressor().streamOutput(bStream));
+        stream.setVersion(nodeVersion);
+        if (nodeVersion.onOrAfter(Version.V_2_0_0)) {
+            stream.writeBoolean(previousClusterState != null);
+        }
+        if (previousClusterState != null) {
+            ClusterState.Builder.writeDiffTo(previousClusterState, clusterState, stream);
+        } else {
+            ClusterState.Builder.writeTo(clusterState, stream);
+        }
+        stream.close();
+        return bStream.bytes();
+    }
+
     private class PublishClusterStateRequestHandler extends BaseTransportRequestHandler<BytesTransportRequest> {
 
         @Override
@@ -178,9 +253,20 @@ public class PublishClusterStateAction extends AbstractComponent {
                 in = CachedStreamInput.cachedHandles(request.bytes().streamInput());
             }
             in.setVersion(request.version());
-            ClusterState clusterState = ClusterState.Builder.readFrom(in, nodesProvider.nodes().localNode(), clusterName);
+            ClusterState clusterState;
+            synchronized (lastReceivedMutex) {
+                if (in.getVersion().onOrAfter(Version.V_2_0_0) && in.readBoolean()) {
+                    // throws IncompatibleClusterStateVersionException if we don't have the state the diff is based on,
+                    // the master will then send us the full cluster state
+                    clusterState = ClusterState.Builder.readDiffFrom(in, lastReceivedClusterState, nodesProvider.nodes().localNode(), clusterName);
+                    logger.debug("received diff for cluster state version {}", clusterState.version());
+                } else {
+                    clusterState = ClusterState.Builder.readFrom(in, nodesProvider.nodes().localNode(), clusterName);
+                    logger.debug("received cluster state version {}", clusterState.version());
+                }
+                lastReceivedClusterState = clusterState;
+            }
             clusterState.status(ClusterState.ClusterStateStatus.RECEIVED);
-            logger.debug("received cluster state version {}", clusterState.version());
             listener.onNewClusterState(clusterState, new NewClusterStateListener.NewStateProcessed() {
                 @Override
                 public void onNewClusterStateProcessed() {
@@ -76,6 +76,13 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
 
     void index(Index index) throws EngineException;
 
+    /**
+     * Applies the given create and index operations in order, as one batch. The failure of each operation, if any,
+     * is set at its position in <tt>failures</tt>, and operations that already have a failure set are skipped. If
+     * an operation fails the engine, the remaining operations are not applied and fail with the same cause.
+     */
+    void bulkIndex(IndexingOperation[] operations, Throwable[] failures) throws EngineException;
+
     void delete(Delete delete) throws EngineException;
 
     void delete(DeleteByQuery delete) throws EngineException;
@@ -44,6 +44,7 @@ import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.ElasticsearchIllegalStateException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.cluster.routing.operation.hash.djb.DjbHashFunction;
@@ -62,6 +63,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
@@ -89,6 +91,7 @@ import org.elasticsearch.index.engine.SegmentsStats;
 import org.elasticsearch.index.engine.SnapshotFailedEngineException;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.indexing.ShardIndexingService;
+import org.elasticsearch.index.mapper.ParseContext;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.merge.OnGoingMerge;
 import org.elasticsearch.index.merge.policy.ElasticsearchMergePolicy;
@@ -129,6 +132,9 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  */
 public class InternalEngine extends AbstractIndexShardComponent implements Engine {
 
+    /** The maximum number of documents added to the index writer as one block by {@link #bulkIndex}. */
+    private static final int MAX_APPEND_ONLY_BLOCK_DOCS = 1000;
+
     private volatile boolean failEngineOnCorruption;
     private volatile ByteSizeValue indexingBufferSize;
     private volatile int indexConcurrency;
@@ -143,6 +149,7 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
     private volatile boolean enableGcDeletes = true;
     private volatile String codecName;
     private final boolean optimizeAutoGenerateId;
+    private final boolean appendOnlyAutoGeneratedIds;
 
     private final ThreadPool threadPool;
 
@@ -188,7 +195,7 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
 
     // A uid (in the form of BytesRef) to the version map
     // we use the hashed variant since we iterate over it and check removal and additions on existing keys
-    private final LiveVersionMap versionMap;
+    private final VersionMap versionMap;
 
     private final Object[] dirtyLocks;
 
@@ -213,7 +220,7 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
                           IndexSettingsService indexSettingsService, ShardIndexingService indexingService, @Nullable IndicesWarmer warmer,
                           Store store, SnapshotDeletionPolicy deletionPolicy, Translog translog,
                           MergePolicyProvider mergePolicyProvider, MergeSchedulerProvider mergeScheduler,
-                          AnalysisService analysisService, SimilarityService similarityService, CodecService codecService) throws EngineException {
+                          AnalysisService analysisService, SimilarityService similarityService, CodecService codecService, BigArrays bigArrays) throws EngineException {
         super(shardId, indexSettings);
         Preconditions.checkNotNull(store, "Store must be provided to the engine");
         Preconditions.checkNotNull(deletionPolicy, "Snapshot deletion policy must be provided to the engine");
@@ -238,12 +245,22 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
         this.codecService = codecService;
         this.compoundOnFlush = indexSettings.getAsBoolean(INDEX_COMPOUND_ON_FLUSH, this.compoundOnFlush);
         this.indexConcurrency = indexSettings.getAsInt(INDEX_INDEX_CONCURRENCY, Math.max(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES, (int) (EsExecutors.boundedNumberOfProcessors(indexSettings) * 0.65)));
-        this.versionMap = new LiveVersionMap();
+        String versionMapType = indexSettings.get(INDEX_VERSION_MAP_TYPE, VERSION_MAP_TYPE_CONCURRENT);
+        if (VERSION_MAP_TYPE_PAGED.equals(versionMapType)) {
+            // the version map lives as long as the shard and is accounted against its indexing buffer, which the
+            // indexing memory controller sizes, see #checkVersionMapRefresh: keep it out of the request breaker
+            this.versionMap = new PagedLiveVersionMap(bigArrays.withoutCircuitBreakerAccounting(), indexConcurrency * 4);
+        } else if (VERSION_MAP_TYPE_CONCURRENT.equals(versionMapType)) {
+            this.versionMap = new LiveVersionMap();
+        } else {
+            throw new ElasticsearchIllegalArgumentException("unknown version map type [" + versionMapType + "] for [" + INDEX_VERSION_MAP_TYPE + "]");
+        }
         this.dirtyLocks = new Object[indexConcurrency * 50]; // we multiply it to have enough...
         for (int i = 0; i < dirtyLocks.length; i++) {
             dirtyLocks[i] = new Object();
         }
         this.optimizeAutoGenerateId = indexSettings.getAsBoolean("index.optimize_auto_generated_id", true);
+        this.appendOnlyAutoGeneratedIds = optimizeAutoGenerateId && indexSettings.getAsBoolean(INDEX_APPEND_ONLY_AUTO_GENERATED_IDS, false);
 
         this.indexSettingsService.addListener(applySettings);
         this.failEngineOnCorruption = indexSettings.getAsBoolean(INDEX_FAIL_ON_CORRUPTION, true);
@@ -453,6 +470,9 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
             // We don't need to lock because this ID cannot be concurrently updated:
             innerCreateNoLock(create, writer, Versions.NOT_FOUND, null);
         } else {
+            if (create.autoGeneratedId() == false) {
+                ensureExplicitIdWritesAllowed(create.origin(), create.type(), create.id());
+            }
             synchronized (dirtyLock(create.uid())) {
                 final long currentVersion;
                 final VersionValue versionValue;
@@ -466,12 +486,20 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
                         currentVersion = versionValue.version();
                     }
                 }
-                innerCreateNoLock(create, writer, currentVersion, versionValue);
+                // A retry (or recovery) of an append only create: the first attempt might have been added without a version map
+                // entry and not be visible to searchers yet, so any unseen copy of it is replaced rather than duplicated
+                final boolean replaceUnseenCopies = appendOnlyAutoGeneratedIds && create.autoGeneratedId();
+                innerCreateNoLock(create, writer, currentVersion, versionValue, replaceUnseenCopies);
             }
         }
     }
 
     private void innerCreateNoLock(Create create, IndexWriter writer, long currentVersion, VersionValue versionValue) throws IOException {
+        innerCreateNoLock(create, writer, currentVersion, versionValue, false);
+    }
+
+    private void innerCreateNoLock(Create create, IndexWriter writer, long currentVersion, VersionValue versionValue,
+                                   boolean replaceUnseenCopies) throws IOException {
 
         // same logic as index
         long updatedVersion;
@@ -503,7 +531,7 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
 
         create.updateVersion(updatedVersion);
 
-        if (doUpdate) {
+        if (doUpdate || replaceUnseenCopies) {
             if (create.docs().size() > 1) {
                 writer.updateDocuments(create.uid(), create.docs(), create.analyzer());
             } else {
@@ -518,11 +546,139 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
         }
         Translog.Location translogLocation = translog.add(new Translog.Create(create));
 
-        versionMap.putUnderLock(create.uid().bytes(), new VersionValue(updatedVersion, translogLocation));
+        if (appendOnlyAutoGeneratedIds && create.autoGeneratedId() && !create.canHaveDuplicates()) {
+            // nothing will ever look this uid up again: retries replace unseen copies, and writes with explicit ids are rejected
+            assert versionValue == null;
+        } else {
+            versionMap.putUnderLock(create.uid().bytes(), new VersionValue(updatedVersion, translogLocation));
+        }
 
         indexingService.postCreateUnderLock(create);
     }
 
+    @Override
+    public void bulkIndex(IndexingOperation[] operations, Throwable[] failures) throws EngineException {
+        assert operations.length == failures.length;
+        final IndexWriter writer;
+        try (InternalLock _ = readLock.acquire()) {
+            writer = currentIndexWriter();
+            try (Releasable r = throttle.acquireThrottle()) {
+                for (int i = 0; i < operations.length; ) {
+                    if (failures[i] != null) {
+                        i++;
+                        continue;
+                    }
+                    final int end = appendOnlyCreatesEnd(operations, failures, i);
+                    try {
+                        if (end - i > 1) {
+                            innerCreatesNoLock(operations, failures, i, end, writer);
+                        } else if (operations[i] instanceof Create) {
+                            innerCreate((Create) operations[i], writer);
+                        } else {
+                            innerIndex((Index) operations[i], writer);
+                        }
+                    } catch (OutOfMemoryError | IllegalStateException | IOException t) {
+                        maybeFailEngine(t, "bulk");
+                        for (int j = i; j < operations.length; j++) {
+                            if (failures[j] == null) {
+                                failures[j] = operations[j] instanceof Create ?
+                                        new CreateFailedEngineException(shardId, (Create) operations[j], t) :
+                                        new IndexFailedEngineException(shardId, (Index) operations[j], t);
+                            }
+                        }
+                        break;
+                    } catch (Throwable t) {
+                        for (int j = i; j < end; j++) {
+                            if (failures[j] == null) {
+                                failures[j] = t;
+                            }
+                        }
+                    }
+                    i = end;
+                }
+            }
+            dirty = true;
+            possibleMergeNeeded = true;
+            flushNeeded = true;
+        }
+        checkVersionMapRefresh();
+    }
+
+    /**
+     * Returns the end of the run of creates starting at <tt>from</tt> that can be added to the index writer as one
+     * block: creates with auto generated ids that can't have duplicates need neither the uid lock nor a version
+     * lookup, the run only needs them to share their analyzer.
+     */
+    private int appendOnlyCreatesEnd(IndexingOperation[] operations, Throwable[] failures, int from) {
+        int end = from;
+        int numDocs = 0;
+        while (end < operations.length && numDocs < MAX_APPEND_ONLY_BLOCK_DOCS && failures[end] == null
+                && isAppendOnlyCreate(operations[end]) && operations[end].analyzer() == operations[from].analyzer()) {
+            numDocs += operations[end].docs().size();
+            end++;
+        }
+        return Math.max(end, from + 1);
+    }
+
+    private boolean isAppendOnlyCreate(IndexingOperation operation) {
+        if (operation instanceof Create == false) {
+            return false;
+        }
+        final Create create = (Create) operation;
+        return optimizeAutoGenerateId && create.autoGeneratedId() && !create.canHaveDuplicates()
+                && create.versionType().isVersionConflictForWrites(Versions.NOT_FOUND, create.version()) == false;
+    }
+
+    /**
+     * Same as {@link #innerCreateNoLock(Create, IndexWriter, long, VersionValue)} for a run of creates that don't exist
+     * yet, the documents are added with a single {@link IndexWriter#addDocuments} call and the translog operations are
+     * written together.
+     */
+    private void innerCreatesNoLock(IndexingOperation[] operations, Throwable[] failures, int from, int to, IndexWriter writer) throws IOException {
+        final long[] expectedVersions = new long[to - from];
+        final List<ParseContext.Document> docs = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            final Create create = (Create) operations[i];
+            expectedVersions[i - from] = create.version();
+            create.updateVersion(create.versionType().updateVersion(Versions.NOT_FOUND, create.version()));
+            docs.addAll(create.docs());
+        }
+
+        try {
+            writer.addDocuments(docs, operations[from].analyzer());
+        } catch (OutOfMemoryError | IllegalStateException | IOException t) {
+            throw t;
+        } catch (Throwable t) {
+            // the documents of the block were all deleted again, add them one by one to find out which ones fail
+            for (int i = from; i < to; i++) {
+                final Create create = (Create) operations[i];
+                create.updateVersion(expectedVersions[i - from]);
+                try {
+                    innerCreateNoLock(create, writer, Versions.NOT_FOUND, null);
+                } catch (OutOfMemoryError | IllegalStateException | IOException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    failures[i] = e;
+                }
+            }
+            return;
+        }
+
+        final List<Translog.Operation> translogOperations = Lists.newArrayListWithCapacity(to - from);
+        for (int i = from; i < to; i++) {
+            translogOperations.add(new Translog.Create((Create) operations[i]));
+        }
+        final Translog.Location[] translogLocations = translog.add(translogOperations);
+
+        for (int i = from; i < to; i++) {
+            final Create create = (Create) operations[i];
+            if (appendOnlyAutoGeneratedIds == false) {
+                versionMap.putUnderLock(create.uid().bytes(), new VersionValue(create.version(), translogLocations[i - from]));
+            }
+            indexingService.postCreateUnderLock(create);
+        }
+    }
+
     @Override
     public void index(Index index) throws EngineException {
         final IndexWriter writer;
@@ -568,7 +724,20 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
         }
     }
 
+    /**
+     * Documents with auto generated ids may have been added without a version map entry when
+     * {@link #INDEX_APPEND_ONLY_AUTO_GENERATED_IDS} is set, and not be visible to searchers yet. Writes with an explicit id
+     * can't see such documents, so they are rejected rather than risking a duplicate uid or a delete that misses.
+     */
+    private void ensureExplicitIdWritesAllowed(Operation.Origin origin, String type, String id) {
+        if (appendOnlyAutoGeneratedIds && origin == Operation.Origin.PRIMARY) {
+            throw new ElasticsearchIllegalArgumentException("can't write [" + type + "][" + id + "] with an explicit id, ["
+                    + INDEX_APPEND_ONLY_AUTO_GENERATED_IDS + "] only allows to create documents with auto generated ids");
+        }
+    }
+
     private void innerIndex(Index index, IndexWriter writer) throws IOException {
+        ensureExplicitIdWritesAllowed(index.origin(), index.type(), index.id());
         synchronized (dirtyLock(index.uid())) {
             final long currentVersion;
             VersionValue versionValue = versionMap.getUnderLock(index.uid().bytes());
@@ -648,6 +817,7 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
     }
 
     private void innerDelete(Delete delete, IndexWriter writer) throws IOException {
+        ensureExplicitIdWritesAllowed(delete.origin(), delete.type(), delete.id());
         synchronized (dirtyLock(delete.uid())) {
             final long currentVersion;
             VersionValue versionValue = versionMap.getUnderLock(delete.uid().bytes());
@@ -1497,6 +1667,19 @@ public class InternalEngine extends AbstractIndexShardComponent implements Engin
     public static final String INDEX_INDEX_CONCURRENCY = "index.index_concurrency";
     public static final String INDEX_COMPOUND_ON_FLUSH = "index.compound_on_flush";
     public static final String INDEX_GC_DELETES = "index.gc_deletes";
+    /**
+     * How live versions are kept between refreshes, either in a concurrent map (<tt>concurrent</tt>, the default)
+     * or in striped hash tables backed by recycled pages (<tt>paged</tt>).
+     */
+    public static final String INDEX_VERSION_MAP_TYPE = "index.version_map.type";
+    /**
+     * If set, documents with auto generated ids are only ever appended: they are neither looked up nor added to the version
+     * map, so a realtime get won't find them before the next refresh. Retried requests replace any copy of their first attempt
+     * that is not visible yet, and index, create and delete operations with an explicit id are rejected.
+     */
+    public static final String INDEX_APPEND_ONLY_AUTO_GENERATED_IDS = "index.append_only_auto_generated_ids";
+    public static final String VERSION_MAP_TYPE_CONCURRENT = "concurrent";
+    public static final String VERSION_MAP_TYPE_PAGED = "paged";
     public static final String INDEX_FAIL_ON_MERGE_FAILURE = "index.fail_on_merge_failure";
     public static final String INDEX_FAIL_ON_CORRUPTION = "index.fail_on_corruption";
 
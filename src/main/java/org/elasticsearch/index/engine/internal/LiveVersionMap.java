@@ -32,7 +32,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 
 /** Maps _uid value to its version information. */
-class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
+class LiveVersionMap implements VersionMap {
 
     private static class Maps {
 
@@ -87,7 +87,8 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     final AtomicLong ramBytesUsedTombstones = new AtomicLong();
 
     /** Sync'd because we replace old mgr. */
-    synchronized void setManager(ReferenceManager newMgr) {
+    @Override
+    public synchronized void setManager(ReferenceManager newMgr) {
         if (mgr != null) {
             mgr.removeListener(this);
         }
@@ -126,7 +127,8 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     }
 
     /** Returns the live version (add or delete) for this uid. */
-    VersionValue getUnderLock(BytesRef uid) {
+    @Override
+    public VersionValue getUnderLock(BytesRef uid) {
         Maps currentMaps = maps;
 
         // First try to get the "live" value:
@@ -144,7 +146,8 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     }
 
     /** Adds this uid/version to the pending adds map. */
-    void putUnderLock(BytesRef uid, VersionValue version) {
+    @Override
+    public void putUnderLock(BytesRef uid, VersionValue version) {
 
         long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
 
@@ -193,7 +196,8 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     }
 
     /** Removes this uid from the pending deletes map. */
-    void removeTombstoneUnderLock(BytesRef uid) {
+    @Override
+    public void removeTombstoneUnderLock(BytesRef uid) {
 
         long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
 
@@ -213,17 +217,20 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     }
 
     /** Caller has a lock, so that this uid will not be concurrently added/deleted by another thread. */
-    VersionValue getTombstoneUnderLock(BytesRef uid) {
+    @Override
+    public VersionValue getTombstoneUnderLock(BytesRef uid) {
         return tombstones.get(uid);
     }
 
     /** Iterates over all deleted versions, including new ones (not yet exposed via reader) and old ones (exposed via reader but not yet GC'd). */
-    Iterable<Map.Entry<BytesRef,VersionValue>> getAllTombstones() {
+    @Override
+    public Iterable<Map.Entry<BytesRef,VersionValue>> getAllTombstones() {
         return tombstones.entrySet();
     }
 
     /** Called when this index is closed. */
-    synchronized void clear() {
+    @Override
+    public synchronized void clear() {
         maps = new Maps();
         tombstones.clear();
         ramBytesUsedCurrent.set(0);
@@ -246,7 +253,8 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
     /** Returns how much RAM would be freed up by refreshing. This is {@link ramBytesUsed} except does not include tombstones because they
      *  don't clear on refresh. */
-    long ramBytesUsedForRefresh() {
+    @Override
+    public long ramBytesUsedForRefresh() {
         return ramBytesUsedCurrent.get();
     }
 
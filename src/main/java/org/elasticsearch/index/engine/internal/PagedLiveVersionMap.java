@@ -0,0 +1,336 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine.internal;
+
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.math.MathUtils;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.translog.Translog;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link VersionMap} that keeps live versions in {@link BytesRefHash}es and parallel arrays allocated from
+ * {@link BigArrays} pages rather than in a concurrent map of {@link BytesRef} to {@link VersionValue} objects. Indexing
+ * thus doesn't create objects that survive until the next refresh, pages are recycled across refreshes, and the
+ * reported RAM usage is the exact size of the backing arrays.
+ * <p/>
+ * Uids are spread over stripes by hash, each stripe having its own lock that is only held for the duration of a
+ * lookup or an insert. Deletes are also enrolled in tombstones which, as in {@link LiveVersionMap}, are kept in a
+ * concurrent map since they outlive refreshes and are pruned one by one.
+ */
+class PagedLiveVersionMap implements VersionMap {
+
+    /** Same accounting as {@link LiveVersionMap} for the tombstones map. */
+    private static final int BASE_BYTES_PER_TOMBSTONE = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER +
+            2 * RamUsageEstimator.NUM_BYTES_INT +
+            RamUsageEstimator.NUM_BYTES_OBJECT_REF +
+            RamUsageEstimator.NUM_BYTES_ARRAY_HEADER +
+            RamUsageEstimator.NUM_BYTES_OBJECT_HEADER +
+            RamUsageEstimator.NUM_BYTES_INT +
+            5 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+    private static final long NO_DELETE = -1;
+
+    /**
+     * Versions of the uids added since a refresh started, stored column wise.
+     */
+    private static final class VersionTable implements Releasable {
+
+        private final BigArrays bigArrays;
+        private final BytesRefHash uids;
+        private LongArray versions;
+        private LongArray deleteTimes;
+        private LongArray translogIds;
+        private LongArray translogLocations;
+        private IntArray translogSizes;
+
+        VersionTable(BigArrays bigArrays) {
+            this.bigArrays = bigArrays;
+            boolean success = false;
+            try {
+                uids = new BytesRefHash(16, bigArrays);
+                versions = bigArrays.newLongArray(16, false);
+                deleteTimes = bigArrays.newLongArray(16, false);
+                translogIds = bigArrays.newLongArray(16, false);
+                translogLocations = bigArrays.newLongArray(16, false);
+                translogSizes = bigArrays.newIntArray(16, false);
+                success = true;
+            } finally {
+                if (!success) {
+                    close();
+                }
+            }
+        }
+
+        VersionValue get(BytesRef uid) {
+            final long id = uids.find(uid);
+            if (id < 0) {
+                return null;
+            }
+            final Translog.Location location;
+            if (translogIds.get(id) < 0) {
+                location = null;
+            } else {
+                location = new Translog.Location(translogIds.get(id), translogLocations.get(id), translogSizes.get(id));
+            }
+            final long deleteTime = deleteTimes.get(id);
+            if (deleteTime == NO_DELETE) {
+                return new VersionValue(versions.get(id), location);
+            }
+            return new DeleteVersionValue(versions.get(id), deleteTime, location);
+        }
+
+        void put(BytesRef uid, VersionValue value) {
+            long id = uids.add(uid);
+            if (id < 0) {
+                id = -1 - id;
+            } else {
+                versions = bigArrays.grow(versions, id + 1);
+                deleteTimes = bigArrays.grow(deleteTimes, id + 1);
+                translogIds = bigArrays.grow(translogIds, id + 1);
+                translogLocations = bigArrays.grow(translogLocations, id + 1);
+                translogSizes = bigArrays.grow(translogSizes, id + 1);
+            }
+            versions.set(id, value.version());
+            deleteTimes.set(id, value.delete() ? value.time() : NO_DELETE);
+            final Translog.Location location = value.translogLocation();
+            if (location == null) {
+                translogIds.set(id, -1);
+            } else {
+                translogIds.set(id, location.translogId);
+                translogLocations.set(id, location.translogLocation);
+                translogSizes.set(id, location.size);
+            }
+        }
+
+        long ramBytesUsed() {
+            return uids.ramBytesUsed() + versions.ramBytesUsed() + deleteTimes.ramBytesUsed() + translogIds.ramBytesUsed()
+                    + translogLocations.ramBytesUsed() + translogSizes.ramBytesUsed();
+        }
+
+        @Override
+        public void close() {
+            Releasables.close(uids, versions, deleteTimes, translogIds, translogLocations, translogSizes);
+        }
+    }
+
+    private static final class Stripe {
+        // All writes (adds and deletes) go into here, allocated on the first write
+        VersionTable current;
+        // Used while refresh is running, we read from both current and old on lookup
+        VersionTable old;
+    }
+
+    private final BigArrays bigArrays;
+    private final Stripe[] stripes;
+
+    // All deletes also go here, and delete "tombstones" are retained after refresh:
+    private final Map<BytesRef, VersionValue> tombstones = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
+
+    private final AtomicLong ramBytesUsedCurrent = new AtomicLong();
+    private final AtomicLong ramBytesUsedOld = new AtomicLong();
+    private final AtomicLong ramBytesUsedTombstones = new AtomicLong();
+
+    private ReferenceManager mgr;
+
+    PagedLiveVersionMap(BigArrays bigArrays, int numStripes) {
+        this.bigArrays = bigArrays;
+        this.stripes = new Stripe[Math.max(1, numStripes)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private Stripe stripe(BytesRef uid) {
+        return stripes[MathUtils.mod(uid.hashCode(), stripes.length)];
+    }
+
+    @Override
+    public synchronized void setManager(ReferenceManager newMgr) {
+        if (mgr != null) {
+            mgr.removeListener(this);
+        }
+        mgr = newMgr;
+        // all deletes are made visible by the new manager, caller holds the engine's write lock
+        releaseTables();
+        mgr.addListener(this);
+    }
+
+    @Override
+    public void beforeRefresh() throws IOException {
+        // Start sending all updates after this point to new tables, lookups try current, then old, then the searcher
+        for (Stripe stripe : stripes) {
+            final VersionTable dropped;
+            synchronized (stripe) {
+                dropped = stripe.old;
+                stripe.old = stripe.current;
+                stripe.current = null;
+                if (stripe.old != null) {
+                    long bytes = stripe.old.ramBytesUsed();
+                    ramBytesUsedCurrent.addAndGet(-bytes);
+                    ramBytesUsedOld.addAndGet(bytes);
+                }
+                if (dropped != null) {
+                    ramBytesUsedOld.addAndGet(-dropped.ramBytesUsed());
+                }
+            }
+            Releasables.close(dropped);
+        }
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) throws IOException {
+        // the old tables are visible through the new searcher, see LiveVersionMap#afterRefresh
+        for (Stripe stripe : stripes) {
+            final VersionTable dropped;
+            synchronized (stripe) {
+                dropped = stripe.old;
+                stripe.old = null;
+                if (dropped != null) {
+                    ramBytesUsedOld.addAndGet(-dropped.ramBytesUsed());
+                }
+            }
+            Releasables.close(dropped);
+        }
+    }
+
+    @Override
+    public VersionValue getUnderLock(BytesRef uid) {
+        final Stripe stripe = stripe(uid);
+        synchronized (stripe) {
+            VersionValue value = stripe.current == null ? null : stripe.current.get(uid);
+            if (value != null) {
+                return value;
+            }
+            value = stripe.old == null ? null : stripe.old.get(uid);
+            if (value != null) {
+                return value;
+            }
+        }
+        return tombstones.get(uid);
+    }
+
+    @Override
+    public void putUnderLock(BytesRef uid, VersionValue version) {
+        final Stripe stripe = stripe(uid);
+        synchronized (stripe) {
+            if (stripe.current == null) {
+                stripe.current = new VersionTable(bigArrays);
+                ramBytesUsedCurrent.addAndGet(stripe.current.ramBytesUsed());
+            }
+            final long before = stripe.current.ramBytesUsed();
+            stripe.current.put(uid, version);
+            ramBytesUsedCurrent.addAndGet(stripe.current.ramBytesUsed() - before);
+        }
+
+        final VersionValue prevTombstone;
+        if (version.delete()) {
+            prevTombstone = tombstones.put(uid, version);
+            ramBytesUsedTombstones.addAndGet(tombstoneBytes(uid, version));
+        } else {
+            // UID came back to life so we remove the tombstone:
+            prevTombstone = tombstones.remove(uid);
+        }
+        if (prevTombstone != null) {
+            long v = ramBytesUsedTombstones.addAndGet(-tombstoneBytes(uid, prevTombstone));
+            assert v >= 0 : "bytes=" + v;
+        }
+    }
+
+    @Override
+    public void removeTombstoneUnderLock(BytesRef uid) {
+        final VersionValue prev = tombstones.remove(uid);
+        if (prev != null) {
+            assert prev.delete();
+            long v = ramBytesUsedTombstones.addAndGet(-tombstoneBytes(uid, prev));
+            assert v >= 0 : "bytes=" + v;
+        }
+    }
+
+    @Override
+    public VersionValue getTombstoneUnderLock(BytesRef uid) {
+        return tombstones.get(uid);
+    }
+
+    @Override
+    public Iterable<Map.Entry<BytesRef, VersionValue>> getAllTombstones() {
+        return tombstones.entrySet();
+    }
+
+    @Override
+    public synchronized void clear() {
+        releaseTables();
+        tombstones.clear();
+        // see LiveVersionMap#clear for why tombstone bytes are not reset
+        if (mgr != null) {
+            mgr.removeListener(this);
+            mgr = null;
+        }
+    }
+
+    private void releaseTables() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.current != null) {
+                    ramBytesUsedCurrent.addAndGet(-stripe.current.ramBytesUsed());
+                }
+                if (stripe.old != null) {
+                    ramBytesUsedOld.addAndGet(-stripe.old.ramBytesUsed());
+                }
+                Releasables.close(stripe.current, stripe.old);
+                stripe.current = null;
+                stripe.old = null;
+            }
+        }
+    }
+
+    private static long tombstoneBytes(BytesRef uid, VersionValue version) {
+        return BASE_BYTES_PER_TOMBSTONE + uid.bytes.length + version.ramBytesUsed();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsedCurrent.get() + ramBytesUsedOld.get() + ramBytesUsedTombstones.get();
+    }
+
+    /** Returns the exact number of bytes held by the tables written to since the last refresh started. */
+    @Override
+    public long ramBytesUsedForRefresh() {
+        return ramBytesUsedCurrent.get();
+    }
+
+    @Override
+    public Iterable<? extends Accountable> getChildResources() {
+        return Collections.emptyList();
+    }
+}
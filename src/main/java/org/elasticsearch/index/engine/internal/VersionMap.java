@@ -0,0 +1,57 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine.internal;
+
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.Map;
+
+/**
+ * Maps _uid value to its version information. All <tt>UnderLock</tt> methods expect the caller to hold the
+ * engine's lock for the uid, so that the same uid is never concurrently added or deleted.
+ */
+interface VersionMap extends ReferenceManager.RefreshListener, Accountable {
+
+    /** Registers this map as a refresh listener of the given manager, which also clears all live versions. */
+    void setManager(ReferenceManager newMgr);
+
+    /** Returns the live version (add or delete) for this uid. */
+    VersionValue getUnderLock(BytesRef uid);
+
+    /** Adds this uid/version to the pending adds map. */
+    void putUnderLock(BytesRef uid, VersionValue version);
+
+    /** Removes this uid from the pending deletes map. */
+    void removeTombstoneUnderLock(BytesRef uid);
+
+    /** Returns the tombstone of this uid, if it was deleted and the delete was not pruned yet. */
+    VersionValue getTombstoneUnderLock(BytesRef uid);
+
+    /** Iterates over all deleted versions, including new ones (not yet exposed via reader) and old ones (exposed via reader but not yet GC'd). */
+    Iterable<Map.Entry<BytesRef, VersionValue>> getAllTombstones();
+
+    /** Called when this index is closed. */
+    void clear();
+
+    /** Returns how much RAM would be freed up by refreshing. */
+    long ramBytesUsedForRefresh();
+}
@@ -20,11 +20,13 @@
 package org.elasticsearch.index.fielddata;
 
 import com.carrotsearch.hppc.ObjectLongOpenHashMap;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
@@ -39,20 +41,37 @@ public class FieldDataStats implements Streamable, ToXContent {
     long evictions;
     @Nullable
     ObjectLongOpenHashMap<String> fields;
+    long globalOrdinalsBuildCount;
+    long globalOrdinalsBuildTimeInMillis;
+    long globalOrdinalsSegments;
+    long globalOrdinalsReusedSegments;
 
     public FieldDataStats() {
 
     }
 
     public FieldDataStats(long memorySize, long evictions, @Nullable ObjectLongOpenHashMap<String> fields) {
+        this(memorySize, evictions, fields, 0, 0, 0, 0);
+    }
+
+    public FieldDataStats(long memorySize, long evictions, @Nullable ObjectLongOpenHashMap<String> fields, long globalOrdinalsBuildCount,
+                          long globalOrdinalsBuildTimeInMillis, long globalOrdinalsSegments, long globalOrdinalsReusedSegments) {
         this.memorySize = memorySize;
         this.evictions = evictions;
         this.fields = fields;
+        this.globalOrdinalsBuildCount = globalOrdinalsBuildCount;
+        this.globalOrdinalsBuildTimeInMillis = globalOrdinalsBuildTimeInMillis;
+        this.globalOrdinalsSegments = globalOrdinalsSegments;
+        this.globalOrdinalsReusedSegments = globalOrdinalsReusedSegments;
     }
 
     public void add(FieldDataStats stats) {
         this.memorySize += stats.memorySize;
         this.evictions += stats.evictions;
+        this.globalOrdinalsBuildCount += stats.globalOrdinalsBuildCount;
+        this.globalOrdinalsBuildTimeInMillis += stats.globalOrdinalsBuildTimeInMillis;
+        this.globalOrdinalsSegments += stats.globalOrdinalsSegments;
+        this.globalOrdinalsReusedSegments += stats.globalOrdinalsReusedSegments;
         if (stats.fields != null) {
             if (fields == null) fields = new ObjectLongOpenHashMap<>();
             final boolean[] states = stats.fields.allocated;
@@ -83,6 +102,46 @@ public class FieldDataStats implements Streamable, ToXContent {
         return fields;
     }
 
+    /**
+     * The number of times global ordinals were built.
+     */
+    public long getGlobalOrdinalsBuildCount() {
+        return this.globalOrdinalsBuildCount;
+    }
+
+    /**
+     * The total time spent building global ordinals.
+     */
+    public TimeValue getGlobalOrdinalsBuildTime() {
+        return new TimeValue(globalOrdinalsBuildTimeInMillis);
+    }
+
+    public long getGlobalOrdinalsBuildTimeInMillis() {
+        return this.globalOrdinalsBuildTimeInMillis;
+    }
+
+    /**
+     * The total number of segments global ordinals were built over.
+     */
+    public long getGlobalOrdinalsSegments() {
+        return this.globalOrdinalsSegments;
+    }
+
+    /**
+     * The number of segments whose ordinals were merged based on the global ordinals of a previous reader instead of
+     * from scratch.
+     */
+    public long getGlobalOrdinalsReusedSegments() {
+        return this.globalOrdinalsReusedSegments;
+    }
+
+    /**
+     * The ratio of segments that were reused when building global ordinals, between 0 and 1.
+     */
+    public double getGlobalOrdinalsReuseRatio() {
+        return globalOrdinalsSegments == 0 ? 0d : (double) globalOrdinalsReusedSegments / globalOrdinalsSegments;
+    }
+
     public static FieldDataStats readFieldDataStats(StreamInput in) throws IOException {
         FieldDataStats stats = new FieldDataStats();
         stats.readFrom(in);
@@ -100,6 +159,12 @@ public class FieldDataStats implements Streamable, ToXContent {
                 fields.put(in.readString(), in.readVLong());
             }
         }
+        if (in.getVersion().onOrAfter(Version.V_2_0_0)) {
+            globalOrdinalsBuildCount = in.readVLong();
+            globalOrdinalsBuildTimeInMillis = in.readVLong();
+            globalOrdinalsSegments = in.readVLong();
+            globalOrdinalsReusedSegments = in.readVLong();
+        }
     }
 
     @Override
@@ -121,6 +186,12 @@ public class FieldDataStats implements Streamable, ToXContent {
                 }
             }
         }
+        if (out.getVersion().onOrAfter(Version.V_2_0_0)) {
+            out.writeVLong(globalOrdinalsBuildCount);
+            out.writeVLong(globalOrdinalsBuildTimeInMillis);
+            out.writeVLong(globalOrdinalsSegments);
+            out.writeVLong(globalOrdinalsReusedSegments);
+        }
     }
 
     @Override
@@ -128,6 +199,13 @@ public class FieldDataStats implements Streamable, ToXContent {
         builder.startObject(Fields.FIELDDATA);
         builder.byteSizeField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, memorySize);
         builder.field(Fields.EVICTIONS, getEvictions());
+        builder.startObject(Fields.GLOBAL_ORDINALS);
+        builder.field(Fields.BUILD_COUNT, globalOrdinalsBuildCount);
+        builder.timeValueField(Fields.BUILD_TIME_IN_MILLIS, Fields.BUILD_TIME, globalOrdinalsBuildTimeInMillis);
+        builder.field(Fields.SEGMENTS, globalOrdinalsSegments);
+        builder.field(Fields.REUSED_SEGMENTS, globalOrdinalsReusedSegments);
+        builder.field(Fields.REUSE_RATIO, getGlobalOrdinalsReuseRatio());
+        builder.endObject();
         if (fields != null) {
             builder.startObject(Fields.FIELDS);
             final boolean[] states = fields.allocated;
@@ -152,5 +230,12 @@ public class FieldDataStats implements Streamable, ToXContent {
         static final XContentBuilderString MEMORY_SIZE_IN_BYTES = new XContentBuilderString("memory_size_in_bytes");
         static final XContentBuilderString EVICTIONS = new XContentBuilderString("evictions");
         static final XContentBuilderString FIELDS = new XContentBuilderString("fields");
+        static final XContentBuilderString GLOBAL_ORDINALS = new XContentBuilderString("global_ordinals");
+        static final XContentBuilderString BUILD_COUNT = new XContentBuilderString("build_count");
+        static final XContentBuilderString BUILD_TIME = new XContentBuilderString("build_time");
+        static final XContentBuilderString BUILD_TIME_IN_MILLIS = new XContentBuilderString("build_time_in_millis");
+        static final XContentBuilderString SEGMENTS = new XContentBuilderString("segments");
+        static final XContentBuilderString REUSED_SEGMENTS = new XContentBuilderString("reused_segments");
+        static final XContentBuilderString REUSE_RATIO = new XContentBuilderString("reuse_ratio");
     }
 }
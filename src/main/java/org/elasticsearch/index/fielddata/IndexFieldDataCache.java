@@ -22,6 +22,8 @@ package org.elasticsearch.index.fielddata;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.util.Accountable;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.fielddata.ordinals.PreviousOrdinalMaps;
 import org.elasticsearch.index.mapper.FieldMapper;
 
 /**
@@ -45,6 +47,13 @@ public interface IndexFieldDataCache {
 
     void clear(Object coreCacheKey);
 
+    /**
+     * Returns the ordinal maps of the cached global ordinals to build the next global ordinals from, or <tt>null</tt>
+     * if global ordinals are not cached.
+     */
+    @Nullable
+    PreviousOrdinalMaps previousOrdinalMaps();
+
     interface Listener {
 
         void onLoad(FieldMapper.Names fieldNames, FieldDataType fieldDataType, Accountable ramUsage);
@@ -77,5 +86,10 @@ public interface IndexFieldDataCache {
         public void clear(Object coreCacheKey) {
 
         }
+
+        @Override
+        public PreviousOrdinalMaps previousOrdinalMaps() {
+            return null;
+        }
     }
 }
@@ -26,6 +26,7 @@ import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
 import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.mapper.internal.ParentFieldMapper;
 import org.elasticsearch.index.settings.IndexSettings;
@@ -41,6 +42,10 @@ public class ShardFieldData extends AbstractIndexShardComponent implements Index
 
     final CounterMetric evictionsMetric = new CounterMetric();
     final CounterMetric totalMetric = new CounterMetric();
+    final CounterMetric globalOrdinalsBuildMetric = new CounterMetric();
+    final CounterMetric globalOrdinalsBuildTimeMetric = new CounterMetric();
+    final CounterMetric globalOrdinalsSegmentsMetric = new CounterMetric();
+    final CounterMetric globalOrdinalsReusedSegmentsMetric = new CounterMetric();
 
     final ConcurrentMap<String, CounterMetric> perFieldTotals = ConcurrentCollections.newConcurrentMap();
 
@@ -66,12 +71,20 @@ public class ShardFieldData extends AbstractIndexShardComponent implements Index
         if (perFieldTotals.containsKey(ParentFieldMapper.NAME)) {
             memorySize -= perFieldTotals.get(ParentFieldMapper.NAME).count();
         }
-        return new FieldDataStats(memorySize, evictionsMetric.count(), fieldTotals);
+        return new FieldDataStats(memorySize, evictionsMetric.count(), fieldTotals, globalOrdinalsBuildMetric.count(),
+                globalOrdinalsBuildTimeMetric.count(), globalOrdinalsSegmentsMetric.count(), globalOrdinalsReusedSegmentsMetric.count());
     }
 
     @Override
     public void onLoad(FieldMapper.Names fieldNames, FieldDataType fieldDataType, Accountable ramUsage) {
         totalMetric.inc(ramUsage.ramBytesUsed());
+        if (ramUsage instanceof GlobalOrdinalsIndexFieldData) {
+            GlobalOrdinalsIndexFieldData globalOrdinals = (GlobalOrdinalsIndexFieldData) ramUsage;
+            globalOrdinalsBuildMetric.inc();
+            globalOrdinalsBuildTimeMetric.inc(globalOrdinals.buildTimeInMillis());
+            globalOrdinalsSegmentsMetric.inc(globalOrdinals.segments());
+            globalOrdinalsReusedSegmentsMetric.inc(globalOrdinals.reusedSegments());
+        }
         String keyFieldName = fieldNames.indexName();
         CounterMetric total = perFieldTotals.get(keyFieldName);
         if (total != null) {
@@ -20,14 +20,15 @@
 package org.elasticsearch.index.fielddata.ordinals;
 
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.MultiDocValues.OrdinalMap;
 import org.apache.lucene.index.RandomAccessOrds;
-import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.fielddata.AtomicOrdinalsFieldData;
 import org.elasticsearch.index.fielddata.IndexOrdinalsFieldData;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.ShardUtils;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 
 import java.io.IOException;
@@ -39,32 +40,46 @@ public enum GlobalOrdinalsBuilder {
     ;
 
     /**
-     * Build global ordinals for the provided {@link IndexReader}.
+     * Build global ordinals for the provided {@link IndexReader}. If global ordinals are cached, the ordinal map of the
+     * previous reader of the same shard is taken from <tt>previousOrdinalMaps</tt>, so that the segments that did not
+     * change since are merged cheaply, and the new map replaces it until the returned global ordinals are
+     * {@link GlobalOrdinalsIndexFieldData#onRemoval() removed} from the cache.
      */
-    public static IndexOrdinalsFieldData build(final IndexReader indexReader, IndexOrdinalsFieldData indexFieldData, Settings settings, CircuitBreakerService breakerService, ESLogger logger) throws IOException {
+    public static IndexOrdinalsFieldData build(final IndexReader indexReader, IndexOrdinalsFieldData indexFieldData, Settings settings, CircuitBreakerService breakerService, ESLogger logger,
+                                               @Nullable PreviousOrdinalMaps previousOrdinalMaps) throws IOException {
         assert indexReader.leaves().size() > 1;
         long startTime = System.currentTimeMillis();
 
         final AtomicOrdinalsFieldData[] atomicFD = new AtomicOrdinalsFieldData[indexReader.leaves().size()];
         final RandomAccessOrds[] subs = new RandomAccessOrds[indexReader.leaves().size()];
+        final Object[] coreKeys = new Object[indexReader.leaves().size()];
         for (int i = 0; i < indexReader.leaves().size(); ++i) {
             atomicFD[i] = indexFieldData.load(indexReader.leaves().get(i));
             subs[i] = atomicFD[i].getOrdinalsValues();
+            coreKeys[i] = indexReader.leaves().get(i).reader().getCoreCacheKey();
+        }
+        final ShardId shardId = previousOrdinalMaps == null ? null : ShardUtils.extractShardId(indexReader);
+        final IncrementalOrdinalMap previous = shardId == null ? null : previousOrdinalMaps.get(shardId);
+        final IncrementalOrdinalMap ordinalMap = IncrementalOrdinalMap.build(coreKeys, subs, previous);
+        if (shardId != null) {
+            previousOrdinalMaps.put(shardId, ordinalMap);
         }
-        final OrdinalMap ordinalMap = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
         final long memorySizeInBytes = ordinalMap.ramBytesUsed();
         breakerService.getBreaker(CircuitBreaker.Name.FIELDDATA).addWithoutBreaking(memorySizeInBytes);
 
+        final long buildTimeInMillis = System.currentTimeMillis() - startTime;
         if (logger.isDebugEnabled()) {
             logger.debug(
-                    "Global-ordinals[{}][{}] took {} ms",
+                    "Global-ordinals[{}][{}] took {} ms, reused [{}] out of [{}] segments",
                     indexFieldData.getFieldNames().fullName(),
                     ordinalMap.getValueCount(),
-                    (System.currentTimeMillis() - startTime)
+                    buildTimeInMillis,
+                    ordinalMap.reusedSegments(),
+                    ordinalMap.segments()
             );
         }
         return new InternalGlobalOrdinalsIndexFieldData(indexFieldData.index(), settings, indexFieldData.getFieldNames(),
-                indexFieldData.getFieldDataType(), atomicFD, ordinalMap, memorySizeInBytes
+                indexFieldData.getFieldDataType(), atomicFD, ordinalMap, memorySizeInBytes, buildTimeInMillis, shardId, previousOrdinalMaps
         );
     }
 
@@ -40,12 +40,46 @@ public abstract class GlobalOrdinalsIndexFieldData extends AbstractIndexComponen
     private final FieldMapper.Names fieldNames;
     private final FieldDataType fieldDataType;
     private final long memorySizeInBytes;
+    private final long buildTimeInMillis;
+    private final int segments;
+    private final int reusedSegments;
 
-    protected GlobalOrdinalsIndexFieldData(Index index, Settings settings, FieldMapper.Names fieldNames, FieldDataType fieldDataType, long memorySizeInBytes) {
+    protected GlobalOrdinalsIndexFieldData(Index index, Settings settings, FieldMapper.Names fieldNames, FieldDataType fieldDataType, long memorySizeInBytes,
+                                           long buildTimeInMillis, int segments, int reusedSegments) {
         super(index, settings);
         this.fieldNames = fieldNames;
         this.fieldDataType = fieldDataType;
         this.memorySizeInBytes = memorySizeInBytes;
+        this.buildTimeInMillis = buildTimeInMillis;
+        this.segments = segments;
+        this.reusedSegments = reusedSegments;
+    }
+
+    /**
+     * Returns the time it took to build these global ordinals.
+     */
+    public long buildTimeInMillis() {
+        return buildTimeInMillis;
+    }
+
+    /**
+     * Returns the number of segments these global ordinals span.
+     */
+    public int segments() {
+        return segments;
+    }
+
+    /**
+     * Returns the number of segments whose ordinals were merged based on the global ordinals of a previous reader.
+     */
+    public int reusedSegments() {
+        return reusedSegments;
+    }
+
+    /**
+     * Called once these global ordinals are removed from the field data cache, or right away if they are not cached.
+     */
+    public void onRemoval() {
     }
 
     @Override
@@ -0,0 +1,355 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.index.RandomAccessOrds;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+import org.elasticsearch.common.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps segment ordinals to global ordinals, like Lucene's {@link org.apache.lucene.index.MultiDocValues.OrdinalMap},
+ * but can be built incrementally from the map of a previous reader.
+ * <p/>
+ * Segments are identified by their core cache key. The terms of the segments that are also part of the previous map
+ * are already sorted by their previous global ordinal, so they are merged by comparing ordinals and their terms are
+ * looked up once per distinct term. Only the terms of new segments are compared byte-wise with them. After a refresh
+ * that adds a few small segments this is much cheaper than merging the terms of every segment again.
+ */
+public final class IncrementalOrdinalMap implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(IncrementalOrdinalMap.class);
+
+    // weak, so that the segments that are gone do not stay reachable through the map kept for the next build
+    private final List<WeakReference<Object>> coreKeys;
+    private final long valueCount;
+    // segment ordinal -> global ordinal, per segment
+    private final LongValues[] globalOrds;
+    // global ordinal -> first segment that has the term
+    private final PackedLongValues firstSegments;
+    // global ordinal -> global ordinal minus the ordinal of the term in its first segment
+    private final PackedLongValues globalOrdDeltas;
+    private final int reusedSegments;
+    private final long ramBytesUsed;
+
+    private IncrementalOrdinalMap(List<WeakReference<Object>> coreKeys, long valueCount, LongValues[] globalOrds, PackedLongValues firstSegments,
+                                  PackedLongValues globalOrdDeltas, int reusedSegments, long ramBytesUsed) {
+        this.coreKeys = coreKeys;
+        this.valueCount = valueCount;
+        this.globalOrds = globalOrds;
+        this.firstSegments = firstSegments;
+        this.globalOrdDeltas = globalOrdDeltas;
+        this.reusedSegments = reusedSegments;
+        this.ramBytesUsed = ramBytesUsed;
+    }
+
+    /**
+     * Builds the ordinal map of the given segments.
+     *
+     * @param coreKeys  the core cache keys of the segments
+     * @param subs      the ordinals of the segments
+     * @param previous  the map built for a previous reader of the same index, its segments that are still part of
+     *                  <tt>coreKeys</tt> are merged without comparing their terms
+     */
+    public static IncrementalOrdinalMap build(Object[] coreKeys, RandomAccessOrds[] subs, @Nullable IncrementalOrdinalMap previous) {
+        assert coreKeys.length == subs.length;
+        Map<Object, Integer> previousSegments = new IdentityHashMap<>();
+        if (previous != null) {
+            for (int i = 0; i < previous.coreKeys.size(); i++) {
+                Object coreKey = previous.coreKeys.get(i).get();
+                if (coreKey != null) {
+                    previousSegments.put(coreKey, i);
+                }
+            }
+        }
+
+        final PackedLongValues.Builder[] globalOrdsBuilders = new PackedLongValues.Builder[subs.length];
+        final List<Cursor> reusedCursors = new ArrayList<>();
+        final SourceQueue queue = new SourceQueue(subs.length + 1);
+        for (int i = 0; i < subs.length; i++) {
+            globalOrdsBuilders[i] = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+            Integer previousSegment = previousSegments.get(coreKeys[i]);
+            if (previousSegment != null) {
+                reusedCursors.add(new Cursor(i, subs[i], previous.globalOrds[previousSegment]));
+            } else {
+                SegmentSource source = new SegmentSource(i, subs[i]);
+                if (source.next()) {
+                    queue.add(source);
+                }
+            }
+        }
+        if (reusedCursors.isEmpty() == false) {
+            ReusedSource source = new ReusedSource(reusedCursors);
+            if (source.next()) {
+                queue.add(source);
+            }
+        }
+
+        final PackedLongValues.Builder firstSegments = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder globalOrdDeltas = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final List<Source> matching = new ArrayList<>();
+        long globalOrd = 0;
+        while (queue.size() != 0) {
+            matching.add(queue.pop());
+            final BytesRef term = matching.get(0).term;
+            while (queue.size() != 0 && queue.top().term.bytesEquals(term)) {
+                matching.add(queue.pop());
+            }
+            int firstSegment = Integer.MAX_VALUE;
+            long firstSegmentOrd = -1;
+            for (Source source : matching) {
+                for (Cursor cursor : source.cursors()) {
+                    globalOrdsBuilders[cursor.segment].add(globalOrd);
+                    if (cursor.segment < firstSegment) {
+                        firstSegment = cursor.segment;
+                        firstSegmentOrd = cursor.ord;
+                    }
+                }
+            }
+            firstSegments.add(firstSegment);
+            globalOrdDeltas.add(globalOrd - firstSegmentOrd);
+            for (Source source : matching) {
+                if (source.next()) {
+                    queue.add(source);
+                }
+            }
+            matching.clear();
+            globalOrd++;
+        }
+
+        final long valueCount = globalOrd;
+        long ramBytesUsed = BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(globalOrdsBuilders);
+        final List<WeakReference<Object>> weakCoreKeys = new ArrayList<>(coreKeys.length);
+        final LongValues[] globalOrds = new LongValues[subs.length];
+        for (int i = 0; i < subs.length; i++) {
+            weakCoreKeys.add(new WeakReference<>(coreKeys[i]));
+            if (subs[i].getValueCount() == valueCount) {
+                // segment ordinals match global ordinals
+                globalOrds[i] = LongValues.IDENTITY;
+            } else {
+                PackedLongValues values = globalOrdsBuilders[i].build();
+                globalOrds[i] = values;
+                ramBytesUsed += values.ramBytesUsed();
+            }
+        }
+        PackedLongValues builtFirstSegments = firstSegments.build();
+        PackedLongValues builtGlobalOrdDeltas = globalOrdDeltas.build();
+        ramBytesUsed += builtFirstSegments.ramBytesUsed() + builtGlobalOrdDeltas.ramBytesUsed();
+        return new IncrementalOrdinalMap(weakCoreKeys, valueCount, globalOrds, builtFirstSegments, builtGlobalOrdDeltas,
+                reusedCursors.size(), ramBytesUsed);
+    }
+
+    /**
+     * Returns the total number of unique terms.
+     */
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Returns the global ordinals of the given segment, keyed by segment ordinal.
+     */
+    public LongValues getGlobalOrds(int segmentIndex) {
+        return globalOrds[segmentIndex];
+    }
+
+    /**
+     * Returns the first segment that contains the term of the given global ordinal.
+     */
+    public int getFirstSegmentNumber(long globalOrd) {
+        return (int) firstSegments.get(globalOrd);
+    }
+
+    /**
+     * Returns the ordinal of the term of the given global ordinal in its first segment.
+     */
+    public long getFirstSegmentOrd(long globalOrd) {
+        return globalOrd - globalOrdDeltas.get(globalOrd);
+    }
+
+    /**
+     * Returns the number of segments.
+     */
+    public int segments() {
+        return coreKeys.size();
+    }
+
+    /**
+     * Returns the number of segments that were merged based on the map of the previous reader.
+     */
+    public int reusedSegments() {
+        return reusedSegments;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
+    @Override
+    public Iterable<? extends Accountable> getChildResources() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Walks the ordinals of a single segment.
+     */
+    private static final class Cursor {
+
+        final int segment;
+        final RandomAccessOrds values;
+        final long valueCount;
+        // the previous global ordinals, only set for reused segments
+        final LongValues previousGlobalOrds;
+        long ord = -1;
+        long previousGlobalOrd;
+
+        Cursor(int segment, RandomAccessOrds values, @Nullable LongValues previousGlobalOrds) {
+            this.segment = segment;
+            this.values = values;
+            this.valueCount = values.getValueCount();
+            this.previousGlobalOrds = previousGlobalOrds;
+        }
+
+        boolean next() {
+            if (++ord >= valueCount) {
+                return false;
+            }
+            if (previousGlobalOrds != null) {
+                previousGlobalOrd = previousGlobalOrds.get(ord);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A sorted stream of terms, each term backed by the cursors of the segments that have it.
+     */
+    private static abstract class Source {
+
+        BytesRef term;
+
+        /** Moves to the next term, returns <tt>false</tt> if there are none left. */
+        abstract boolean next();
+
+        /** The cursors that are positioned on the current term. */
+        abstract List<Cursor> cursors();
+    }
+
+    /**
+     * The terms of a new segment.
+     */
+    private static final class SegmentSource extends Source {
+
+        private final Cursor cursor;
+        private final List<Cursor> cursors;
+
+        SegmentSource(int segment, RandomAccessOrds values) {
+            this.cursor = new Cursor(segment, values, null);
+            this.cursors = Collections.singletonList(cursor);
+        }
+
+        @Override
+        boolean next() {
+            if (cursor.next() == false) {
+                return false;
+            }
+            term = cursor.values.lookupOrd(cursor.ord);
+            return true;
+        }
+
+        @Override
+        List<Cursor> cursors() {
+            return cursors;
+        }
+    }
+
+    /**
+     * The terms of all the segments of the previous map, merged by their previous global ordinals.
+     */
+    private static final class ReusedSource extends Source {
+
+        private final PriorityQueue<Cursor> queue;
+        private final List<Cursor> current = new ArrayList<>();
+
+        ReusedSource(List<Cursor> cursors) {
+            queue = new PriorityQueue<Cursor>(cursors.size()) {
+                @Override
+                protected boolean lessThan(Cursor a, Cursor b) {
+                    return a.previousGlobalOrd < b.previousGlobalOrd;
+                }
+            };
+            for (Cursor cursor : cursors) {
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        boolean next() {
+            for (Cursor cursor : current) {
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            current.clear();
+            if (queue.size() == 0) {
+                return false;
+            }
+            final long previousGlobalOrd = queue.top().previousGlobalOrd;
+            while (queue.size() != 0 && queue.top().previousGlobalOrd == previousGlobalOrd) {
+                current.add(queue.pop());
+            }
+            Cursor first = current.get(0);
+            term = first.values.lookupOrd(first.ord);
+            return true;
+        }
+
+        @Override
+        List<Cursor> cursors() {
+            return current;
+        }
+    }
+
+    private static final class SourceQueue extends PriorityQueue<Source> {
+
+        SourceQueue(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected boolean lessThan(Source a, Source b) {
+            return a.term.compareTo(b.term) < 0;
+        }
+    }
+}
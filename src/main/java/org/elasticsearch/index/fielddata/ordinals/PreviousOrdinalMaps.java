@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps, per shard, the ordinal map of the global ordinals of a field that are currently cached, so that the global
+ * ordinals of the next reader of the shard can be built incrementally from it.
+ * <p/>
+ * A map is only kept for as long as the global ordinals holding it are cached, so that its memory is accounted for
+ * in the field data circuit breaker: it is released when the global ordinals are removed from the cache, because they
+ * were cleared, evicted or their reader was closed, for instance when the shard was closed or relocated.
+ */
+public final class PreviousOrdinalMaps {
+
+    private final ConcurrentMap<ShardId, IncrementalOrdinalMap> maps = ConcurrentCollections.newConcurrentMap();
+
+    /**
+     * Returns the ordinal map of the cached global ordinals of the given shard, if any.
+     */
+    @Nullable
+    IncrementalOrdinalMap get(ShardId shardId) {
+        return maps.get(shardId);
+    }
+
+    void put(ShardId shardId, IncrementalOrdinalMap ordinalMap) {
+        maps.put(shardId, ordinalMap);
+    }
+
+    /**
+     * Releases the given ordinal map, unless newer global ordinals of the shard replaced it already.
+     */
+    void release(ShardId shardId, IncrementalOrdinalMap ordinalMap) {
+        maps.remove(shardId, ordinalMap);
+    }
+
+    /**
+     * Returns the number of shards an ordinal map is kept for.
+     */
+    int size() {
+        return maps.size();
+    }
+}
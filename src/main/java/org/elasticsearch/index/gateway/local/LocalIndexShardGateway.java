@@ -19,7 +19,7 @@
 
 package org.elasticsearch.index.gateway.local;
 
-import com.google.common.collect.Sets;
+import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.SegmentInfos;
@@ -28,10 +28,13 @@ import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.cluster.action.index.MappingUpdatedAction;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.ByteBufferStreamInput;
 import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.gateway.IndexShardGateway;
 import org.elasticsearch.index.gateway.IndexShardGatewayRecoveryException;
@@ -44,13 +47,18 @@ import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.index.shard.service.InternalIndexShard;
 import org.elasticsearch.index.translog.*;
 import org.elasticsearch.index.translog.fs.FsTranslog;
+import org.elasticsearch.index.translog.fs.MappedTranslogReader;
+import org.elasticsearch.indices.recovery.RecoverySettings;
 import org.elasticsearch.indices.recovery.RecoveryState;
+import org.elasticsearch.indices.recovery.TranslogReplayer;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Set;
@@ -69,6 +77,7 @@ public class LocalIndexShardGateway extends AbstractIndexShardComponent implemen
     private final MappingUpdatedAction mappingUpdatedAction;
     private final IndexService indexService;
     private final InternalIndexShard indexShard;
+    private final RecoverySettings recoverySettings;
 
     private final TimeValue waitForMappingUpdatePostRecovery;
 
@@ -79,12 +88,13 @@ public class LocalIndexShardGateway extends AbstractIndexShardComponent implemen
 
     @Inject
     public LocalIndexShardGateway(ShardId shardId, @IndexSettings Settings indexSettings, ThreadPool threadPool, MappingUpdatedAction mappingUpdatedAction,
-                                  IndexService indexService, IndexShard indexShard) {
+                                  IndexService indexService, IndexShard indexShard, RecoverySettings recoverySettings) {
         super(shardId, indexSettings);
         this.threadPool = threadPool;
         this.mappingUpdatedAction = mappingUpdatedAction;
         this.indexService = indexService;
         this.indexShard = (InternalIndexShard) indexShard;
+        this.recoverySettings = recoverySettings;
 
         this.waitForMappingUpdatePostRecovery = componentSettings.getAsTime("wait_for_mapping_update_post_recovery", TimeValue.timeValueSeconds(30));
         syncInterval = componentSettings.getAsTime("sync", TimeValue.timeValueSeconds(5));
@@ -236,8 +246,32 @@ public class LocalIndexShardGateway extends AbstractIndexShardComponent implemen
             recoveryState.getTranslog().startTime(System.currentTimeMillis());
             recoveryState.setStage(RecoveryState.Stage.TRANSLOG);
             StreamInput in = null;
-
-            final Set<String> typesToUpdate = Sets.newHashSet();
+            RandomAccessFile mappedFile = null;
+            MappedTranslogReader mappedReader = null;
+            long mappedPosition = 0;
+
+            final Set<String> typesToUpdate = ConcurrentCollections.newConcurrentSet();
+            // operations are decoded here and applied concurrently, partitioned by uid
+            TranslogReplayer replayer = new TranslogReplayer(threadPool.generic(), recoverySettings.concurrentTranslogReplay()) {
+                @Override
+                protected void applyOperation(Translog.Operation operation) {
+                    try {
+                        Engine.IndexingOperation potentialIndexOperation = indexShard.performRecoveryOperation(operation);
+                        if (potentialIndexOperation != null && potentialIndexOperation.parsedDoc().mappingsModified()) {
+                            typesToUpdate.add(potentialIndexOperation.docMapper().type());
+                        }
+                        recoveryState.getTranslog().addTranslogOperations(1);
+                    } catch (ElasticsearchException e) {
+                        if (e.status() == RestStatus.BAD_REQUEST) {
+                            // mainly for MapperParsingException and Failure to detect xcontent
+                            logger.info("ignoring recovery of a corrupt translog entry", e);
+                        } else {
+                            throw e;
+                        }
+                    }
+                }
+            };
+            recoveryState.getTranslog().replayConcurrency(replayer.concurrency());
             try {
                 TranslogStream stream = TranslogStreams.translogStreamFor(recoveringTranslogFile);
                 try {
@@ -246,16 +280,34 @@ public class LocalIndexShardGateway extends AbstractIndexShardComponent implemen
                     // file is empty or header has been half-written and should be ignored
                     logger.trace("ignoring truncation exception, the translog is either empty or half-written ([{}])", e.getMessage());
                 }
+                if (in != null && stream == TranslogStreams.CHECKSUMMED_TRANSLOG_STREAM && MappedTranslogReader.SUPPORTED) {
+                    // the recovering translog is not written to anymore, replay it through a read only mapping
+                    // starting right after the header that was just validated
+                    in.close();
+                    in = null;
+                    mappedFile = new RandomAccessFile(recoveringTranslogFile, "r");
+                    mappedReader = new MappedTranslogReader(mappedFile.getChannel(), mappedFile.length());
+                    mappedPosition = CodecUtil.headerLength(TranslogStreams.TRANSLOG_CODEC);
+                }
                 while (true) {
-                    if (in == null) {
+                    if (in == null && mappedReader == null) {
                         break;
                     }
                     Translog.Operation operation;
                     try {
-                        if (stream instanceof LegacyTranslogStream) {
-                            in.readInt(); // ignored opSize
+                        if (mappedReader != null) {
+                            ByteBuffer buffer = mappedReader.operation(mappedPosition);
+                            if (buffer == null) {
+                                break;
+                            }
+                            mappedPosition += buffer.remaining();
+                            operation = stream.read(new ByteBufferStreamInput(buffer));
+                        } else {
+                            if (stream instanceof LegacyTranslogStream) {
+                                in.readInt(); // ignored opSize
+                            }
+                            operation = stream.read(in);
                         }
-                        operation = stream.read(in);
                     } catch (EOFException e) {
                         // ignore, not properly written the last op
                         logger.trace("ignoring translog EOF exception, the last operation was not properly written ([{}])", e.getMessage());
@@ -265,29 +317,16 @@ public class LocalIndexShardGateway extends AbstractIndexShardComponent implemen
                         logger.trace("ignoring translog IO exception, the last operation was not properly written ([{}])", e.getMessage());
                         break;
                     }
-                    try {
-                        Engine.IndexingOperation potentialIndexOperation = indexShard.performRecoveryOperation(operation);
-                        if (potentialIndexOperation != null && potentialIndexOperation.parsedDoc().mappingsModified()) {
-                            if (!typesToUpdate.contains(potentialIndexOperation.docMapper().type())) {
-                                typesToUpdate.add(potentialIndexOperation.docMapper().type());
-                            }
-                        }
-                        recoveryState.getTranslog().addTranslogOperations(1);
-                    } catch (ElasticsearchException e) {
-                        if (e.status() == RestStatus.BAD_REQUEST) {
-                            // mainly for MapperParsingException and Failure to detect xcontent
-                            logger.info("ignoring recovery of a corrupt translog entry", e);
-                        } else {
-                            throw e;
-                        }
-                    }
+                    replayer.add(operation);
                 }
+                replayer.finish();
             } catch (Throwable e) {
                 // we failed to recovery, make sure to delete the translog file (and keep the recovering one)
                 indexShard.translog().closeWithDelete();
                 throw new IndexShardGatewayRecoveryException(shardId, "failed to recover shard", e);
             } finally {
-                IOUtils.closeWhileHandlingException(in);
+                Releasables.closeWhileHandlingException(replayer);
+                IOUtils.closeWhileHandlingException(in, mappedReader, mappedFile);
             }
             indexShard.performRecoveryFinalization(true);
 
@@ -315,13 +315,17 @@ public class DateFieldMapper extends NumberFieldMapper<Long> {
     }
 
     public long parseToMilliseconds(String value, @Nullable QueryParseContext context, boolean includeUpper, @Nullable DateTimeZone zone, @Nullable DateMathParser forcedDateParser) {
-        long now = context == null ? System.currentTimeMillis() : context.nowInMillis();
         DateMathParser dateParser = dateMathParser;
         if (forcedDateParser != null) {
             dateParser = forcedDateParser;
         }
-        long time = includeUpper && roundCeil ? dateParser.parseRoundCeil(value, now, zone) : dateParser.parse(value, now, zone);
-        return time;
+        final boolean roundCeil = includeUpper && this.roundCeil;
+        if (context != null && value.startsWith("now") && !hasDateExpressionWithNoRounding(value)) {
+            // rounded dates only change every once in a while, they don't need to prevent caching of the request
+            return context.resolveRoundedNow(dateParser, value, roundCeil, zone);
+        }
+        long now = context == null ? System.currentTimeMillis() : context.nowInMillis();
+        return dateParser.parse(value, now, roundCeil, zone);
     }
 
     @Override
@@ -30,6 +30,7 @@ import org.apache.lucene.search.similarities.Similarity;
 import org.elasticsearch.Version;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.joda.DateMathParser;
 import org.elasticsearch.common.lucene.search.NoCacheFilter;
 import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.common.xcontent.XContentParser;
@@ -47,6 +48,7 @@ import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.lookup.SearchLookup;
+import org.joda.time.DateTimeZone;
 
 import java.io.IOException;
 import java.util.*;
@@ -399,6 +401,18 @@ public class QueryParseContext {
         return System.currentTimeMillis();
     }
 
+    /**
+     * Resolve a date math expression that is relative to a rounded "now", eg. "now/d", without preventing
+     * the request from being cached, see {@link SearchContext#resolveRoundedNow}.
+     */
+    public long resolveRoundedNow(DateMathParser parser, String text, boolean roundCeil, @Nullable DateTimeZone timeZone) {
+        SearchContext current = SearchContext.current();
+        if (current != null) {
+            return current.resolveRoundedNow(parser, text, roundCeil, timeZone);
+        }
+        return parser.parse(text, System.currentTimeMillis(), roundCeil, timeZone);
+    }
+
     public boolean requireCustomQueryWrappingFilter() {
         return requireCustomQueryWrappingFilter;
     }
@@ -263,8 +263,10 @@ public abstract class DecayFunctionParser implements ScoreFunctionParser {
                 throw new ElasticsearchParseException("Parameter " + parameterName + " not supported!");
             }
         }
-        long origin = SearchContext.current().nowInMillis();
-        if (originString != null) {
+        long origin;
+        if (originString == null) {
+            origin = SearchContext.current().nowInMillis();
+        } else {
             origin = dateFieldMapper.parseToMilliseconds(originString, parseContext);
         }
 
@@ -148,6 +148,12 @@ public interface IndexShard extends IndexShardComponent {
 
     ParsedDocument index(Engine.Index index) throws ElasticsearchException;
 
+    /**
+     * Executes the given create and index operations in order, as one batch. The failure of each operation, if any,
+     * is set at its position in <tt>failures</tt>, and operations that already have a failure set are skipped.
+     */
+    void bulkIndex(Engine.IndexingOperation[] operations, Throwable[] failures) throws ElasticsearchException;
+
     Engine.Delete prepareDelete(String type, String id, long version, VersionType versionType, Engine.Operation.Origin origin) throws ElasticsearchException;
 
     void delete(Engine.Delete delete) throws ElasticsearchException;
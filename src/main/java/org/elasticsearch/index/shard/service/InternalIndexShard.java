@@ -412,7 +412,10 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
         long startTime = System.nanoTime();
         Tuple<DocumentMapper, Boolean> docMapper = mapperService.documentMapperWithAutoCreate(source.type());
         ParsedDocument doc = docMapper.v1().parse(source).setMappingsModified(docMapper);
-        return new Engine.Create(docMapper.v1(), docMapper.v1().uidMapper().term(doc.uid().stringValue()), doc, version, versionType, origin, startTime, state != IndexShardState.STARTED || canHaveDuplicates, autoGeneratedId);
+        Engine.Create create = new Engine.Create(docMapper.v1(), docMapper.v1().uidMapper().term(doc.uid().stringValue()), doc, version, versionType, origin, startTime, state != IndexShardState.STARTED || canHaveDuplicates, autoGeneratedId);
+        // until the operation is executed, its end time is the time its parsing completed, see #bulkIndex
+        create.endTime(System.nanoTime());
+        return create;
     }
 
     @Override
@@ -433,7 +436,10 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
         long startTime = System.nanoTime();
         Tuple<DocumentMapper, Boolean> docMapper = mapperService.documentMapperWithAutoCreate(source.type());
         ParsedDocument doc = docMapper.v1().parse(source).setMappingsModified(docMapper);
-        return new Engine.Index(docMapper.v1(), docMapper.v1().uidMapper().term(doc.uid().stringValue()), doc, version, versionType, origin, startTime, state != IndexShardState.STARTED || canHaveDuplicates);
+        Engine.Index index = new Engine.Index(docMapper.v1(), docMapper.v1().uidMapper().term(doc.uid().stringValue()), doc, version, versionType, origin, startTime, state != IndexShardState.STARTED || canHaveDuplicates);
+        // until the operation is executed, its end time is the time its parsing completed, see #bulkIndex
+        index.endTime(System.nanoTime());
+        return index;
     }
 
     @Override
@@ -454,6 +460,67 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
         return index.parsedDoc();
     }
 
+    @Override
+    public void bulkIndex(Engine.IndexingOperation[] operations, Throwable[] failures) throws ElasticsearchException {
+        final long startTime = System.nanoTime();
+        final boolean[] executed = new boolean[operations.length];
+        int numExecuted = 0;
+        for (int i = 0; i < operations.length; i++) {
+            if (failures[i] != null) {
+                continue;
+            }
+            try {
+                writeAllowed(operations[i].origin());
+            } catch (IllegalIndexShardStateException e) {
+                for (int j = i; j < operations.length; j++) {
+                    if (failures[j] == null) {
+                        failures[j] = e;
+                    }
+                }
+                break;
+            }
+            if (operations[i] instanceof Engine.Create) {
+                operations[i] = indexingService.preCreate((Engine.Create) operations[i]);
+            } else {
+                operations[i] = indexingService.preIndex((Engine.Index) operations[i]);
+            }
+            executed[i] = true;
+            numExecuted++;
+            if (logger.isTraceEnabled()) {
+                logger.trace("index [{}][{}]{}", operations[i].type(), operations[i].id(), operations[i].docs());
+            }
+        }
+        try {
+            engine.bulkIndex(operations, failures);
+        } catch (RuntimeException ex) {
+            for (int i = 0; i < operations.length; i++) {
+                if (executed[i] && failures[i] == null) {
+                    failures[i] = ex;
+                }
+            }
+        }
+        // the operations may have been parsed long before the batch is executed, eg. concurrently with other operations
+        // of the same request: account each of them for its parsing time plus an even share of the time spent on the batch
+        final long share = numExecuted == 0 ? 0 : (System.nanoTime() - startTime) / numExecuted;
+        for (int i = 0; i < operations.length; i++) {
+            if (executed[i] == false) {
+                continue;
+            }
+            if (failures[i] != null) {
+                if (operations[i] instanceof Engine.Index) {
+                    indexingService.failedIndex((Engine.Index) operations[i]);
+                }
+            } else {
+                operations[i].endTime(Math.max(operations[i].endTime(), operations[i].startTime()) + share);
+                if (operations[i] instanceof Engine.Create) {
+                    indexingService.postCreate((Engine.Create) operations[i]);
+                } else {
+                    indexingService.postIndex((Engine.Index) operations[i]);
+                }
+            }
+        }
+    }
+
     @Override
     public Engine.Delete prepareDelete(String type, String id, long version, VersionType versionType, Engine.Operation.Origin origin) throws ElasticsearchException {
         long startTime = System.nanoTime();
@@ -42,6 +42,7 @@ import org.elasticsearch.index.shard.IndexShardComponent;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -104,6 +105,12 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent,
      */
     Location add(Operation operation) throws TranslogException;
 
+    /**
+     * Adds the given operations to the transaction log as one contiguous write, returning the location
+     * of each operation.
+     */
+    Location[] add(List<Operation> operations) throws TranslogException;
+
     Translog.Operation read(Location location);
 
     /**
@@ -44,6 +44,7 @@ public class BufferingFsTranslogFile implements FsTranslogFile {
     private final int headerSize;
 
     private final ReadWriteLock rwl = new ReentrantReadWriteLock();
+    private final Object syncLock = new Object();
     private final AtomicBoolean closed = new AtomicBoolean();
 
     private volatile int operationCounter;
@@ -84,9 +85,13 @@ public class BufferingFsTranslogFile implements FsTranslogFile {
 
     @Override
     public Translog.Location add(BytesReference data) throws IOException {
+        return add(data, 1);
+    }
+
+    public Translog.Location add(BytesReference data, int numOperations) throws IOException {
         rwl.writeLock().lock();
         try {
-            operationCounter++;
+            operationCounter += numOperations;
             long position = lastPosition;
             if (data.length() >= buffer.length) {
                 flushBuffer();
@@ -178,14 +183,32 @@ public class BufferingFsTranslogFile implements FsTranslogFile {
         if (!syncNeeded()) {
             return;
         }
-        rwl.writeLock().lock();
-        try {
-            flushBuffer();
-            lastSyncPosition = lastPosition;
-        } finally {
-            rwl.writeLock().unlock();
+        syncUpTo(lastPosition);
+    }
+
+    @Override
+    public boolean syncUpTo(long offset) throws IOException {
+        if (lastSyncPosition >= offset) {
+            return false;
+        }
+        synchronized (syncLock) {
+            // the thread holding the lock before us might have synced our operations as well
+            if (lastSyncPosition >= offset) {
+                return false;
+            }
+            final long syncPosition;
+            rwl.writeLock().lock();
+            try {
+                flushBuffer();
+                syncPosition = lastPosition;
+            } finally {
+                rwl.writeLock().unlock();
+            }
+            // writers can keep on appending to the buffer while we fsync
+            raf.channel().force(false);
+            lastSyncPosition = syncPosition;
+            return true;
         }
-        raf.channel().force(false);
     }
 
     @Override
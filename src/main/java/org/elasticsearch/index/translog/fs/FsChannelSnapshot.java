@@ -19,8 +19,10 @@
 
 package org.elasticsearch.index.translog.fs;
 
+import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.io.Channels;
+import org.elasticsearch.common.io.stream.ByteBufferStreamInput;
 import org.elasticsearch.common.io.stream.BytesStreamInput;
 import org.elasticsearch.index.translog.TranslogStreams;
 import org.elasticsearch.index.translog.Translog;
@@ -53,6 +55,8 @@ public class FsChannelSnapshot implements Translog.Snapshot {
 
     private ByteBuffer cacheBuffer;
 
+    private MappedTranslogReader mappedReader;
+
     private AtomicBoolean closed = new AtomicBoolean(false);
 
     /**
@@ -98,6 +102,15 @@ public class FsChannelSnapshot implements Translog.Snapshot {
             if (position >= length) {
                 return null;
             }
+            if (MappedTranslogReader.SUPPORTED) {
+                // the snapshot region is never written to again, read it through a mapping instead of copying each operation
+                if (mappedReader == null) {
+                    mappedReader = new MappedTranslogReader(channel, length);
+                }
+                ByteBuffer operation = mappedReader.operation(position);
+                position += operation.remaining();
+                return TranslogStreams.readTranslogOperation(new ByteBufferStreamInput(operation));
+            }
             if (cacheBuffer == null) {
                 cacheBuffer = ByteBuffer.allocate(1024);
             }
@@ -146,6 +159,10 @@ public class FsChannelSnapshot implements Translog.Snapshot {
         if (!closed.compareAndSet(false, true)) {
             return;
         }
+        if (mappedReader != null) {
+            IOUtils.closeWhileHandlingException(mappedReader);
+            mappedReader = null;
+        }
         raf.decreaseRefCount(true);
     }
 }
@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.file.Files;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -369,26 +370,49 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
             out = new ReleasableBytesStreamOutput(bigArrays);
             TranslogStreams.writeTranslogOperation(out, operation);
             ReleasableBytesReference bytes = out.bytes();
-            Location location = current.add(bytes);
-            if (syncOnEachOperation) {
-                current.sync();
+            Location location = addBytes(bytes, 1);
+            Releasables.close(bytes);
+            released = true;
+            return location;
+        } catch (Throwable e) {
+            throw new TranslogException(shardId, "Failed to write operation [" + operation + "]", e);
+        } finally {
+            rwl.readLock().unlock();
+            if (!released && out != null) {
+                Releasables.close(out.bytes());
             }
+        }
+    }
 
-            assert new BytesArray(current.read(location)).equals(bytes);
-
-            FsTranslogFile trans = this.trans;
-            if (trans != null) {
-                try {
-                    location = trans.add(bytes);
-                } catch (ClosedChannelException e) {
-                    // ignore
-                }
+    @Override
+    public Location[] add(List<Operation> operations) throws TranslogException {
+        final Location[] locations = new Location[operations.size()];
+        if (operations.isEmpty()) {
+            return locations;
+        }
+        rwl.readLock().lock();
+        boolean released = false;
+        ReleasableBytesStreamOutput out = null;
+        try {
+            out = new ReleasableBytesStreamOutput(bigArrays);
+            final int[] ends = new int[operations.size()];
+            for (int i = 0; i < ends.length; i++) {
+                TranslogStreams.writeTranslogOperation(out, operations.get(i));
+                ends[i] = out.size();
             }
+            ReleasableBytesReference bytes = out.bytes();
+            Location location = addBytes(bytes, operations.size());
             Releasables.close(bytes);
             released = true;
-            return location;
+            // the operations were written back to back, so each one can still be read on its own
+            int start = 0;
+            for (int i = 0; i < ends.length; i++) {
+                locations[i] = new Location(location.translogId, location.translogLocation + start, ends[i] - start);
+                start = ends[i];
+            }
+            return locations;
         } catch (Throwable e) {
-            throw new TranslogException(shardId, "Failed to write operation [" + operation + "]", e);
+            throw new TranslogException(shardId, "Failed to write [" + operations.size() + "] operations", e);
         } finally {
             rwl.readLock().unlock();
             if (!released && out != null) {
@@ -397,6 +421,26 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         }
     }
 
+    private Location addBytes(ReleasableBytesReference bytes, int numOperations) throws IOException {
+        Location location = current.add(bytes, numOperations);
+        if (syncOnEachOperation) {
+            // group commit, concurrent writers share a single fsync covering all their operations
+            current.syncUpTo(location.translogLocation + location.size);
+        }
+
+        assert new BytesArray(current.read(location)).equals(bytes);
+
+        FsTranslogFile trans = this.trans;
+        if (trans != null) {
+            try {
+                location = trans.add(bytes, numOperations);
+            } catch (ClosedChannelException e) {
+                // ignore
+            }
+        }
+        return location;
+    }
+
     @Override
     public FsChannelSnapshot snapshot() throws TranslogException {
         while (true) {
@@ -442,12 +486,8 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
 
     @Override
     public void syncOnEachOperation(boolean syncOnEachOperation) {
+        // no need to switch to the simple type, buffered files flush their buffer as part of the group commit
         this.syncOnEachOperation = syncOnEachOperation;
-        if (syncOnEachOperation) {
-            type = FsTranslogFile.Type.SIMPLE;
-        } else {
-            type = FsTranslogFile.Type.BUFFERED;
-        }
     }
 
     @Override
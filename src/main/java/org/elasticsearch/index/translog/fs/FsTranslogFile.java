@@ -65,6 +65,11 @@ public interface FsTranslogFile {
 
     Translog.Location add(BytesReference data) throws IOException;
 
+    /**
+     * Adds the given data, holding <tt>numOperations</tt> serialized operations, as one contiguous write.
+     */
+    Translog.Location add(BytesReference data, int numOperations) throws IOException;
+
     byte[] read(Translog.Location location) throws IOException;
 
     void close(boolean delete) throws TranslogException;
@@ -77,6 +82,15 @@ public interface FsTranslogFile {
 
     void sync() throws IOException;
 
+    /**
+     * Makes sure all operations written up to the given offset are fsync'ed. Concurrent callers
+     * are grouped, a single fsync covers every operation written before it started, and callers
+     * whose offset is already covered return without syncing.
+     *
+     * @return <tt>true</tt> if this call performed the fsync, <tt>false</tt> if the offset was already synced
+     */
+    boolean syncUpTo(long offset) throws IOException;
+
     boolean syncNeeded();
 
     TranslogStream getStream();
@@ -0,0 +1,170 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog.fs;
+
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Constants;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+
+/**
+ * Reads operations from a region of a translog file that is not written to anymore, for example a snapshot
+ * or a translog that is being recovered, through a read only memory mapping. Each operation is handed out as
+ * a slice of the mapped region (including its size header), so replaying operations requires neither a
+ * syscall nor an intermediate copy per operation.
+ * <p/>
+ * The region is mapped in chunks, since a single mapping is limited to 2GB. A chunk is unmapped when the reader
+ * moves on to the next one and when the reader is closed, the same way {@link MMapDirectory} unmaps its inputs, so
+ * a buffer returned by {@link #operation(long)} must not be used after the next call or after {@link #close()}.
+ * If unmapping is not supported by the JVM the mappings are released once they get garbage collected.
+ */
+public class MappedTranslogReader implements Closeable {
+
+    static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * Memory mapped reads are only used on 64bit JVMs, and not on windows where a file can't be deleted
+     * as long as a mapping of it exists.
+     */
+    public static final boolean SUPPORTED = Constants.JRE_IS_64BIT && !Constants.WINDOWS;
+
+    private final FileChannel channel;
+    private final long length;
+    private final int chunkSize;
+
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+
+    private boolean closed;
+
+    /**
+     * @param channel the channel to map, only the region up to <tt>length</tt> is ever read
+     * @param length  the end of the last operation, nothing beyond it is mapped
+     */
+    public MappedTranslogReader(FileChannel channel, long length) {
+        this(channel, length, DEFAULT_CHUNK_SIZE);
+    }
+
+    MappedTranslogReader(FileChannel channel, long length, int chunkSize) {
+        this.channel = channel;
+        this.length = length;
+        this.chunkSize = chunkSize;
+    }
+
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * Returns the operation starting at the given position, as a buffer positioned at its size header and
+     * limited to its end, or <tt>null</tt> if the position is at or beyond the end of the region.
+     */
+    public ByteBuffer operation(long position) throws IOException {
+        if (closed) {
+            throw new AlreadyClosedException("mapped translog reader is closed");
+        }
+        if (position >= length) {
+            return null;
+        }
+        if (position + 4 > length) {
+            throw new EOFException("read past EOF. pos [" + position + "] length [" + length + "]");
+        }
+        ensureMapped(position, 4);
+        // Add an extra 4 to account for the operation size integer itself
+        int opSize = chunk.getInt((int) (position - chunkStart)) + 4;
+        if (opSize <= 4 || position + opSize > length) {
+            throw new EOFException("opSize of [" + opSize + "] pointed beyond EOF. position [" + position + "] length [" + length + "]");
+        }
+        ensureMapped(position, opSize);
+        ByteBuffer operation = chunk.duplicate();
+        int offset = (int) (position - chunkStart);
+        operation.limit(offset + opSize);
+        operation.position(offset);
+        return operation.slice();
+    }
+
+    private void ensureMapped(long position, int size) throws IOException {
+        if (chunk != null && position >= chunkStart && position + size <= chunkStart + chunk.capacity()) {
+            return;
+        }
+        if (chunk != null) {
+            // the operations handed out of the previous chunk have been read already
+            MappedByteBuffer previous = chunk;
+            chunk = null;
+            unmap(previous);
+        }
+        // operations are never split across chunks, a new chunk starts at the operation that didn't fit
+        long mapSize = Math.min(Math.max(chunkSize, size), length - position);
+        chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, mapSize);
+        chunkStart = position;
+    }
+
+    /**
+     * Unmaps the current chunk. The channel is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (chunk != null) {
+            MappedByteBuffer current = chunk;
+            chunk = null;
+            unmap(current);
+        }
+    }
+
+    /**
+     * Releases the mapping right away instead of waiting for the buffer to be garbage collected, using the same
+     * cleaner hack as {@link MMapDirectory}.
+     */
+    private static void unmap(final MappedByteBuffer buffer) throws IOException {
+        if (!MMapDirectory.UNMAP_SUPPORTED) {
+            return;
+        }
+        try {
+            AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
+                @Override
+                public Void run() throws Exception {
+                    final Method getCleanerMethod = buffer.getClass().getMethod("cleaner");
+                    getCleanerMethod.setAccessible(true);
+                    final Object cleaner = getCleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                    return null;
+                }
+            });
+        } catch (PrivilegedActionException e) {
+            throw new IOException("unable to unmap the mapped translog region", e.getCause());
+        }
+    }
+}
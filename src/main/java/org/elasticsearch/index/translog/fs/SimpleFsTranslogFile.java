@@ -40,6 +40,7 @@ public class SimpleFsTranslogFile implements FsTranslogFile {
     private final RafReference raf;
     private final AtomicBoolean closed = new AtomicBoolean();
     private final ReadWriteLock rwl = new ReentrantReadWriteLock();
+    private final Object syncLock = new Object();
     private final TranslogStream translogStream;
     private final int headerSize;
 
@@ -75,13 +76,17 @@ public class SimpleFsTranslogFile implements FsTranslogFile {
     }
 
     public Translog.Location add(BytesReference data) throws IOException {
+        return add(data, 1);
+    }
+
+    public Translog.Location add(BytesReference data, int numOperations) throws IOException {
         rwl.writeLock().lock();
         try {
             long position = lastPosition;
             data.writeTo(raf.channel());
             lastPosition = lastPosition + data.length();
             lastWrittenPosition = lastWrittenPosition + data.length();
-            operationCounter = operationCounter + 1;
+            operationCounter = operationCounter + numOperations;
             return new Translog.Location(id, position, data.length());
         } finally {
             rwl.writeLock().unlock();
@@ -156,12 +161,24 @@ public class SimpleFsTranslogFile implements FsTranslogFile {
         if (!syncNeeded()) {
             return;
         }
-        rwl.writeLock().lock();
-        try {
-            lastSyncPosition = lastWrittenPosition;
+        syncUpTo(lastWrittenPosition);
+    }
+
+    @Override
+    public boolean syncUpTo(long offset) throws IOException {
+        if (lastSyncPosition >= offset) {
+            return false;
+        }
+        synchronized (syncLock) {
+            // the thread holding the lock before us might have synced our operations as well
+            if (lastSyncPosition >= offset) {
+                return false;
+            }
+            // operations are written directly to the channel, so everything up to here is covered by the fsync
+            final long syncPosition = lastWrittenPosition;
             raf.channel().force(false);
-        } finally {
-            rwl.writeLock().unlock();
+            lastSyncPosition = syncPosition;
+            return true;
         }
     }
 
@@ -36,7 +36,8 @@ public class ShardIndexWarmerService extends AbstractIndexShardComponent {
 
     private final CounterMetric current = new CounterMetric();
     private final MeanMetric warmerMetric = new MeanMetric();
-
+    private final MeanMetric globalOrdinalsMetric = new MeanMetric();
+    private final CounterMetric globalOrdinalsTimeouts = new CounterMetric();
 
     @Inject
     public ShardIndexWarmerService(ShardId shardId, @IndexSettings Settings indexSettings) {
@@ -56,7 +57,22 @@ public class ShardIndexWarmerService extends AbstractIndexShardComponent {
         warmerMetric.inc(tookInNanos);
     }
 
+    /**
+     * Records the eager build of the global ordinals of a single field.
+     */
+    public void onGlobalOrdinalsWarmed(long tookInNanos) {
+        globalOrdinalsMetric.inc(tookInNanos);
+    }
+
+    /**
+     * Records a top reader warm-up that published its searcher before all global ordinals were built.
+     */
+    public void onGlobalOrdinalsTimeout() {
+        globalOrdinalsTimeouts.inc();
+    }
+
     public WarmerStats stats() {
-        return new WarmerStats(current.count(), warmerMetric.count(), TimeUnit.NANOSECONDS.toMillis(warmerMetric.sum()));
+        return new WarmerStats(current.count(), warmerMetric.count(), TimeUnit.NANOSECONDS.toMillis(warmerMetric.sum()),
+                globalOrdinalsMetric.count(), TimeUnit.NANOSECONDS.toMillis(globalOrdinalsMetric.sum()), globalOrdinalsTimeouts.count());
     }
 }
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.warmer;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -37,14 +38,27 @@ public class WarmerStats implements Streamable, ToXContent {
 
     private long totalTimeInMillis;
 
+    private long globalOrdinalsTotal;
+
+    private long globalOrdinalsTimeInMillis;
+
+    private long globalOrdinalsTimeouts;
+
     public WarmerStats() {
 
     }
 
     public WarmerStats(long current, long total, long totalTimeInMillis) {
+        this(current, total, totalTimeInMillis, 0, 0, 0);
+    }
+
+    public WarmerStats(long current, long total, long totalTimeInMillis, long globalOrdinalsTotal, long globalOrdinalsTimeInMillis, long globalOrdinalsTimeouts) {
         this.current = current;
         this.total = total;
         this.totalTimeInMillis = totalTimeInMillis;
+        this.globalOrdinalsTotal = globalOrdinalsTotal;
+        this.globalOrdinalsTimeInMillis = globalOrdinalsTimeInMillis;
+        this.globalOrdinalsTimeouts = globalOrdinalsTimeouts;
     }
 
     public void add(long current, long total, long totalTimeInMillis) {
@@ -60,6 +74,9 @@ public class WarmerStats implements Streamable, ToXContent {
         this.current += warmerStats.current;
         this.total += warmerStats.total;
         this.totalTimeInMillis += warmerStats.totalTimeInMillis;
+        this.globalOrdinalsTotal += warmerStats.globalOrdinalsTotal;
+        this.globalOrdinalsTimeInMillis += warmerStats.globalOrdinalsTimeInMillis;
+        this.globalOrdinalsTimeouts += warmerStats.globalOrdinalsTimeouts;
     }
 
     public long current() {
@@ -87,6 +104,35 @@ public class WarmerStats implements Streamable, ToXContent {
         return new TimeValue(totalTimeInMillis);
     }
 
+    /**
+     * The total number of fields whose global ordinals were eagerly built by the warmer.
+     */
+    public long globalOrdinalsTotal() {
+        return this.globalOrdinalsTotal;
+    }
+
+    /**
+     * The total time spent eagerly building global ordinals (in milliseconds).
+     */
+    public long globalOrdinalsTimeInMillis() {
+        return this.globalOrdinalsTimeInMillis;
+    }
+
+    /**
+     * The total time spent eagerly building global ordinals.
+     */
+    public TimeValue globalOrdinalsTime() {
+        return new TimeValue(globalOrdinalsTimeInMillis);
+    }
+
+    /**
+     * The number of times a searcher was published before its global ordinals were built
+     * because the warm-up exceeded <tt>index.warmer.global_ordinals.timeout</tt>.
+     */
+    public long globalOrdinalsTimeouts() {
+        return this.globalOrdinalsTimeouts;
+    }
+
     public static WarmerStats readWarmerStats(StreamInput in) throws IOException {
         WarmerStats refreshStats = new WarmerStats();
         refreshStats.readFrom(in);
@@ -99,6 +145,11 @@ public class WarmerStats implements Streamable, ToXContent {
         builder.field(Fields.CURRENT, current);
         builder.field(Fields.TOTAL, total);
         builder.timeValueField(Fields.TOTAL_TIME_IN_MILLIS, Fields.TOTAL_TIME, totalTimeInMillis);
+        builder.startObject(Fields.GLOBAL_ORDINALS);
+        builder.field(Fields.TOTAL, globalOrdinalsTotal);
+        builder.timeValueField(Fields.TOTAL_TIME_IN_MILLIS, Fields.TOTAL_TIME, globalOrdinalsTimeInMillis);
+        builder.field(Fields.TIMEOUTS, globalOrdinalsTimeouts);
+        builder.endObject();
         builder.endObject();
         return builder;
     }
@@ -109,6 +160,8 @@ public class WarmerStats implements Streamable, ToXContent {
         static final XContentBuilderString TOTAL = new XContentBuilderString("total");
         static final XContentBuilderString TOTAL_TIME = new XContentBuilderString("total_time");
         static final XContentBuilderString TOTAL_TIME_IN_MILLIS = new XContentBuilderString("total_time_in_millis");
+        static final XContentBuilderString GLOBAL_ORDINALS = new XContentBuilderString("global_ordinals");
+        static final XContentBuilderString TIMEOUTS = new XContentBuilderString("timeouts");
     }
 
     @Override
@@ -116,6 +169,11 @@ public class WarmerStats implements Streamable, ToXContent {
         current = in.readVLong();
         total = in.readVLong();
         totalTimeInMillis = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_2_0_0)) {
+            globalOrdinalsTotal = in.readVLong();
+            globalOrdinalsTimeInMillis = in.readVLong();
+            globalOrdinalsTimeouts = in.readVLong();
+        }
     }
 
     @Override
@@ -123,5 +181,10 @@ public class WarmerStats implements Streamable, ToXContent {
         out.writeVLong(current);
         out.writeVLong(total);
         out.writeVLong(totalTimeInMillis);
+        if (out.getVersion().onOrAfter(Version.V_2_0_0)) {
+            out.writeVLong(globalOrdinalsTotal);
+            out.writeVLong(globalOrdinalsTimeInMillis);
+            out.writeVLong(globalOrdinalsTimeouts);
+        }
     }
 }
\ No newline at end of file
@@ -54,6 +54,7 @@ import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
@@ -70,8 +71,14 @@ import static org.elasticsearch.common.Strings.hasLength;
  * eviction to evict old reader associated cache entries as well as scheduler reaper to clean readers that
  * are no longer used or closed shards.
  * <p/>
- * Currently, the cache is only enabled for {@link SearchType#COUNT}, and can only be opted in on an index
- * level setting that can be dynamically changed and defaults to false.
+ * Currently, the cache is only enabled for {@link SearchType#COUNT} and for {@link SearchType#QUERY_THEN_FETCH}
+ * requests that do not ask for hits, and can only be opted in on an index level setting that can be dynamically
+ * changed and defaults to false.
+ * <p/>
+ * Cache keys are built from a normalized form of the request source, so that requests that only differ by the
+ * formatting of their source share the same entry. Requests that use rounded dates such as "now/d" can be cached
+ * too since the values these dates resolved to are part of the key: they share the same entry until the rounded
+ * value changes. Any other usage of "now" makes the request uncacheable.
  * <p/>
  * There are still several TODOs left in this class, some easily addressable, some more complex, but the support
  * is functional.
@@ -179,9 +186,11 @@ public class IndicesQueryCache extends AbstractComponent implements RemovalListe
         if (hasLength(request.templateSource())) {
             return false;
         }
-        // for now, only enable it for search type count
+        // for now, only enable it for search type count, or query then fetch when no hits are requested
         if (context.searchType() != SearchType.COUNT) {
-            return false;
+            if (context.searchType() != SearchType.QUERY_THEN_FETCH || context.size() != 0 || request.scroll() != null) {
+                return false;
+            }
         }
         IndexMetaData index = clusterService.state().getMetaData().index(request.index());
         if (index == null) { // in case we didn't yet have the cluster state, or it just got deleted
@@ -201,6 +210,7 @@ public class IndicesQueryCache extends AbstractComponent implements RemovalListe
         }
         // if now in millis is used (or in the future, a more generic "isDeterministic" flag
         // then we can't cache based on "now" key within the search request, as it is not deterministic
+        // rounded dates, eg. "now/d", are fine since the values they resolved to are part of the key
         if (context.nowInMillisUsed()) {
             return false;
         }
@@ -271,16 +281,19 @@ public class IndicesQueryCache extends AbstractComponent implements RemovalListe
         public final IndexShard shard; // use as identity equality
         public final long readerVersion; // use the reader version to now keep a reference to a "short" lived reader until its reaped
         public final BytesReference value;
+        public final long[] roundedNowValues; // the resolved values of rounded dates, eg. "now/d", in parsing order
 
-        Key(IndexShard shard, long readerVersion, BytesReference value) {
+        Key(IndexShard shard, long readerVersion, BytesReference value, long[] roundedNowValues) {
             this.shard = shard;
             this.readerVersion = readerVersion;
             this.value = value;
+            this.roundedNowValues = roundedNowValues;
         }
 
         @Override
         public long ramBytesUsed() {
-            return RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_LONG + value.length();
+            return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 3 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_LONG
+                    + value.length() + RamUsageEstimator.sizeOf(roundedNowValues);
         }
 
         @Override
@@ -296,6 +309,7 @@ public class IndicesQueryCache extends AbstractComponent implements RemovalListe
             if (readerVersion != key.readerVersion) return false;
             if (!shard.equals(key.shard)) return false;
             if (!value.equals(key.value)) return false;
+            if (!Arrays.equals(roundedNowValues, key.roundedNowValues)) return false;
             return true;
         }
 
@@ -304,6 +318,7 @@ public class IndicesQueryCache extends AbstractComponent implements RemovalListe
             int result = shard.hashCode();
             result = 31 * result + (int) (readerVersion ^ (readerVersion >>> 32));
             result = 31 * result + value.hashCode();
+            result = 31 * result + Arrays.hashCode(roundedNowValues);
             return result;
         }
     }
@@ -428,11 +443,10 @@ public class IndicesQueryCache extends AbstractComponent implements RemovalListe
     }
 
     private static Key buildKey(ShardSearchRequest request, SearchContext context) throws Exception {
-        // TODO: for now, this will create different keys for different JSON order
-        // TODO: tricky to get around this, need to parse and order all, which can be expensive
+        // the source is not enough to identify requests that use rounded dates, add the values they resolved to
         return new Key(context.indexShard(),
                 ((DirectoryReader) context.searcher().getIndexReader()).getVersion(),
-                request.cacheKey());
+                request.cacheKey(), context.roundedNowValues());
     }
 
     /**
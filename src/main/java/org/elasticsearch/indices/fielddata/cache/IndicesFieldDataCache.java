@@ -37,6 +37,8 @@ import org.elasticsearch.index.fielddata.AtomicFieldData;
 import org.elasticsearch.index.fielddata.FieldDataType;
 import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
+import org.elasticsearch.index.fielddata.ordinals.PreviousOrdinalMaps;
 import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.shard.ShardId;
@@ -121,6 +123,9 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
                 logger.error("Failed to call listener on field data cache unloading", e);
             }
         }
+        if (value instanceof GlobalOrdinalsIndexFieldData) {
+            ((GlobalOrdinalsIndexFieldData) value).onRemoval();
+        }
     }
 
     public static class FieldDataWeigher implements Weigher<Key, Accountable> {
@@ -143,6 +148,7 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
         final FieldDataType fieldDataType;
         private final Cache<Key, Accountable> cache;
         private final IndicesFieldDataCacheListener indicesFieldDataCacheListener;
+        private final PreviousOrdinalMaps previousOrdinalMaps = new PreviousOrdinalMaps();
 
         IndexFieldCache(ESLogger logger,final Cache<Key, Accountable> cache, IndicesFieldDataCacheListener indicesFieldDataCacheListener, IndexService indexService, Index index, FieldMapper.Names fieldNames, FieldDataType fieldDataType) {
             this.logger = logger;
@@ -271,6 +277,11 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
         public void clear(Object coreCacheKey) {
             cache.invalidate(new Key(this, coreCacheKey));
         }
+
+        @Override
+        public PreviousOrdinalMaps previousOrdinalMaps() {
+            return previousOrdinalMaps;
+        }
     }
 
     public static class Key {
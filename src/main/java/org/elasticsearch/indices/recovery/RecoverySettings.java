@@ -45,6 +45,7 @@ public class RecoverySettings extends AbstractComponent {
     public static final String INDICES_RECOVERY_CONCURRENT_STREAMS = "indices.recovery.concurrent_streams";
     public static final String INDICES_RECOVERY_CONCURRENT_SMALL_FILE_STREAMS = "indices.recovery.concurrent_small_file_streams";
     public static final String INDICES_RECOVERY_MAX_BYTES_PER_SEC = "indices.recovery.max_bytes_per_sec";
+    public static final String INDICES_RECOVERY_CONCURRENT_TRANSLOG_REPLAY = "indices.recovery.concurrent_translog_replay";
 
     public static final long SMALL_FILE_CUTOFF_BYTES = ByteSizeValue.parseBytesSizeValue("5mb").bytes();
 
@@ -65,6 +66,8 @@ public class RecoverySettings extends AbstractComponent {
     private final ThreadPoolExecutor concurrentStreamPool;
     private final ThreadPoolExecutor concurrentSmallFileStreamPool;
 
+    private volatile int concurrentTranslogReplay;
+
     private volatile ByteSizeValue maxBytesPerSec;
     private volatile SimpleRateLimiter rateLimiter;
 
@@ -82,6 +85,8 @@ public class RecoverySettings extends AbstractComponent {
         this.concurrentSmallFileStreams = componentSettings.getAsInt("concurrent_small_file_streams", settings.getAsInt("index.shard.recovery.concurrent_small_file_streams", 2));
         this.concurrentSmallFileStreamPool = EsExecutors.newScaling(0, concurrentSmallFileStreams, 60, TimeUnit.SECONDS, EsExecutors.daemonThreadFactory(settings, "[small_file_recovery_stream]"));
 
+        this.concurrentTranslogReplay = componentSettings.getAsInt("concurrent_translog_replay", Math.min(4, EsExecutors.boundedNumberOfProcessors(settings)));
+
         this.maxBytesPerSec = componentSettings.getAsBytesSize("max_bytes_per_sec", componentSettings.getAsBytesSize("max_size_per_sec", new ByteSizeValue(20, ByteSizeUnit.MB)));
         if (maxBytesPerSec.bytes() <= 0) {
             rateLimiter = null;
@@ -89,8 +94,8 @@ public class RecoverySettings extends AbstractComponent {
             rateLimiter = new SimpleRateLimiter(maxBytesPerSec.mbFrac());
         }
 
-        logger.debug("using max_bytes_per_sec[{}], concurrent_streams [{}], file_chunk_size [{}], translog_size [{}], translog_ops [{}], and compress [{}]",
-                maxBytesPerSec, concurrentStreams, fileChunkSize, translogSize, translogOps, compress);
+        logger.debug("using max_bytes_per_sec[{}], concurrent_streams [{}], file_chunk_size [{}], translog_size [{}], translog_ops [{}], concurrent_translog_replay [{}], and compress [{}]",
+                maxBytesPerSec, concurrentStreams, fileChunkSize, translogSize, translogOps, concurrentTranslogReplay, compress);
 
         nodeSettingsService.addListener(new ApplySettings());
     }
@@ -127,6 +132,13 @@ public class RecoverySettings extends AbstractComponent {
         return concurrentSmallFileStreamPool;
     }
 
+    /**
+     * The number of partitions translog operations are concurrently replayed with on a recovering shard.
+     */
+    public int concurrentTranslogReplay() {
+        return concurrentTranslogReplay;
+    }
+
     public RateLimiter rateLimiter() {
         return rateLimiter;
     }
@@ -184,6 +196,12 @@ public class RecoverySettings extends AbstractComponent {
                 RecoverySettings.this.concurrentSmallFileStreams = concurrentSmallFileStreams;
                 RecoverySettings.this.concurrentSmallFileStreamPool.setMaximumPoolSize(concurrentSmallFileStreams);
             }
+
+            int concurrentTranslogReplay = settings.getAsInt(INDICES_RECOVERY_CONCURRENT_TRANSLOG_REPLAY, RecoverySettings.this.concurrentTranslogReplay);
+            if (concurrentTranslogReplay != RecoverySettings.this.concurrentTranslogReplay) {
+                logger.info("updating [indices.recovery.concurrent_translog_replay] from [{}] to [{}]", RecoverySettings.this.concurrentTranslogReplay, concurrentTranslogReplay);
+                RecoverySettings.this.concurrentTranslogReplay = concurrentTranslogReplay;
+            }
         }
     }
 }
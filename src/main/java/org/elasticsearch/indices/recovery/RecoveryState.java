@@ -22,6 +22,7 @@ package org.elasticsearch.indices.recovery;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
 
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.ToXContent;
@@ -327,6 +328,8 @@ public class RecoveryState implements ToXContent, Streamable {
         static final XContentBuilderString TRANSLOG = new XContentBuilderString("translog");
         static final XContentBuilderString START = new XContentBuilderString("start");
         static final XContentBuilderString RECOVERED = new XContentBuilderString("recovered");
+        static final XContentBuilderString REPLAY_CONCURRENCY = new XContentBuilderString("replay_concurrency");
+        static final XContentBuilderString OPERATIONS_PER_SEC = new XContentBuilderString("operations_per_sec");
         static final XContentBuilderString CHECK_INDEX_TIME = new XContentBuilderString("check_index_time");
         static final XContentBuilderString CHECK_INDEX_TIME_IN_MILLIS = new XContentBuilderString("check_index_time_in_millis");
         static final XContentBuilderString LENGTH = new XContentBuilderString("length");
@@ -429,6 +432,7 @@ public class RecoveryState implements ToXContent, Streamable {
         private long startTime = 0;
         private long time;
         private volatile int currentTranslogOperations = 0;
+        private volatile int replayConcurrency = 1;
 
         public long startTime() {
             return this.startTime;
@@ -446,11 +450,12 @@ public class RecoveryState implements ToXContent, Streamable {
             this.time = time;
         }
 
-        public void addTranslogOperations(int count) {
+        // operations might be replayed concurrently, see TranslogReplayer
+        public synchronized void addTranslogOperations(int count) {
             this.currentTranslogOperations += count;
         }
 
-        public void incrementTranslogOperations() {
+        public synchronized void incrementTranslogOperations() {
             this.currentTranslogOperations++;
         }
 
@@ -458,6 +463,25 @@ public class RecoveryState implements ToXContent, Streamable {
             return this.currentTranslogOperations;
         }
 
+        public int replayConcurrency() {
+            return this.replayConcurrency;
+        }
+
+        public void replayConcurrency(int replayConcurrency) {
+            this.replayConcurrency = replayConcurrency;
+        }
+
+        /**
+         * The number of translog operations replayed per second, <tt>0</tt> if no time has been recorded yet.
+         */
+        public double operationsPerSecond() {
+            long time = this.time;
+            if (time <= 0) {
+                return 0;
+            }
+            return currentTranslogOperations * 1000d / time;
+        }
+
         public static Translog readTranslog(StreamInput in) throws IOException {
             Translog translog = new Translog();
             translog.readFrom(in);
@@ -469,6 +493,9 @@ public class RecoveryState implements ToXContent, Streamable {
             startTime = in.readVLong();
             time = in.readVLong();
             currentTranslogOperations = in.readVInt();
+            if (in.getVersion().onOrAfter(Version.V_2_0_0)) {
+                replayConcurrency = in.readVInt();
+            }
         }
 
         @Override
@@ -476,12 +503,17 @@ public class RecoveryState implements ToXContent, Streamable {
             out.writeVLong(startTime);
             out.writeVLong(time);
             out.writeVInt(currentTranslogOperations);
+            if (out.getVersion().onOrAfter(Version.V_2_0_0)) {
+                out.writeVInt(replayConcurrency);
+            }
         }
 
         @Override
         public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
             builder.field(Fields.RECOVERED, currentTranslogOperations);
             builder.timeValueField(Fields.TOTAL_TIME_IN_MILLIS, Fields.TOTAL_TIME, time);
+            builder.field(Fields.REPLAY_CONCURRENCY, replayConcurrency);
+            builder.field(Fields.OPERATIONS_PER_SEC, operationsPerSecond());
             return builder;
         }
     }
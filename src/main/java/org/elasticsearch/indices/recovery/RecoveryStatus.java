@@ -32,12 +32,14 @@ import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.service.InternalIndexShard;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.StoreFileMetaData;
+import org.elasticsearch.index.translog.Translog;
 
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -71,6 +73,8 @@ public class RecoveryStatus extends AbstractRefCounted {
     private final ConcurrentMap<String, IndexOutput> openIndexOutputs = ConcurrentCollections.newConcurrentMap();
     private final Store.LegacyChecksums legacyChecksums = new Store.LegacyChecksums();
 
+    private TranslogReplayer translogReplayer;
+
     public RecoveryStatus(InternalIndexShard indexShard, DiscoveryNode sourceNode, RecoveryState state, RecoveryTarget.RecoveryListener listener) {
         super("recovery_status");
         this.recoveryId = idGenerator.incrementAndGet();
@@ -115,6 +119,25 @@ public class RecoveryStatus extends AbstractRefCounted {
         return store;
     }
 
+    /**
+     * Returns the replayer for the translog operations of this recovery, created with the given executor and
+     * concurrency on first use. Its partition workers are kept across the translog batches and stopped once the
+     * recovery is closed.
+     */
+    public synchronized TranslogReplayer translogReplayer(Executor executor, int concurrency) {
+        ensureRefCount();
+        if (translogReplayer == null) {
+            translogReplayer = new TranslogReplayer(executor, concurrency) {
+                @Override
+                protected void applyOperation(Translog.Operation operation) {
+                    indexShard.performRecoveryOperation(operation);
+                    state.getTranslog().incrementTranslogOperations();
+                }
+            };
+        }
+        return translogReplayer;
+    }
+
     /** set a thread that should be interrupted if the recovery is canceled */
     public void setWaitingRecoveryThread(Thread thread) {
         waitingRecoveryThread.set(thread);
@@ -240,6 +263,13 @@ public class RecoveryStatus extends AbstractRefCounted {
     @Override
     protected void closeInternal() {
         try {
+            final TranslogReplayer replayer;
+            synchronized (this) {
+                replayer = translogReplayer;
+            }
+            if (replayer != null) {
+                replayer.close();
+            }
             // clean open index outputs
             Iterator<Entry<String, IndexOutput>> iterator = openIndexOutputs.entrySet().iterator();
             while (iterator.hasNext()) {
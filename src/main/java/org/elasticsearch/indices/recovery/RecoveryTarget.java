@@ -30,6 +30,7 @@ import org.elasticsearch.common.StopWatch;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.store.OutputStreamIndexOutput;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
@@ -317,10 +318,14 @@ public class RecoveryTarget extends AbstractComponent {
         public void messageReceived(RecoveryTranslogOperationsRequest request, TransportChannel channel) throws Exception {
             try (RecoveriesCollection.StatusRef statusRef = onGoingRecoveries.getStatusSafe(request.recoveryId(), request.shardId())) {
                 final RecoveryStatus recoveryStatus = statusRef.status();
+                // the replayer and its workers are kept for the whole recovery
+                final TranslogReplayer replayer = recoveryStatus.translogReplayer(threadPool.generic(), recoverySettings.concurrentTranslogReplay());
+                recoveryStatus.state().getTranslog().replayConcurrency(replayer.concurrency());
                 for (Translog.Operation operation : request.operations()) {
-                    recoveryStatus.indexShard().performRecoveryOperation(operation);
-                    recoveryStatus.state().getTranslog().incrementTranslogOperations();
+                    replayer.add(operation);
                 }
+                // the source waits for our response before sending the next batch, so ordering across batches is kept
+                replayer.flush();
             }
             channel.sendResponse(TransportResponse.Empty.INSTANCE);
 
@@ -423,10 +428,12 @@ public class RecoveryTarget extends AbstractComponent {
                     recoverySettings.rateLimiter().pause(request.content().length());
                 }
                 BytesReference content = request.content();
-                if (!content.hasArray()) {
-                    content = content.toBytesArray();
+                if (content.hasArray()) {
+                    indexOutput.writeBytes(content.array(), content.arrayOffset(), content.length());
+                } else {
+                    // the chunk may span several network buffers, write them out as they are rather than copying them first
+                    content.writeTo(new OutputStreamIndexOutput(indexOutput));
                 }
-                indexOutput.writeBytes(content.array(), content.arrayOffset(), content.length());
                 recoveryStatus.state().getIndex().addRecoveredByteCount(content.length());
                 RecoveryState.File file = recoveryStatus.state().getIndex().file(request.name());
                 if (file != null) {
@@ -0,0 +1,282 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.recovery;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.math.MathUtils;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.translog.Translog;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays translog operations against a recovering shard. Operations are handed over (decoded) by a single
+ * thread and partitioned by the hash of their uid, each partition being applied in order by its own worker. This
+ * way operations on the same document are applied in the order they were added to the translog, while operations
+ * on different documents are applied concurrently.
+ * <p/>
+ * Delete by query operations act as a barrier, they are applied by the calling thread once all operations added
+ * before them have been applied. With a concurrency of <tt>1</tt> all operations are applied by the calling thread.
+ * <p/>
+ * A replayer is meant to be used for a whole recovery: {@link #flush()} waits for the operations added so far to be
+ * applied (for example at the end of a batch) and keeps the partition workers for the next operations. Operations
+ * must not be added concurrently. {@link #finish()} must be called once all operations have been added, and
+ * {@link #close()} on failure paths to make sure the partition workers are stopped.
+ */
+public abstract class TranslogReplayer implements Releasable {
+
+    private static final int QUEUE_SIZE = 1000;
+
+    /**
+     * How long to wait for room in a partition queue before checking whether its worker is still running
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Marks the end of the operations for a partition worker
+     */
+    private static final Translog.Operation END = new Translog.Delete();
+
+    private final Executor executor;
+    private final int concurrency;
+
+    // batches of a peer recovery are added from different threads, one after the other
+    private volatile BlockingQueue<Translog.Operation>[] queues;
+    private volatile CountDownLatch[] workersDone;
+    private int pending;
+    private final Object pendingMutex = new Object();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private volatile boolean finished;
+
+    public TranslogReplayer(Executor executor, int concurrency) {
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Applies a single operation, called concurrently for operations on different documents.
+     */
+    protected abstract void applyOperation(Translog.Operation operation) throws Exception;
+
+    public int concurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * Adds the next operation to replay, it might be applied asynchronously. Throws the failure of an earlier
+     * operation if one failed.
+     */
+    public void add(Translog.Operation operation) throws Exception {
+        assert !finished;
+        maybeRethrowFailure();
+        if (concurrency == 1) {
+            applyOperation(operation);
+            return;
+        }
+        if (operation.opType() == Translog.Operation.Type.DELETE_BY_QUERY) {
+            awaitPending();
+            maybeRethrowFailure();
+            applyOperation(operation);
+            return;
+        }
+        if (queues == null) {
+            startWorkers();
+        }
+        synchronized (pendingMutex) {
+            pending++;
+        }
+        if (!offer(MathUtils.mod(uid(operation).hashCode(), concurrency), operation)) {
+            maybeRethrowFailure();
+            throw new ElasticsearchIllegalStateException("translog replay worker stopped unexpectedly");
+        }
+    }
+
+    /**
+     * Waits for all added operations to be applied, keeping the partition workers for further operations. Throws the
+     * first failure that happened while applying operations, if any.
+     */
+    public void flush() throws Exception {
+        assert !finished;
+        awaitPending();
+        maybeRethrowFailure();
+    }
+
+    /**
+     * Waits for all added operations to be applied and stops the partition workers. Throws the first failure
+     * that happened while applying operations, if any.
+     */
+    public void finish() throws Exception {
+        stopWorkers();
+        maybeRethrowFailure();
+    }
+
+    /**
+     * Stops the partition workers without checking for failures, a noop if the replay was already finished.
+     */
+    @Override
+    public void close() {
+        try {
+            stopWorkers();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stopWorkers() throws InterruptedException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (queues != null) {
+            for (int i = 0; i < concurrency; i++) {
+                // a worker that is gone doesn't need to be told to stop
+                offer(i, END);
+            }
+            for (CountDownLatch workerDone : workersDone) {
+                workerDone.await();
+            }
+        }
+    }
+
+    /**
+     * Adds the operation to the queue of the given partition, waiting for room as long as the partition worker is
+     * running. Returns <tt>false</tt> if the worker stopped, in which case the operation wasn't added.
+     */
+    private boolean offer(int partition, Translog.Operation operation) throws InterruptedException {
+        while (!queues[partition].offer(operation, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (workersDone[partition].getCount() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void startWorkers() {
+        final BlockingQueue<Translog.Operation>[] queues = new BlockingQueue[concurrency];
+        final CountDownLatch[] workersDone = new CountDownLatch[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            queues[i] = new ArrayBlockingQueue<>(QUEUE_SIZE);
+            workersDone[i] = new CountDownLatch(1);
+        }
+        this.workersDone = workersDone;
+        this.queues = queues;
+        for (int i = 0; i < concurrency; i++) {
+            final BlockingQueue<Translog.Operation> queue = queues[i];
+            final CountDownLatch workerDone = workersDone[i];
+            try {
+                startWorker(queue, workerDone);
+            } catch (Throwable t) {
+                // the workers that couldn't be started are done already
+                for (int j = i; j < concurrency; j++) {
+                    workersDone[j].countDown();
+                }
+                throw t;
+            }
+        }
+    }
+
+    private void startWorker(final BlockingQueue<Translog.Operation> queue, final CountDownLatch workerDone) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Translog.Operation operation = queue.take();
+                        if (operation == END) {
+                            return;
+                        }
+                        try {
+                            // once an operation failed, the remaining ones are only drained
+                            if (failure.get() == null) {
+                                applyOperation(operation);
+                            }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            operationDone();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    failure.compareAndSet(null, e);
+                    Thread.currentThread().interrupt();
+                } finally {
+                    workerDone.countDown();
+                    // the operations left in the queue will never be applied, wake up anyone waiting for them
+                    synchronized (pendingMutex) {
+                        pendingMutex.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    private void operationDone() {
+        synchronized (pendingMutex) {
+            if (--pending == 0) {
+                pendingMutex.notifyAll();
+            }
+        }
+    }
+
+    private void awaitPending() throws InterruptedException {
+        synchronized (pendingMutex) {
+            // a worker only stops early after a failure, in which case the pending operations are not waited for
+            while (pending > 0 && failure.get() == null) {
+                pendingMutex.wait();
+            }
+        }
+    }
+
+    private void maybeRethrowFailure() throws Exception {
+        Throwable t = failure.get();
+        if (t == null) {
+            return;
+        }
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        throw new ElasticsearchException("failed to replay translog operation", t);
+    }
+
+    private static String uid(Translog.Operation operation) {
+        switch (operation.opType()) {
+            case CREATE:
+                Translog.Create create = (Translog.Create) operation;
+                return Uid.createUid(create.type(), create.id());
+            case SAVE:
+                Translog.Index index = (Translog.Index) operation;
+                return Uid.createUid(index.type(), index.id());
+            case DELETE:
+                return ((Translog.Delete) operation).uid().text();
+            default:
+                throw new ElasticsearchException("No uid for operation [" + operation + "]");
+        }
+    }
+}
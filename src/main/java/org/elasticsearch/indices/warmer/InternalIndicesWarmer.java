@@ -41,6 +41,13 @@ public class InternalIndicesWarmer extends AbstractComponent implements IndicesW
 
     public static final String INDEX_WARMER_ENABLED = "index.warmer.enabled";
 
+    /**
+     * The maximum time a refresh waits for eagerly loaded global ordinals to be built before the new searcher is
+     * published. Builds that exceed it keep running in the background. Defaults to <tt>-1</tt>, which waits until
+     * all global ordinals are built.
+     */
+    public static final String INDEX_WARMER_GLOBAL_ORDINALS_TIMEOUT = "index.warmer.global_ordinals.timeout";
+
     private final ThreadPool threadPool;
 
     private final ClusterService clusterService;
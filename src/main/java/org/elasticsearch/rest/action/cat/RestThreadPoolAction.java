@@ -54,6 +54,7 @@ public class RestThreadPoolAction extends AbstractCatAction {
             ThreadPool.Names.FLUSH,
             ThreadPool.Names.GENERIC,
             ThreadPool.Names.GET,
+            ThreadPool.Names.GLOBAL_ORDINALS,
             ThreadPool.Names.INDEX,
             ThreadPool.Names.MANAGEMENT,
             ThreadPool.Names.MERGE,
@@ -71,6 +72,7 @@ public class RestThreadPoolAction extends AbstractCatAction {
             "f",
             "ge",
             "g",
+            "go",
             "i",
             "ma",
             "m",
@@ -79,7 +81,6 @@ public class RestThreadPoolAction extends AbstractCatAction {
             "r",
             "s",
             "sn",
-            "sd",
             "su",
             "w"
     };
@@ -67,6 +67,7 @@ import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.indices.cache.query.IndicesQueryCache;
 import org.elasticsearch.indices.warmer.IndicesWarmer;
 import org.elasticsearch.indices.warmer.IndicesWarmer.WarmerContext;
+import org.elasticsearch.indices.warmer.InternalIndicesWarmer;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.dfs.CachedDfSource;
@@ -87,6 +88,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.common.Strings.hasLength;
@@ -887,8 +889,13 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                     warmUpGlobalOrdinals.put(indexName, fieldMapper);
                 }
             }
+            if (warmUpGlobalOrdinals.isEmpty()) {
+                return TerminationHandle.NO_WAIT;
+            }
+            final TimeValue timeout = indexMetaData.settings().getAsTime(InternalIndicesWarmer.INDEX_WARMER_GLOBAL_ORDINALS_TIMEOUT, TimeValue.timeValueMillis(-1));
             final IndexFieldDataService indexFieldDataService = indexShard.indexFieldDataService();
-            final Executor executor = threadPool.executor(executor());
+            // global ordinals get their own pool so that slow builds on large fields don't hold up per-segment warming
+            final Executor executor = threadPool.executor(ThreadPool.Names.GLOBAL_ORDINALS);
             final CountDownLatch latch = new CountDownLatch(warmUpGlobalOrdinals.size());
             for (final FieldMapper<?> fieldMapper : warmUpGlobalOrdinals.values()) {
                 executor.execute(new Runnable() {
@@ -898,8 +905,10 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                             final long start = System.nanoTime();
                             IndexFieldData.Global ifd = indexFieldDataService.getForField(fieldMapper);
                             ifd.loadGlobal(context.reader());
+                            final long took = System.nanoTime() - start;
+                            indexShard.warmerService().onGlobalOrdinalsWarmed(took);
                             if (indexShard.warmerService().logger().isTraceEnabled()) {
-                                indexShard.warmerService().logger().trace("warmed global ordinals for [{}], took [{}]", fieldMapper.names().name(), TimeValue.timeValueNanos(System.nanoTime() - start));
+                                indexShard.warmerService().logger().trace("warmed global ordinals for [{}], took [{}]", fieldMapper.names().name(), TimeValue.timeValueNanos(took));
                             }
                         } catch (Throwable t) {
                             indexShard.warmerService().logger().warn("failed to warm-up global ordinals for [{}]", t, fieldMapper.names().name());
@@ -912,7 +921,14 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
             return new TerminationHandle() {
                 @Override
                 public void awaitTermination() throws InterruptedException {
-                    latch.await();
+                    if (timeout.millis() < 0) {
+                        latch.await();
+                    } else if (!latch.await(timeout.millis(), TimeUnit.MILLISECONDS)) {
+                        // the pending builds keep running and populate the cache, only the refresh stops waiting for them
+                        indexShard.warmerService().onGlobalOrdinalsTimeout();
+                        indexShard.warmerService().logger().debug("global ordinals warm-up exceeded [{}], [{}] of [{}] fields still building",
+                                timeout, latch.getCount(), warmUpGlobalOrdinals.size());
+                    }
                 }
             };
         }
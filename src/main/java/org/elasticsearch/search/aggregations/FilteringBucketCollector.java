@@ -37,6 +37,7 @@ public class FilteringBucketCollector extends BucketCollector implements Releasa
     
     private final LongHash denseMap;
     private final BucketCollector delegate;
+    private LeafReaderContext pendingReader;
     
     /**
      * 
@@ -51,15 +52,24 @@ public class FilteringBucketCollector extends BucketCollector implements Releasa
         this.delegate = delegate;
     }
 
+    /**
+     * The delegate is only moved to the new reader once a document that
+     * belongs to a valid bucket is collected, so that segments which only
+     * contain pruned buckets do not pay the cost of setting up the delegate.
+     */
     @Override
     public final void setNextReader(LeafReaderContext reader) {
-        delegate.setNextReader(reader);
+        pendingReader = reader;
     }
 
     @Override
     public final void collect(int docId, long bucketOrdinal) throws IOException {
         long ordinal = denseMap.find(bucketOrdinal);
         if (ordinal >= 0) {
+            if (pendingReader != null) {
+                delegate.setNextReader(pendingReader);
+                pendingReader = null;
+            }
             delegate.collect(docId, ordinal);
         }
     }
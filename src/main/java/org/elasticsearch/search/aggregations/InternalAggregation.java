@@ -91,11 +91,17 @@ public abstract class InternalAggregation implements Aggregation, ToXContent, St
         private final List<InternalAggregation> aggregations;
         private final BigArrays bigArrays;
         private ScriptService scriptService;
+        private final boolean finalReduce;
 
         public ReduceContext(List<InternalAggregation> aggregations, BigArrays bigArrays, ScriptService scriptService) {
+            this(aggregations, bigArrays, scriptService, true);
+        }
+
+        public ReduceContext(List<InternalAggregation> aggregations, BigArrays bigArrays, ScriptService scriptService, boolean finalReduce) {
             this.aggregations = aggregations;
             this.bigArrays = bigArrays;
             this.scriptService = scriptService;
+            this.finalReduce = finalReduce;
         }
 
         public List<InternalAggregation> aggregations() {
@@ -109,6 +115,16 @@ public abstract class InternalAggregation implements Aggregation, ToXContent, St
         public ScriptService scriptService() {
             return scriptService;
         }
+
+        /**
+         * Returns <tt>true</tt> iff the current reduce phase is the final reduce phase. Partial reduce phases may be
+         * applied to a subset of the shard results as they arrive on the coordinating node, and their output is fed
+         * into a later reduce. Aggregations must not prune, filter or finalize their results unless this is the final
+         * reduce, otherwise the outcome would depend on the order the shard results arrived in.
+         */
+        public boolean isFinalReduce() {
+            return finalReduce;
+        }
     }
 
 
@@ -20,9 +20,11 @@
 package org.elasticsearch.search.aggregations;
 
 import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.util.packed.PackedInts;
-import org.apache.lucene.util.packed.PackedLongValues;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ByteArray;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 
 import java.io.IOException;
@@ -33,81 +35,155 @@ import java.util.List;
  * Records a "collect" stream for subsequent play-back using a per-segment
  * object to collect matches. Playback is fast because each collection
  * contains only the required matches for the current reader.
+ * <p>
+ * Doc ids are stored as variable-length deltas and bucket ordinals as
+ * variable-length longs in {@link BigArrays} pages, so that the recorded
+ * stream is both compact and accounted against the request circuit breaker.
  */
 public class RecordingPerReaderBucketCollector extends RecordingBucketCollector  {
 
     final List<PerSegmentCollects> perSegmentCollections = new ArrayList<>();
+    private final BigArrays bigArrays;
     private PerSegmentCollects currentCollection;
     private boolean recordingComplete;
-    
-    static class PerSegmentCollects {
-        LeafReaderContext readerContext;
-        PackedLongValues.Builder docs;
-        PackedLongValues.Builder buckets;
+
+    /**
+     * A growable sequence of variable-length encoded longs.
+     */
+    static class VLongSequence implements Releasable {
+
+        private final BigArrays bigArrays;
+        private ByteArray bytes;
+        private long size;
+
+        VLongSequence(BigArrays bigArrays) {
+            this.bigArrays = bigArrays;
+            this.bytes = bigArrays.newByteArray(1 << 8, false);
+        }
+
+        /** Append <code>count</code> zeros, which are encoded on a single byte each. */
+        void addZeros(long count) {
+            bytes = bigArrays.grow(bytes, size + count);
+            bytes.fill(size, size + count, (byte) 0);
+            size += count;
+        }
+
+        void add(long value) {
+            assert value >= 0;
+            bytes = bigArrays.grow(bytes, size + 10);
+            while ((value & ~0x7FL) != 0) {
+                bytes.set(size++, (byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.set(size++, (byte) value);
+        }
+
+        Reader reader() {
+            return new Reader();
+        }
+
+        long ramBytesUsed() {
+            return bytes.ramBytesUsed();
+        }
+
+        @Override
+        public void close() throws ElasticsearchException {
+            Releasables.close(bytes);
+        }
+
+        class Reader {
+
+            private long position;
+
+            long next() {
+                assert position < size;
+                byte b = bytes.get(position++);
+                long value = b & 0x7F;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = bytes.get(position++);
+                    value |= (b & 0x7FL) << shift;
+                }
+                return value;
+            }
+        }
+    }
+
+    static class PerSegmentCollects implements Releasable {
+        final LeafReaderContext readerContext;
+        final BigArrays bigArrays;
+        VLongSequence docs;
+        VLongSequence buckets;
+        long numDocs;
         int lastDocId = 0;
 
-        PerSegmentCollects(LeafReaderContext readerContext) {
+        PerSegmentCollects(LeafReaderContext readerContext, BigArrays bigArrays) {
             this.readerContext = readerContext;
+            this.bigArrays = bigArrays;
         }
 
         void collect(int doc, long owningBucketOrdinal) throws IOException {
             if (docs == null) {
-                // TODO unclear what might be reasonable constructor args to pass to this collection
-                // No way of accurately predicting how many docs will be collected 
-                docs = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+                // No way of accurately predicting how many docs will be collected
+                docs = new VLongSequence(bigArrays);
             }
-            // Store as delta-encoded for better compression
+            // Docs come in order, store as delta-encoded for better compression
+            assert doc >= lastDocId;
             docs.add(doc - lastDocId);
             lastDocId = doc;
             if (buckets == null) {
                 if (owningBucketOrdinal != 0) {
                     // Store all of the prior bucketOrds (which up until now have
                     // all been zero based)
-                    buckets = PackedLongValues.packedBuilder(PackedInts.COMPACT);
-                    for (int i = 0; i < docs.size() - 1; i++) {
-                        buckets.add(0);
-                    }
+                    buckets = new VLongSequence(bigArrays);
+                    buckets.addZeros(numDocs);
                     // record the new non-zero bucketID
                     buckets.add(owningBucketOrdinal);
                 }
             } else {
                 buckets.add(owningBucketOrdinal);
             }
-        }
-        void endCollect() {
+            ++numDocs;
         }
 
         boolean hasItems() {
             return docs != null;
         }
 
+        long ramBytesUsed() {
+            long ramBytesUsed = 0;
+            if (docs != null) {
+                ramBytesUsed += docs.ramBytesUsed();
+            }
+            if (buckets != null) {
+                ramBytesUsed += buckets.ramBytesUsed();
+            }
+            return ramBytesUsed;
+        }
+
         void replay(BucketCollector collector) throws IOException {
-            lastDocId = 0;
             collector.setNextReader(readerContext);
             if (!hasItems()) {
                 return;
             }
-            if (buckets == null) {
-                final PackedLongValues.Iterator docsIter = docs.build().iterator();
-                while (docsIter.hasNext()) {
-                    lastDocId += (int) docsIter.next();
-                    collector.collect(lastDocId, 0);
-                }
-            } else {
-                assert docs.size() == buckets.size();
-                final PackedLongValues.Iterator docsIter = docs.build().iterator();
-                final PackedLongValues.Iterator bucketsIter = buckets.build().iterator();
-                while (docsIter.hasNext()) {
-                    lastDocId += (int) docsIter.next();
-                    collector.collect(lastDocId, bucketsIter.next());
-                }
+            final VLongSequence.Reader docsReader = docs.reader();
+            final VLongSequence.Reader bucketsReader = buckets == null ? null : buckets.reader();
+            int doc = 0;
+            for (long i = 0; i < numDocs; ++i) {
+                doc += (int) docsReader.next();
+                collector.collect(doc, bucketsReader == null ? 0 : bucketsReader.next());
             }
         }
+
+        @Override
+        public void close() throws ElasticsearchException {
+            Releasables.close(docs, buckets);
+        }
     }
     
     public RecordingPerReaderBucketCollector(AggregationContext context) {
         // Call this method to achieve better compression in the recorded arrays of matches
-        context.ensureScoreDocsInOrder();        
+        context.ensureScoreDocsInOrder();
+        this.bigArrays = context.bigArrays();
     }
 
     @Override
@@ -119,13 +195,12 @@ public class RecordingPerReaderBucketCollector extends RecordingBucketCollector
             return;
         }
         stowLastSegmentCollection();
-        currentCollection = new PerSegmentCollects(reader);
+        currentCollection = new PerSegmentCollects(reader, bigArrays);
     }
 
     private void stowLastSegmentCollection() {
         if (currentCollection != null) {
             if (currentCollection.hasItems()) {
-                currentCollection.endCollect();
                 perSegmentCollections.add(currentCollection);
             }
             currentCollection = null;
@@ -155,7 +230,22 @@ public class RecordingPerReaderBucketCollector extends RecordingBucketCollector
         stowLastSegmentCollection();
     }
 
+    /**
+     * Return the amount of memory used by the recorded stream.
+     */
+    public long ramBytesUsed() {
+        long ramBytesUsed = currentCollection == null ? 0 : currentCollection.ramBytesUsed();
+        for (PerSegmentCollects collection : perSegmentCollections) {
+            ramBytesUsed += collection.ramBytesUsed();
+        }
+        return ramBytesUsed;
+    }
+
     @Override
     public void close() throws ElasticsearchException {
-    }    
+        Releasables.close(currentCollection);
+        Releasables.close(perSegmentCollections);
+        perSegmentCollections.clear();
+        currentCollection = null;
+    }
 }
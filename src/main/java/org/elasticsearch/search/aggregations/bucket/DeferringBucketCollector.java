@@ -105,6 +105,8 @@ public class DeferringBucketCollector extends BucketCollector implements Releasa
             }
         };
 
+        // release the filter of a previous replay before building the new one
+        Releasables.close(filteredCollector);
         filteredCollector = new FilteringBucketCollector(survivingBucketOrds, subs, context.bigArrays());
         try {
             recording.replayCollection(filteredCollector);
@@ -233,7 +233,8 @@ public class InternalGeoHashGrid extends InternalAggregation implements GeoHashG
             }
         }
 
-        final int size = (int) Math.min(requiredSize, buckets.size());
+        // partial reduces keep every cell, the top cells are only picked on the final reduce
+        final int size = reduceContext.isFinalReduce() ? (int) Math.min(requiredSize, buckets.size()) : (int) buckets.size();
         BucketPriorityQueue ordered = new BucketPriorityQueue(size);
         for (LongObjectPagedHashMap.Cursor<List<Bucket>> cursor : buckets) {
             List<Bucket> sameCellBuckets = cursor.value;
@@ -18,18 +18,26 @@
  */
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.util.CollectionUtil;
+import org.apache.lucene.util.NumericUtils;
 import org.elasticsearch.common.inject.internal.Nullable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.rounding.Rounding;
 import org.elasticsearch.common.util.LongHash;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.core.DateFieldMapper;
+import org.elasticsearch.index.mapper.core.LongFieldMapper;
+import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.FieldContext;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.aggregations.support.ValuesSourceAggregatorFactory;
 import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
@@ -37,12 +45,19 @@ import org.elasticsearch.search.aggregations.support.format.ValueFormatter;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 public class HistogramAggregator extends BucketsAggregator {
 
+    /**
+     * Maximum number of buckets that a segment may span in order for its
+     * buckets to be computed up-front rather than on a per-value basis.
+     */
+    static final int MAX_SEGMENT_BUCKETS = 64;
+
     private final ValuesSource.Numeric valuesSource;
     private final @Nullable ValueFormatter formatter;
     private final Rounding rounding;
@@ -53,12 +68,21 @@ public class HistogramAggregator extends BucketsAggregator {
     private final ExtendedBounds extendedBounds;
     private final InternalHistogram.Factory histogramFactory;
 
+    private final @Nullable SegmentBucketsSource segmentBucketsSource;
+
     private final LongHash bucketOrds;
     private SortedNumericDocValues values;
 
+    // buckets of the current segment, computed on the first collected document and only set if the segment spans few buckets
+    private LeafReaderContext reader;
+    private boolean segmentBucketsLoaded;
+    private SegmentBuckets segmentBuckets;
+    private long[] segmentBucketOrds;
+
     public HistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, InternalOrder order,
                                boolean keyed, long minDocCount, @Nullable ExtendedBounds extendedBounds,
                                @Nullable ValuesSource.Numeric valuesSource, @Nullable ValueFormatter formatter,
+                               @Nullable SegmentBucketsSource segmentBucketsSource,
                                long initialCapacity, InternalHistogram.Factory<?> histogramFactory,
                                AggregationContext aggregationContext, Aggregator parent, Map<String, Object> metaData) {
 
@@ -71,6 +95,7 @@ public class HistogramAggregator extends BucketsAggregator {
         this.valuesSource = valuesSource;
         this.formatter = formatter;
         this.histogramFactory = histogramFactory;
+        this.segmentBucketsSource = segmentBucketsSource;
 
         bucketOrds = new LongHash(initialCapacity, aggregationContext.bigArrays());
     }
@@ -83,28 +108,74 @@ public class HistogramAggregator extends BucketsAggregator {
     @Override
     public void setNextReader(LeafReaderContext reader) {
         values = valuesSource.longValues();
+        this.reader = reader;
+        segmentBucketsLoaded = false;
+        segmentBuckets = null;
+        segmentBucketOrds = null;
+    }
+
+    private void loadSegmentBuckets() {
+        segmentBucketsLoaded = true;
+        if (segmentBucketsSource != null) {
+            try {
+                segmentBuckets = segmentBucketsSource.get(reader);
+            } catch (IOException e) {
+                throw new AggregationExecutionException("Failed to read the range of [" + segmentBucketsSource.indexedField + "] for [" + name + "]", e);
+            }
+            if (segmentBuckets != null) {
+                segmentBucketOrds = new long[segmentBuckets.keys.length];
+                Arrays.fill(segmentBucketOrds, -1);
+            }
+        }
+    }
+
+    /**
+     * Return the index of the bucket of the current segment that contains
+     * <code>value</code> or -1 if buckets have not been computed for this value.
+     */
+    private int segmentBucket(long value) {
+        final SegmentBuckets segmentBuckets = this.segmentBuckets;
+        if (segmentBuckets == null || value < segmentBuckets.starts[0] || value > segmentBuckets.max) {
+            return -1;
+        } else if (segmentBuckets.starts.length == 1) {
+            return 0;
+        }
+        final int index = Arrays.binarySearch(segmentBuckets.starts, value);
+        return index >= 0 ? index : -2 - index;
     }
 
     @Override
     public void collect(int doc, long owningBucketOrdinal) throws IOException {
         assert owningBucketOrdinal == 0;
+        if (segmentBucketsLoaded == false) {
+            loadSegmentBuckets();
+        }
         values.setDocument(doc);
         final int valuesCount = values.count();
 
         long previousKey = Long.MIN_VALUE;
         for (int i = 0; i < valuesCount; ++i) {
             long value = values.valueAt(i);
-            long key = rounding.roundKey(value);
+            final int segmentBucket = segmentBucket(value);
+            long key = segmentBucket >= 0 ? segmentBuckets.keys[segmentBucket] : rounding.roundKey(value);
             assert key >= previousKey;
             if (key == previousKey) {
                 continue;
             }
-            long bucketOrd = bucketOrds.add(key);
-            if (bucketOrd < 0) { // already seen
-                bucketOrd = -1 - bucketOrd;
+            long bucketOrd = segmentBucket >= 0 ? segmentBucketOrds[segmentBucket] : -1;
+            if (bucketOrd >= 0) {
                 collectExistingBucket(doc, bucketOrd);
             } else {
-                collectBucket(doc, bucketOrd);
+                bucketOrd = bucketOrds.add(key);
+                if (bucketOrd < 0) { // already seen
+                    bucketOrd = -1 - bucketOrd;
+                    collectExistingBucket(doc, bucketOrd);
+                } else {
+                    collectBucket(doc, bucketOrd);
+                }
+                if (segmentBucket >= 0) {
+                    segmentBucketOrds[segmentBucket] = bucketOrd;
+                }
             }
             previousKey = key;
         }
@@ -136,6 +207,98 @@ public class HistogramAggregator extends BucketsAggregator {
         Releasables.close(bucketOrds);
     }
 
+    /**
+     * Since rounding is monotonic, the values of a segment that fall into the same
+     * bucket form a contiguous range. When the segment spans few buckets, the start
+     * of each of these ranges is computed so that values can be mapped to their key
+     * with a binary search instead of being rounded and hashed one by one.
+     */
+    static final class SegmentBuckets {
+
+        final long[] starts;
+        final long[] keys;
+        final long max;
+
+        SegmentBuckets(long[] starts, long[] keys, long max) {
+            this.starts = starts;
+            this.keys = keys;
+            this.max = max;
+        }
+
+        /**
+         * Compute the buckets of a segment whose values are in <code>[min, max]</code>,
+         * or return null if it spans more than {@link #MAX_SEGMENT_BUCKETS} buckets.
+         */
+        static SegmentBuckets compute(Rounding rounding, long min, long max) {
+            long[] starts = new long[1];
+            long[] keys = new long[1];
+            int count = 0;
+            final long maxKey = rounding.roundKey(max);
+            long start = min;
+            while (true) {
+                if (count == MAX_SEGMENT_BUCKETS) {
+                    // the segment spans too many buckets
+                    return null;
+                }
+                final long key = rounding.roundKey(start);
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count << 1);
+                    keys = Arrays.copyOf(keys, count << 1);
+                }
+                starts[count] = start;
+                keys[count] = key;
+                ++count;
+                if (key == maxKey) {
+                    break;
+                }
+                // binary search for the first value that does not round to key
+                long lo = start, hi = max;
+                while (lo + 1 < hi) {
+                    final long mid = (lo & hi) + ((lo ^ hi) >> 1);
+                    if (rounding.roundKey(mid) == key) {
+                        lo = mid;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                start = hi;
+            }
+            return new SegmentBuckets(Arrays.copyOf(starts, count), Arrays.copyOf(keys, count), max);
+        }
+    }
+
+    /**
+     * Reads the range of values of segments from their terms in order to compute their {@link SegmentBuckets}.
+     * A single instance is shared by all the aggregators that a factory creates, so that when the histogram is
+     * under a multi-bucket aggregator, the buckets of a segment are computed once rather than once per parent
+     * bucket. Since these aggregators visit segments in the same order, only the last segment is cached.
+     */
+    static final class SegmentBucketsSource {
+
+        private final String indexedField;
+        private final Rounding rounding;
+
+        private LeafReaderContext reader;
+        private SegmentBuckets buckets;
+
+        SegmentBucketsSource(String indexedField, Rounding rounding) {
+            this.indexedField = indexedField;
+            this.rounding = rounding;
+        }
+
+        /**
+         * Return the buckets of the given segment, or null if they can't be computed up-front.
+         */
+        SegmentBuckets get(LeafReaderContext reader) throws IOException {
+            if (reader != this.reader) {
+                final Terms terms = reader.reader().terms(indexedField);
+                buckets = terms == null ? null : SegmentBuckets.compute(rounding, NumericUtils.getMinLong(terms), NumericUtils.getMaxLong(terms));
+                this.reader = reader;
+            }
+            return buckets;
+        }
+    }
+
     public static class Factory extends ValuesSourceAggregatorFactory<ValuesSource.Numeric, Map<String, Object>> {
 
         private final Rounding rounding;
@@ -144,6 +307,7 @@ public class HistogramAggregator extends BucketsAggregator {
         private final long minDocCount;
         private final ExtendedBounds extendedBounds;
         private final InternalHistogram.Factory<?> histogramFactory;
+        private SegmentBucketsSource segmentBucketsSource;
 
         public Factory(String name, ValuesSourceConfig<ValuesSource.Numeric> config,
                        Rounding rounding, InternalOrder order, boolean keyed, long minDocCount,
@@ -160,7 +324,7 @@ public class HistogramAggregator extends BucketsAggregator {
 
         @Override
         protected Aggregator createUnmapped(AggregationContext aggregationContext, Aggregator parent, Map<String, Object> metaData) {
-            return new HistogramAggregator(name, factories, rounding, order, keyed, minDocCount, null, null, config.formatter(), 0, histogramFactory, aggregationContext, parent, metaData);
+            return new HistogramAggregator(name, factories, rounding, order, keyed, minDocCount, null, null, config.formatter(), null, 0, histogramFactory, aggregationContext, parent, metaData);
         }
 
         @Override
@@ -180,7 +344,34 @@ public class HistogramAggregator extends BucketsAggregator {
                 extendedBounds.processAndValidate(name, aggregationContext.searchContext(), config.parser());
                 roundedBounds = extendedBounds.round(rounding);
             }
-            return new HistogramAggregator(name, factories, rounding, order, keyed, minDocCount, roundedBounds, valuesSource, config.formatter(), estimatedBucketCount, histogramFactory, aggregationContext, parent, metaData);
+            return new HistogramAggregator(name, factories, rounding, order, keyed, minDocCount, roundedBounds, valuesSource, config.formatter(), segmentBucketsSource(), estimatedBucketCount, histogramFactory, aggregationContext, parent, metaData);
+        }
+
+        private SegmentBucketsSource segmentBucketsSource() {
+            if (segmentBucketsSource == null) {
+                final String indexedField = indexedField();
+                if (indexedField != null) {
+                    segmentBucketsSource = new SegmentBucketsSource(indexedField, rounding);
+                }
+            }
+            return segmentBucketsSource;
+        }
+
+        /**
+         * Return the name of the indexed field that the range of values of a
+         * segment can be read from, or null if values are not indexed as longs
+         * or are modified by a script.
+         */
+        private String indexedField() {
+            final FieldContext fieldContext = config.fieldContext();
+            if (config.script() != null || fieldContext == null || fieldContext.mapper() == null) {
+                return null;
+            }
+            final FieldMapper<?> mapper = fieldContext.mapper();
+            if ((mapper instanceof LongFieldMapper || mapper instanceof DateFieldMapper) && mapper.fieldType().indexOptions() != IndexOptions.NONE) {
+                return mapper.names().indexName();
+            }
+            return null;
         }
 
     }
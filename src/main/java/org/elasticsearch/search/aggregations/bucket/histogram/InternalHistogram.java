@@ -317,14 +317,14 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         for (LongObjectPagedHashMap.Cursor<List<B>> cursor : bucketsByKey) {
             List<B> sameTermBuckets = cursor.value;
             B bucket = sameTermBuckets.get(0).reduce(sameTermBuckets, reduceContext);
-            if (bucket.getDocCount() >= minDocCount) {
+            if (bucket.getDocCount() >= minDocCount || reduceContext.isFinalReduce() == false) {
                 reducedBuckets.add(bucket);
             }
         }
         bucketsByKey.close();
 
-        // adding empty buckets in needed
-        if (minDocCount == 0) {
+        // adding empty buckets in needed, partial reduces leave this to the final reduce
+        if (minDocCount == 0 && reduceContext.isFinalReduce()) {
             CollectionUtil.introSort(reducedBuckets, order.asc ? InternalOrder.KEY_ASC.comparator() : InternalOrder.KEY_DESC.comparator());
             List<B> list = order.asc ? reducedBuckets : Lists.reverse(reducedBuckets);
             B lastBucket = null;
@@ -19,13 +19,26 @@
 package org.elasticsearch.search.aggregations.bucket.range;
 
 import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.NumericRangeFilter;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.InPlaceMergeSorter;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lucene.docset.DocIdSets;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.core.DateFieldMapper;
+import org.elasticsearch.index.mapper.core.LongFieldMapper;
+import org.elasticsearch.index.mapper.core.NumberFieldMapper;
 import org.elasticsearch.search.aggregations.*;
 import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.FieldContext;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.aggregations.support.ValuesSourceAggregatorFactory;
 import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
@@ -44,6 +57,11 @@ import java.util.Map;
  */
 public class RangeAggregator extends BucketsAggregator {
 
+    /**
+     * Maximum number of ranges for which matches may be counted through filters.
+     */
+    static final int MAX_FILTER_RANGES = 16;
+
     public static class Range {
 
         public String key;
@@ -87,6 +105,12 @@ public class RangeAggregator extends BucketsAggregator {
     private final InternalRange.Factory rangeFactory;
     private SortedNumericDoubleValues values;
 
+    // only set when matches are counted through filters rather than collected
+    private final @Nullable Filter[] rangeFilters;
+    private LeafReaderContext currentReader;
+    private FixedBitSet matchingDocs;
+    private int numMatchingDocs;
+
     final double[] maxTo;
 
     public RangeAggregator(String name,
@@ -96,6 +120,7 @@ public class RangeAggregator extends BucketsAggregator {
                            InternalRange.Factory rangeFactory,
                            List<Range> ranges,
                            boolean keyed,
+                           @Nullable NumberFieldMapper<?> filterMapper,
                            AggregationContext aggregationContext,
                            Aggregator parent,
                            Map<String, Object> metaData) {
@@ -120,6 +145,26 @@ public class RangeAggregator extends BucketsAggregator {
             maxTo[i] = Math.max(this.ranges[i].to,maxTo[i-1]);
         }
 
+        if (filterMapper != null) {
+            rangeFilters = new Filter[this.ranges.length];
+            for (int i = 0; i < this.ranges.length; ++i) {
+                rangeFilters[i] = context.searchContext().filterCache().cache(rangeFilter(filterMapper, this.ranges[i]));
+            }
+        } else {
+            rangeFilters = null;
+        }
+    }
+
+    /**
+     * Build a filter that matches the same documents as the given range on
+     * a field whose values are indexed as longs.
+     */
+    private static Filter rangeFilter(NumberFieldMapper<?> mapper, Range range) {
+        // for long values, value >= from is equivalent to value >= ceil(from)
+        // and value < to is equivalent to value < ceil(to)
+        final Long from = range.from == Double.NEGATIVE_INFINITY ? null : (long) Math.ceil(range.from);
+        final Long to = range.to == Double.POSITIVE_INFINITY ? null : (long) Math.ceil(range.to);
+        return NumericRangeFilter.newLongRange(mapper.names().indexName(), mapper.precisionStep(), from, to, true, false);
     }
 
     @Override
@@ -129,7 +174,56 @@ public class RangeAggregator extends BucketsAggregator {
 
     @Override
     public void setNextReader(LeafReaderContext reader) {
-        values = valuesSource.doubleValues();
+        if (rangeFilters != null) {
+            countMatchingDocs();
+            currentReader = reader;
+            final int maxDoc = reader.reader().maxDoc();
+            if (matchingDocs == null || matchingDocs.length() < maxDoc) {
+                matchingDocs = new FixedBitSet(maxDoc);
+            } else if (numMatchingDocs > 0) {
+                matchingDocs.clear(0, matchingDocs.length());
+            }
+            numMatchingDocs = 0;
+        } else {
+            values = valuesSource.doubleValues();
+        }
+    }
+
+    /**
+     * Count the documents of the current segment that match each range by
+     * intersecting the collected documents with the range filters.
+     */
+    private void countMatchingDocs() {
+        if (currentReader == null || numMatchingDocs == 0) {
+            return;
+        }
+        try {
+            for (int i = 0; i < ranges.length; ++i) {
+                final DocIdSet rangeDocs = rangeFilters[i].getDocIdSet(currentReader, null);
+                if (DocIdSets.isEmpty(rangeDocs)) {
+                    continue;
+                }
+                long count = 0;
+                if (rangeDocs instanceof BitDocIdSet && ((BitDocIdSet) rangeDocs).bits() instanceof FixedBitSet) {
+                    count = FixedBitSet.intersectionCount(matchingDocs, (FixedBitSet) ((BitDocIdSet) rangeDocs).bits());
+                } else {
+                    final DocIdSetIterator iterator = rangeDocs.iterator();
+                    if (iterator == null) {
+                        continue;
+                    }
+                    for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                        if (matchingDocs.get(doc)) {
+                            ++count;
+                        }
+                    }
+                }
+                if (count > 0) {
+                    incrementBucketDocCount(i, (int) count);
+                }
+            }
+        } catch (IOException e) {
+            throw new AggregationExecutionException("Failed to count the ranges of [" + name + "]", e);
+        }
     }
 
     private final long subBucketOrdinal(long owningBucketOrdinal, int rangeOrd) {
@@ -138,6 +232,12 @@ public class RangeAggregator extends BucketsAggregator {
 
     @Override
     public void collect(int doc, long owningBucketOrdinal) throws IOException {
+        if (rangeFilters != null) {
+            assert owningBucketOrdinal == 0;
+            matchingDocs.set(doc);
+            ++numMatchingDocs;
+            return;
+        }
         values.setDocument(doc);
         final int valuesCount = values.count();
         for (int i = 0, lo = 0; i < valuesCount; ++i) {
@@ -195,6 +295,14 @@ public class RangeAggregator extends BucketsAggregator {
         return endHi + 1;
     }
 
+    @Override
+    protected void doPostCollection() throws IOException {
+        if (rangeFilters != null) {
+            countMatchingDocs();
+            currentReader = null;
+        }
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) {
         List<org.elasticsearch.search.aggregations.bucket.range.Range.Bucket> buckets = Lists.newArrayListWithCapacity(ranges.length);
@@ -302,7 +410,26 @@ public class RangeAggregator extends BucketsAggregator {
 
         @Override
         protected Aggregator create(ValuesSource.Numeric valuesSource, long expectedBucketsCount, AggregationContext aggregationContext, Aggregator parent, Map<String, Object> metaData) {
-            return new RangeAggregator(name, factories, valuesSource, config.format(), rangeFactory, ranges, keyed, aggregationContext, parent, metaData);
+            return new RangeAggregator(name, factories, valuesSource, config.format(), rangeFactory, ranges, keyed, filterMapper(parent), aggregationContext, parent, metaData);
+        }
+
+        /**
+         * Matches are counted through cached range filters rather than by
+         * reading the values of every collected document when the aggregation
+         * is top-level, has no sub-aggregations, has a few ranges only and
+         * targets a field whose values are indexed as longs.
+         */
+        private NumberFieldMapper<?> filterMapper(Aggregator parent) {
+            final FieldContext fieldContext = config.fieldContext();
+            if (parent != null || factories.count() > 0 || ranges.size() > MAX_FILTER_RANGES
+                    || config.script() != null || fieldContext == null) {
+                return null;
+            }
+            final FieldMapper<?> mapper = fieldContext.mapper();
+            if ((mapper instanceof LongFieldMapper || mapper instanceof DateFieldMapper) && mapper.fieldType().indexOptions() != IndexOptions.NONE) {
+                return (NumberFieldMapper<?>) mapper;
+            }
+            return null;
         }
     }
 
@@ -183,7 +183,7 @@ public class GeoDistanceParser implements Aggregator.Parser {
         protected Aggregator create(final ValuesSource.GeoPoint valuesSource, long expectedBucketsCount, AggregationContext aggregationContext, Aggregator parent, Map<String, Object> metaData) {
             DistanceSource distanceSource = new DistanceSource(valuesSource, distanceType, origin, unit);
             aggregationContext.registerReaderContextAware(distanceSource);
-            return new RangeAggregator(name, factories, distanceSource, null, rangeFactory, ranges, keyed, aggregationContext, parent, metaData);
+            return new RangeAggregator(name, factories, distanceSource, null, rangeFactory, ranges, keyed, null, aggregationContext, parent, metaData);
         }
 
         private static class DistanceSource extends ValuesSource.Numeric implements ReaderContextAware {
@@ -176,6 +176,15 @@ public abstract class InternalSignificantTerms extends InternalAggregation imple
             }
         }
 
+        if (reduceContext.isFinalReduce() == false) {
+            // scoring and pruning need the global counts of all shards, only merge the buckets for now
+            List<Bucket> reducedBuckets = new ArrayList<>(buckets.size());
+            for (List<Bucket> sameTermBuckets : buckets.values()) {
+                reducedBuckets.add(sameTermBuckets.get(0).reduce(sameTermBuckets, reduceContext));
+            }
+            return newAggregation(globalSubsetSize, globalSupersetSize, reducedBuckets);
+        }
+
         final int size = Math.min(requiredSize, buckets.size());
         BucketSignificancePriorityQueue ordered = new BucketSignificancePriorityQueue(size);
         for (Map.Entry<String, List<Bucket>> entry : buckets.entrySet()) {
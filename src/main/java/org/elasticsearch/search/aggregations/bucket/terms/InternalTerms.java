@@ -115,6 +115,13 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
     protected boolean showTermDocCountError;
     protected long otherDocCount;
 
+    /**
+     * Whether this instance is the output of a partial reduce on the coordinating node. Such an instance holds all
+     * the buckets of the shard results it was reduced from and its doc count error is the sum of their errors, so it
+     * must not be treated like a single shard result when reduced again. Never serialized.
+     */
+    transient boolean partiallyReduced;
+
     protected InternalTerms() {} // for serialization
 
     protected InternalTerms(String name, Terms.Order order, int requiredSize, int shardSize, long minDocCount, List<Bucket> buckets, boolean showTermDocCountError, long docCountError, long otherDocCount, Map<String, Object> metaData) {
@@ -166,7 +173,9 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
             InternalTerms terms = (InternalTerms) aggregation;
             otherDocCount += terms.getSumOfOtherDocCounts();
             final long thisAggDocCountError;
-            if (terms.buckets.size() < this.shardSize || this.order == InternalOrder.TERM_ASC || this.order == InternalOrder.TERM_DESC) {
+            if (terms.partiallyReduced) {
+                thisAggDocCountError = terms.docCountError;
+            } else if (terms.buckets.size() < this.shardSize || this.order == InternalOrder.TERM_ASC || this.order == InternalOrder.TERM_DESC) {
                 thisAggDocCountError = 0;
             } else if (InternalOrder.isCountDesc(this.order)) {
                 thisAggDocCountError = terms.buckets.get(terms.buckets.size() - 1).docCount;
@@ -182,12 +191,20 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
             }
             terms.docCountError = thisAggDocCountError;
             for (Bucket bucket : terms.buckets) {
-                bucket.docCountError = thisAggDocCountError;
+                if (terms.partiallyReduced && thisAggDocCountError != -1) {
+                    // the bucket error of a partial result accounts for the results the term was missing from, turn
+                    // it back into the error of the results it was found in so it is not counted twice below
+                    bucket.docCountError = thisAggDocCountError - bucket.docCountError;
+                } else {
+                    bucket.docCountError = thisAggDocCountError;
+                }
                 buckets.put(bucket.getKeyAsObject(), bucket);
             }
         }
 
-        final int size = Math.min(requiredSize, buckets.size());
+        final boolean finalReduce = reduceContext.isFinalReduce();
+        // a partial reduce must keep every bucket, the final top terms can only be picked once all results are in
+        final int size = finalReduce ? Math.min(requiredSize, buckets.size()) : buckets.size();
         BucketPriorityQueue ordered = new BucketPriorityQueue(size, order.comparator(null));
         for (Collection<Bucket> l : buckets.asMap().values()) {
             List<Bucket> sameTermBuckets = (List<Bucket>) l; // cast is ok according to javadocs
@@ -199,7 +216,7 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
                     b.docCountError = sumDocCountError - b.docCountError;
                 }
             }
-            if (b.docCount >= minDocCount) {
+            if (b.docCount >= minDocCount || finalReduce == false) {
                 Terms.Bucket removed = ordered.insertWithOverflow(b);
                 if (removed != null) {
                     otherDocCount += removed.getDocCount();
@@ -214,9 +231,11 @@ public abstract class InternalTerms extends InternalAggregation implements Terms
         if (sumDocCountError == -1) {
             docCountError = -1;
         } else {
-            docCountError = aggregations.size() == 1 ? 0 : sumDocCountError;
+            docCountError = aggregations.size() == 1 && !((InternalTerms) aggregations.get(0)).partiallyReduced ? 0 : sumDocCountError;
         }
-        return newAggregation(name, Arrays.asList(list), showTermDocCountError, docCountError, otherDocCount, getMetaData());
+        InternalTerms reduced = newAggregation(name, Arrays.asList(list), showTermDocCountError, docCountError, otherDocCount, getMetaData());
+        reduced.partiallyReduced = finalReduce == false;
+        return reduced;
     }
 
     protected abstract InternalTerms newAggregation(String name, List<Bucket> buckets, boolean showTermDocCountError, long docCountError, long otherDocCount, Map<String, Object> metaData);
@@ -24,9 +24,7 @@ import com.google.common.base.Preconditions;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.RandomAccessOrds;
 import org.apache.lucene.index.SortedNumericDocValues;
-import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.Nullable;
@@ -53,6 +51,7 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     private final int precision;
     private final boolean rehash;
+    private final boolean globalOrdinals;
     private final ValuesSource valuesSource;
 
     // Expensive to initialize, so we only initialize it when we have an actual value source
@@ -61,17 +60,49 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     private Collector collector;
 
-    public CardinalityAggregator(String name, long estimatedBucketsCount, ValuesSource valuesSource, boolean rehash,
+    /**
+     * @param globalOrdinals whether to collect global ordinals across all segments and only hash each distinct
+     *                       term once per shard, see {@link #useOrdinals(long, int, long)}. Requires a
+     *                       {@link ValuesSource.Bytes.WithOrdinals} values source that loads global ordinals.
+     */
+    public CardinalityAggregator(String name, long estimatedBucketsCount, ValuesSource valuesSource, boolean rehash, boolean globalOrdinals,
                                  int precision, AggregationContext context, Aggregator parent, Map<String, Object> metaData) {
         super(name, estimatedBucketsCount, context, parent, metaData);
+        assert !globalOrdinals || (rehash && valuesSource instanceof ValuesSource.Bytes.WithOrdinals);
         this.valuesSource = valuesSource;
         this.rehash = rehash;
+        this.globalOrdinals = globalOrdinals;
         this.precision = precision;
         this.counts = valuesSource == null ? null : new HyperLogLogPlusPlus(precision, bigArrays, estimatedBucketsCount);
     }
 
+    /**
+     * Return whether collecting ordinals into a bitset per bucket and hashing visited terms after collection
+     * is worth it for the given number of ordinals: only use ordinals if they don't increase memory usage by
+     * more than 25%. Buckets only allocate hyperloglog registers once they saw enough distinct values, so the
+     * memory usage of the counts is estimated assuming that the ordinals are spread evenly across the expected
+     * number of buckets.
+     */
+    static boolean useOrdinals(long maxOrd, int precision, long expectedBuckets) {
+        final long ordinalsMemoryUsage = OrdinalsCollector.memoryOverhead(maxOrd);
+        final long expectedCardinality = Math.max(1, maxOrd / Math.max(1, expectedBuckets));
+        final long countsMemoryUsage = HyperLogLogPlusPlus.memoryUsage(precision, expectedCardinality);
+        return ordinalsMemoryUsage < countsMemoryUsage / 4;
+    }
+
     @Override
     public void setNextReader(LeafReaderContext reader) {
+        if (globalOrdinals) {
+            // global ordinals are shared by all segments, so a single collector is used for the whole shard
+            // and visited terms are only hashed in doPostCollection
+            final RandomAccessOrds globalOrdinalValues = ((ValuesSource.Bytes.WithOrdinals) valuesSource).globalOrdinalsValues();
+            if (collector == null) {
+                collector = globalOrdinalValues.getValueCount() == 0 ? new EmptyCollector() : new OrdinalsCollector(counts, globalOrdinalValues, bigArrays);
+            } else if (collector instanceof OrdinalsCollector) {
+                ((OrdinalsCollector) collector).setValues(globalOrdinalValues);
+            }
+            return;
+        }
         postCollectLastCollector();
         collector = createCollector(reader);
     }
@@ -100,10 +131,7 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
                 return new EmptyCollector();
             }
 
-            final long ordinalsMemoryUsage = OrdinalsCollector.memoryOverhead(maxOrd);
-            final long countsMemoryUsage = HyperLogLogPlusPlus.memoryUsage(precision);
-            // only use ordinals if they don't increase memory usage by more than 25%
-            if (ordinalsMemoryUsage < countsMemoryUsage / 4) {
+            if (useOrdinals(maxOrd, precision, estimatedBucketCount)) {
                 return new OrdinalsCollector(counts, ordinalValues, bigArrays);
             }
         }
@@ -224,20 +252,23 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     private static class OrdinalsCollector implements Collector {
 
-        private static final long SHALLOW_FIXEDBITSET_SIZE = RamUsageEstimator.shallowSizeOfInstance(FixedBitSet.class);
-
         /**
          * Return an approximate memory overhead per bucket for this collector.
          */
         public static long memoryOverhead(long maxOrd) {
-            return RamUsageEstimator.NUM_BYTES_OBJECT_REF + SHALLOW_FIXEDBITSET_SIZE + (maxOrd + 7) / 8; // 1 bit per ord
+            return RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + words(maxOrd) * RamUsageEstimator.NUM_BYTES_LONG; // 1 bit per ord
+        }
+
+        private static long words(long maxOrd) {
+            return (maxOrd + 63) >>> 6;
         }
 
         private final BigArrays bigArrays;
-        private final RandomAccessOrds values;
+        private RandomAccessOrds values;
         private final int maxOrd;
         private final HyperLogLogPlusPlus counts;
-        private ObjectArray<FixedBitSet> visitedOrds;
+        // one bitset of visited ordinals per bucket, in BigArrays so that they are accounted for by the circuit breaker
+        private ObjectArray<LongArray> visitedOrds;
 
         OrdinalsCollector(HyperLogLogPlusPlus counts, RandomAccessOrds values, BigArrays bigArrays) {
             Preconditions.checkArgument(values.getValueCount() <= Integer.MAX_VALUE);
@@ -248,44 +279,63 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
             visitedOrds = bigArrays.newObjectArray(1);
         }
 
+        /**
+         * Switch to the values of another segment, which must share the same ordinals, i.e. global ordinals.
+         */
+        void setValues(RandomAccessOrds values) {
+            assert values.getValueCount() == maxOrd;
+            this.values = values;
+        }
+
         @Override
         public void collect(int doc, long bucketOrd) {
             visitedOrds = bigArrays.grow(visitedOrds, bucketOrd + 1);
-            FixedBitSet bits = visitedOrds.get(bucketOrd);
+            LongArray bits = visitedOrds.get(bucketOrd);
             if (bits == null) {
-                bits = new FixedBitSet(maxOrd);
+                bits = bigArrays.newLongArray(words(maxOrd));
                 visitedOrds.set(bucketOrd, bits);
             }
             values.setDocument(doc);
             final int valueCount = values.cardinality();
             for (int i = 0; i < valueCount; ++i) {
-                bits.set((int) values.ordAt(i));
+                final long ord = values.ordAt(i);
+                final long word = ord >>> 6;
+                bits.set(word, bits.get(word) | (1L << ord));
             }
         }
 
         @Override
         public void postCollect() {
-            final FixedBitSet allVisitedOrds = new FixedBitSet(maxOrd);
-            for (long bucket = visitedOrds.size() - 1; bucket >= 0; --bucket) {
-                final FixedBitSet bits = visitedOrds.get(bucket);
-                if (bits != null) {
-                    allVisitedOrds.or(bits);
+            final long words = words(maxOrd);
+            final org.elasticsearch.common.hash.MurmurHash3.Hash128 hash = new org.elasticsearch.common.hash.MurmurHash3.Hash128();
+            try (LongArray allVisitedOrds = bigArrays.newLongArray(words);
+                 LongArray hashes = bigArrays.newLongArray(maxOrd, false)) {
+                for (long bucket = visitedOrds.size() - 1; bucket >= 0; --bucket) {
+                    final LongArray bits = visitedOrds.get(bucket);
+                    if (bits != null) {
+                        for (long word = 0; word < words; ++word) {
+                            allVisitedOrds.set(word, allVisitedOrds.get(word) | bits.get(word));
+                        }
+                    }
                 }
-            }
 
-            final org.elasticsearch.common.hash.MurmurHash3.Hash128 hash = new org.elasticsearch.common.hash.MurmurHash3.Hash128();
-            try (LongArray hashes = bigArrays.newLongArray(maxOrd, false)) {
-                for (int ord = allVisitedOrds.nextSetBit(0); ord < DocIdSetIterator.NO_MORE_DOCS; ord = ord + 1 < maxOrd ? allVisitedOrds.nextSetBit(ord + 1) : DocIdSetIterator.NO_MORE_DOCS) {
-                    final BytesRef value = values.lookupOrd(ord);
-                    org.elasticsearch.common.hash.MurmurHash3.hash128(value.bytes, value.offset, value.length, 0, hash);
-                    hashes.set(ord, hash.h1);
+                for (long word = 0; word < words; ++word) {
+                    for (long bits = allVisitedOrds.get(word); bits != 0; bits &= bits - 1) {
+                        final int ord = (int) ((word << 6) + Long.numberOfTrailingZeros(bits));
+                        final BytesRef value = values.lookupOrd(ord);
+                        org.elasticsearch.common.hash.MurmurHash3.hash128(value.bytes, value.offset, value.length, 0, hash);
+                        hashes.set(ord, hash.h1);
+                    }
                 }
 
                 for (long bucket = visitedOrds.size() - 1; bucket >= 0; --bucket) {
-                    final FixedBitSet bits = visitedOrds.get(bucket);
-                    if (bits != null) {
-                        for (int ord = bits.nextSetBit(0); ord < DocIdSetIterator.NO_MORE_DOCS; ord = ord + 1 < maxOrd ? bits.nextSetBit(ord + 1) : DocIdSetIterator.NO_MORE_DOCS) {
-                            counts.collect(bucket, hashes.get(ord));
+                    final LongArray visited = visitedOrds.get(bucket);
+                    if (visited != null) {
+                        for (long word = 0; word < words; ++word) {
+                            for (long bits = visited.get(word); bits != 0; bits &= bits - 1) {
+                                final long ord = (word << 6) + Long.numberOfTrailingZeros(bits);
+                                counts.collect(bucket, hashes.get(ord));
+                            }
                         }
                     }
                 }
@@ -294,6 +344,9 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
         @Override
         public void close() throws ElasticsearchException {
+            for (long bucket = 0; bucket < visitedOrds.size(); ++bucket) {
+                Releasables.close(visitedOrds.get(bucket));
+            }
             Releasables.close(visitedOrds);
         }
 
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.metrics.cardinality;
 
+import org.apache.lucene.search.IndexSearcher;
 import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.Aggregator.BucketAggregationMode;
@@ -46,7 +47,7 @@ final class CardinalityAggregatorFactory extends ValuesSourceAggregatorFactory<V
 
     @Override
     protected Aggregator createUnmapped(AggregationContext context, Aggregator parent, Map<String, Object> metaData) {
-        return new CardinalityAggregator(name, parent == null ? 1 : parent.estimatedBucketCount(), null, true, precision(parent), context, parent, metaData);
+        return new CardinalityAggregator(name, parent == null ? 1 : parent.estimatedBucketCount(), null, true, false, precision(parent), context, parent, metaData);
     }
 
     @Override
@@ -54,7 +55,39 @@ final class CardinalityAggregatorFactory extends ValuesSourceAggregatorFactory<V
         if (!(valuesSource instanceof ValuesSource.Numeric) && !rehash) {
             throw new AggregationExecutionException("Turning off rehashing for cardinality aggregation [" + name + "] on non-numeric values in not allowed");
         }
-        return new CardinalityAggregator(name, parent == null ? 1 : parent.estimatedBucketCount(), valuesSource, rehash, precision(parent), context, parent, metaData);
+        final int precision = precision(parent);
+        final long estimatedBucketCount = parent == null ? 1 : parent.estimatedBucketCount();
+        boolean globalOrdinals = false;
+        if (rehash && valuesSource instanceof ValuesSource.Bytes.WithOrdinals) {
+            // hashing every value of every document is costly on string fields, so if global ordinals are cheap
+            // enough we rather record visited ordinals and hash every distinct term only once per shard
+            ValuesSource.Bytes.WithOrdinals valueSourceWithOrdinals = (ValuesSource.Bytes.WithOrdinals) valuesSource;
+            if (useGlobalOrdinals(valueSourceWithOrdinals, context.searchContext().searcher(), precision, estimatedBucketCount)) {
+                valueSourceWithOrdinals.setNeedsGlobalOrdinals(true);
+                globalOrdinals = true;
+            }
+        }
+        return new CardinalityAggregator(name, estimatedBucketCount, valuesSource, rehash, globalOrdinals, precision, context, parent, metaData);
+    }
+
+    /**
+     * Return whether to collect global ordinals. The decision is first made on per-segment statistics, which bound
+     * the number of global ordinals, so that global ordinals are only loaded if they are going to be used or if
+     * they are built on refresh anyway.
+     */
+    static boolean useGlobalOrdinals(ValuesSource.Bytes.WithOrdinals valuesSource, IndexSearcher searcher, int precision, long estimatedBucketCount) {
+        if (CardinalityAggregator.useOrdinals(valuesSource.maxSegmentMaxOrd(searcher), precision, estimatedBucketCount) == false) {
+            // there are at least as many global ordinals as ordinals in the largest segment
+            return false;
+        }
+        if (CardinalityAggregator.useOrdinals(valuesSource.sumSegmentMaxOrds(searcher), precision, estimatedBucketCount)) {
+            // there are at most as many global ordinals as ordinals in all segments
+            return true;
+        }
+        if (valuesSource.eagerGlobalOrdinals()) {
+            return CardinalityAggregator.useOrdinals(valuesSource.globalMaxOrd(searcher), precision, estimatedBucketCount);
+        }
+        return false;
     }
 
     /*
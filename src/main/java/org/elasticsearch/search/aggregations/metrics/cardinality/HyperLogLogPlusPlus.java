@@ -20,23 +20,22 @@
 package org.elasticsearch.search.aggregations.metrics.cardinality;
 
 import com.google.common.base.Preconditions;
-import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongBitSet;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.packed.PackedInts;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.ByteArray;
-import org.elasticsearch.common.util.ByteUtils;
 import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.common.util.ObjectArray;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -82,6 +81,23 @@ public final class HyperLogLogPlusPlus implements Releasable {
         return 1L << precision;
     }
 
+    /**
+     * Return the expected memory usage of a bucket that collects the given number of distinct values. Buckets that
+     * use linear counting only need a hash set sized for their values, which is smaller than the registers.
+     */
+    public static long memoryUsage(int precision, long cardinality) {
+        final long registers = memoryUsage(precision);
+        final long maxCapacity = registers / RamUsageEstimator.NUM_BYTES_INT;
+        if (cardinality > maxCapacity * MAX_LOAD_FACTOR) {
+            return registers;
+        }
+        long capacity = Math.min(Hashset.INITIAL_CAPACITY, maxCapacity);
+        while (capacity < maxCapacity && cardinality >= capacity * MAX_LOAD_FACTOR) {
+            capacity <<= 1;
+        }
+        return capacity * RamUsageEstimator.NUM_BYTES_INT;
+    }
+
     // these static tables come from the appendix of the paper
     private static final double[][] RAW_ESTIMATE_DATA = {
         // precision 4
@@ -155,7 +171,11 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     private final BigArrays bigArrays;
     private final OpenBitSet algorithm;
+    // registers of the buckets that use hyperloglog, m bytes per such bucket
     private ByteArray runLens;
+    // offset of the registers of a hyperloglog bucket in runLens, in number of buckets
+    private LongArray denseSlots;
+    private long numDenseSlots;
     private final Hashset hashSet;
     private final int p, m;
     private final double alphaMM;
@@ -167,7 +187,8 @@ public final class HyperLogLogPlusPlus implements Releasable {
         m = 1 << p;
         this.bigArrays = bigArrays;
         algorithm = new OpenBitSet();
-        runLens = bigArrays.newByteArray(initialBucketCount << p);
+        runLens = bigArrays.newByteArray(0);
+        denseSlots = bigArrays.newLongArray(initialBucketCount);
         hashSet = new Hashset(initialBucketCount);
         final double alpha;
         switch (p) {
@@ -189,11 +210,19 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     public long maxBucket() {
-        return runLens.size() >>> p;
+        return denseSlots.size();
     }
 
     private void ensureCapacity(long numBuckets) {
-        runLens = bigArrays.grow(runLens, numBuckets << p);
+        denseSlots = bigArrays.grow(denseSlots, numBuckets);
+    }
+
+    /**
+     * Return the offset of the registers of the given bucket in <code>runLens</code>.
+     * Only valid for buckets that use hyperloglog.
+     */
+    private long registersStart(long bucket) {
+        return denseSlots.get(bucket) << p;
     }
 
     public void merge(long thisBucket, HyperLogLogPlusPlus other, long otherBucket) {
@@ -217,8 +246,8 @@ public final class HyperLogLogPlusPlus implements Releasable {
             if (algorithm.get(thisBucket) != HYPERLOGLOG) {
                 upgradeToHll(thisBucket);
             }
-            final long thisStart = thisBucket << p;
-            final long otherStart = otherBucket << p;
+            final long thisStart = registersStart(thisBucket);
+            final long otherStart = other.registersStart(otherBucket);
             for (int i = 0; i < m; ++i) {
                 runLens.set(thisStart + i, (byte) Math.max(runLens.get(thisStart + i), other.runLens.get(otherStart + i)));
             }
@@ -259,7 +288,7 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     private void collectHll(long bucket, long index, int runLen) {
-        final long bucketIndex = (bucket << p) + index;
+        final long bucketIndex = registersStart(bucket) + index;
         runLens.set(bucketIndex, (byte) Math.max(runLen, runLens.get(bucketIndex)));
     }
 
@@ -280,7 +309,7 @@ public final class HyperLogLogPlusPlus implements Releasable {
     private long cardinalityHll(long bucket) {
         double inverseSum = 0;
         int zeros = 0;
-        for (long i = bucket << p, end = i + m; i < end; ++i) {
+        for (long i = registersStart(bucket), end = i + m; i < end; ++i) {
             final int runLen = runLens.get(i);
             inverseSum += 1. / (1L << runLen);
             if (runLen == 0) {
@@ -302,16 +331,25 @@ public final class HyperLogLogPlusPlus implements Releasable {
         }
     }
 
+    /**
+     * Switch <code>bucket</code> from linear counting to hyperloglog: allocate its registers, replay the
+     * hashes of its linear counting set into them and release the set.
+     */
     void upgradeToHll(long bucket) {
+        assert algorithm.get(bucket) == LINEAR_COUNTING;
         ensureCapacity(bucket + 1);
         final IntArray values = hashSet.values(bucket);
         try {
-            runLens.fill(bucket << p, (bucket << p) + m, (byte) 0);
+            final long slot = numDenseSlots++;
+            runLens = bigArrays.grow(runLens, (slot + 1) << p);
+            runLens.fill(slot << p, (slot + 1) << p, (byte) 0);
+            denseSlots.set(bucket, slot);
             for (long i = 0; i < values.size(); ++i) {
                 final int encoded = values.get(i);
                 collectHllEncoded(bucket, encoded);
             }
             algorithm.set(bucket);
+            hashSet.clear(bucket);
         } finally {
             Releasables.close(values);
         }
@@ -407,51 +445,46 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     @Override
     public void close() throws ElasticsearchException {
-        Releasables.close(runLens, hashSet.sizes);
+        hashSet.close();
+        Releasables.close(runLens, denseSlots);
     }
 
     /**
-     * We are actually using HyperLogLog's runLens array but interpreting it as a hash set
-     * for linear counting.
+     * Per-bucket hash sets of encoded hashes for linear counting. Each set starts small and doubles
+     * when it gets full, so that buckets that only see a few values don't need to reserve as much
+     * memory as the hyperloglog registers they would eventually be upgraded to.
      */
-    private class Hashset {
+    private class Hashset implements Releasable {
+
+        private static final int INITIAL_CAPACITY = 16;
 
         private final int capacity;
         private final int threshold;
-        private final int mask;
+        private ObjectArray<IntArray> tables;
         private IntArray sizes;
-        private final BytesRef readSpare;
-        private final ByteBuffer writeSpare;
 
         public Hashset(long initialBucketCount) {
-            capacity = m / 4; // because ints take 4 bytes
+            capacity = m / 4; // the largest set takes as much memory as the registers, because ints take 4 bytes
             threshold = (int) (capacity * MAX_LOAD_FACTOR);
-            mask = capacity - 1;
+            tables = bigArrays.newObjectArray(initialBucketCount);
             sizes = bigArrays.newIntArray(initialBucketCount);
-            readSpare = new BytesRef();
-            writeSpare = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-        }
-
-        private long index (long bucket, int index) {
-            return (bucket << p) + (index << 2);
-        }
-
-        private int get(long bucket, int index) {
-            runLens.get(index(bucket, index), 4, readSpare);
-            return ByteUtils.readIntLE(readSpare.bytes, readSpare.offset);
         }
 
-        private void set(long bucket, int index, int value) {
-            writeSpare.putInt(0, value);
-            runLens.set(index(bucket, index), writeSpare.array(), 0, 4);
+        private IntArray table(long bucket) {
+            if (bucket >= tables.size()) {
+                return null;
+            }
+            return tables.get(bucket);
         }
 
         private int recomputedSize(long bucket) {
+            final IntArray table = table(bucket);
             int size = 0;
-            for (int i = 0; i <= mask; ++i) {
-                final int v = get(bucket, i);
-                if (v != 0) {
-                    ++size;
+            if (table != null) {
+                for (long i = 0; i < table.size(); ++i) {
+                    if (table.get(i) != 0) {
+                        ++size;
+                    }
                 }
             }
             return size;
@@ -467,34 +500,78 @@ public final class HyperLogLogPlusPlus implements Releasable {
         }
 
         /**
-         * Add <code>k</code> to the hash table associated with <code>bucket</code>.
-         * Return <tt>-1</tt> if the value was already in the set or the new set size if it was added.
+         * Insert <code>k</code> into <code>table</code>, which must have a free slot.
+         * Return <tt>true</tt> if it was added and <tt>false</tt> if it was already in the set.
          */
-        public int add(long bucket, int k) {
-            sizes = bigArrays.grow(sizes, bucket + 1);
-            assert k != 0;
+        private boolean insert(IntArray table, int k) {
+            final int mask = (int) table.size() - 1;
             for (int i = (k & mask); ; i = (i + 1) & mask) {
-                final int v = get(bucket, i);
+                final int v = table.get(i);
                 if (v == 0) {
                     // means unused, take it!
-                    set(bucket, i, k);
-                    return sizes.increment(bucket, 1);
+                    table.set(i, k);
+                    return true;
                 } else if (v == k) {
                     // k is already in the set
-                    return -1;
+                    return false;
                 }
             }
         }
 
+        /**
+         * Add <code>k</code> to the hash table associated with <code>bucket</code>.
+         * Return <tt>-1</tt> if the value was already in the set or the new set size if it was added.
+         */
+        public int add(long bucket, int k) {
+            assert k != 0;
+            tables = bigArrays.grow(tables, bucket + 1);
+            sizes = bigArrays.grow(sizes, bucket + 1);
+            IntArray table = tables.get(bucket);
+            if (table == null) {
+                table = bigArrays.newIntArray(Math.min(INITIAL_CAPACITY, capacity));
+                tables.set(bucket, table);
+            } else if (table.size() < capacity && sizes.get(bucket) >= table.size() * MAX_LOAD_FACTOR) {
+                table = rehash(table, table.size() << 1);
+                tables.set(bucket, table);
+            }
+            if (insert(table, k)) {
+                return sizes.increment(bucket, 1);
+            } else {
+                return -1;
+            }
+        }
+
+        private IntArray rehash(IntArray table, long newCapacity) {
+            final IntArray newTable = bigArrays.newIntArray(newCapacity);
+            boolean success = false;
+            try {
+                for (long i = 0; i < table.size(); ++i) {
+                    final int k = table.get(i);
+                    if (k != 0) {
+                        insert(newTable, k);
+                    }
+                }
+                success = true;
+            } finally {
+                if (success) {
+                    Releasables.close(table);
+                } else {
+                    Releasables.close(newTable);
+                }
+            }
+            return newTable;
+        }
+
         public IntArray values(final long bucket) {
             final int size = size(bucket);
             final IntArray values = bigArrays.newIntArray(size);
             if (size == 0) {
                 return values;
             }
+            final IntArray table = table(bucket);
             int i = 0;
-            for (int j = 0; j < capacity; ++j) {
-                final int k = get(bucket, j);
+            for (long j = 0; j < table.size(); ++j) {
+                final int k = table.get(j);
                 if (k != 0) {
                     values.set(i++, k);
                 }
@@ -503,6 +580,29 @@ public final class HyperLogLogPlusPlus implements Releasable {
             return values;
         }
 
+        /**
+         * Release the set associated with <code>bucket</code>.
+         */
+        public void clear(long bucket) {
+            final IntArray table = table(bucket);
+            if (table != null) {
+                tables.set(bucket, null);
+                sizes.set(bucket, 0);
+                Releasables.close(table);
+            }
+        }
+
+        @Override
+        public void close() throws ElasticsearchException {
+            try {
+                for (long i = 0; i < tables.size(); ++i) {
+                    Releasables.close(tables.get(i));
+                }
+            } finally {
+                Releasables.close(tables, sizes);
+            }
+        }
+
     }
 
     public void writeTo(long bucket, StreamOutput out) throws IOException {
@@ -511,14 +611,39 @@ public final class HyperLogLogPlusPlus implements Releasable {
             out.writeBoolean(LINEAR_COUNTING);
             try (IntArray hashes = hashSet.values(bucket)) {
                 out.writeVLong(hashes.size());
-                for (long i = 0; i < hashes.size(); ++i) {
-                    out.writeInt(hashes.get(i));
+                if (out.getVersion().onOrAfter(Version.V_2_0_0)) {
+                    // sorted encoded hashes, delta-encoded
+                    final long[] sorted = new long[(int) hashes.size()];
+                    for (int i = 0; i < sorted.length; ++i) {
+                        sorted[i] = hashes.get(i) & 0xFFFFFFFFL;
+                    }
+                    Arrays.sort(sorted);
+                    long previous = 0;
+                    for (long encoded : sorted) {
+                        out.writeVLong(encoded - previous);
+                        previous = encoded;
+                    }
+                } else {
+                    for (long i = 0; i < hashes.size(); ++i) {
+                        out.writeInt(hashes.get(i));
+                    }
                 }
             }
         } else {
             out.writeBoolean(HYPERLOGLOG);
-            for (long i = bucket << p, end = i + m; i < end; ++i) {
-                out.writeByte(runLens.get(i));
+            final long start = registersStart(bucket);
+            if (out.getVersion().onOrAfter(Version.V_2_0_0)) {
+                // registers are at most 64 - p + 1 <= 61 so they fit on 6 bits: pack 4 of them into 3 bytes
+                for (long i = start, end = i + m; i < end; i += 4) {
+                    final int packed = runLens.get(i) | (runLens.get(i + 1) << 6) | (runLens.get(i + 2) << 12) | (runLens.get(i + 3) << 18);
+                    out.writeByte((byte) packed);
+                    out.writeByte((byte) (packed >>> 8));
+                    out.writeByte((byte) (packed >>> 16));
+                }
+            } else {
+                for (long i = start, end = i + m; i < end; ++i) {
+                    out.writeByte(runLens.get(i));
+                }
             }
         }
     }
@@ -530,14 +655,32 @@ public final class HyperLogLogPlusPlus implements Releasable {
         if (algorithm == LINEAR_COUNTING) {
             counts.algorithm.clear(0);
             final long size = in.readVLong();
-            for (long i = 0; i < size; ++i) {
-                final int encoded = in.readInt();
-                counts.hashSet.add(0, encoded);
+            if (in.getVersion().onOrAfter(Version.V_2_0_0)) {
+                long encoded = 0;
+                for (long i = 0; i < size; ++i) {
+                    encoded += in.readVLong();
+                    counts.hashSet.add(0, (int) encoded);
+                }
+            } else {
+                for (long i = 0; i < size; ++i) {
+                    final int encoded = in.readInt();
+                    counts.hashSet.add(0, encoded);
+                }
             }
         } else {
-            counts.algorithm.set(0);
-            for (int i = 0; i < counts.m; ++i) {
-                counts.runLens.set(i, in.readByte());
+            counts.upgradeToHll(0);
+            if (in.getVersion().onOrAfter(Version.V_2_0_0)) {
+                for (int i = 0; i < counts.m; i += 4) {
+                    final int packed = (in.readByte() & 0xFF) | ((in.readByte() & 0xFF) << 8) | ((in.readByte() & 0xFF) << 16);
+                    counts.runLens.set(i, (byte) (packed & 0x3F));
+                    counts.runLens.set(i + 1, (byte) ((packed >>> 6) & 0x3F));
+                    counts.runLens.set(i + 2, (byte) ((packed >>> 12) & 0x3F));
+                    counts.runLens.set(i + 3, (byte) (packed >>> 18));
+                }
+            } else {
+                for (int i = 0; i < counts.m; ++i) {
+                    counts.runLens.set(i, in.readByte());
+                }
             }
         }
         return counts;
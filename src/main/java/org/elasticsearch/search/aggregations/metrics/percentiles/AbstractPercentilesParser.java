@@ -20,10 +20,12 @@
 package org.elasticsearch.search.aggregations.metrics.percentiles;
 
 import com.carrotsearch.hppc.DoubleArrayList;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.search.SearchParseException;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.metrics.percentiles.hdr.DoubleHistogramState;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
@@ -47,6 +49,8 @@ public abstract class AbstractPercentilesParser implements Aggregator.Parser {
         double[] keys = null;
         boolean keyed = true;
         double compression = 100;
+        PercentilesMethod method = PercentilesMethod.TDIGEST;
+        int numberOfSignificantValueDigits = 3;
     
         XContentParser.Token token;
         String currentFieldName = null;
@@ -79,15 +83,39 @@ public abstract class AbstractPercentilesParser implements Aggregator.Parser {
                 } else {
                     throw new SearchParseException(context, "Unknown key for a " + token + " in [" + aggregationName + "]: [" + currentFieldName + "].");
                 }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                // the method and its settings, eg. "hdr": { "number_of_significant_value_digits": 3 }
+                try {
+                    method = PercentilesMethod.resolve(currentFieldName);
+                } catch (ElasticsearchIllegalArgumentException e) {
+                    throw new SearchParseException(context, "Unknown key for a " + token + " in [" + aggregationName + "]: [" + currentFieldName + "].");
+                }
+                String methodFieldName = null;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        methodFieldName = parser.currentName();
+                    } else if (token == XContentParser.Token.VALUE_NUMBER && method == PercentilesMethod.TDIGEST && "compression".equals(methodFieldName)) {
+                        compression = parser.doubleValue();
+                    } else if (token == XContentParser.Token.VALUE_NUMBER && method == PercentilesMethod.HDR
+                            && ("number_of_significant_value_digits".equals(methodFieldName) || "numberOfSignificantValueDigits".equals(methodFieldName))) {
+                        numberOfSignificantValueDigits = parser.intValue();
+                        if (numberOfSignificantValueDigits < 0 || numberOfSignificantValueDigits > DoubleHistogramState.MAX_SIGNIFICANT_VALUE_DIGITS) {
+                            throw new SearchParseException(context, "[number_of_significant_value_digits] must be between 0 and "
+                                    + DoubleHistogramState.MAX_SIGNIFICANT_VALUE_DIGITS + " in [" + aggregationName + "].");
+                        }
+                    } else {
+                        throw new SearchParseException(context, "Unknown key for a " + token + " in [" + aggregationName + "]: [" + currentFieldName + "." + methodFieldName + "].");
+                    }
+                }
             } else {
                 throw new SearchParseException(context, "Unexpected token " + token + " in [" + aggregationName + "].");
             }
         }
-        return buildFactory(context, aggregationName, vsParser.config(), keys, compression, keyed);
+        return buildFactory(context, aggregationName, vsParser.config(), keys, method, compression, numberOfSignificantValueDigits, keyed);
     }
 
     protected abstract AggregatorFactory buildFactory(SearchContext context, String aggregationName, ValuesSourceConfig<Numeric> config, double[] cdfValues,
-            double compression, boolean keyed);
+            PercentilesMethod method, double compression, int numberOfSignificantValueDigits, boolean keyed);
 
     protected abstract String keysFieldName();
 
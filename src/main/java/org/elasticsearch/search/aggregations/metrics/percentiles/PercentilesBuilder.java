@@ -30,6 +30,8 @@ public class PercentilesBuilder extends ValuesSourceMetricsAggregationBuilder<Pe
 
     private double[] percentiles;
     private Double compression;
+    private PercentilesMethod method;
+    private Integer numberOfSignificantValueDigits;
 
     /**
      * Sole constructor.
@@ -60,6 +62,23 @@ public class PercentilesBuilder extends ValuesSourceMetricsAggregationBuilder<Pe
         return this;
     }
 
+    /**
+     * Set the algorithm to use, {@link PercentilesMethod#TDIGEST} by default.
+     */
+    public PercentilesBuilder method(PercentilesMethod method) {
+        this.method = method;
+        return this;
+    }
+
+    /**
+     * Expert: set the number of significant digits of the recorded values when using {@link PercentilesMethod#HDR},
+     * between 0 and 5. Higher values improve accuracy but also memory usage.
+     */
+    public PercentilesBuilder numberOfSignificantValueDigits(int numberOfSignificantValueDigits) {
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+        return this;
+    }
+
     @Override
     protected void internalXContent(XContentBuilder builder, Params params) throws IOException {
         super.internalXContent(builder, params);
@@ -68,7 +87,13 @@ public class PercentilesBuilder extends ValuesSourceMetricsAggregationBuilder<Pe
             builder.field("percents", percentiles);
         }
 
-        if (compression != null) {
+        if (method == PercentilesMethod.HDR) {
+            builder.startObject(method.getName());
+            if (numberOfSignificantValueDigits != null) {
+                builder.field("number_of_significant_value_digits", numberOfSignificantValueDigits);
+            }
+            builder.endObject();
+        } else if (compression != null) {
             builder.field("compression", compression);
         }
     }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+
+/**
+ * The algorithm used by the percentiles and percentile ranks aggregations.
+ */
+public enum PercentilesMethod {
+
+    /**
+     * The t-digest, which adapts to the distribution of the values and is the most accurate at the tails.
+     */
+    TDIGEST("tdigest"),
+    /**
+     * A high dynamic range histogram, which has a bounded relative error and constant-time recording but
+     * only supports non-negative values. A good fit for latencies.
+     */
+    HDR("hdr");
+
+    private final String name;
+
+    private PercentilesMethod(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static PercentilesMethod resolve(String name) {
+        for (PercentilesMethod method : values()) {
+            if (method.name.equals(name)) {
+                return method;
+            }
+        }
+        throw new ElasticsearchIllegalArgumentException("Unknown percentiles method [" + name + "]");
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles.hdr;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.LongArray;
+
+import java.io.IOException;
+
+/**
+ * High dynamic range histogram of non-negative doubles, in the spirit of http://hdrhistogram.org/.
+ *
+ * Values are bucketed on their exponent and on the top bits of their mantissa, which is the same as
+ * taking the top bits of their IEEE 754 representation since this representation is monotonic for
+ * positive doubles. Keeping <code>b</code> bits of mantissa bounds the relative error of every recorded
+ * value by <code>2^-b</code>, whatever the magnitude of the value, and recording a value is a couple of
+ * bit operations and an array increment.
+ *
+ * Counts are stored in a {@link LongArray} that grows in both directions to cover the range of keys that have
+ * been recorded. Like HdrHistogram, the dynamic range of the histogram is bounded: non-zero values may span at
+ * most {@link #MAX_BINADES} powers of two, so that the counts never take more than
+ * <code>MAX_BINADES * 2^b</code> entries.
+ *
+ * States that are returned by {@link #compactCopy()} or {@link #read(StreamInput)} are read-only and only store
+ * the non-empty buckets, on heap, so that they don't need to be released.
+ */
+public final class DoubleHistogramState implements Releasable {
+
+    public static final int MAX_SIGNIFICANT_VALUE_DIGITS = 5;
+
+    /**
+     * Maximum number of binades that non-zero values may span, ie. the maximum ratio between the highest and
+     * the lowest non-zero recorded values is <code>2^MAX_BINADES</code>.
+     */
+    public static final int MAX_BINADES = 64;
+
+    private static final int MANTISSA_BITS = 52;
+
+    private final BigArrays bigArrays; // null for read-only states
+    private final int numberOfSignificantValueDigits;
+    private final int subBucketBits;
+    private final int shift;
+
+    // counts.get(i) is the number of values whose key is baseKey + i, null until a positive value is recorded
+    private LongArray counts;
+    private long baseKey;
+    private long lowestKey, highestKey;
+
+    // read-only states only store the keys and counts of non-empty buckets, in key order
+    private long[] compactKeys;
+    private long[] compactCounts;
+
+    private long zeroCount;
+    private long totalCount;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public DoubleHistogramState(int numberOfSignificantValueDigits, BigArrays bigArrays) {
+        if (numberOfSignificantValueDigits < 0 || numberOfSignificantValueDigits > MAX_SIGNIFICANT_VALUE_DIGITS) {
+            throw new ElasticsearchIllegalArgumentException("numberOfSignificantValueDigits must be in [0, "
+                    + MAX_SIGNIFICANT_VALUE_DIGITS + "], got [" + numberOfSignificantValueDigits + "]");
+        }
+        this.bigArrays = bigArrays;
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+        // smallest number of bits so that 2^-bits <= 10^-digits
+        this.subBucketBits = (int) Math.ceil(numberOfSignificantValueDigits * Math.log(10) / Math.log(2));
+        this.shift = MANTISSA_BITS - subBucketBits;
+    }
+
+    /**
+     * Return a read-only histogram that has no values.
+     */
+    public static DoubleHistogramState empty(int numberOfSignificantValueDigits) {
+        return new DoubleHistogramState(numberOfSignificantValueDigits, null);
+    }
+
+    public int numberOfSignificantValueDigits() {
+        return numberOfSignificantValueDigits;
+    }
+
+    /**
+     * Return the number of recorded values.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    private long key(double value) {
+        return Double.doubleToRawLongBits(value) >>> shift;
+    }
+
+    private double lowestEquivalentValue(long key) {
+        return Double.longBitsToDouble(key << shift);
+    }
+
+    private double highestEquivalentValue(long key) {
+        return Double.longBitsToDouble((key + 1) << shift);
+    }
+
+    private long numBuckets() {
+        if (counts != null) {
+            return counts.size();
+        } else if (compactKeys != null) {
+            return compactKeys.length;
+        } else {
+            return 0;
+        }
+    }
+
+    private long keyAt(long bucket) {
+        return counts != null ? baseKey + bucket : compactKeys[(int) bucket];
+    }
+
+    private long countAt(long bucket) {
+        return counts != null ? counts.get(bucket) : compactCounts[(int) bucket];
+    }
+
+    /**
+     * Make sure <code>key</code> is covered by <code>counts</code> and return its index. This may reallocate
+     * <code>counts</code> so it must be called before dereferencing it.
+     */
+    private long index(long key) {
+        if (bigArrays == null) {
+            throw new ElasticsearchIllegalStateException("Cannot record values into a read-only histogram");
+        }
+        if (counts == null) {
+            baseKey = lowestKey = highestKey = key;
+            counts = bigArrays.newLongArray(1);
+            return 0;
+        }
+        final long newLowestKey = Math.min(lowestKey, key);
+        final long newHighestKey = Math.max(highestKey, key);
+        final long highestBinade = newHighestKey >>> subBucketBits;
+        if (highestBinade - (newLowestKey >>> subBucketBits) >= MAX_BINADES) {
+            throw new ElasticsearchIllegalArgumentException("[hdr] percentiles only support non-zero values whose ratio is less than 2^"
+                    + MAX_BINADES + ", but got values in [" + lowestEquivalentValue(newLowestKey) + ", "
+                    + highestEquivalentValue(newHighestKey) + "]");
+        }
+        if (key < baseKey) {
+            // extend downwards, at least doubling the size of the array to amortize copies
+            final long lowestAllowedKey = Math.max(0, highestBinade - MAX_BINADES + 1) << subBucketBits;
+            final long newBaseKey = Math.max(lowestAllowedKey, Math.min(key, baseKey - (highestKey - baseKey + 1)));
+            final long offset = baseKey - newBaseKey;
+            final LongArray newCounts = bigArrays.newLongArray(highestKey - newBaseKey + 1);
+            for (long i = 0; i <= highestKey - baseKey; ++i) {
+                newCounts.set(i + offset, counts.get(i));
+            }
+            Releasables.close(counts);
+            counts = newCounts;
+            baseKey = newBaseKey;
+        } else if (key - baseKey >= counts.size()) {
+            counts = bigArrays.grow(counts, key - baseKey + 1);
+        }
+        lowestKey = newLowestKey;
+        highestKey = newHighestKey;
+        return key - baseKey;
+    }
+
+    public void recordValue(double value) {
+        recordValue(value, 1);
+    }
+
+    public void recordValue(double value, long count) {
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new ElasticsearchIllegalArgumentException("[hdr] percentiles only support finite non-negative values, got [" + value + "]");
+        }
+        if (value == 0) {
+            if (bigArrays == null) {
+                throw new ElasticsearchIllegalStateException("Cannot record values into a read-only histogram");
+            }
+            zeroCount += count;
+        } else {
+            final long index = index(key(value));
+            counts.increment(index, count);
+        }
+        totalCount += count;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add the values recorded by <code>other</code> to this histogram.
+     */
+    public void add(DoubleHistogramState other) {
+        if (numberOfSignificantValueDigits != other.numberOfSignificantValueDigits) {
+            throw new ElasticsearchIllegalArgumentException("Cannot merge histograms with different numbers of significant value digits");
+        }
+        if (bigArrays == null) {
+            throw new ElasticsearchIllegalStateException("Cannot record values into a read-only histogram");
+        }
+        if (other.totalCount == 0) {
+            return;
+        }
+        final long numBuckets = other.numBuckets();
+        for (long i = 0; i < numBuckets; ++i) {
+            final long count = other.countAt(i);
+            if (count != 0) {
+                final long index = index(other.keyAt(i));
+                counts.increment(index, count);
+            }
+        }
+        zeroCount += other.zeroCount;
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Return a read-only copy of this histogram that only stores non-empty buckets on heap and doesn't need to
+     * be released.
+     */
+    public DoubleHistogramState compactCopy() {
+        final DoubleHistogramState copy = new DoubleHistogramState(numberOfSignificantValueDigits, null);
+        copy.zeroCount = zeroCount;
+        copy.totalCount = totalCount;
+        copy.min = min;
+        copy.max = max;
+        final long numBuckets = numBuckets();
+        int nonEmptyBuckets = 0;
+        for (long i = 0; i < numBuckets; ++i) {
+            if (countAt(i) != 0) {
+                ++nonEmptyBuckets;
+            }
+        }
+        copy.compactKeys = new long[nonEmptyBuckets];
+        copy.compactCounts = new long[nonEmptyBuckets];
+        int j = 0;
+        for (long i = 0; i < numBuckets; ++i) {
+            final long count = countAt(i);
+            if (count != 0) {
+                copy.compactKeys[j] = keyAt(i);
+                copy.compactCounts[j] = count;
+                ++j;
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Return the value at quantile <code>q</code>, or {@link Double#NaN} if no value was recorded.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new ElasticsearchIllegalArgumentException("q should be in [0,1], got " + q);
+        }
+        if (totalCount == 0) {
+            return Double.NaN;
+        } else if (q == 0) {
+            return min;
+        } else if (q == 1) {
+            return max;
+        }
+        final long countAtQuantile = Math.max(1, (long) Math.ceil(q * totalCount));
+        long count = zeroCount;
+        if (count >= countAtQuantile) {
+            return 0;
+        }
+        final long numBuckets = numBuckets();
+        for (long i = 0; i < numBuckets; ++i) {
+            count += countAt(i);
+            if (count >= countAtQuantile) {
+                final long key = keyAt(i);
+                final double value = (lowestEquivalentValue(key) + highestEquivalentValue(key)) / 2;
+                return Math.min(max, Math.max(min, value));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Return the fraction of recorded values that are less than or equal to <code>value</code>, or
+     * {@link Double#NaN} if no value was recorded.
+     */
+    public double cdf(double value) {
+        if (totalCount == 0) {
+            return Double.NaN;
+        } else if (value < min) {
+            return 0;
+        } else if (value >= max) {
+            return 1;
+        }
+        double count = zeroCount;
+        if (value > 0) {
+            final long key = key(value);
+            final long numBuckets = numBuckets();
+            for (long i = 0; i < numBuckets; ++i) {
+                final long bucketKey = keyAt(i);
+                if (bucketKey < key) {
+                    count += countAt(i);
+                } else {
+                    if (bucketKey == key) {
+                        // interpolate within the bucket of the value
+                        final double low = Math.max(min, lowestEquivalentValue(key));
+                        final double high = Math.min(max, highestEquivalentValue(key));
+                        final double fraction = high > low ? Math.min(1, (value - low) / (high - low)) : 1;
+                        count += fraction * countAt(i);
+                    }
+                    break;
+                }
+            }
+        }
+        return count / totalCount;
+    }
+
+    @Override
+    public void close() throws ElasticsearchException {
+        Releasables.close(counts);
+    }
+
+    public static void write(DoubleHistogramState state, StreamOutput out) throws IOException {
+        out.writeVInt(state.numberOfSignificantValueDigits);
+        out.writeVLong(state.totalCount);
+        if (state.totalCount == 0) {
+            return;
+        }
+        out.writeDouble(state.min);
+        out.writeDouble(state.max);
+        out.writeVLong(state.zeroCount);
+        final long numBuckets = state.numBuckets();
+        long nonEmptyBuckets = 0;
+        for (long i = 0; i < numBuckets; ++i) {
+            if (state.countAt(i) != 0) {
+                ++nonEmptyBuckets;
+            }
+        }
+        out.writeVLong(nonEmptyBuckets);
+        // keys are delta-encoded
+        long previousKey = 0;
+        for (long i = 0; i < numBuckets; ++i) {
+            final long count = state.countAt(i);
+            if (count != 0) {
+                final long key = state.keyAt(i);
+                out.writeVLong(key - previousKey);
+                out.writeVLong(count);
+                previousKey = key;
+            }
+        }
+    }
+
+    /**
+     * Read a read-only histogram, see {@link #compactCopy()}.
+     */
+    public static DoubleHistogramState read(StreamInput in) throws IOException {
+        final DoubleHistogramState state = new DoubleHistogramState(in.readVInt(), null);
+        state.totalCount = in.readVLong();
+        if (state.totalCount == 0) {
+            return state;
+        }
+        state.min = in.readDouble();
+        state.max = in.readDouble();
+        state.zeroCount = in.readVLong();
+        final int nonEmptyBuckets = (int) in.readVLong();
+        state.compactKeys = new long[nonEmptyBuckets];
+        state.compactCounts = new long[nonEmptyBuckets];
+        long key = 0;
+        for (int i = 0; i < nonEmptyBuckets; ++i) {
+            key += in.readVLong();
+            state.compactKeys[i] = key;
+            state.compactCounts[i] = in.readVLong();
+        }
+        return state;
+    }
+
+}
@@ -17,35 +17,271 @@
 
 package org.elasticsearch.search.aggregations.metrics.percentiles.tdigest;
 
-import com.tdunning.math.stats.AVLTreeDigest;
-import com.tdunning.math.stats.Centroid;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntroSorter;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
- * Extension of {@link com.tdunning.math.stats.TDigest} with custom serialization.
+ * Merging t-digest, as described in https://github.com/tdunning/t-digest/blob/master/docs/t-digest-paper/histo.pdf.
+ *
+ * Centroids are stored as parallel arrays of means and weights sorted by mean. Incoming values are appended to
+ * a buffer, which is sorted and merged into the centroids when it gets full or when the digest is queried.
+ * Compared to tree-based digests, this doesn't allocate per value or per centroid, and merging digests is a
+ * single merge pass instead of one tree insertion per centroid.
  */
-public class TDigestState extends AVLTreeDigest {
+public class TDigestState {
 
     private final double compression;
 
+    // merged centroids, sorted by mean
+    private double[] means;
+    private double[] weights;
+    private int centroidCount;
+    private double mergedWeight;
+
+    // values that have not been merged into the centroids yet, the buffer starts small and grows up to
+    // maxBufferSize so that digests that only see a few values remain cheap
+    private final int maxBufferSize;
+    private double[] bufferMeans;
+    private double[] bufferWeights;
+    private int bufferCount;
+    private double bufferWeight;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
     public TDigestState(double compression) {
-        super(compression);
+        if (compression <= 0) {
+            throw new ElasticsearchIllegalArgumentException("compression must be > 0, got [" + compression + "]");
+        }
         this.compression = compression;
+        means = new double[0];
+        weights = new double[0];
+        maxBufferSize = (int) Math.min(5 * Math.ceil(2 * compression) + 50, 1 << 16);
+        bufferMeans = new double[Math.min(16, maxBufferSize)];
+        bufferWeights = new double[bufferMeans.length];
     }
 
     public double compression() {
         return compression;
     }
 
+    /**
+     * Return the number of values that have been added to this digest.
+     */
+    public long size() {
+        return (long) (mergedWeight + bufferWeight);
+    }
+
+    /**
+     * Return the number of centroids of this digest.
+     */
+    public int centroidCount() {
+        mergeBuffer();
+        return centroidCount;
+    }
+
+    public void add(double x) {
+        add(x, 1);
+    }
+
+    public void add(double x, long weight) {
+        if (Double.isNaN(x)) {
+            throw new ElasticsearchIllegalArgumentException("Cannot add NaN to a t-digest");
+        }
+        if (bufferCount == bufferMeans.length) {
+            if (bufferCount < maxBufferSize) {
+                bufferMeans = Arrays.copyOf(bufferMeans, Math.min(maxBufferSize, ArrayUtil.oversize(bufferCount + 1, 8)));
+                bufferWeights = Arrays.copyOf(bufferWeights, bufferMeans.length);
+            } else {
+                mergeBuffer();
+            }
+        }
+        bufferMeans[bufferCount] = x;
+        bufferWeights[bufferCount] = weight;
+        bufferCount++;
+        bufferWeight += weight;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+    }
+
+    /**
+     * Add all values of <code>other</code> to this digest. <code>other</code> is not modified.
+     */
+    public void add(TDigestState other) {
+        for (int i = 0; i < other.centroidCount; ++i) {
+            add(other.means[i], (long) other.weights[i]);
+        }
+        for (int i = 0; i < other.bufferCount; ++i) {
+            add(other.bufferMeans[i], (long) other.bufferWeights[i]);
+        }
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** The maximum weight of a centroid whose quantile is <code>q</code>, relative to the total weight. */
+    private double maxRelativeWeight(double q) {
+        return 4 * q * (1 - q) / compression;
+    }
+
+    private void mergeBuffer() {
+        if (bufferCount == 0) {
+            return;
+        }
+        final int count = centroidCount + bufferCount;
+        final double[] ms = Arrays.copyOf(means, count);
+        final double[] ws = Arrays.copyOf(weights, count);
+        System.arraycopy(bufferMeans, 0, ms, centroidCount, bufferCount);
+        System.arraycopy(bufferWeights, 0, ws, centroidCount, bufferCount);
+        new IntroSorter() {
+
+            double pivot;
+
+            @Override
+            protected void swap(int i, int j) {
+                double tmp = ms[i];
+                ms[i] = ms[j];
+                ms[j] = tmp;
+                tmp = ws[i];
+                ws[i] = ws[j];
+                ws[j] = tmp;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Double.compare(ms[i], ms[j]);
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = ms[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return Double.compare(pivot, ms[j]);
+            }
+        }.sort(0, count);
+
+        final double totalWeight = mergedWeight + bufferWeight;
+        // merge adjacent centroids in place as long as the result stays under the size bound
+        int last = 0;
+        double weightSoFar = 0;
+        for (int i = 1; i < count; ++i) {
+            final double proposedWeight = ws[last] + ws[i];
+            final double q0 = weightSoFar / totalWeight;
+            final double q2 = (weightSoFar + proposedWeight) / totalWeight;
+            if (proposedWeight <= totalWeight * Math.min(maxRelativeWeight(q0), maxRelativeWeight(q2))) {
+                ms[last] += (ms[i] - ms[last]) * ws[i] / proposedWeight;
+                ws[last] = proposedWeight;
+            } else {
+                weightSoFar += ws[last];
+                ++last;
+                ms[last] = ms[i];
+                ws[last] = ws[i];
+            }
+        }
+        centroidCount = last + 1;
+        if (means.length < centroidCount) {
+            means = new double[ArrayUtil.oversize(centroidCount, 8)];
+            weights = new double[means.length];
+        }
+        System.arraycopy(ms, 0, means, 0, centroidCount);
+        System.arraycopy(ws, 0, weights, 0, centroidCount);
+        mergedWeight = totalWeight;
+        bufferCount = 0;
+        bufferWeight = 0;
+    }
+
+    /**
+     * Return an estimate of the value at quantile <code>q</code>, or {@link Double#NaN} if the digest is empty.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new ElasticsearchIllegalArgumentException("q should be in [0,1], got " + q);
+        }
+        mergeBuffer();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        } else if (q == 0) {
+            return min;
+        } else if (q == 1) {
+            return max;
+        } else if (centroidCount == 1) {
+            return means[0];
+        }
+
+        final double index = q * mergedWeight;
+        // below the center of the first centroid, interpolate with the minimum
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double weightSoFar = weights[0] / 2;
+        for (int i = 0; i < centroidCount - 1; ++i) {
+            final double dw = (weights[i] + weights[i + 1]) / 2;
+            if (weightSoFar + dw > index) {
+                final double z1 = index - weightSoFar;
+                final double z2 = weightSoFar + dw - index;
+                return (means[i] * z2 + means[i + 1] * z1) / (z1 + z2);
+            }
+            weightSoFar += dw;
+        }
+        // above the center of the last centroid, interpolate with the maximum
+        final double lastHalfWeight = weights[centroidCount - 1] / 2;
+        final double z = Math.min(1, (index - weightSoFar) / lastHalfWeight);
+        return means[centroidCount - 1] + (max - means[centroidCount - 1]) * z;
+    }
+
+    /**
+     * Return an estimate of the fraction of values that are less than or equal to <code>x</code>, or
+     * {@link Double#NaN} if the digest is empty.
+     */
+    public double cdf(double x) {
+        mergeBuffer();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        } else if (x < min) {
+            return 0;
+        } else if (x >= max) {
+            return 1;
+        } else if (centroidCount == 1) {
+            // min < max here, so the only centroid holds several values
+            return (x - min) / (max - min);
+        }
+
+        if (x < means[0]) {
+            return (x - min) / (means[0] - min) * (weights[0] / 2) / mergedWeight;
+        }
+        double weightSoFar = 0;
+        for (int i = 0; i < centroidCount - 1; ++i) {
+            if (x < means[i + 1]) {
+                final double left = weightSoFar + weights[i] / 2;
+                final double dw = (weights[i] + weights[i + 1]) / 2;
+                return (left + dw * (x - means[i]) / (means[i + 1] - means[i])) / mergedWeight;
+            }
+            weightSoFar += weights[i];
+        }
+        final double lastHalfWeight = weights[centroidCount - 1] / 2;
+        return (mergedWeight - lastHalfWeight + lastHalfWeight * (x - means[centroidCount - 1]) / (max - means[centroidCount - 1])) / mergedWeight;
+    }
+
     public static void write(TDigestState state, StreamOutput out) throws IOException {
+        state.mergeBuffer();
         out.writeDouble(state.compression);
-        out.writeVInt(state.centroidCount());
-        for (Centroid centroid : state.centroids()) {
-            out.writeDouble(centroid.mean());
-            out.writeVLong(centroid.count());
+        out.writeVInt(state.centroidCount);
+        if (out.getVersion().onOrAfter(Version.V_2_0_0) && state.centroidCount > 0) {
+            out.writeDouble(state.min);
+            out.writeDouble(state.max);
+        }
+        for (int i = 0; i < state.centroidCount; ++i) {
+            out.writeDouble(state.means[i]);
+            out.writeVLong((long) state.weights[i]);
         }
     }
 
@@ -53,8 +289,24 @@ public class TDigestState extends AVLTreeDigest {
         double compression = in.readDouble();
         TDigestState state = new TDigestState(compression);
         int n = in.readVInt();
-        for (int i = 0; i < n; i++) {
-            state.add(in.readDouble(), in.readVInt());
+        if (in.getVersion().onOrAfter(Version.V_2_0_0)) {
+            // centroids are already merged and sorted: load them as-is
+            if (n > 0) {
+                state.min = in.readDouble();
+                state.max = in.readDouble();
+            }
+            state.means = new double[n];
+            state.weights = new double[n];
+            for (int i = 0; i < n; i++) {
+                state.means[i] = in.readDouble();
+                state.weights[i] = in.readVLong();
+                state.mergedWeight += state.weights[i];
+            }
+            state.centroidCount = n;
+        } else {
+            for (int i = 0; i < n; i++) {
+                state.add(in.readDouble(), in.readVLong());
+            }
         }
         return state;
     }
@@ -56,6 +56,8 @@ public class InternalScriptedMetric extends InternalMetricsAggregation implement
     private String reduceScript;
     private Map<String, Object> reduceParams;
     private Object aggregation;
+    /** set on the output of a partial reduce, whose aggregation is the list of shard results seen so far */
+    private transient boolean partiallyReduced;
 
     private InternalScriptedMetric() {
     }
@@ -80,13 +82,26 @@ public class InternalScriptedMetric extends InternalMetricsAggregation implement
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public InternalAggregation reduce(ReduceContext reduceContext) {
         List<Object> aggregationObjects = new ArrayList<>();
         for (InternalAggregation aggregation : reduceContext.aggregations()) {
             InternalScriptedMetric mapReduceAggregation = (InternalScriptedMetric) aggregation;
-            aggregationObjects.add(mapReduceAggregation.aggregation());
+            if (mapReduceAggregation.partiallyReduced) {
+                // unwrap the shard results collected by a previous partial reduce
+                aggregationObjects.addAll((List<Object>) mapReduceAggregation.aggregation());
+            } else {
+                aggregationObjects.add(mapReduceAggregation.aggregation());
+            }
         }
         InternalScriptedMetric firstAggregation = ((InternalScriptedMetric) reduceContext.aggregations().get(0));
+        if (reduceContext.isFinalReduce() == false) {
+            // the reduce script expects to see all the shard results at once, so it only runs on the final reduce
+            InternalScriptedMetric reduced = new InternalScriptedMetric(firstAggregation.getName(), aggregationObjects, firstAggregation.scriptLang,
+                    firstAggregation.scriptType, firstAggregation.reduceScript, firstAggregation.reduceParams, getMetaData());
+            reduced.partiallyReduced = true;
+            return reduced;
+        }
         Object aggregation;
         if (firstAggregation.reduceScript != null) {
             Map<String, Object> params;
@@ -113,7 +113,13 @@ public class InternalTopHits extends InternalMetricsAggregation implements TopHi
 
         try {
             int[] tracker = new int[shardHits.length];
-            TopDocs reducedTopDocs = TopDocs.merge(sort, from, size, shardDocs);
+            final TopDocs reducedTopDocs;
+            if (reduceContext.isFinalReduce()) {
+                reducedTopDocs = TopDocs.merge(sort, from, size, shardDocs);
+            } else {
+                // the from offset can only be applied once all shards are in, keep all the candidates until then
+                reducedTopDocs = TopDocs.merge(sort, 0, from + size, shardDocs);
+            }
             InternalSearchHit[] hits = new InternalSearchHit[reducedTopDocs.scoreDocs.length];
             for (int i = 0; i < reducedTopDocs.scoreDocs.length; i++) {
                 ScoreDoc scoreDoc = reducedTopDocs.scoreDocs[i];
@@ -123,7 +129,11 @@ public class InternalTopHits extends InternalMetricsAggregation implements TopHi
                 } while (shardDocs[scoreDoc.shardIndex].scoreDocs[position] != scoreDoc);
                 hits[i] = (InternalSearchHit) shardHits[scoreDoc.shardIndex].getAt(position);
             }
-            return new InternalTopHits(name, new InternalSearchHits(hits, reducedTopDocs.totalHits, reducedTopDocs.getMaxScore()));
+            InternalSearchHits reducedHits = new InternalSearchHits(hits, reducedTopDocs.totalHits, reducedTopDocs.getMaxScore());
+            if (reduceContext.isFinalReduce() == false) {
+                return new InternalTopHits(name, from, size, reducedTopDocs, reducedHits);
+            }
+            return new InternalTopHits(name, reducedHits);
         } catch (IOException e) {
             throw ExceptionsHelper.convertToElastic(e);
         }
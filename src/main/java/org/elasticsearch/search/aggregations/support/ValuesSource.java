@@ -27,6 +27,7 @@ import org.elasticsearch.common.lucene.TopReaderContextAware;
 import org.elasticsearch.index.fielddata.*;
 import org.elasticsearch.index.fielddata.plain.ParentChildAtomicFieldData;
 import org.elasticsearch.index.fielddata.plain.ParentChildIndexFieldData;
+import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.script.SearchScript;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric.WithScript.DoubleValues;
 import org.elasticsearch.search.aggregations.support.ValuesSource.WithScript.BytesValues;
@@ -192,6 +193,23 @@ public abstract class ValuesSource {
 
             public abstract long globalMaxOrd(IndexSearcher indexSearcher);
 
+            /**
+             * Return a lower bound of {@link #globalMaxOrd(IndexSearcher)} that doesn't require to load global
+             * ordinals: the highest number of ordinals of a single segment.
+             */
+            public abstract long maxSegmentMaxOrd(IndexSearcher indexSearcher);
+
+            /**
+             * Return an upper bound of {@link #globalMaxOrd(IndexSearcher)} that doesn't require to load global
+             * ordinals: the sum of the number of ordinals of all segments.
+             */
+            public abstract long sumSegmentMaxOrds(IndexSearcher indexSearcher);
+
+            /**
+             * Return whether global ordinals are built on refresh, in which case loading them is cheap.
+             */
+            public abstract boolean eagerGlobalOrdinals();
+
             public static class FieldData extends WithOrdinals implements ReaderContextAware {
 
                 protected final IndexOrdinalsFieldData indexFieldData;
@@ -288,6 +306,29 @@ public abstract class ValuesSource {
                         return maxOrd = values.getValueCount();
                     }
                 }
+
+                @Override
+                public long maxSegmentMaxOrd(IndexSearcher indexSearcher) {
+                    long max = 0;
+                    for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+                        max = Math.max(max, indexFieldData.load(leaf).getOrdinalsValues().getValueCount());
+                    }
+                    return max;
+                }
+
+                @Override
+                public long sumSegmentMaxOrds(IndexSearcher indexSearcher) {
+                    long sum = 0;
+                    for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+                        sum += indexFieldData.load(leaf).getOrdinalsValues().getValueCount();
+                    }
+                    return sum;
+                }
+
+                @Override
+                public boolean eagerGlobalOrdinals() {
+                    return indexFieldData.getFieldDataType().getLoading() == FieldMapper.Loading.EAGER_GLOBAL_ORDINALS;
+                }
             }
         }
 
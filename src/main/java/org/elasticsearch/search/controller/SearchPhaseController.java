@@ -23,7 +23,9 @@ import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.ObjectObjectOpenHashMap;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.HppcMaps;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
@@ -68,6 +70,7 @@ public class SearchPhaseController extends AbstractComponent {
 
     private final BigArrays bigArrays;
     private final boolean optimizeSingleShard;
+    private final int batchedReduceSize;
 
     private ScriptService scriptService;
 
@@ -77,6 +80,10 @@ public class SearchPhaseController extends AbstractComponent {
         this.bigArrays = bigArrays;
         this.scriptService = scriptService;
         this.optimizeSingleShard = componentSettings.getAsBoolean("optimize_single_shard", true);
+        this.batchedReduceSize = componentSettings.getAsInt("batched_reduce_size", 512);
+        if (batchedReduceSize < 2) {
+            throw new ElasticsearchIllegalArgumentException("batched_reduce_size must be at least 2 but was [" + batchedReduceSize + "]");
+        }
     }
 
     public boolean optimizeSingleShard() {
@@ -233,6 +240,24 @@ public class SearchPhaseController extends AbstractComponent {
         return mergedTopDocs.scoreDocs;
     }
 
+    /**
+     * Returns a merger that sorts the docs of query results as they arrive, see {@link ShardTopDocsMerger}. Its
+     * {@link ShardTopDocsMerger#sortedDocs()} is equivalent to {@link #sortDocs(boolean, AtomicArray)} over all results.
+     *
+     * @param scrollSort Whether to ignore the from and sort all hits in each shard result. Only used for scroll search
+     */
+    public ShardTopDocsMerger newTopDocsMerger(boolean scrollSort) {
+        return new ShardTopDocsMerger(scrollSort);
+    }
+
+    /**
+     * Returns a reducer that reduces the aggregations of query results as they arrive, partially reducing every
+     * <tt>batched_reduce_size</tt> shard results. See {@link ShardAggregationsReducer}.
+     */
+    public ShardAggregationsReducer newAggregationsReducer() {
+        return new ShardAggregationsReducer(batchedReduceSize, bigArrays, scriptService);
+    }
+
     public ScoreDoc[] getLastEmittedDocPerShard(SearchRequest request, ScoreDoc[] sortedShardList, int numShards) {
         if (request.scroll() != null) {
             return getLastEmittedDocPerShard(sortedShardList, numShards);
@@ -264,6 +289,15 @@ public class SearchPhaseController extends AbstractComponent {
     }
 
     public InternalSearchResponse merge(ScoreDoc[] sortedDocs, AtomicArray<? extends QuerySearchResultProvider> queryResultsArr, AtomicArray<? extends FetchSearchResultProvider> fetchResultsArr) {
+        return merge(sortedDocs, queryResultsArr, fetchResultsArr, null);
+    }
+
+    /**
+     * Merges the query and fetch results into a search response. If an aggregations reducer is given, the shard
+     * aggregations have already been handed to it and its final reduce is used instead of the query results.
+     */
+    public InternalSearchResponse merge(ScoreDoc[] sortedDocs, AtomicArray<? extends QuerySearchResultProvider> queryResultsArr, AtomicArray<? extends FetchSearchResultProvider> fetchResultsArr,
+                                        @Nullable ShardAggregationsReducer aggregationsReducer) {
 
         List<? extends AtomicArray.Entry<? extends QuerySearchResultProvider>> queryResults = queryResultsArr.asList();
         List<? extends AtomicArray.Entry<? extends FetchSearchResultProvider>> fetchResults = fetchResultsArr.asList();
@@ -365,7 +399,9 @@ public class SearchPhaseController extends AbstractComponent {
 
         // merge addAggregation
         InternalAggregations aggregations = null;
-        if (!queryResults.isEmpty()) {
+        if (aggregationsReducer != null) {
+            aggregations = aggregationsReducer.reduce();
+        } else if (!queryResults.isEmpty()) {
             if (firstResult.aggregations() != null && firstResult.aggregations().asList() != null) {
                 List<InternalAggregations> aggregationsList = new ArrayList<>(queryResults.size());
                 for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
@@ -0,0 +1,89 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.controller;
+
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.query.QuerySearchResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reduces the aggregations of shard query results as they arrive. Once <tt>batchedReduceSize</tt> shard aggregations
+ * are buffered they are partially reduced into a single intermediate result, which bounds the number of shard
+ * aggregations held on the coordinating node and spreads the cost of the reduce over the time the results arrive.
+ * <p/>
+ * Partial reduces are done with {@link ReduceContext#isFinalReduce()} set to <tt>false</tt>, so the aggregations keep
+ * everything a later reduce needs. The final reduce happens in {@link #reduce()}.
+ */
+public class ShardAggregationsReducer {
+
+    private final int batchedReduceSize;
+    private final BigArrays bigArrays;
+    private final ScriptService scriptService;
+
+    private final List<InternalAggregations> buffer;
+    private int numPartialReduces;
+
+    ShardAggregationsReducer(int batchedReduceSize, BigArrays bigArrays, ScriptService scriptService) {
+        assert batchedReduceSize >= 2 : "batched reduce size must be at least 2 but was " + batchedReduceSize;
+        this.batchedReduceSize = batchedReduceSize;
+        this.bigArrays = bigArrays;
+        this.scriptService = scriptService;
+        this.buffer = new ArrayList<>(batchedReduceSize);
+    }
+
+    /**
+     * Adds the aggregations of the given shard result, and releases them from the result. Results without
+     * aggregations are ignored.
+     */
+    public synchronized void add(QuerySearchResult result) {
+        InternalAggregations aggregations = (InternalAggregations) result.aggregations();
+        if (aggregations == null) {
+            return;
+        }
+        buffer.add(aggregations);
+        result.aggregations(null);
+        if (buffer.size() >= batchedReduceSize) {
+            InternalAggregations reduced = InternalAggregations.reduce(buffer, new ReduceContext(null, bigArrays, scriptService, false));
+            buffer.clear();
+            buffer.add(reduced);
+            numPartialReduces++;
+        }
+    }
+
+    /**
+     * Returns the number of partial reduces done so far.
+     */
+    public synchronized int numPartialReduces() {
+        return numPartialReduces;
+    }
+
+    /**
+     * Applies the final reduce to the aggregations added so far, or returns <tt>null</tt> if none of the shard
+     * results had aggregations.
+     */
+    public synchronized InternalAggregations reduce() {
+        return InternalAggregations.reduce(buffer, new ReduceContext(null, bigArrays, scriptService));
+    }
+}
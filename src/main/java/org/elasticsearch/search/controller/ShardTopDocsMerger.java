@@ -0,0 +1,164 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.controller;
+
+import org.apache.lucene.search.*;
+import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.search.query.QuerySearchResult;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the top docs of shard query results as they arrive, instead of once all shards responded. Only the best
+ * <tt>from + size</tt> docs are kept, and the score docs of each shard result are released once they have been merged.
+ * <p/>
+ * The merged docs are the same as the ones {@link SearchPhaseController#sortDocs} computes with {@link TopDocs#merge},
+ * including its tie breaking on the shard index and the position within the shard. Query results that include the
+ * fetch phase are not supported since all their docs are needed.
+ */
+public class ShardTopDocsMerger {
+
+    private final boolean scrollSort;
+
+    private int from;
+    private int numDocs;
+    private FieldComparator[] comparators;
+    private int[] reverseMul;
+    private PriorityQueue<ShardDoc> queue;
+
+    ShardTopDocsMerger(boolean scrollSort) {
+        this.scrollSort = scrollSort;
+    }
+
+    /**
+     * Merges the top docs of the given shard result, and replaces them with empty ones on the result. Total hits,
+     * max score and sort fields are kept on the result.
+     */
+    public synchronized void add(int shardIndex, QuerySearchResult result) throws IOException {
+        if (result.includeFetch()) {
+            throw new ElasticsearchIllegalStateException("can't merge top docs of query results that include fetch results");
+        }
+        TopDocs topDocs = result.topDocs();
+        if (queue == null) {
+            initialize(result);
+        }
+        ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+        for (int i = 0; i < scoreDocs.length && numDocs > 0; i++) {
+            ShardDoc shardDoc = new ShardDoc(scoreDocs[i], shardIndex, i);
+            if (queue.size() < numDocs) {
+                queue.add(shardDoc);
+            } else if (rank(shardDoc, queue.peek()) < 0) {
+                queue.poll();
+                queue.add(shardDoc);
+            } else {
+                // the shard docs are sorted, so none of the following ones can make it either
+                break;
+            }
+        }
+        if (topDocs instanceof TopFieldDocs) {
+            result.topDocs(new TopFieldDocs(topDocs.totalHits, SearchPhaseController.EMPTY_DOCS, ((TopFieldDocs) topDocs).fields, topDocs.getMaxScore()));
+        } else {
+            result.topDocs(new TopDocs(topDocs.totalHits, SearchPhaseController.EMPTY_DOCS, topDocs.getMaxScore()));
+        }
+    }
+
+    /**
+     * Returns the merged docs, skipping the first <tt>from</tt> ones unless sorting for a scroll.
+     */
+    public synchronized ScoreDoc[] sortedDocs() {
+        if (queue == null || queue.size() <= from) {
+            return SearchPhaseController.EMPTY_DOCS;
+        }
+        ShardDoc[] sorted = new ShardDoc[queue.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = queue.poll();
+        }
+        ScoreDoc[] docs = new ScoreDoc[sorted.length - from];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = sorted[from + i].scoreDoc;
+        }
+        return docs;
+    }
+
+    private void initialize(QuerySearchResult result) throws IOException {
+        from = scrollSort ? 0 : result.from();
+        numDocs = from + result.size();
+        if (result.topDocs() instanceof TopFieldDocs) {
+            SortField[] sortFields = ((TopFieldDocs) result.topDocs()).fields;
+            comparators = new FieldComparator[sortFields.length];
+            reverseMul = new int[sortFields.length];
+            for (int i = 0; i < sortFields.length; i++) {
+                comparators[i] = sortFields[i].getComparator(1, i);
+                reverseMul[i] = sortFields[i].getReverse() ? -1 : 1;
+            }
+        }
+        // the worst of the docs we keep is at the head of the queue
+        queue = new PriorityQueue<>(Math.max(1, Math.min(numDocs, 1024)), new Comparator<ShardDoc>() {
+            @Override
+            public int compare(ShardDoc o1, ShardDoc o2) {
+                return rank(o2, o1);
+            }
+        });
+    }
+
+    /**
+     * Returns a negative value if <tt>first</tt> ranks before <tt>second</tt>, the same way {@link TopDocs#merge} does.
+     */
+    @SuppressWarnings("unchecked")
+    private int rank(ShardDoc first, ShardDoc second) {
+        if (comparators != null) {
+            FieldDoc firstDoc = (FieldDoc) first.scoreDoc;
+            FieldDoc secondDoc = (FieldDoc) second.scoreDoc;
+            for (int i = 0; i < comparators.length; i++) {
+                int cmp = reverseMul[i] * comparators[i].compareValues(firstDoc.fields[i], secondDoc.fields[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+        } else {
+            if (first.scoreDoc.score > second.scoreDoc.score) {
+                return -1;
+            } else if (first.scoreDoc.score < second.scoreDoc.score) {
+                return 1;
+            }
+        }
+        // tie break: earlier shard wins, then the position within the shard
+        if (first.shardIndex != second.shardIndex) {
+            return first.shardIndex < second.shardIndex ? -1 : 1;
+        }
+        return first.hitIndex < second.hitIndex ? -1 : (first.hitIndex == second.hitIndex ? 0 : 1);
+    }
+
+    private static class ShardDoc {
+
+        final ScoreDoc scoreDoc;
+        final int shardIndex;
+        final int hitIndex;
+
+        ShardDoc(ScoreDoc scoreDoc, int shardIndex, int hitIndex) {
+            scoreDoc.shardIndex = shardIndex;
+            this.scoreDoc = scoreDoc;
+            this.shardIndex = shardIndex;
+            this.hitIndex = hitIndex;
+        }
+    }
+}
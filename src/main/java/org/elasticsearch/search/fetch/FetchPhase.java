@@ -26,6 +26,7 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.InPlaceMergeSorter;
 import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -163,10 +164,20 @@ public class FetchPhase implements SearchPhase {
 
         InternalSearchHit[] hits = new InternalSearchHit[context.docIdsToLoadSize()];
         FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
-        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
-            int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
-            int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
-            LeafReaderContext subReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
+        final int[] docIdsToLoad = context.docIdsToLoad();
+        final int docIdsToLoadFrom = context.docIdsToLoadFrom();
+        final List<LeafReaderContext> leaves = context.searcher().getIndexReader().leaves();
+        // load the hits in doc id order, so that each segment is visited once and its stored fields are read
+        // sequentially, neighbouring docs sharing the same compressed block; the hits keep their requested position
+        final int[] order = docIdOrder(docIdsToLoad, docIdsToLoadFrom, context.docIdsToLoadSize());
+        LeafReaderContext subReaderContext = null;
+        int nextDocBase = 0;
+        for (int index : order) {
+            int docId = docIdsToLoad[docIdsToLoadFrom + index];
+            if (docId >= nextDocBase) {
+                subReaderContext = leaves.get(ReaderUtil.subIndex(docId, leaves));
+                nextDocBase = subReaderContext.docBase + subReaderContext.reader().maxDoc();
+            }
             int subDocId = docId - subReaderContext.docBase;
 
             final InternalSearchHit searchHit;
@@ -199,6 +210,31 @@ public class FetchPhase implements SearchPhase {
         context.fetchResult().hits(new InternalSearchHits(hits, context.queryResult().topDocs().totalHits, context.queryResult().topDocs().getMaxScore()));
     }
 
+    /**
+     * Returns the positions of the docs to load, sorted by doc id.
+     */
+    private static int[] docIdOrder(final int[] docIds, final int from, int size) {
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        new InPlaceMergeSorter() {
+
+            @Override
+            protected void swap(int i, int j) {
+                final int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Integer.compare(docIds[from + order[i]], docIds[from + order[j]]);
+            }
+        }.sort(0, size);
+        return order;
+    }
+
     private int findRootDocumentIfNested(SearchContext context, LeafReaderContext subReaderContext, int subDocId) throws IOException {
         if (context.mapperService().hasNested()) {
             BitDocIdSet nonNested = context.bitsetFilterCache().getBitDocIdSetFilter(NonNestedDocsFilter.INSTANCE).getDocIdSet(subReaderContext);
@@ -18,6 +18,7 @@
  */
 package org.elasticsearch.search.internal;
 
+import com.carrotsearch.hppc.LongArrayList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
@@ -29,6 +30,7 @@ import org.apache.lucene.util.Counter;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cache.recycler.PageCacheRecycler;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.joda.DateMathParser;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
@@ -60,6 +62,7 @@ import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
 import org.elasticsearch.search.scan.ScanContext;
 import org.elasticsearch.search.suggest.SuggestionSearchContext;
+import org.joda.time.DateTimeZone;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -101,6 +104,7 @@ public abstract class SearchContext implements Releasable {
     }
 
     private boolean nowInMillisUsed;
+    private LongArrayList roundedNowValues;
 
     protected abstract void doClose();
 
@@ -142,6 +146,30 @@ public abstract class SearchContext implements Releasable {
         return nowInMillisUsed;
     }
 
+    /**
+     * Resolve a date math expression that is relative to a rounded "now", eg. "now/d". Unlike other usages of
+     * {@link #nowInMillis()}, this doesn't prevent the request from being cached since the resolved value only
+     * changes every once in a while. It is recorded instead, see {@link #roundedNowValues()}.
+     */
+    public final long resolveRoundedNow(DateMathParser parser, String text, boolean roundCeil, @Nullable DateTimeZone timeZone) {
+        final long value = parser.parse(text, nowInMillisImpl(), roundCeil, timeZone);
+        if (roundedNowValues == null) {
+            roundedNowValues = new LongArrayList();
+        }
+        roundedNowValues.add(value);
+        return value;
+    }
+
+    /**
+     * Return the values that have been resolved by {@link #resolveRoundedNow}, in order. Together with the source
+     * of the request, they identify the request, which the query cache uses as a cache key.
+     */
+    public final long[] roundedNowValues() {
+        return roundedNowValues == null ? EMPTY_LONGS : roundedNowValues.toArray();
+    }
+
+    private static final long[] EMPTY_LONGS = new long[0];
+
     protected abstract long nowInMillisImpl();
 
     public abstract Scroll scroll();
@@ -19,22 +19,30 @@
 
 package org.elasticsearch.search.internal;
 
+import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.action.search.type.ParsedScrollId;
 import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.Scroll;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import static org.elasticsearch.search.Scroll.readScroll;
 
@@ -264,8 +272,13 @@ public class ShardSearchLocalRequest implements ShardSearchRequest {
             out.writeBoolean(true);
             scroll.writeTo(out);
         }
-        out.writeBytesReference(source);
-        out.writeBytesReference(extraSource);
+        if (asKey) {
+            writeNormalizedSource(out, source);
+            writeNormalizedSource(out, extraSource);
+        } else {
+            out.writeBytesReference(source);
+            out.writeBytesReference(extraSource);
+        }
         out.writeStringArray(types);
         out.writeStringArrayNullable(filteringAliases);
         if (!asKey) {
@@ -293,6 +306,74 @@ public class ShardSearchLocalRequest implements ShardSearchRequest {
         }
     }
 
+    /**
+     * Writes the source in a form that does not depend on the order of object keys, the whitespaces or
+     * the xcontent type, so that semantically identical requests share the same cache key. Arrays keep
+     * their order, and so do the keys of objects under a <tt>sort</tt> field, whose order defines the
+     * order of the sort fields. Sources that cannot be normalized, eg. because of duplicate keys, are
+     * written as-is.
+     */
+    private static void writeNormalizedSource(StreamOutput out, @Nullable BytesReference source) throws IOException {
+        if (source != null && source.length() > 0) {
+            try (XContentParser parser = XContentFactory.xContent(source).createParser(source)) {
+                parser.nextToken();
+                final Object normalized = normalize(parser, false);
+                if (normalized != NOT_NORMALIZABLE) {
+                    BytesStreamOutput normalizedOut = new BytesStreamOutput();
+                    normalizedOut.writeGenericValue(normalized);
+                    out.writeBoolean(true);
+                    out.writeBytesReference(normalizedOut.bytes());
+                    return;
+                }
+            } catch (IOException | ElasticsearchParseException e) {
+                // fall back to the raw source
+            }
+        }
+        out.writeBoolean(false);
+        out.writeBytesReference(source);
+    }
+
+    private static final Object NOT_NORMALIZABLE = new Object();
+
+    private static Object normalize(XContentParser parser, boolean keepKeyOrder) throws IOException {
+        XContentParser.Token token = parser.currentToken();
+        switch (token) {
+            case START_OBJECT:
+                final Map<String, Object> map = keepKeyOrder ? new LinkedHashMap<String, Object>() : new TreeMap<String, Object>();
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    final String key = parser.currentName();
+                    parser.nextToken();
+                    final Object value = normalize(parser, keepKeyOrder || "sort".equals(key));
+                    if (value == NOT_NORMALIZABLE || map.containsKey(key)) {
+                        // parsers may consume every occurrence of a duplicate key, which a map cannot represent
+                        return NOT_NORMALIZABLE;
+                    }
+                    map.put(key, value);
+                }
+                return map;
+            case START_ARRAY:
+                final List<Object> list = new ArrayList<>();
+                while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                    final Object value = normalize(parser, keepKeyOrder);
+                    if (value == NOT_NORMALIZABLE) {
+                        return NOT_NORMALIZABLE;
+                    }
+                    list.add(value);
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.text();
+            case VALUE_NUMBER:
+                return parser.numberValue();
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            case VALUE_NULL:
+                return null;
+            default:
+                return NOT_NORMALIZABLE;
+        }
+    }
+
     @Override
     public BytesReference cacheKey() throws IOException {
         BytesStreamOutput out = new BytesStreamOutput();
@@ -43,4 +43,11 @@ public abstract class TransportRequest extends TransportMessage<TransportRequest
         super(request);
     }
 
+    /**
+     * Returns <tt>true</tt> if the {@link org.elasticsearch.common.bytes.BytesReference}s this request writes are not
+     * modified or released until the request is sent, so the transport can send them as is instead of copying them.
+     */
+    public boolean sendsStableBytes() {
+        return false;
+    }
 }
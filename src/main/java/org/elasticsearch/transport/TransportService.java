@@ -39,6 +39,7 @@ import org.elasticsearch.threadpool.ThreadPool;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -89,6 +90,7 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
     protected void doStart() throws ElasticsearchException {
         adapter.rxMetric.clear();
         adapter.txMetric.clear();
+        adapter.actionMetrics.clear();
         transport.transportServiceAdapter(adapter);
         transport.start();
         if (transport.boundAddress() != null && logger.isInfoEnabled()) {
@@ -141,7 +143,12 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
     }
 
     public TransportStats stats() {
-        return new TransportStats(transport.serverOpen(), adapter.rxMetric.count(), adapter.rxMetric.sum(), adapter.txMetric.count(), adapter.txMetric.sum());
+        ImmutableMap.Builder<String, TransportStats.ActionStats> actions = ImmutableMap.builder();
+        for (Map.Entry<String, ActionMetrics> entry : adapter.actionMetrics.entrySet()) {
+            ActionMetrics metrics = entry.getValue();
+            actions.put(entry.getKey(), new TransportStats.ActionStats(metrics.rxMetric.count(), metrics.rxMetric.sum(), metrics.txMetric.count(), metrics.txMetric.sum()));
+        }
+        return new TransportStats(transport.serverOpen(), adapter.rxMetric.count(), adapter.rxMetric.sum(), adapter.txMetric.count(), adapter.txMetric.sum(), actions.build());
     }
 
     public BoundTransportAddress boundAddress() {
@@ -264,6 +271,7 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
 
         final MeanMetric rxMetric = new MeanMetric();
         final MeanMetric txMetric = new MeanMetric();
+        final ConcurrentMap<String, ActionMetrics> actionMetrics = ConcurrentCollections.newConcurrentMap();
 
         @Override
         public void received(long size) {
@@ -275,6 +283,32 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
             txMetric.inc(size);
         }
 
+        @Override
+        public void requestReceived(String action, Version version, long size) {
+            // remote nodes can send any action name, only track the registered ones so the stats stay bounded
+            String registeredAction = ActionNames.incomingAction(action, version);
+            if (serverHandlers.containsKey(registeredAction)) {
+                actionMetrics(registeredAction).rxMetric.inc(size);
+            }
+        }
+
+        @Override
+        public void requestSent(String action, long size) {
+            actionMetrics(action).txMetric.inc(size);
+        }
+
+        private ActionMetrics actionMetrics(String action) {
+            ActionMetrics metrics = actionMetrics.get(action);
+            if (metrics == null) {
+                metrics = new ActionMetrics();
+                ActionMetrics existing = actionMetrics.putIfAbsent(action, metrics);
+                if (existing != null) {
+                    metrics = existing;
+                }
+            }
+            return metrics;
+        }
+
         @Override
         public TransportRequestHandler handler(String action, Version version) {
             return serverHandlers.get(ActionNames.incomingAction(action, version));
@@ -413,6 +447,11 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
         }
     }
 
+    static class ActionMetrics {
+        final MeanMetric rxMetric = new MeanMetric();
+        final MeanMetric txMetric = new MeanMetric();
+    }
+
     static class RequestHolder<T extends TransportResponse> {
 
         private final TransportResponseHandler<T> handler;
@@ -31,6 +31,18 @@ public interface TransportServiceAdapter {
 
     void sent(long size);
 
+    /**
+     * Accounts for a request of the given action received by this node, <tt>size</tt> being the size of the message.
+     * The action is the name the request was received with from a node of the given version, requests for actions
+     * that are not registered are not tracked per action.
+     */
+    void requestReceived(String action, Version version, long size);
+
+    /**
+     * Accounts for a request of the given action sent by this node, <tt>size</tt> being the size of the message.
+     */
+    void requestSent(String action, long size);
+
     TransportRequestHandler handler(String action, Version version);
 
     TransportResponseHandler remove(long requestId);
@@ -19,6 +19,8 @@
 
 package org.elasticsearch.transport;
 
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -28,6 +30,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
 
 import java.io.IOException;
+import java.util.Map;
 
 public class TransportStats implements Streamable, ToXContent {
 
@@ -36,17 +39,23 @@ public class TransportStats implements Streamable, ToXContent {
     private long rxSize;
     private long txCount;
     private long txSize;
+    private Map<String, ActionStats> actions = ImmutableMap.of();
 
     TransportStats() {
 
     }
 
     public TransportStats(long serverOpen, long rxCount, long rxSize, long txCount, long txSize) {
+        this(serverOpen, rxCount, rxSize, txCount, txSize, ImmutableMap.<String, ActionStats>of());
+    }
+
+    public TransportStats(long serverOpen, long rxCount, long rxSize, long txCount, long txSize, Map<String, ActionStats> actions) {
         this.serverOpen = serverOpen;
         this.rxCount = rxCount;
         this.rxSize = rxSize;
         this.txCount = txCount;
         this.txSize = txSize;
+        this.actions = actions;
     }
 
     public long serverOpen() {
@@ -89,6 +98,17 @@ public class TransportStats implements Streamable, ToXContent {
         return txSize();
     }
 
+    /**
+     * The request traffic per action, keyed by action name. Only actions that sent or received requests are included.
+     */
+    public Map<String, ActionStats> actions() {
+        return this.actions;
+    }
+
+    public Map<String, ActionStats> getActions() {
+        return actions();
+    }
+
     public static TransportStats readTransportStats(StreamInput in) throws IOException {
         TransportStats stats = new TransportStats();
         stats.readFrom(in);
@@ -102,6 +122,14 @@ public class TransportStats implements Streamable, ToXContent {
         rxSize = in.readVLong();
         txCount = in.readVLong();
         txSize = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_2_0_0)) {
+            int size = in.readVInt();
+            ImmutableMap.Builder<String, ActionStats> builder = ImmutableMap.builder();
+            for (int i = 0; i < size; i++) {
+                builder.put(in.readString(), ActionStats.readActionStats(in));
+            }
+            actions = builder.build();
+        }
     }
 
     @Override
@@ -111,6 +139,13 @@ public class TransportStats implements Streamable, ToXContent {
         out.writeVLong(rxSize);
         out.writeVLong(txCount);
         out.writeVLong(txSize);
+        if (out.getVersion().onOrAfter(Version.V_2_0_0)) {
+            out.writeVInt(actions.size());
+            for (Map.Entry<String, ActionStats> entry : actions.entrySet()) {
+                out.writeString(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+        }
     }
 
     @Override
@@ -121,6 +156,15 @@ public class TransportStats implements Streamable, ToXContent {
         builder.byteSizeField(Fields.RX_SIZE_IN_BYTES, Fields.RX_SIZE, rxSize);
         builder.field(Fields.TX_COUNT, txCount);
         builder.byteSizeField(Fields.TX_SIZE_IN_BYTES, Fields.TX_SIZE, txSize);
+        if (!actions.isEmpty()) {
+            builder.startObject(Fields.ACTIONS);
+            for (Map.Entry<String, ActionStats> entry : actions.entrySet()) {
+                builder.startObject(entry.getKey(), XContentBuilder.FieldCaseConversion.NONE);
+                entry.getValue().toXContent(builder, params);
+                builder.endObject();
+            }
+            builder.endObject();
+        }
         builder.endObject();
         return builder;
     }
@@ -134,5 +178,92 @@ public class TransportStats implements Streamable, ToXContent {
         static final XContentBuilderString TX_COUNT = new XContentBuilderString("tx_count");
         static final XContentBuilderString TX_SIZE = new XContentBuilderString("tx_size");
         static final XContentBuilderString TX_SIZE_IN_BYTES = new XContentBuilderString("tx_size_in_bytes");
+        static final XContentBuilderString ACTIONS = new XContentBuilderString("actions");
+    }
+
+    /**
+     * Request traffic of a single action: the requests received by this node for the action (rx), and the requests
+     * this node sent for it (tx). Responses are only accounted for in the node level totals.
+     */
+    public static class ActionStats implements Streamable, ToXContent {
+
+        private long rxCount;
+        private long rxSize;
+        private long txCount;
+        private long txSize;
+
+        ActionStats() {
+
+        }
+
+        public ActionStats(long rxCount, long rxSize, long txCount, long txSize) {
+            this.rxCount = rxCount;
+            this.rxSize = rxSize;
+            this.txCount = txCount;
+            this.txSize = txSize;
+        }
+
+        public long rxCount() {
+            return rxCount;
+        }
+
+        public long getRxCount() {
+            return rxCount();
+        }
+
+        public ByteSizeValue rxSize() {
+            return new ByteSizeValue(rxSize);
+        }
+
+        public ByteSizeValue getRxSize() {
+            return rxSize();
+        }
+
+        public long txCount() {
+            return txCount;
+        }
+
+        public long getTxCount() {
+            return txCount();
+        }
+
+        public ByteSizeValue txSize() {
+            return new ByteSizeValue(txSize);
+        }
+
+        public ByteSizeValue getTxSize() {
+            return txSize();
+        }
+
+        public static ActionStats readActionStats(StreamInput in) throws IOException {
+            ActionStats stats = new ActionStats();
+            stats.readFrom(in);
+            return stats;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            rxCount = in.readVLong();
+            rxSize = in.readVLong();
+            txCount = in.readVLong();
+            txSize = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(rxCount);
+            out.writeVLong(rxSize);
+            out.writeVLong(txCount);
+            out.writeVLong(txSize);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field(Fields.RX_COUNT, rxCount);
+            builder.byteSizeField(Fields.RX_SIZE_IN_BYTES, Fields.RX_SIZE, rxSize);
+            builder.field(Fields.TX_COUNT, txCount);
+            builder.byteSizeField(Fields.TX_SIZE_IN_BYTES, Fields.TX_SIZE, txSize);
+            return builder;
+        }
     }
 }
\ No newline at end of file
@@ -196,6 +196,7 @@ public class LocalTransport extends AbstractLifecycleComponent<Transport> implem
         final byte[] data = bStream.bytes().toBytes();
 
         transportServiceAdapter.sent(data.length);
+        transportServiceAdapter.requestSent(action, data.length);
 
         targetTransport.workers().execute(new Runnable() {
             @Override
@@ -221,6 +222,7 @@ public class LocalTransport extends AbstractLifecycleComponent<Transport> implem
             boolean isRequest = TransportStatus.isRequest(status);
 
             if (isRequest) {
+                transportServiceAdapter.requestReceived(action, version, data.length);
                 handleRequest(stream, requestId, sourceTransport, version);
             } else {
                 final TransportResponseHandler handler = transportServiceAdapter.remove(requestId);
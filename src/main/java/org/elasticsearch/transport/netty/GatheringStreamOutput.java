@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport.netty;
+
+import com.carrotsearch.hppc.IntArrayList;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
+import org.elasticsearch.common.netty.NettyUtils;
+import org.elasticsearch.common.util.BigArrays;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link ReleasableBytesStreamOutput} that doesn't copy the large {@link BytesReference}s written to it but keeps
+ * a reference to them, and gathers them with the bytes written around them when the message is sent. This is
+ * only safe for references that are not modified or released until the message is sent,
+ * see {@link org.elasticsearch.transport.TransportRequest#sendsStableBytes()}.
+ * <p/>
+ * Note, the referenced bytes are not accounted for by {@link #position()} and {@link #size()}.
+ */
+public class GatheringStreamOutput extends ReleasableBytesStreamOutput {
+
+    /**
+     * References shorter than this are copied, gathering many tiny buffers would cost more than copying them.
+     */
+    static final int MIN_REFERENCED_LENGTH = 1024;
+
+    private final IntArrayList offsets = new IntArrayList();
+    private final List<BytesReference> references = new ArrayList<>();
+
+    public GatheringStreamOutput(BigArrays bigArrays) {
+        super(bigArrays);
+    }
+
+    @Override
+    public void writeBytesReference(@Nullable BytesReference bytes) throws IOException {
+        if (bytes == null || bytes.length() < MIN_REFERENCED_LENGTH) {
+            super.writeBytesReference(bytes);
+            return;
+        }
+        writeVInt(bytes.length());
+        offsets.add(size());
+        references.add(bytes);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        offsets.clear();
+        references.clear();
+    }
+
+    /**
+     * Returns the given written bytes of this stream, with the referenced bytes in between, as a single channel buffer.
+     */
+    public ChannelBuffer toChannelBuffer(BytesReference written) {
+        ChannelBuffer writtenBuffer = written.toChannelBuffer();
+        if (references.isEmpty()) {
+            return writtenBuffer;
+        }
+        ChannelBuffer[] buffers = new ChannelBuffer[2 * references.size() + 1];
+        int from = 0;
+        for (int i = 0; i < references.size(); i++) {
+            int offset = offsets.get(i);
+            buffers[2 * i] = writtenBuffer.slice(writtenBuffer.readerIndex() + from, offset - from);
+            buffers[2 * i + 1] = references.get(i).toChannelBuffer();
+            from = offset;
+        }
+        buffers[buffers.length - 1] = writtenBuffer.slice(writtenBuffer.readerIndex() + from, writtenBuffer.readableBytes() - from);
+        return ChannelBuffers.wrappedBuffer(NettyUtils.DEFAULT_GATHERING, buffers);
+    }
+}
@@ -109,6 +109,7 @@ public class MessageChannelHandler extends SimpleChannelUpstreamHandler {
 
         if (TransportStatus.isRequest(status)) {
             String action = handleRequest(ctx.getChannel(), wrappedStream, requestId, version);
+            transportServiceAdapter.requestReceived(action, version, size + 6);
             if (buffer.readerIndex() != expectedIndexReader) {
                 if (buffer.readerIndex() < expectedIndexReader) {
                     logger.warn("Message not fully read (request) for [{}] and action [{}], resetting", requestId, action);
@@ -646,14 +646,20 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
         byte status = 0;
         status = TransportStatus.setRequest(status);
 
-        ReleasableBytesStreamOutput bStream = new ReleasableBytesStreamOutput(bigArrays);
+        final boolean compressRequest = options.compress() && (!(request instanceof BytesTransportRequest));
+        final ReleasableBytesStreamOutput bStream;
+        if (compressRequest == false && request.sendsStableBytes()) {
+            bStream = new GatheringStreamOutput(bigArrays);
+        } else {
+            bStream = new ReleasableBytesStreamOutput(bigArrays);
+        }
         boolean addedReleaseListener = false;
         try {
             bStream.skip(NettyHeader.HEADER_SIZE);
             StreamOutput stream = bStream;
             // only compress if asked, and, the request is not bytes, since then only
             // the header part is compressed, and the "body" can't be extracted as compressed
-            if (options.compress() && (!(request instanceof BytesTransportRequest))) {
+            if (compressRequest) {
                 status = TransportStatus.setCompress(status);
                 stream = CompressorFactory.defaultCompressor().streamOutput(stream);
             }
@@ -685,9 +691,14 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
                 request.writeTo(stream);
                 stream.close();
                 bytes = bStream.bytes();
-                buffer = bytes.toChannelBuffer();
+                if (bStream instanceof GatheringStreamOutput) {
+                    buffer = ((GatheringStreamOutput) bStream).toChannelBuffer(bytes);
+                } else {
+                    buffer = bytes.toChannelBuffer();
+                }
             }
             NettyHeader.writeHeader(buffer, requestId, status, version);
+            transportServiceAdapter.requestSent(action, buffer.readableBytes());
             ChannelFuture future = targetChannel.write(buffer);
             ReleaseChannelFutureListener listener = new ReleaseChannelFutureListener(bytes);
             future.addListener(listener);
@@ -0,0 +1,197 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.bulk;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.ClusterScope;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.Scope;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+import org.junit.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Tests that parsing the index items of a bulk request on the bulk_parse pool keeps the responses in order.
+ */
+@ClusterScope(scope = Scope.TEST, numDataNodes = 0)
+public class BulkParseConcurrencyTests extends ElasticsearchIntegrationTest {
+
+    private String startNode(int parseConcurrency) {
+        return startNode(parseConcurrency, true);
+    }
+
+    private String startNode(int parseConcurrency, boolean batchIndexWrites) {
+        return internalCluster().startNode(settingsBuilder()
+                .put("action.bulk.parse_concurrency", parseConcurrency)
+                .put("action.bulk.batch_index_writes", batchIndexWrites)
+                .put("threadpool.bulk_parse.type", "scaling")
+                .put("threadpool.bulk_parse.size", 4));
+    }
+
+    private void createIndex() {
+        assertAcked(prepareCreate("test")
+                .setSettings(ImmutableSettings.builder().put("number_of_shards", 1).put("number_of_replicas", 0))
+                .addMapping("type", "num", "type=integer"));
+        ensureGreen("test");
+    }
+
+    private long completedParseTasks(String node) {
+        for (ThreadPoolStats.Stats stats : internalCluster().getInstance(ThreadPool.class, node).stats()) {
+            if (ThreadPool.Names.BULK_PARSE.equals(stats.getName())) {
+                return stats.getCompleted();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Builds a bulk request that mixes valid index items, index items whose document fails to parse and deletes.
+     */
+    private BulkRequestBuilder mixedBulk(int numItems) {
+        BulkRequestBuilder bulk = client().prepareBulk();
+        for (int i = 0; i < numItems; i++) {
+            if (isDelete(i)) {
+                bulk.add(client().prepareDelete("test", "type", Integer.toString(i)));
+            } else if (isInvalid(i)) {
+                bulk.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource("num", "not a number"));
+            } else {
+                bulk.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource("num", i));
+            }
+        }
+        return bulk;
+    }
+
+    private static boolean isDelete(int i) {
+        return i % 11 == 10;
+    }
+
+    private static boolean isInvalid(int i) {
+        return i % 7 == 3;
+    }
+
+    /**
+     * Checks that every item of the response is at its original position and that only invalid items failed,
+     * and returns the number of indexed documents.
+     */
+    private long assertMixedBulkResponse(BulkResponse response, int numItems) {
+        assertThat(response.getItems().length, equalTo(numItems));
+        long indexed = 0;
+        for (int i = 0; i < numItems; i++) {
+            BulkItemResponse item = response.getItems()[i];
+            assertThat(item.getItemId(), equalTo(i));
+            assertThat(item.getId(), equalTo(Integer.toString(i)));
+            if (isDelete(i)) {
+                assertThat(item.getOpType(), equalTo("delete"));
+                assertThat(item.isFailed(), equalTo(false));
+            } else if (isInvalid(i)) {
+                assertThat(item.getOpType(), equalTo("index"));
+                assertThat(item.isFailed(), equalTo(true));
+                assertThat(item.getFailureMessage(), containsString("MapperParsingException"));
+            } else {
+                assertThat(item.getOpType(), equalTo("index"));
+                assertThat(item.getFailureMessage(), item.isFailed(), equalTo(false));
+                assertThat(item.getVersion(), equalTo(1l));
+                indexed++;
+            }
+        }
+        return indexed;
+    }
+
+    @Test
+    public void testParallelParsingKeepsItemPositions() throws Exception {
+        final String node = startNode(4);
+        createIndex();
+
+        final int numItems = scaledRandomIntBetween(64, 500);
+        final BulkResponse response = mixedBulk(numItems).get();
+        assertThat(response.hasFailures(), equalTo(true));
+        final long indexed = assertMixedBulkResponse(response, numItems);
+
+        // the request was large enough to be parsed on the bulk_parse pool
+        assertBusy(new Runnable() {
+            @Override
+            public void run() {
+                assertThat(completedParseTasks(node), greaterThan(0l));
+            }
+        });
+
+        refresh();
+        assertHitCount(client().prepareCount("test").get(), indexed);
+    }
+
+    @Test
+    public void testSmallRequestsAreParsedSerially() throws Exception {
+        final String node = startNode(4);
+        createIndex();
+
+        // fewer than 16 index items
+        final int numItems = randomIntBetween(1, 15);
+        final long indexed = assertMixedBulkResponse(mixedBulk(numItems).get(), numItems);
+        assertThat(completedParseTasks(node), equalTo(0l));
+
+        refresh();
+        assertHitCount(client().prepareCount("test").get(), indexed);
+    }
+
+    @Test
+    public void testParallelParsingDisabled() throws Exception {
+        final String node = startNode(1);
+        createIndex();
+
+        final int numItems = scaledRandomIntBetween(64, 500);
+        final long indexed = assertMixedBulkResponse(mixedBulk(numItems).get(), numItems);
+        assertThat(completedParseTasks(node), equalTo(0l));
+
+        refresh();
+        assertHitCount(client().prepareCount("test").get(), indexed);
+    }
+
+    @Test
+    public void testBatchIndexWritesDisabled() throws Exception {
+        startNode(randomIntBetween(1, 4), false);
+        createIndex();
+
+        // index items are executed one at a time, with the same responses
+        final int numItems = scaledRandomIntBetween(1, 500);
+        final long indexed = assertMixedBulkResponse(mixedBulk(numItems).get(), numItems);
+
+        // items with auto generated ids, which would otherwise be added to the index writer as one block
+        BulkRequestBuilder bulk = client().prepareBulk();
+        for (int i = 0; i < numItems; i++) {
+            bulk.add(client().prepareIndex("test", "type").setSource("num", i));
+        }
+        BulkResponse response = bulk.get();
+        assertThat(response.hasFailures(), equalTo(false));
+        for (int i = 0; i < numItems; i++) {
+            assertThat(response.getItems()[i].getItemId(), equalTo(i));
+            assertThat(response.getItems()[i].getOpType(), equalTo("create"));
+        }
+
+        refresh();
+        assertHitCount(client().prepareCount("test").get(), indexed + numItems);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.bulk;
+
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class BulkProcessorAdaptiveLimitsTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testLimitsShrinkOnOverloadAndGrowBack() {
+        BulkProcessor.ResizableSemaphore semaphore = new BulkProcessor.ResizableSemaphore(8);
+        BulkProcessor.AdaptiveLimits limits = new BulkProcessor.AdaptiveLimits(8, 100);
+        assertThat(limits.bulkActions(1000), equalTo(1000));
+        assertThat(limits.bulkSize(1 << 20), equalTo(1l << 20));
+        assertThat(limits.concurrentRequests(), equalTo(8));
+
+        // too slow
+        limits.onBulk(200, 0, semaphore);
+        assertThat(limits.bulkActions(1000), equalTo(500));
+        assertThat(limits.bulkSize(1 << 20), equalTo(1l << 19));
+        assertThat(limits.concurrentRequests(), equalTo(4));
+        assertThat(semaphore.availablePermits(), equalTo(4));
+
+        // rejected
+        limits.onBulk(10, 1, semaphore);
+        assertThat(limits.bulkActions(1000), equalTo(250));
+        assertThat(limits.concurrentRequests(), equalTo(2));
+        assertThat(semaphore.availablePermits(), equalTo(2));
+
+        // the limits have a floor
+        for (int i = 0; i < 10; i++) {
+            limits.onBulk(10, 1, semaphore);
+        }
+        assertThat(limits.bulkActions(1000), equalTo(1000 / BulkProcessor.AdaptiveLimits.MAX_BATCH_DIVISOR));
+        assertThat(limits.bulkActions(4), equalTo(1));
+        assertThat(limits.bulkActions(-1), equalTo(-1));
+        assertThat(limits.bulkSize(-1), equalTo(-1l));
+        assertThat(limits.concurrentRequests(), equalTo(1));
+        assertThat(semaphore.availablePermits(), equalTo(1));
+
+        // and grow back up to the configured values
+        for (int i = 0; i < 100; i++) {
+            limits.onBulk(10, 0, semaphore);
+        }
+        assertThat(limits.bulkActions(1000), equalTo(1000));
+        assertThat(limits.concurrentRequests(), equalTo(8));
+        assertThat(semaphore.availablePermits(), equalTo(8));
+    }
+
+    @Test
+    public void testFrozenLimitsDontChange() throws Exception {
+        BulkProcessor.ResizableSemaphore semaphore = new BulkProcessor.ResizableSemaphore(4);
+        BulkProcessor.AdaptiveLimits limits = new BulkProcessor.AdaptiveLimits(4, 100);
+        // a request holds a permit while the limits shrink
+        semaphore.acquire();
+        limits.onBulk(10, 1, semaphore);
+        assertThat(semaphore.availablePermits(), equalTo(1));
+        assertThat(limits.freeze(), equalTo(2));
+        limits.onBulk(10, 0, semaphore);
+        assertThat(limits.concurrentRequests(), equalTo(2));
+        semaphore.release();
+        assertThat(semaphore.tryAcquire(2), equalTo(true));
+    }
+}
@@ -20,28 +20,36 @@
 package org.elasticsearch.action.bulk;
 
 import com.carrotsearch.ant.tasks.junit4.dependencies.com.carrotsearch.randomizedtesting.generators.RandomPicks;
+import org.elasticsearch.action.*;
 import org.elasticsearch.action.get.MultiGetItemResponse;
 import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.FilterClient;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.Matchers.*;
@@ -292,6 +300,79 @@ public class BulkProcessorTests extends ElasticsearchIntegrationTest {
         assertMultiGetResponse(multiGetRequestBuilder.get(), testDocs);
     }
 
+    @Test
+    public void testAdaptiveBulkProcessorWithRejectionRetries() throws Exception {
+        BulkProcessorTestListener listener = new BulkProcessorTestListener();
+
+        int bulkActions = randomIntBetween(10, 100);
+        int numDocs = randomIntBetween(bulkActions, bulkActions + 100);
+        BulkProcessor processor = BulkProcessor.builder(client(), listener)
+                .setConcurrentRequests(randomIntBetween(0, 10)).setBulkActions(bulkActions)
+                .setFlushInterval(TimeValue.timeValueHours(24)).setBulkSize(new ByteSizeValue(1, ByteSizeUnit.GB))
+                .setRejectionRetries(randomIntBetween(1, 3), TimeValue.timeValueMillis(randomIntBetween(1, 10)))
+                .setAdaptive(TimeValue.timeValueMillis(randomIntBetween(1, 1000)))
+                .build();
+
+        MultiGetRequestBuilder multiGetRequestBuilder = indexDocs(client(), processor, numDocs);
+        assertThat(processor.awaitClose(1, TimeUnit.MINUTES), is(true));
+
+        assertThat(listener.beforeCounts.get(), equalTo(listener.afterCounts.get()));
+        assertThat(listener.bulkFailures.size(), equalTo(0));
+        assertThat(listener.bulkItems.size(), equalTo(numDocs));
+        Set<String> ids = new HashSet<>();
+        for (BulkItemResponse bulkItemResponse : listener.bulkItems) {
+            assertThat(bulkItemResponse.isFailed(), equalTo(false));
+            assertThat(ids.add(bulkItemResponse.getId()), equalTo(true));
+        }
+
+        BulkProcessor.Stats stats = processor.stats();
+        assertThat(stats.getBulks(), greaterThanOrEqualTo((long) listener.afterCounts.get()));
+        assertThat(stats.getActions(), greaterThanOrEqualTo((long) numDocs));
+        assertThat(stats.getFailedBulks(), equalTo(0l));
+        assertThat(stats.getBulkActions(), both(greaterThan(0)).and(lessThanOrEqualTo(bulkActions)));
+        assertMultiGetResponse(multiGetRequestBuilder.get(), numDocs);
+    }
+
+    @Test
+    public void testBulkProcessorRetriesRejectedActions() throws Exception {
+        final RejectingClient rejectingClient = new RejectingClient(client());
+        final BulkProcessorTestListener listener = new BulkProcessorTestListener();
+
+        int bulkActions = randomIntBetween(10, 100);
+        int numDocs = randomIntBetween(bulkActions, bulkActions + 100);
+        BulkProcessor processor = BulkProcessor.builder(rejectingClient, listener)
+                .setConcurrentRequests(randomIntBetween(0, 4)).setBulkActions(bulkActions)
+                .setFlushInterval(TimeValue.timeValueHours(24)).setBulkSize(new ByteSizeValue(1, ByteSizeUnit.GB))
+                .setRejectionRetries(RejectingClient.MAX_REJECTIONS, TimeValue.timeValueMillis(randomIntBetween(1, 10)))
+                .build();
+
+        MultiGetRequestBuilder multiGetRequestBuilder = indexDocs(client(), processor, numDocs);
+        assertThat(processor.awaitClose(1, TimeUnit.MINUTES), is(true));
+
+        assertThat(listener.beforeCounts.get(), equalTo(listener.afterCounts.get()));
+        assertThat(listener.bulkFailures.size(), equalTo(0));
+        assertThat(listener.misplacedItems, empty());
+        assertThat(listener.bulkItems.size(), equalTo(numDocs));
+        Set<String> ids = new HashSet<>();
+        for (BulkItemResponse bulkItemResponse : listener.bulkItems) {
+            assertThat(bulkItemResponse.getFailureMessage(), bulkItemResponse.isFailed(), equalTo(false));
+            assertThat(bulkItemResponse.getVersion(), equalTo(1l));
+            assertThat(ids.add(bulkItemResponse.getId()), equalTo(true));
+        }
+
+        long expectedItemRejections = 0;
+        for (int i = 1; i <= numDocs; i++) {
+            expectedItemRejections += RejectingClient.rejections(Integer.toString(i));
+        }
+        assertThat(rejectingClient.rejectedRequests.get(), equalTo(1l));
+        BulkProcessor.Stats stats = processor.stats();
+        assertThat(stats.getBulks(), equalTo(rejectingClient.bulks.get()));
+        assertThat(stats.getActions(), equalTo(rejectingClient.actions.get()));
+        assertThat(stats.getRejectedActions(), equalTo(expectedItemRejections + rejectingClient.rejectedRequestActions.get()));
+        assertThat(stats.getFailedBulks(), equalTo(0l));
+        assertMultiGetResponse(multiGetRequestBuilder.get(), numDocs);
+    }
+
     private static MultiGetRequestBuilder indexDocs(Client client, BulkProcessor processor, int numDocs) {
         MultiGetRequestBuilder multiGetRequestBuilder = client.prepareMultiGet();
         for (int i = 1; i <= numDocs; i++) {
@@ -329,6 +410,7 @@ public class BulkProcessorTests extends ElasticsearchIntegrationTest {
         private final AtomicInteger afterCounts = new AtomicInteger();
         private final List<BulkItemResponse> bulkItems = new CopyOnWriteArrayList<>();
         private final List<Throwable> bulkFailures = new CopyOnWriteArrayList<>();
+        private final List<BulkItemResponse> misplacedItems = new CopyOnWriteArrayList<>();
 
         private BulkProcessorTestListener(CountDownLatch... latches) {
             this.latches = latches;
@@ -341,6 +423,13 @@ public class BulkProcessorTests extends ElasticsearchIntegrationTest {
 
         @Override
         public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            // each response must be at the position of its action in the request, retried actions included
+            for (int i = 0; i < response.getItems().length; i++) {
+                BulkItemResponse item = response.getItems()[i];
+                if (item.getItemId() != i || !item.getId().equals(((IndexRequest) request.requests().get(i)).id())) {
+                    misplacedItems.add(item);
+                }
+            }
             bulkItems.addAll(Arrays.asList(response.getItems()));
             afterCounts.incrementAndGet();
             for (CountDownLatch latch : latches) {
@@ -357,4 +446,102 @@ public class BulkProcessorTests extends ElasticsearchIntegrationTest {
             }
         }
     }
+
+    /**
+     * A client that rejects the first bulk request as a whole, and then rejects some actions a fixed number of times
+     * depending on their id, like an overloaded cluster would. The other actions are executed on the wrapped client.
+     */
+    private static class RejectingClient extends FilterClient {
+
+        static final int MAX_REJECTIONS = 3;
+
+        private final ConcurrentMap<String, AtomicInteger> attempts = ConcurrentCollections.newConcurrentMap();
+        private final AtomicLong bulks = new AtomicLong();
+        private final AtomicLong actions = new AtomicLong();
+        private final AtomicLong rejectedRequests = new AtomicLong();
+        private final AtomicLong rejectedRequestActions = new AtomicLong();
+
+        RejectingClient(Client in) {
+            super(in);
+        }
+
+        /**
+         * The number of times the action with the given id is rejected, the rejection of the first request as a whole
+         * included this never exceeds {@link #MAX_REJECTIONS}.
+         */
+        static int rejections(String id) {
+            final int i = Integer.parseInt(id);
+            if (i % 7 == 0) {
+                return 2;
+            }
+            return i % 3 == 0 ? 1 : 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, Client>> ActionFuture<Response> execute(
+                Action<Request, Response, RequestBuilder, Client> action, Request request) {
+            if (action != BulkAction.INSTANCE) {
+                return super.execute(action, request);
+            }
+            PlainActionFuture<Response> future = PlainActionFuture.newFuture();
+            execute(action, request, future);
+            return future;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, Client>> void execute(
+                Action<Request, Response, RequestBuilder, Client> action, Request request, ActionListener<Response> listener) {
+            if (action != BulkAction.INSTANCE) {
+                super.execute(action, request, listener);
+                return;
+            }
+            final BulkResponse response;
+            try {
+                response = rejectOrExecute((BulkRequest) request);
+            } catch (Throwable t) {
+                listener.onFailure(t);
+                return;
+            }
+            listener.onResponse((Response) response);
+        }
+
+        private BulkResponse rejectOrExecute(BulkRequest request) {
+            bulks.incrementAndGet();
+            actions.addAndGet(request.numberOfActions());
+            if (rejectedRequests.compareAndSet(0, 1)) {
+                rejectedRequestActions.addAndGet(request.numberOfActions());
+                throw new EsRejectedExecutionException("rejected the whole request");
+            }
+            final BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+            final BulkRequest accepted = new BulkRequest();
+            final List<Integer> acceptedSlots = new ArrayList<>();
+            for (int i = 0; i < items.length; i++) {
+                final IndexRequest indexRequest = (IndexRequest) request.requests().get(i);
+                AtomicInteger attempt = attempts.get(indexRequest.id());
+                if (attempt == null) {
+                    attempts.putIfAbsent(indexRequest.id(), new AtomicInteger());
+                    attempt = attempts.get(indexRequest.id());
+                }
+                if (attempt.getAndIncrement() < rejections(indexRequest.id())) {
+                    items[i] = new BulkItemResponse(i, indexRequest.opType().lowercase(), new BulkItemResponse.Failure(indexRequest.index(),
+                            indexRequest.type(), indexRequest.id(), new EsRejectedExecutionException("rejected [" + indexRequest.id() + "]")));
+                } else {
+                    accepted.add(indexRequest);
+                    acceptedSlots.add(i);
+                }
+            }
+            if (accepted.numberOfActions() > 0) {
+                final BulkItemResponse[] acceptedItems = in().bulk(accepted).actionGet().getItems();
+                for (int i = 0; i < acceptedItems.length; i++) {
+                    final int slot = acceptedSlots.get(i);
+                    final BulkItemResponse item = acceptedItems[i];
+                    items[slot] = item.isFailed() ? new BulkItemResponse(slot, item.getOpType(), item.getFailure())
+                            : new BulkItemResponse(slot, item.getOpType(), item.getResponse());
+                }
+            }
+            return new BulkResponse(items, 0);
+        }
+    }
 }
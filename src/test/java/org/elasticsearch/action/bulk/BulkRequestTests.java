@@ -117,4 +117,25 @@ public class BulkRequestTests extends ElasticsearchTestCase {
         assertThat(bulkRequest.requests().get(1), instanceOf(UpdateRequest.class));
         assertThat(bulkRequest.requests().get(2), instanceOf(DeleteRequest.class));
     }
+
+    @Test
+    public void testBulkShardRequestStableBytes() throws Exception {
+        BulkRequest bulkRequest = new BulkRequest();
+        bulkRequest.add(new BytesArray("{ \"index\" : { \"_index\" : \"test\", \"_type\" : \"type\", \"_id\" : \"1\" } }\n{ \"field\" : \"value\" }\n"), true, null, null);
+        IndexRequest indexRequest = (IndexRequest) bulkRequest.requests().get(0);
+        BulkItemRequest[] items = new BulkItemRequest[]{
+                new BulkItemRequest(0, indexRequest),
+                new BulkItemRequest(1, new DeleteRequest("test", "type", "2"))
+        };
+        BulkShardRequest bulkShardRequest = new BulkShardRequest(bulkRequest, "test", 0, false, items);
+
+        assertThat(bulkShardRequest.sendsStableBytes(), equalTo(false));
+        // asking must not copy the sources
+        assertThat(indexRequest.sourceUnsafe(), equalTo(true));
+
+        bulkShardRequest.beforeLocalFork();
+        assertThat(indexRequest.sourceUnsafe(), equalTo(false));
+        assertThat(bulkShardRequest.sendsStableBytes(), equalTo(true));
+        assertThat(indexRequest.source().toUtf8(), equalTo("{ \"field\" : \"value\" }"));
+    }
 }
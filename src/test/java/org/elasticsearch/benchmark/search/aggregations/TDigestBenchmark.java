@@ -0,0 +1,90 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.search.aggregations;
+
+import com.tdunning.math.stats.AVLTreeDigest;
+import com.tdunning.math.stats.TDigest;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.TDigestState;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the merging t-digest used by the percentiles aggregations with the AVL-tree digest it replaced, in
+ * terms of collection throughput, merge throughput and accuracy.
+ */
+public class TDigestBenchmark {
+
+    private static final double COMPRESSION = 100;
+    private static final int NUM_VALUES = 5000000;
+    private static final int NUM_DIGESTS = 1000;
+    private static final double[] QUANTILES = {0.001, 0.01, 0.1, 0.5, 0.9, 0.99, 0.999};
+
+    public static void main(String[] args) {
+        final Random random = new Random(0);
+        final double[] values = new double[NUM_VALUES];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = Math.exp(random.nextGaussian());
+        }
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        for (int iter = 0; iter < 3; ++iter) {
+            StopWatch stopWatch = new StopWatch().start();
+            final TDigest[] avlDigests = new TDigest[NUM_DIGESTS];
+            for (int i = 0; i < NUM_DIGESTS; ++i) {
+                avlDigests[i] = new AVLTreeDigest(COMPRESSION);
+            }
+            for (int i = 0; i < values.length; ++i) {
+                avlDigests[i % NUM_DIGESTS].add(values[i]);
+            }
+            System.out.println("AVL tree collect: " + stopWatch.stop().totalTime());
+            stopWatch = new StopWatch().start();
+            final TDigest avlMerged = new AVLTreeDigest(COMPRESSION);
+            for (TDigest digest : avlDigests) {
+                avlMerged.add(digest);
+            }
+            System.out.println("AVL tree merge:   " + stopWatch.stop().totalTime() + ", centroids: " + avlMerged.centroidCount());
+
+            stopWatch = new StopWatch().start();
+            final TDigestState[] mergingDigests = new TDigestState[NUM_DIGESTS];
+            for (int i = 0; i < NUM_DIGESTS; ++i) {
+                mergingDigests[i] = new TDigestState(COMPRESSION);
+            }
+            for (int i = 0; i < values.length; ++i) {
+                mergingDigests[i % NUM_DIGESTS].add(values[i]);
+            }
+            System.out.println("Merging collect:  " + stopWatch.stop().totalTime());
+            stopWatch = new StopWatch().start();
+            final TDigestState merged = new TDigestState(COMPRESSION);
+            for (TDigestState digest : mergingDigests) {
+                merged.add(digest);
+            }
+            System.out.println("Merging merge:    " + stopWatch.stop().totalTime() + ", centroids: " + merged.centroidCount());
+
+            for (double q : QUANTILES) {
+                final double exact = sorted[(int) (q * sorted.length)];
+                System.out.println(String.format("q=%.3f exact=%.5f avl=%.5f merging=%.5f", q, exact, avlMerged.quantile(q), merged.quantile(q)));
+            }
+            System.out.println();
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.elasticsearch.action.admin.cluster.tasks.PendingClusterTasksResponse;
+import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.service.PendingClusterTask;
 import org.elasticsearch.common.Nullable;
@@ -41,6 +42,7 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -715,6 +717,73 @@ public class ClusterServiceTests extends ElasticsearchIntegrationTest {
         }
     }
 
+    @Test
+    public void testBatchedUpdateTasks() throws Exception {
+        Settings settings = settingsBuilder()
+                .put("discovery.type", "local")
+                .build();
+        internalCluster().startNode(settings);
+        final ClusterService clusterService = internalCluster().getInstance(ClusterService.class);
+        BlockingTask block = new BlockingTask();
+        clusterService.submitStateUpdateTask("test", Priority.IMMEDIATE, block);
+
+        final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        final BlockingTask blockAfterBatch = new BlockingTask();
+        ClusterStateTaskExecutor<Integer> executor = new ClusterStateTaskExecutor<Integer>() {
+            @Override
+            public ClusterState execute(ClusterState currentState, List<Integer> tasks) throws Exception {
+                // runs before the tasks that were executed as part of this batch would come up on their own
+                clusterService.submitStateUpdateTask("block-after-batch", Priority.IMMEDIATE, blockAfterBatch);
+                batches.add(new ArrayList<>(tasks));
+                MetaData.Builder metaData = MetaData.builder(currentState.metaData())
+                        .transientSettings(settingsBuilder().put("batched_tasks", tasks.size()).build());
+                return ClusterState.builder(currentState).metaData(metaData).build();
+            }
+        };
+        int taskCount = randomIntBetween(5, 20);
+        final CountDownLatch latch = new CountDownLatch(taskCount);
+        final AtomicBoolean failed = new AtomicBoolean();
+        for (int i = 0; i < taskCount; i++) {
+            clusterService.submitStateUpdateTask("batched-" + i, Priority.NORMAL, i, executor, new ClusterStateTaskListener() {
+                @Override
+                public void onFailure(String source, @Nullable Throwable t) {
+                    failed.set(true);
+                    latch.countDown();
+                }
+
+                @Override
+                public void clusterStateProcessed(String source, ClusterState oldState, ClusterState newState) {
+                    latch.countDown();
+                }
+            });
+        }
+
+        List<PendingClusterTask> pendingTasks = clusterService.pendingTasks();
+        assertThat(pendingTasks.size(), greaterThanOrEqualTo(taskCount + 1));
+        for (PendingClusterTask task : pendingTasks) {
+            assertThat(task.getTimeInQueueInMillis(), greaterThanOrEqualTo(0l));
+        }
+
+        block.release();
+        assertThat(latch.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(failed.get(), equalTo(false));
+        // all tasks were pending when the first one was executed, so they are executed in a single batch
+        assertThat(batches.size(), equalTo(1));
+        assertThat(batches.get(0).size(), equalTo(taskCount));
+        assertThat(clusterService.state().metaData().transientSettings().getAsInt("batched_tasks", -1), equalTo(taskCount));
+
+        // the tasks of the batch are not pending anymore once the batch is applied
+        assertBusy(new Runnable() {
+            @Override
+            public void run() {
+                List<PendingClusterTask> pendingTasks = clusterService.pendingTasks();
+                assertThat(pendingTasks.size(), equalTo(1));
+                assertThat(pendingTasks.get(0).getSource().string(), equalTo("block-after-batch"));
+            }
+        });
+        blockAfterBatch.release();
+    }
+
     private static class BlockingTask extends ClusterStateUpdateTask {
         private final CountDownLatch latch = new CountDownLatch(1);
 
@@ -22,6 +22,7 @@ package org.elasticsearch.cluster.serialization;
 import org.elasticsearch.Version;
 import org.elasticsearch.cluster.ClusterName;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.IncompatibleClusterStateVersionException;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
@@ -32,7 +33,9 @@ import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.test.ElasticsearchAllocationTestCase;
 import org.junit.Test;
 
+import static org.elasticsearch.cluster.routing.ShardRoutingState.INITIALIZING;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
 
 /**
  *
@@ -88,4 +91,58 @@ public class ClusterSerializationTests extends ElasticsearchAllocationTestCase {
         assertThat(target.prettyPrint(), equalTo(source.prettyPrint()));
     }
 
+    @Test
+    public void testClusterStateDiffSerialization() throws Exception {
+        MetaData metaData = MetaData.builder()
+                .put(IndexMetaData.builder("test1").settings(settings(Version.CURRENT)).numberOfShards(5).numberOfReplicas(1))
+                .put(IndexMetaData.builder("test2").settings(settings(Version.CURRENT)).numberOfShards(2).numberOfReplicas(1))
+                .build();
+        RoutingTable routingTable = RoutingTable.builder()
+                .addAsNew(metaData.index("test1"))
+                .addAsNew(metaData.index("test2"))
+                .build();
+        DiscoveryNodes nodes = DiscoveryNodes.builder().put(newNode("node1")).put(newNode("node2")).put(newNode("node3")).localNodeId("node1").masterNodeId("node2").build();
+        ClusterState previous = ClusterState.builder(new ClusterName("clusterName1")).version(1).nodes(nodes).metaData(metaData).routingTable(routingTable).build();
+        AllocationService strategy = createAllocationService();
+        previous = ClusterState.builder(previous).routingTable(strategy.reroute(previous).routingTable()).build();
+
+        // start shards of test1, remove test2 and add test3
+        ClusterState current = ClusterState.builder(previous).version(2)
+                .routingTable(strategy.applyStartedShards(previous, previous.routingNodes().shardsWithState(INITIALIZING)).routingTable())
+                .build();
+        metaData = MetaData.builder(current.metaData()).remove("test2")
+                .put(IndexMetaData.builder("test3").settings(settings(Version.CURRENT)).numberOfShards(1).numberOfReplicas(0))
+                .build();
+        routingTable = RoutingTable.builder(current.routingTable()).remove("test2").addAsNew(metaData.index("test3")).build();
+        current = ClusterState.builder(current).metaData(metaData).routingTable(routingTable).build();
+
+        // the receiving node has the previous state
+        ClusterState received = ClusterState.Builder.fromBytes(ClusterState.Builder.toBytes(previous), newNode("node1"), new ClusterName("clusterName2"));
+
+        BytesStreamOutput outStream = new BytesStreamOutput();
+        ClusterState.Builder.writeDiffTo(previous, current, outStream);
+        BytesStreamInput inStream = new BytesStreamInput(outStream.bytes().toBytes(), false);
+        ClusterState applied = ClusterState.Builder.readDiffFrom(inStream, received, newNode("node1"), new ClusterName("clusterName2"));
+
+        assertThat(applied.version(), equalTo(2l));
+        assertThat(applied.getClusterName().value(), equalTo(current.getClusterName().value()));
+        assertThat(applied.nodes().masterNodeId(), equalTo("node2"));
+        assertThat(applied.metaData().indices().size(), equalTo(2));
+        assertThat(applied.metaData().hasIndex("test2"), equalTo(false));
+        assertThat(applied.metaData().index("test3"), equalTo(current.metaData().index("test3")));
+        // unchanged index metadata is not sent and is carried over from the previous state
+        assertThat(applied.metaData().index("test1"), sameInstance(received.metaData().index("test1")));
+        assertThat(applied.routingTable().prettyPrint(), equalTo(current.routingTable().prettyPrint()));
+
+        // a diff against a state the receiving node doesn't have is rejected
+        ClusterState other = ClusterState.builder(received).version(3).build();
+        inStream = new BytesStreamInput(outStream.bytes().toBytes(), false);
+        try {
+            ClusterState.Builder.readDiffFrom(inStream, other, newNode("node1"), new ClusterName("clusterName2"));
+            fail("expected the diff to be rejected");
+        } catch (IncompatibleClusterStateVersionException e) {
+            // expected
+        }
+    }
+
 }
@@ -379,4 +379,21 @@ public class BigArraysTests extends ElasticsearchSingleNodeTest {
         }
     }
 
+    public void testWithoutCircuitBreakerAccounting() throws Exception {
+        for (String type : Arrays.asList("Byte", "Int", "Long", "Float", "Double", "Object")) {
+            final int size = scaledRandomIntBetween(5, 1 << 22);
+            HierarchyCircuitBreakerService hcbs = new HierarchyCircuitBreakerService(
+                    ImmutableSettings.builder()
+                            .put(HierarchyCircuitBreakerService.REQUEST_CIRCUIT_BREAKER_LIMIT_SETTING, size - 1)
+                            .build(),
+                    new NodeSettingsService(ImmutableSettings.EMPTY));
+            BigArrays bigArrays = new BigArrays(ImmutableSettings.EMPTY, null, hcbs).withoutCircuitBreakerAccounting();
+            Method create = BigArrays.class.getMethod("new" + type + "Array", long.class);
+            BigArray array = (BigArray) create.invoke(bigArrays, size);
+            assertEquals(0, hcbs.getBreaker(CircuitBreaker.Name.REQUEST).getUsed());
+            array.close();
+            assertEquals(0, hcbs.getBreaker(CircuitBreaker.Name.REQUEST).getUsed());
+        }
+    }
+
 }
@@ -32,6 +32,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 /**
  *
@@ -240,6 +242,33 @@ public class PrioritizedExecutorsTests extends ElasticsearchTestCase {
         assertTrue(terminate(timer, executor));
     }
 
+    @Test
+    public void testRemoveQueued() throws Exception {
+        PrioritizedEsThreadPoolExecutor executor = EsExecutors.newSinglePrioritizing(EsExecutors.daemonThreadFactory(getTestName()));
+        final CountDownLatch block = new CountDownLatch(1);
+        executor.execute(new AwaitingJob(block));
+
+        List<Integer> results = new ArrayList<>(3);
+        CountDownLatch latch = new CountDownLatch(1);
+        Job removed = new Job(0, Priority.NORMAL, results, latch);
+        Job kept = new Job(1, Priority.NORMAL, results, latch);
+        Job notQueued = new Job(2, Priority.NORMAL, results, latch);
+        executor.execute(removed);
+        executor.execute(kept);
+
+        executor.removeQueued(Lists.newArrayList(removed, notQueued));
+        PrioritizedEsThreadPoolExecutor.Pending[] pending = executor.getPending();
+        assertThat(pending.length, equalTo(2));
+        for (PrioritizedEsThreadPoolExecutor.Pending task : pending) {
+            assertThat(task.task, not(sameInstance((Object) removed)));
+        }
+
+        block.countDown();
+        latch.await();
+        assertThat(results, equalTo((List<Integer>) Lists.newArrayList(1)));
+        assertTrue(terminate(executor));
+    }
+
     static class AwaitingJob extends PrioritizedRunnable {
 
         private final CountDownLatch latch;
@@ -27,6 +27,7 @@ import org.apache.log4j.spi.LoggingEvent;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexDeletionPolicy;
@@ -35,6 +36,8 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.util.LuceneTestCase.Slow;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.Version;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
@@ -44,6 +47,7 @@ import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.analysis.AnalysisService;
@@ -121,6 +125,7 @@ public class InternalEngineTests extends ElasticsearchTestCase {
                 .put(InternalEngine.INDEX_COMPOUND_ON_FLUSH, getRandom().nextBoolean())
                 .put(InternalEngine.INDEX_GC_DELETES, "1h") // make sure this doesn't kick in on us
                 .put(InternalEngine.INDEX_FAIL_ON_CORRUPTION, randomBoolean())
+                .put(InternalEngine.INDEX_VERSION_MAP_TYPE, randomFrom(InternalEngine.VERSION_MAP_TYPE_CONCURRENT, InternalEngine.VERSION_MAP_TYPE_PAGED))
                 .build(); // TODO randomize more settings
         threadPool = new ThreadPool(getClass().getName());
         store = createStore();
@@ -211,7 +216,7 @@ public class InternalEngineTests extends ElasticsearchTestCase {
 
     protected Engine createEngine(IndexSettingsService indexSettingsService, Store store, Translog translog, MergeSchedulerProvider mergeSchedulerProvider) {
         return new InternalEngine(shardId, defaultSettings, threadPool, indexSettingsService, new ShardIndexingService(shardId, EMPTY_SETTINGS, new ShardSlowLogIndexingService(shardId, EMPTY_SETTINGS, indexSettingsService)), null, store, createSnapshotDeletionPolicy(), translog, createMergePolicy(), mergeSchedulerProvider,
-                new AnalysisService(shardId.index(), indexSettingsService.getSettings()), new SimilarityService(shardId.index()), new CodecService(shardId.index()));
+                new AnalysisService(shardId.index(), indexSettingsService.getSettings()), new SimilarityService(shardId.index()), new CodecService(shardId.index()), BigArrays.NON_RECYCLING_INSTANCE);
     }
 
     protected static final BytesReference B_1 = new BytesArray(new byte[]{1});
@@ -644,6 +649,213 @@ public class InternalEngineTests extends ElasticsearchTestCase {
         searchResult.close();
     }
     
+    @Test
+    public void testAppendOnlyAutoGeneratedIdsRetry() throws Exception {
+        Settings appendOnlySettings = ImmutableSettings.builder().put(defaultSettings)
+                .put(InternalEngine.INDEX_APPEND_ONLY_AUTO_GENERATED_IDS, true).build();
+        Store appendOnlyStore = createStore();
+        appendOnlyStore.deleteContent();
+        Engine appendOnlyEngine = new InternalEngine(shardId, appendOnlySettings, threadPool, engineSettingsService, new ShardIndexingService(shardId, EMPTY_SETTINGS, new ShardSlowLogIndexingService(shardId, EMPTY_SETTINGS, engineSettingsService)), null, appendOnlyStore, createSnapshotDeletionPolicy(), new FsTranslog(shardId, EMPTY_SETTINGS, new File("work/fs-translog/append-only")), createMergePolicy(), createMergeScheduler(engineSettingsService),
+                new AnalysisService(shardId.index(), engineSettingsService.getSettings()), new SimilarityService(shardId.index()), new CodecService(shardId.index()), BigArrays.NON_RECYCLING_INSTANCE);
+        try {
+            appendOnlyEngine.start();
+            ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_1, false);
+            appendOnlyEngine.create(new Engine.Create(null, newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(), false, true));
+
+            // appended docs are not tracked by the version map, so a realtime get has to wait for a refresh
+            Engine.GetResult getResult = appendOnlyEngine.get(new Engine.Get(true, newUid("1")));
+            assertThat(getResult.exists(), equalTo(false));
+            getResult.release();
+
+            // a retry of the same request must replace the unrefreshed first attempt
+            doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_1, false);
+            Engine.Create retry = new Engine.Create(null, newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(), true, true);
+            appendOnlyEngine.create(retry);
+            assertThat(retry.version(), equalTo(1l));
+
+            appendOnlyEngine.refresh(new Engine.Refresh("test").force(false));
+            Engine.Searcher searcher = appendOnlyEngine.acquireSearcher("test");
+            MatcherAssert.assertThat(searcher, EngineSearcherTotalHitsMatcher.engineSearcherTotalHits(1));
+            searcher.close();
+
+            // further appends are not affected by the retry
+            doc = testParsedDocument("2", "2", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_2, false);
+            appendOnlyEngine.create(new Engine.Create(null, newUid("2"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(), false, true));
+            appendOnlyEngine.refresh(new Engine.Refresh("test").force(false));
+            searcher = appendOnlyEngine.acquireSearcher("test");
+            MatcherAssert.assertThat(searcher, EngineSearcherTotalHitsMatcher.engineSearcherTotalHits(2));
+            searcher.close();
+        } finally {
+            appendOnlyEngine.close();
+            appendOnlyStore.close();
+        }
+    }
+
+    @Test
+    public void testAppendOnlyAutoGeneratedIdsChecks() throws Exception {
+        Settings appendOnlySettings = ImmutableSettings.builder().put(defaultSettings)
+                .put(InternalEngine.INDEX_APPEND_ONLY_AUTO_GENERATED_IDS, true).build();
+        Store appendOnlyStore = createStore();
+        appendOnlyStore.deleteContent();
+        Engine appendOnlyEngine = new InternalEngine(shardId, appendOnlySettings, threadPool, engineSettingsService, new ShardIndexingService(shardId, EMPTY_SETTINGS, new ShardSlowLogIndexingService(shardId, EMPTY_SETTINGS, engineSettingsService)), null, appendOnlyStore, createSnapshotDeletionPolicy(), new FsTranslog(shardId, EMPTY_SETTINGS, new File("work/fs-translog/append-only-checks")), createMergePolicy(), createMergeScheduler(engineSettingsService),
+                new AnalysisService(shardId.index(), engineSettingsService.getSettings()), new SimilarityService(shardId.index()), new CodecService(shardId.index()), BigArrays.NON_RECYCLING_INSTANCE);
+        try {
+            appendOnlyEngine.start();
+            ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_1, false);
+            appendOnlyEngine.create(new Engine.Create(null, newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(), false, true));
+
+            // writes with an explicit id can't see the unrefreshed document, they are rejected
+            doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_2, false);
+            try {
+                appendOnlyEngine.index(new Engine.Index(null, newUid("1"), doc));
+                fail("explicit id index should be rejected");
+            } catch (ElasticsearchIllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString(InternalEngine.INDEX_APPEND_ONLY_AUTO_GENERATED_IDS));
+            }
+            try {
+                appendOnlyEngine.create(new Engine.Create(null, newUid("1"), doc));
+                fail("explicit id create should be rejected");
+            } catch (ElasticsearchIllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString(InternalEngine.INDEX_APPEND_ONLY_AUTO_GENERATED_IDS));
+            }
+            try {
+                appendOnlyEngine.delete(new Engine.Delete("test", "1", newUid("1")));
+                fail("explicit id delete should be rejected");
+            } catch (ElasticsearchIllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString(InternalEngine.INDEX_APPEND_ONLY_AUTO_GENERATED_IDS));
+            }
+
+            appendOnlyEngine.refresh(new Engine.Refresh("test").force(false));
+
+            // a retry of a document that is visible goes through the usual checks
+            doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_1, false);
+            try {
+                appendOnlyEngine.create(new Engine.Create(null, newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(), true, true));
+                fail("a retry of a visible document should fail on the primary");
+            } catch (DocumentAlreadyExistsException e) {
+                // all is well
+            }
+            doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_1, false);
+            appendOnlyEngine.create(new Engine.Create(null, newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, Engine.Operation.Origin.RECOVERY, System.nanoTime(), true, true));
+            doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_1, false);
+            try {
+                appendOnlyEngine.create(new Engine.Create(null, newUid("1"), doc, 5, VersionType.INTERNAL, PRIMARY, System.nanoTime(), true, true));
+                fail("a retry with a conflicting version should fail");
+            } catch (VersionConflictEngineException e) {
+                // all is well
+            }
+
+            appendOnlyEngine.refresh(new Engine.Refresh("test").force(false));
+            Engine.Searcher searcher = appendOnlyEngine.acquireSearcher("test");
+            MatcherAssert.assertThat(searcher, EngineSearcherTotalHitsMatcher.engineSearcherTotalHits(1));
+            searcher.close();
+        } finally {
+            appendOnlyEngine.close();
+            appendOnlyStore.close();
+        }
+    }
+
+    @Test
+    public void testBulkIndex() throws Exception {
+        Engine.IndexingOperation[] operations = new Engine.IndexingOperation[7];
+        for (int i = 0; i < 4; i++) {
+            ParsedDocument doc = testParsedDocument("a" + i, "a" + i, "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_1, false);
+            operations[i] = new Engine.Create(null, newUid("a" + i), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(), false, true);
+        }
+        // an explicit create of a document that the batch already added
+        ParsedDocument doc = testParsedDocument("a2", "a2", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_2, false);
+        operations[4] = new Engine.Create(null, newUid("a2"), doc);
+        doc = testParsedDocument("b", "b", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_3, false);
+        operations[5] = new Engine.Index(null, newUid("b"), doc);
+        // an operation that already failed upstream is skipped
+        Throwable[] failures = new Throwable[operations.length];
+        failures[6] = new ElasticsearchException("failed upstream");
+
+        engine.bulkIndex(operations, failures);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(failures[i], nullValue());
+            assertThat(operations[i].version(), equalTo(1l));
+        }
+        assertThat(failures[4], instanceOf(DocumentAlreadyExistsException.class));
+        assertThat(failures[5], nullValue());
+        assertThat(((Engine.Index) operations[5]).created(), equalTo(true));
+        assertThat(failures[6].getMessage(), equalTo("failed upstream"));
+
+        // the batched creates are tracked by the version map at their own translog location
+        for (int i = 0; i < 4; i++) {
+            Engine.GetResult getResult = engine.get(new Engine.Get(true, newUid("a" + i)));
+            assertThat(getResult.exists(), equalTo(true));
+            assertThat(getResult.source().source.toBytesArray(), equalTo(B_1.toBytesArray()));
+            getResult.release();
+        }
+
+        engine.refresh(new Engine.Refresh("test").force(false));
+        Engine.Searcher searcher = engine.acquireSearcher("test");
+        MatcherAssert.assertThat(searcher, EngineSearcherTotalHitsMatcher.engineSearcherTotalHits(5));
+        searcher.close();
+    }
+
+    @Test
+    public void testBulkIndexFailureInAppendOnlyBlock() throws Exception {
+        final int numOps = randomIntBetween(3, 10);
+        final int failing = randomInt(numOps - 1);
+        Engine.IndexingOperation[] operations = new Engine.IndexingOperation[numOps];
+        for (int i = 0; i < numOps; i++) {
+            Document document = testDocumentWithTextField();
+            if (i == failing) {
+                // terms over 32766 bytes make the index writer reject the document, and the whole block with it
+                document.add(new StringField("immense", randomAsciiOfLength(40000), Field.Store.NO));
+            }
+            ParsedDocument doc = testParsedDocument("a" + i, "a" + i, "test", null, -1, -1, document, Lucene.STANDARD_ANALYZER, B_1, false);
+            operations[i] = new Engine.Create(null, newUid("a" + i), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(), false, true);
+        }
+        Throwable[] failures = new Throwable[numOps];
+
+        engine.bulkIndex(operations, failures);
+
+        for (int i = 0; i < numOps; i++) {
+            Engine.GetResult getResult = engine.get(new Engine.Get(true, newUid("a" + i)));
+            if (i == failing) {
+                assertThat(failures[i], notNullValue());
+                assertThat(getResult.exists(), equalTo(false));
+            } else {
+                assertThat(failures[i], nullValue());
+                assertThat(operations[i].version(), equalTo(1l));
+                // served from the translog, at the location the version map holds for this operation
+                assertThat(getResult.exists(), equalTo(true));
+                assertThat(getResult.version(), equalTo(1l));
+                assertThat(getResult.source().source.toBytesArray(), equalTo(B_1.toBytesArray()));
+            }
+            getResult.release();
+        }
+
+        // only the operations that succeeded are in the translog
+        engine.recover(new Engine.RecoveryHandler() {
+            @Override
+            public void phase1(SnapshotIndexCommit snapshot) throws EngineException {
+            }
+
+            @Override
+            public void phase2(Translog.Snapshot snapshot) throws EngineException {
+                MatcherAssert.assertThat(snapshot, TranslogSizeMatcher.translogSize(numOps - 1));
+            }
+
+            @Override
+            public void phase3(Translog.Snapshot snapshot) throws EngineException {
+            }
+        });
+
+        // and each of them was indexed exactly once
+        engine.refresh(new Engine.Refresh("test").force(false));
+        Engine.Searcher searcher = engine.acquireSearcher("test");
+        MatcherAssert.assertThat(searcher, EngineSearcherTotalHitsMatcher.engineSearcherTotalHits(numOps - 1));
+        for (int i = 0; i < numOps; i++) {
+            MatcherAssert.assertThat(searcher, EngineSearcherTotalHitsMatcher.engineSearcherTotalHits(new TermQuery(newUid("a" + i)), i == failing ? 0 : 1));
+        }
+        searcher.close();
+    }
+
     @Test
     public void testFailEngineOnCorruption() {
         ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), Lucene.STANDARD_ANALYZER, B_1, false);
@@ -1294,7 +1506,7 @@ public class InternalEngineTests extends ElasticsearchTestCase {
                                            new ShardIndexingService(shardId, settings,
                                                                     new ShardSlowLogIndexingService(shardId, EMPTY_SETTINGS, engineSettingsService)),
                                            null, store, createSnapshotDeletionPolicy(), createTranslog(), createMergePolicy(), createMergeScheduler(engineSettingsService),
-                                           new AnalysisService(shardId.index(), engineSettingsService.getSettings()), new SimilarityService(shardId.index()), new CodecService(shardId.index()));
+                                           new AnalysisService(shardId.index(), engineSettingsService.getSettings()), new SimilarityService(shardId.index()), new CodecService(shardId.index()), BigArrays.NON_RECYCLING_INSTANCE);
         engine.start();
         engine.enableGcDeletes(false);
 
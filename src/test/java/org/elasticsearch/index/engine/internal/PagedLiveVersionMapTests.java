@@ -0,0 +1,88 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine.internal;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PagedLiveVersionMapTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testVersionsSurviveUntilRefreshCompleted() throws Exception {
+        PagedLiveVersionMap map = new PagedLiveVersionMap(BigArrays.NON_RECYCLING_INSTANCE, randomIntBetween(1, 16));
+        int numDocs = randomIntBetween(1, 500);
+        for (int i = 0; i < numDocs; i++) {
+            map.putUnderLock(new BytesRef("type#" + i), new VersionValue(i + 1, new Translog.Location(1, i * 10, 10)));
+        }
+        assertThat(map.ramBytesUsedForRefresh(), greaterThan(0l));
+        for (int i = 0; i < numDocs; i++) {
+            VersionValue value = map.getUnderLock(new BytesRef("type#" + i));
+            assertThat(value, notNullValue());
+            assertThat(value.version(), equalTo(i + 1l));
+            assertThat(value.delete(), equalTo(false));
+            assertThat(value.translogLocation().translogLocation, equalTo(i * 10l));
+            assertThat(value.translogLocation().size, equalTo(10));
+        }
+
+        map.beforeRefresh();
+        assertThat(map.ramBytesUsedForRefresh(), equalTo(0l));
+        // still visible while the refresh is running
+        assertThat(map.getUnderLock(new BytesRef("type#0")).version(), equalTo(1l));
+        map.afterRefresh(true);
+        assertThat(map.getUnderLock(new BytesRef("type#0")), nullValue());
+        assertThat(map.ramBytesUsed(), equalTo(0l));
+    }
+
+    @Test
+    public void testTombstones() throws Exception {
+        PagedLiveVersionMap map = new PagedLiveVersionMap(BigArrays.NON_RECYCLING_INSTANCE, randomIntBetween(1, 16));
+        BytesRef uid = new BytesRef("type#1");
+        map.putUnderLock(uid, new VersionValue(1, new Translog.Location(1, 0, 10)));
+        map.putUnderLock(uid, new DeleteVersionValue(2, 42, new Translog.Location(1, 10, 10)));
+        VersionValue value = map.getUnderLock(uid);
+        assertThat(value.delete(), equalTo(true));
+        assertThat(value.time(), equalTo(42l));
+        assertThat(value.version(), equalTo(2l));
+
+        // deletes outlive refreshes until they are pruned
+        map.beforeRefresh();
+        map.afterRefresh(true);
+        assertThat(map.getUnderLock(uid).version(), equalTo(2l));
+        assertThat(map.getTombstoneUnderLock(uid), notNullValue());
+        map.removeTombstoneUnderLock(uid);
+        assertThat(map.getUnderLock(uid), nullValue());
+        assertThat(map.ramBytesUsed(), equalTo(0l));
+
+        map.putUnderLock(uid, new DeleteVersionValue(3, 43, new Translog.Location(1, 20, 10)));
+        map.putUnderLock(uid, new VersionValue(4, new Translog.Location(1, 30, 10)));
+        assertThat(map.getTombstoneUnderLock(uid), nullValue());
+        assertThat(map.getUnderLock(uid).version(), equalTo(4l));
+        map.clear();
+        assertThat(map.getUnderLock(uid), nullValue());
+    }
+}
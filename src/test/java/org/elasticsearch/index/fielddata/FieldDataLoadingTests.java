@@ -20,17 +20,42 @@
 package org.elasticsearch.index.fielddata;
 
 import org.elasticsearch.action.admin.cluster.stats.ClusterStatsResponse;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.warmer.WarmerStats;
+import org.elasticsearch.indices.warmer.InternalIndicesWarmer;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 
 /**
  */
 public class FieldDataLoadingTests extends ElasticsearchIntegrationTest {
 
+    private static final int GLOBAL_ORDINALS_POOL_SIZE = 2;
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        // the test cluster randomizes the pool types, pin the global ordinals pool so that it can be occupied reliably
+        return settingsBuilder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put(ThreadPool.THREADPOOL_GROUP + ThreadPool.Names.GLOBAL_ORDINALS + ".type", "fixed")
+                .put(ThreadPool.THREADPOOL_GROUP + ThreadPool.Names.GLOBAL_ORDINALS + ".size", GLOBAL_ORDINALS_POOL_SIZE)
+                .build();
+    }
+
     @Test
     public void testEagerFieldDataLoading() throws Exception {
         assertAcked(prepareCreate("test")
@@ -67,4 +92,78 @@ public class FieldDataLoadingTests extends ElasticsearchIntegrationTest {
         assertThat(response.getIndicesStats().getFieldData().getMemorySizeInBytes(), greaterThan(0l));
     }
 
+    @Test
+    public void testEagerGlobalOrdinalsWarmerStats() throws Exception {
+        assertAcked(prepareCreate("test")
+                .setSettings(ImmutableSettings.builder().put(SETTING_NUMBER_OF_SHARDS, 1).put(SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", jsonBuilder().startObject().startObject("type").startObject("properties")
+                        .startObject("name")
+                        .field("type", "string")
+                        .startObject("fielddata").field("loading", "eager_global_ordinals").endObject()
+                        .endObject()
+                        .endObject().endObject().endObject()));
+        ensureGreen();
+
+        client().prepareIndex("test", "type", "1").setSource("name", "name").get();
+        client().admin().indices().prepareRefresh("test").get();
+
+        WarmerStats stats = client().admin().indices().prepareStats("test").clear().setWarmer(true).get().getTotal().getWarmer();
+        assertThat(stats.globalOrdinalsTotal(), greaterThan(0l));
+        assertThat(stats.globalOrdinalsTimeInMillis(), greaterThanOrEqualTo(0l));
+        assertThat(stats.globalOrdinalsTimeouts(), equalTo(0l));
+    }
+
+    @Test
+    public void testEagerGlobalOrdinalsTimeout() throws Exception {
+        assertAcked(prepareCreate("test")
+                .setSettings(ImmutableSettings.builder().put(SETTING_NUMBER_OF_SHARDS, 1).put(SETTING_NUMBER_OF_REPLICAS, 0)
+                        .put(InternalIndicesWarmer.INDEX_WARMER_GLOBAL_ORDINALS_TIMEOUT, "100ms"))
+                .addMapping("type", jsonBuilder().startObject().startObject("type").startObject("properties")
+                        .startObject("name")
+                        .field("type", "string")
+                        .startObject("fielddata").field("loading", "eager_global_ordinals").endObject()
+                        .endObject()
+                        .endObject().endObject().endObject()));
+        ensureGreen();
+        final long buildsBefore = client().admin().indices().prepareStats("test").clear().setWarmer(true).get().getTotal().getWarmer().globalOrdinalsTotal();
+
+        // occupy all the threads of the global ordinals pools, so that the builds can't finish within the timeout
+        final CountDownLatch blocked = new CountDownLatch(1);
+        for (ThreadPool threadPool : internalCluster().getInstances(ThreadPool.class)) {
+            Executor executor = threadPool.executor(ThreadPool.Names.GLOBAL_ORDINALS);
+            for (int i = 0; i < GLOBAL_ORDINALS_POOL_SIZE; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            blocked.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        }
+        try {
+            client().prepareIndex("test", "type", "1").setSource("name", "name").get();
+            // the refresh must not wait for the builds
+            client().admin().indices().prepareRefresh("test").get();
+            assertThat(client().prepareSearch("test").setSize(0).get().getHits().totalHits(), equalTo(1l));
+
+            WarmerStats stats = client().admin().indices().prepareStats("test").clear().setWarmer(true).get().getTotal().getWarmer();
+            assertThat(stats.globalOrdinalsTimeouts(), greaterThan(0l));
+            assertThat(stats.globalOrdinalsTotal(), equalTo(buildsBefore));
+        } finally {
+            blocked.countDown();
+        }
+
+        // the builds still complete in the background
+        assertBusy(new Runnable() {
+            @Override
+            public void run() {
+                WarmerStats stats = client().admin().indices().prepareStats("test").clear().setWarmer(true).get().getTotal().getWarmer();
+                assertThat(stats.globalOrdinalsTotal(), greaterThan(buildsBefore));
+            }
+        });
+    }
 }
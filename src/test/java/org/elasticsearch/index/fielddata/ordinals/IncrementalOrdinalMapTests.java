@@ -0,0 +1,198 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.index.RandomAccessOrds;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.AbstractRandomAccessOrds;
+import org.elasticsearch.index.fielddata.AtomicOrdinalsFieldData;
+import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ */
+public class IncrementalOrdinalMapTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testBuildFromScratch() {
+        List<Segment> segments = new ArrayList<>();
+        int numSegments = randomIntBetween(1, 10);
+        for (int i = 0; i < numSegments; i++) {
+            segments.add(randomSegment());
+        }
+        IncrementalOrdinalMap map = build(segments, null);
+        assertThat(map.reusedSegments(), equalTo(0));
+        assertMap(segments, map);
+    }
+
+    @Test
+    public void testIncrementalBuild() {
+        List<Segment> segments = new ArrayList<>();
+        int numSegments = randomIntBetween(1, 10);
+        for (int i = 0; i < numSegments; i++) {
+            segments.add(randomSegment());
+        }
+        IncrementalOrdinalMap map = build(segments, null);
+        int iters = randomIntBetween(1, 5);
+        for (int iter = 0; iter < iters; iter++) {
+            // drop some segments, as if they were merged away, and add new ones
+            List<Segment> next = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (randomBoolean()) {
+                    next.add(segment);
+                }
+            }
+            int reused = next.size();
+            int numNewSegments = randomIntBetween(reused == 0 ? 1 : 0, 5);
+            for (int i = 0; i < numNewSegments; i++) {
+                next.add(randomSegment());
+            }
+            Collections.shuffle(next, getRandom());
+            map = build(next, map);
+            assertThat(map.reusedSegments(), equalTo(reused));
+            assertThat(map.segments(), equalTo(next.size()));
+            assertMap(next, map);
+            segments = next;
+        }
+    }
+
+    @Test
+    public void testPreviousMapIsReleasedWithItsGlobalOrdinals() {
+        PreviousOrdinalMaps previousOrdinalMaps = new PreviousOrdinalMaps();
+        ShardId shardId = new ShardId("test", 0);
+        List<Segment> segments = Arrays.asList(randomSegment(), randomSegment());
+
+        IncrementalOrdinalMap first = build(segments, null);
+        previousOrdinalMaps.put(shardId, first);
+        GlobalOrdinalsIndexFieldData firstGlobalOrdinals = globalOrdinals(first, shardId, previousOrdinalMaps);
+        IncrementalOrdinalMap second = build(segments, previousOrdinalMaps.get(shardId));
+        previousOrdinalMaps.put(shardId, second);
+        GlobalOrdinalsIndexFieldData secondGlobalOrdinals = globalOrdinals(second, shardId, previousOrdinalMaps);
+
+        // the global ordinals of the previous reader go away after the new ones got built, the new map must stay
+        firstGlobalOrdinals.onRemoval();
+        assertThat(previousOrdinalMaps.get(shardId), sameInstance(second));
+        assertThat(previousOrdinalMaps.size(), equalTo(1));
+
+        // nothing is kept once the global ordinals are cleared or evicted
+        secondGlobalOrdinals.onRemoval();
+        assertThat(previousOrdinalMaps.get(shardId), nullValue());
+        assertThat(previousOrdinalMaps.size(), equalTo(0));
+    }
+
+    private GlobalOrdinalsIndexFieldData globalOrdinals(IncrementalOrdinalMap map, ShardId shardId, PreviousOrdinalMaps previousOrdinalMaps) {
+        return new InternalGlobalOrdinalsIndexFieldData(new Index("test"), ImmutableSettings.EMPTY, new FieldMapper.Names("field"), new FieldDataType("string"),
+                new AtomicOrdinalsFieldData[0], map, map.ramBytesUsed(), 0, shardId, previousOrdinalMaps);
+    }
+
+    private IncrementalOrdinalMap build(List<Segment> segments, IncrementalOrdinalMap previous) {
+        Object[] coreKeys = new Object[segments.size()];
+        RandomAccessOrds[] subs = new RandomAccessOrds[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            coreKeys[i] = segments.get(i).coreKey;
+            subs[i] = new TermsOrds(segments.get(i).terms);
+        }
+        return IncrementalOrdinalMap.build(coreKeys, subs, previous);
+    }
+
+    private void assertMap(List<Segment> segments, IncrementalOrdinalMap map) {
+        TreeSet<BytesRef> allTerms = new TreeSet<>();
+        for (Segment segment : segments) {
+            allTerms.addAll(Arrays.asList(segment.terms));
+        }
+        List<BytesRef> globalTerms = new ArrayList<>(allTerms);
+        assertThat(map.getValueCount(), equalTo((long) globalTerms.size()));
+        for (int i = 0; i < segments.size(); i++) {
+            BytesRef[] terms = segments.get(i).terms;
+            for (int ord = 0; ord < terms.length; ord++) {
+                long globalOrd = map.getGlobalOrds(i).get(ord);
+                assertThat(globalTerms.get((int) globalOrd), equalTo(terms[ord]));
+            }
+        }
+        for (int globalOrd = 0; globalOrd < globalTerms.size(); globalOrd++) {
+            Segment first = segments.get(map.getFirstSegmentNumber(globalOrd));
+            assertThat(first.terms[(int) map.getFirstSegmentOrd(globalOrd)], equalTo(globalTerms.get(globalOrd)));
+        }
+    }
+
+    private Segment randomSegment() {
+        TreeSet<BytesRef> terms = new TreeSet<>();
+        int numTerms = randomIntBetween(0, 50);
+        for (int i = 0; i < numTerms; i++) {
+            terms.add(new BytesRef(randomAsciiOfLength(randomIntBetween(1, 3))));
+        }
+        return new Segment(terms.toArray(new BytesRef[terms.size()]));
+    }
+
+    private static class Segment {
+
+        final Object coreKey = new Object();
+        final BytesRef[] terms;
+
+        Segment(BytesRef[] terms) {
+            this.terms = terms;
+        }
+    }
+
+    private static class TermsOrds extends AbstractRandomAccessOrds {
+
+        private final BytesRef[] terms;
+
+        TermsOrds(BytesRef[] terms) {
+            this.terms = terms;
+        }
+
+        @Override
+        public long getValueCount() {
+            return terms.length;
+        }
+
+        @Override
+        public BytesRef lookupOrd(long ord) {
+            return terms[(int) ord];
+        }
+
+        @Override
+        protected void doSetDocument(int docID) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long ordAt(int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int cardinality() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
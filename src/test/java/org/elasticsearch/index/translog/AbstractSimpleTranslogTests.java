@@ -36,6 +36,7 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -87,6 +88,30 @@ public abstract class AbstractSimpleTranslogTests extends ElasticsearchTestCase
         assertThat(translog.read(loc3).getSource().source.toBytesArray(), equalTo(new BytesArray(new byte[]{3})));
     }
 
+    @Test
+    public void testBatchedOperations() throws IOException {
+        Translog.Location loc1 = translog.add(new Translog.Create("test", "1", new byte[]{1}));
+        List<Translog.Operation> operations = newArrayList();
+        operations.add(new Translog.Create("test", "2", new byte[]{2}));
+        operations.add(new Translog.Index("test", "3", new byte[]{3}));
+        operations.add(new Translog.Delete(newUid("4")));
+        Translog.Location[] locations = translog.add(operations);
+        assertThat(locations.length, equalTo(3));
+        assertThat(translog.add(Collections.<Translog.Operation>emptyList()).length, equalTo(0));
+        Translog.Location loc5 = translog.add(new Translog.Create("test", "5", new byte[]{5}));
+
+        assertThat(translog.read(loc1).getSource().source.toBytesArray(), equalTo(new BytesArray(new byte[]{1})));
+        assertThat(translog.read(locations[0]).getSource().source.toBytesArray(), equalTo(new BytesArray(new byte[]{2})));
+        assertThat(translog.read(locations[1]).getSource().source.toBytesArray(), equalTo(new BytesArray(new byte[]{3})));
+        assertThat(((Translog.Delete) translog.read(locations[2])).uid(), equalTo(newUid("4")));
+        assertThat(translog.read(loc5).getSource().source.toBytesArray(), equalTo(new BytesArray(new byte[]{5})));
+
+        Translog.Snapshot snapshot = translog.snapshot();
+        MatcherAssert.assertThat(snapshot, TranslogSizeMatcher.translogSize(5));
+        assertThat(snapshot.estimatedTotalOperations(), equalTo(5));
+        snapshot.close();
+    }
+
     @Test
     public void testTransientTranslog() {
         Translog.Snapshot snapshot = translog.snapshot();
@@ -408,6 +433,60 @@ public abstract class AbstractSimpleTranslogTests extends ElasticsearchTestCase
 
     }
 
+    @Test
+    public void testConcurrentWritesWithSyncOnEachOperation() throws Throwable {
+        translog.syncOnEachOperation(true);
+        final int opsPerThread = randomIntBetween(10, 100);
+        int threadCount = 2 + randomInt(5);
+
+        logger.info("testing group commit with [{}] threads, each doing [{}] ops", threadCount, opsPerThread);
+        final BlockingQueue<LocationOperation> writtenOperations = new ArrayBlockingQueue<>(threadCount * opsPerThread);
+
+        Thread[] threads = new Thread[threadCount];
+        final Throwable[] threadExceptions = new Throwable[threadCount];
+        final CountDownLatch downLatch = new CountDownLatch(1);
+        for (int i = 0; i < threadCount; i++) {
+            final int threadId = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        downLatch.await();
+                        for (int opCount = 0; opCount < opsPerThread; opCount++) {
+                            Translog.Operation op = new Translog.Index("test", threadId + "_" + opCount,
+                                    randomUnicodeOfLengthBetween(1, 2 * 1024).getBytes("UTF-8"));
+                            Translog.Location loc = translog.add(op);
+                            writtenOperations.add(new LocationOperation(op, loc));
+                        }
+                    } catch (Throwable t) {
+                        threadExceptions[threadId] = t;
+                    }
+                }
+            });
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        downLatch.countDown();
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].join(60 * 1000);
+            if (threadExceptions[i] != null) {
+                throw threadExceptions[i];
+            }
+        }
+
+        // every add waited for a sync covering its location
+        assertFalse(translog.syncNeeded());
+        assertThat(writtenOperations.size(), equalTo(threadCount * opsPerThread));
+        for (LocationOperation locationOperation : writtenOperations) {
+            Translog.Index op = (Translog.Index) translog.read(locationOperation.location);
+            Translog.Index expectedOp = (Translog.Index) locationOperation.operation;
+            assertEquals(expectedOp.id(), op.id());
+            assertEquals(expectedOp.source(), op.source());
+        }
+    }
+
     @Test
     @LuceneTestCase.BadApple(bugUrl = "corrupting size can cause OOME")
     public void testTranslogChecksums() throws Exception {
@@ -0,0 +1,113 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog.fs;
+
+import org.apache.lucene.store.AlreadyClosedException;
+import org.elasticsearch.common.io.stream.ByteBufferStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.index.translog.TranslogStreams;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ *
+ */
+public class MappedTranslogReaderTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testReadAcrossChunks() throws Exception {
+        List<Translog.Index> operations = new ArrayList<>();
+        BytesStreamOutput out = new BytesStreamOutput();
+        int numOps = randomIntBetween(1, 100);
+        for (int i = 0; i < numOps; i++) {
+            Translog.Index op = new Translog.Index("test", Integer.toString(i), randomUnicodeOfLengthBetween(1, 1024).getBytes("UTF-8"));
+            operations.add(op);
+            TranslogStreams.writeTranslogOperation(out, op);
+        }
+
+        File file = new File(newTempDir(), "translog-1");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            out.bytes().writeTo(raf.getChannel());
+            // chunks smaller than an operation are extended to fit it
+            MappedTranslogReader reader = new MappedTranslogReader(raf.getChannel(), raf.length(), randomIntBetween(1, 4096));
+            long position = 0;
+            for (Translog.Index expected : operations) {
+                ByteBuffer buffer = reader.operation(position);
+                position += buffer.remaining();
+                Translog.Index op = (Translog.Index) TranslogStreams.readTranslogOperation(new ByteBufferStreamInput(buffer));
+                assertThat(op.id(), equalTo(expected.id()));
+                assertThat(op.source(), equalTo(expected.source()));
+            }
+            assertThat(position, equalTo(raf.length()));
+            assertThat(reader.operation(position), nullValue());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        BytesStreamOutput out = new BytesStreamOutput();
+        TranslogStreams.writeTranslogOperation(out, new Translog.Index("test", "1", "{}".getBytes("UTF-8")));
+
+        File file = new File(newTempDir(), "translog-1");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            out.bytes().writeTo(raf.getChannel());
+            MappedTranslogReader reader = new MappedTranslogReader(raf.getChannel(), raf.length());
+            Translog.Index op = (Translog.Index) TranslogStreams.readTranslogOperation(new ByteBufferStreamInput(reader.operation(0)));
+            reader.close();
+            // the decoded operation doesn't reference the released mapping
+            assertThat(op.source().toUtf8(), equalTo("{}"));
+            // closing is idempotent
+            reader.close();
+            try {
+                reader.operation(0);
+                fail("expected the reader to be closed");
+            } catch (AlreadyClosedException e) {
+                // expected
+            }
+            // the channel stays open
+            assertTrue(raf.getChannel().isOpen());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedOperation() throws Exception {
+        BytesStreamOutput out = new BytesStreamOutput();
+        TranslogStreams.writeTranslogOperation(out, new Translog.Index("test", "1", "{}".getBytes("UTF-8")));
+
+        File file = new File(newTempDir(), "translog-1");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            out.bytes().writeTo(raf.getChannel());
+            MappedTranslogReader reader = new MappedTranslogReader(raf.getChannel(), raf.length() - 1);
+            reader.operation(0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.warmer;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.hamcrest.Matchers.equalTo;
+
+public class WarmerStatsTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testGlobalOrdinalsStats() {
+        ShardIndexWarmerService warmerService = new ShardIndexWarmerService(new ShardId("test", 0), ImmutableSettings.EMPTY);
+        warmerService.onGlobalOrdinalsWarmed(TimeUnit.MILLISECONDS.toNanos(10));
+        warmerService.onGlobalOrdinalsWarmed(TimeUnit.MILLISECONDS.toNanos(30));
+        warmerService.onGlobalOrdinalsTimeout();
+
+        WarmerStats stats = warmerService.stats();
+        assertThat(stats.globalOrdinalsTotal(), equalTo(2l));
+        assertThat(stats.globalOrdinalsTimeInMillis(), equalTo(40l));
+        assertThat(stats.globalOrdinalsTimeouts(), equalTo(1l));
+
+        stats.add(new WarmerStats(0, 1, 5, 3, 20, 2));
+        assertThat(stats.total(), equalTo(1l));
+        assertThat(stats.globalOrdinalsTotal(), equalTo(5l));
+        assertThat(stats.globalOrdinalsTimeInMillis(), equalTo(60l));
+        assertThat(stats.globalOrdinalsTimeouts(), equalTo(3l));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        WarmerStats stats = new WarmerStats(1, 2, 3, 4, 5, 6);
+        WarmerStats read = serialize(stats, Version.CURRENT);
+        assertThat(read.current(), equalTo(1l));
+        assertThat(read.total(), equalTo(2l));
+        assertThat(read.totalTimeInMillis(), equalTo(3l));
+        assertThat(read.globalOrdinalsTotal(), equalTo(4l));
+        assertThat(read.globalOrdinalsTimeInMillis(), equalTo(5l));
+        assertThat(read.globalOrdinalsTimeouts(), equalTo(6l));
+
+        // older nodes don't know about the global ordinals stats
+        read = serialize(stats, Version.V_1_4_0);
+        assertThat(read.total(), equalTo(2l));
+        assertThat(read.totalTimeInMillis(), equalTo(3l));
+        assertThat(read.globalOrdinalsTotal(), equalTo(0l));
+        assertThat(read.globalOrdinalsTimeInMillis(), equalTo(0l));
+        assertThat(read.globalOrdinalsTimeouts(), equalTo(0l));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testToXContent() throws Exception {
+        XContentBuilder builder = jsonBuilder();
+        builder.startObject();
+        new WarmerStats(1, 2, 3, 4, 5, 6).toXContent(builder, ToXContent.EMPTY_PARAMS);
+        builder.endObject();
+
+        BytesReference bytes = builder.bytes();
+        XContentParser parser = XContentFactory.xContent(bytes).createParser(bytes);
+        Map<String, Object> warmer = (Map<String, Object>) parser.mapAndClose().get("warmer");
+        Map<String, Object> globalOrdinals = (Map<String, Object>) warmer.get("global_ordinals");
+        assertThat(globalOrdinals.get("total"), equalTo((Object) 4));
+        assertThat(globalOrdinals.get("total_time_in_millis"), equalTo((Object) 5));
+        assertThat(globalOrdinals.get("timeouts"), equalTo((Object) 6));
+    }
+
+    private static WarmerStats serialize(WarmerStats stats, Version version) throws Exception {
+        BytesStreamOutput output = new BytesStreamOutput();
+        output.setVersion(version);
+        stats.writeTo(output);
+        StreamInput input = new BytesStreamInput(output.bytes());
+        input.setVersion(version);
+        return WarmerStats.readWarmerStats(input);
+    }
+}
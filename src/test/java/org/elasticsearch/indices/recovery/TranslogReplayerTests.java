@@ -0,0 +1,184 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.recovery;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class TranslogReplayerTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testPerDocumentOrderIsPreserved() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final Map<String, List<String>> applied = ConcurrentCollections.newConcurrentMap();
+            final AtomicInteger appliedBeforeDeleteByQuery = new AtomicInteger(-1);
+            final AtomicInteger count = new AtomicInteger();
+            TranslogReplayer replayer = new TranslogReplayer(executor, randomIntBetween(1, 8)) {
+                @Override
+                protected void applyOperation(Translog.Operation operation) {
+                    if (operation.opType() == Translog.Operation.Type.DELETE_BY_QUERY) {
+                        appliedBeforeDeleteByQuery.set(count.get());
+                        return;
+                    }
+                    Translog.Index index = (Translog.Index) operation;
+                    List<String> sources = applied.get(index.id());
+                    if (sources == null) {
+                        sources = new ArrayList<>();
+                        applied.put(index.id(), sources);
+                    }
+                    // only a single worker applies operations for a given id
+                    sources.add(index.source().toUtf8());
+                    count.incrementAndGet();
+                }
+            };
+            int numDocs = randomIntBetween(1, 50);
+            int numOps = randomIntBetween(100, 1000);
+            int deleteByQueryAt = randomInt(numOps - 1);
+            for (int i = 0; i < numOps; i++) {
+                if (i == deleteByQueryAt) {
+                    replayer.add(new Translog.DeleteByQuery(new BytesArray("{}"), null, "test"));
+                }
+                String id = Integer.toString(i % numDocs);
+                replayer.add(new Translog.Index("test", id, Integer.toString(i).getBytes("UTF-8")));
+            }
+            replayer.finish();
+
+            assertThat(count.get(), equalTo(numOps));
+            assertThat(appliedBeforeDeleteByQuery.get(), equalTo(deleteByQueryAt));
+            for (Map.Entry<String, List<String>> entry : applied.entrySet()) {
+                int previous = -1;
+                for (String source : entry.getValue()) {
+                    int op = Integer.parseInt(source);
+                    assertTrue("operations on [" + entry.getKey() + "] applied out of order", op > previous);
+                    previous = op;
+                }
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFailureIsRethrown() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            TranslogReplayer replayer = new TranslogReplayer(executor, randomIntBetween(1, 8)) {
+                @Override
+                protected void applyOperation(Translog.Operation operation) {
+                    if (((Translog.Index) operation).id().equals("7")) {
+                        throw new ElasticsearchException("boom");
+                    }
+                }
+            };
+            try {
+                for (int i = 0; i < 100; i++) {
+                    replayer.add(new Translog.Index("test", Integer.toString(i), "{}".getBytes("UTF-8")));
+                }
+                replayer.finish();
+                fail("expected the failure of operation [7] to be rethrown");
+            } catch (ElasticsearchException e) {
+                assertThat(e.getMessage(), equalTo("boom"));
+            } finally {
+                replayer.close();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFlushKeepsWorkersAcrossBatches() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final AtomicInteger count = new AtomicInteger();
+            TranslogReplayer replayer = new TranslogReplayer(executor, randomIntBetween(1, 8)) {
+                @Override
+                protected void applyOperation(Translog.Operation operation) {
+                    count.incrementAndGet();
+                }
+            };
+            try {
+                int expected = 0;
+                int numBatches = randomIntBetween(1, 10);
+                for (int batch = 0; batch < numBatches; batch++) {
+                    int numOps = randomIntBetween(1, 200);
+                    for (int i = 0; i < numOps; i++) {
+                        replayer.add(new Translog.Index("test", Integer.toString(randomInt(50)), "{}".getBytes("UTF-8")));
+                    }
+                    expected += numOps;
+                    replayer.flush();
+                    assertThat(count.get(), equalTo(expected));
+                }
+                replayer.finish();
+            } finally {
+                replayer.close();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testStoppedWorkerDoesNotBlock() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            TranslogReplayer replayer = new TranslogReplayer(executor, randomIntBetween(2, 8)) {
+                @Override
+                protected void applyOperation(Translog.Operation operation) {
+                    // makes the worker stop when it waits for the next operation
+                    Thread.currentThread().interrupt();
+                }
+            };
+            try {
+                // all operations go to the same partition, more than its queue can hold
+                for (int i = 0; i < 5000; i++) {
+                    replayer.add(new Translog.Index("test", "1", "{}".getBytes("UTF-8")));
+                }
+                replayer.finish();
+                fail("expected the worker interruption to be rethrown");
+            } catch (InterruptedException e) {
+                // expected
+            } finally {
+                replayer.close();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -39,6 +39,7 @@ import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.cache.query.QueryCacheStats;
 import org.elasticsearch.index.merge.policy.TieredMergePolicyProvider;
 import org.elasticsearch.index.merge.scheduler.ConcurrentMergeSchedulerProvider;
 import org.elasticsearch.index.query.FilterBuilders;
@@ -62,6 +63,7 @@ import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.notNullValue;
@@ -296,6 +298,80 @@ public class IndexStatsTests extends ElasticsearchIntegrationTest {
     }
 
 
+    @Test
+    public void testQueryCacheNormalizedKey() throws Exception {
+        // two shards, so that query_then_fetch requests are not turned into query_and_fetch
+        assertAcked(client().admin().indices().prepareCreate("idx")
+                .setSettings(ImmutableSettings.builder()
+                        .put(IndicesQueryCache.INDEX_CACHE_QUERY_ENABLED, true)
+                        .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 2)
+                        .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", "date", "type=date").get());
+        ensureGreen();
+        indexRandom(true,
+                client().prepareIndex("idx", "type", "1").setSource("common", "field", "date", "2014-01-01"),
+                client().prepareIndex("idx", "type", "2").setSource("common", "field", "date", "2014-02-01"));
+
+        final String source = "{\"size\":0,\"query\":{\"match\":{\"common\":\"field\"}},\"aggs\":{\"dates\":{\"date_histogram\":{\"field\":\"date\",\"interval\":\"month\"}}}}";
+        final String reformattedSource = "{ \"size\" : 0,\n  \"query\" : { \"match\" : { \"common\" : \"field\" } },\n  \"aggs\" : { \"dates\" : { \"date_histogram\" : { \"field\" : \"date\", \"interval\" : \"month\" } } }\n}";
+        final String reorderedSource = "{\"aggs\":{\"dates\":{\"date_histogram\":{\"interval\":\"month\",\"field\":\"date\"}}},\"query\":{\"match\":{\"common\":\"field\"}},\"size\":0}";
+
+        assertThat(client().prepareSearch("idx").setSource(source).get().getHits().getTotalHits(), equalTo(2l));
+        QueryCacheStats stats = client().admin().indices().prepareStats("idx").setQueryCache(true).get().getTotal().getQueryCache();
+        assertThat(stats.getMissCount(), equalTo(2l));
+        assertThat(stats.getHitCount(), equalTo(0l));
+
+        // same request with different whitespaces
+        assertThat(client().prepareSearch("idx").setSource(reformattedSource).get().getHits().getTotalHits(), equalTo(2l));
+        stats = client().admin().indices().prepareStats("idx").setQueryCache(true).get().getTotal().getQueryCache();
+        assertThat(stats.getMissCount(), equalTo(2l));
+        assertThat(stats.getHitCount(), equalTo(2l));
+
+        // same request with keys in a different order
+        assertThat(client().prepareSearch("idx").setSource(reorderedSource).get().getHits().getTotalHits(), equalTo(2l));
+        stats = client().admin().indices().prepareStats("idx").setQueryCache(true).get().getTotal().getQueryCache();
+        assertThat(stats.getMissCount(), equalTo(2l));
+        assertThat(stats.getHitCount(), equalTo(4l));
+
+        // but the order of the keys of a sort defines the order of the sort fields
+        final String sortSource = "{\"size\":0,\"sort\":{\"date\":\"asc\",\"common\":\"desc\"}}";
+        final String reversedSortSource = "{\"sort\":{\"common\":\"desc\",\"date\":\"asc\"},\"size\":0}";
+        assertThat(client().prepareSearch("idx").setSource(sortSource).get().getHits().getTotalHits(), equalTo(2l));
+        assertThat(client().prepareSearch("idx").setSource(reversedSortSource).get().getHits().getTotalHits(), equalTo(2l));
+        stats = client().admin().indices().prepareStats("idx").setQueryCache(true).get().getTotal().getQueryCache();
+        assertThat(stats.getMissCount(), equalTo(6l));
+        assertThat(stats.getHitCount(), equalTo(4l));
+
+        // requests that ask for hits are not cached
+        assertThat(client().prepareSearch("idx").setQuery(matchAllQuery()).setSize(1).get().getHits().getTotalHits(), equalTo(2l));
+        stats = client().admin().indices().prepareStats("idx").setQueryCache(true).get().getTotal().getQueryCache();
+        assertThat(stats.getMissCount(), equalTo(6l));
+        assertThat(stats.getHitCount(), equalTo(4l));
+
+        // unrounded dates, random scores seeded from now and decay functions that default their origin to now are not cached
+        final String[] nonCacheableSources = new String[] {
+                "{\"size\":0,\"query\":{\"range\":{\"date\":{\"gt\":\"now-15m\"}}}}",
+                "{\"size\":0,\"query\":{\"function_score\":{\"functions\":[{\"random_score\":{}}]}}}",
+                "{\"size\":0,\"query\":{\"function_score\":{\"functions\":[{\"gauss\":{\"date\":{\"scale\":\"10d\"}}}]}}}"
+        };
+        for (String nonCacheableSource : nonCacheableSources) {
+            client().prepareSearch("idx").setSource(nonCacheableSource).get();
+            client().prepareSearch("idx").setSource(nonCacheableSource).get();
+        }
+        stats = client().admin().indices().prepareStats("idx").setQueryCache(true).get().getTotal().getQueryCache();
+        assertThat(stats.getMissCount(), equalTo(6l));
+        assertThat(stats.getHitCount(), equalTo(4l));
+
+        // rounded dates are cached, with the values they resolved to as part of the key
+        final String nowSource = "{\"size\":0,\"query\":{\"range\":{\"date\":{\"lt\":\"now/d\"}}}}";
+        assertThat(client().prepareSearch("idx").setSource(nowSource).get().getHits().getTotalHits(), equalTo(2l));
+        assertThat(client().prepareSearch("idx").setSource(nowSource).get().getHits().getTotalHits(), equalTo(2l));
+        stats = client().admin().indices().prepareStats("idx").setQueryCache(true).get().getTotal().getQueryCache();
+        assertThat(stats.getMissCount() + stats.getHitCount(), equalTo(14l));
+        // the day may have changed between both requests
+        assertThat(stats.getHitCount(), greaterThanOrEqualTo(6l));
+    }
+
     @Test
     public void nonThrottleStats() throws Exception {
         assertAcked(prepareCreate("test")
@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RecordingPerReaderBucketCollectorTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testVLongSequence() {
+        final long[] values = new long[randomIntBetween(0, 10000)];
+        for (int i = 0; i < values.length; ++i) {
+            switch (randomInt(2)) {
+            case 0:
+                values[i] = 0;
+                break;
+            case 1:
+                values[i] = randomInt(1000);
+                break;
+            default:
+                values[i] = randomLong() & Long.MAX_VALUE;
+            }
+        }
+        try (RecordingPerReaderBucketCollector.VLongSequence sequence = new RecordingPerReaderBucketCollector.VLongSequence(BigArrays.NON_RECYCLING_INSTANCE)) {
+            for (long value : values) {
+                if (value == 0 && randomBoolean()) {
+                    sequence.addZeros(1);
+                } else {
+                    sequence.add(value);
+                }
+            }
+            final RecordingPerReaderBucketCollector.VLongSequence.Reader reader = sequence.reader();
+            for (long value : values) {
+                assertEquals(value, reader.next());
+            }
+        }
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        final int numDocs = randomIntBetween(1, 10000);
+        final boolean singleBucket = randomBoolean();
+        final List<long[]> expected = new ArrayList<>();
+        try (RecordingPerReaderBucketCollector.PerSegmentCollects collects = new RecordingPerReaderBucketCollector.PerSegmentCollects(null, BigArrays.NON_RECYCLING_INSTANCE)) {
+            int doc = 0;
+            for (int i = 0; i < numDocs; ++i) {
+                doc += randomInt(100);
+                final long bucket = singleBucket || rarely() ? 0 : randomInt(50);
+                collects.collect(doc, bucket);
+                expected.add(new long[] {doc, bucket});
+            }
+            final List<long[]> replayed = new ArrayList<>();
+            collects.replay(new BucketCollector() {
+                @Override
+                public void setNextReader(LeafReaderContext reader) {
+                }
+
+                @Override
+                public void collect(int docId, long bucketOrdinal) throws IOException {
+                    replayed.add(new long[] {docId, bucketOrdinal});
+                }
+
+                @Override
+                public void postCollection() throws IOException {
+                }
+
+                @Override
+                public void gatherAnalysis(BucketAnalysisCollector results, long bucketOrdinal) {
+                }
+            });
+            assertEquals(expected.size(), replayed.size());
+            for (int i = 0; i < expected.size(); ++i) {
+                assertArrayEquals(expected.get(i), replayed.get(i));
+            }
+        }
+    }
+
+}
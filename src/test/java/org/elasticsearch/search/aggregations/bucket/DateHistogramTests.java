@@ -28,6 +28,7 @@ import org.elasticsearch.index.mapper.core.DateFieldMapper;
 import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogram;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
 import org.elasticsearch.search.aggregations.metrics.sum.Sum;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
@@ -42,7 +43,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
@@ -1230,6 +1233,95 @@ public class DateHistogramTests extends ElasticsearchIntegrationTest {
         assertThat(bucket.getDocCount(), equalTo(5l));
     }
 
+    @Test
+    public void singleValuedField_NarrowSegments() throws Exception {
+        prepareCreate("idx2").addMapping("type", "date", "type=date").execute().actionGet();
+        final DateTime base = new DateTime(2014, 3, 10, 0, 0, DateTimeZone.UTC);
+        final Map<Long, Long> expectedCounts = new HashMap<>();
+        final int numSegments = randomIntBetween(1, 10);
+        int id = 0;
+        for (int i = 0; i < numSegments; i++) {
+            // each segment covers a few hours at most, often a single one
+            final int hours = randomBoolean() ? 1 : randomIntBetween(1, 5);
+            final int numDocs = randomIntBetween(1, 20);
+            for (int j = 0; j < numDocs; j++) {
+                DateTime date = base.plusHours(i).plusMinutes(randomInt(hours * 60 - 1));
+                client().prepareIndex("idx2", "type", "" + id++).setSource(jsonBuilder().startObject().field("date", date).endObject()).get();
+                long key = date.hourOfDay().roundFloorCopy().getMillis();
+                Long count = expectedCounts.get(key);
+                expectedCounts.put(key, count == null ? 1 : count + 1);
+            }
+            refresh();
+        }
+
+        SearchResponse response = client().prepareSearch("idx2")
+                .addAggregation(dateHistogram("histo").field("date").interval(DateHistogram.Interval.HOUR))
+                .execute().actionGet();
+
+        assertSearchResponse(response);
+
+        DateHistogram histo = response.getAggregations().get("histo");
+        assertThat(histo, notNullValue());
+        assertThat(histo.getBuckets().size(), equalTo(expectedCounts.size()));
+        for (Map.Entry<Long, Long> entry : expectedCounts.entrySet()) {
+            DateHistogram.Bucket bucket = histo.getBucketByKey(entry.getKey());
+            assertThat(bucket, notNullValue());
+            assertThat(bucket.getDocCount(), equalTo(entry.getValue()));
+        }
+    }
+
+    @Test
+    public void singleValuedField_NarrowSegments_UnderTerms() throws Exception {
+        prepareCreate("idx2").addMapping("type", "date", "type=date", "tag", "type=string,index=not_analyzed").execute().actionGet();
+        final DateTime base = new DateTime(2014, 3, 10, 0, 0, DateTimeZone.UTC);
+        final String[] tags = new String[] {"a", "b", "c"};
+        final Map<String, Map<Long, Long>> expectedCounts = new HashMap<>();
+        final int numSegments = randomIntBetween(1, 10);
+        int id = 0;
+        for (int i = 0; i < numSegments; i++) {
+            final int hours = randomBoolean() ? 1 : randomIntBetween(1, 5);
+            final int numDocs = randomIntBetween(1, 20);
+            for (int j = 0; j < numDocs; j++) {
+                DateTime date = base.plusHours(i).plusMinutes(randomInt(hours * 60 - 1));
+                String tag = randomFrom(tags);
+                client().prepareIndex("idx2", "type", "" + id++).setSource(jsonBuilder().startObject().field("date", date).field("tag", tag).endObject()).get();
+                Map<Long, Long> tagCounts = expectedCounts.get(tag);
+                if (tagCounts == null) {
+                    tagCounts = new HashMap<>();
+                    expectedCounts.put(tag, tagCounts);
+                }
+                long key = date.hourOfDay().roundFloorCopy().getMillis();
+                Long count = tagCounts.get(key);
+                tagCounts.put(key, count == null ? 1 : count + 1);
+            }
+            refresh();
+        }
+
+        // the buckets of a segment are shared by the histograms of all terms
+        SearchResponse response = client().prepareSearch("idx2")
+                .addAggregation(terms("tags").field("tag").size(0)
+                        .subAggregation(dateHistogram("histo").field("date").interval(DateHistogram.Interval.HOUR)))
+                .execute().actionGet();
+
+        assertSearchResponse(response);
+
+        Terms terms = response.getAggregations().get("tags");
+        assertThat(terms, notNullValue());
+        assertThat(terms.getBuckets().size(), equalTo(expectedCounts.size()));
+        for (Map.Entry<String, Map<Long, Long>> tagEntry : expectedCounts.entrySet()) {
+            Terms.Bucket tagBucket = terms.getBucketByKey(tagEntry.getKey());
+            assertThat(tagBucket, notNullValue());
+            DateHistogram histo = tagBucket.getAggregations().get("histo");
+            assertThat(histo, notNullValue());
+            assertThat(histo.getBuckets().size(), equalTo(tagEntry.getValue().size()));
+            for (Map.Entry<Long, Long> entry : tagEntry.getValue().entrySet()) {
+                DateHistogram.Bucket bucket = histo.getBucketByKey(entry.getKey());
+                assertThat(bucket, notNullValue());
+                assertThat(bucket.getDocCount(), equalTo(entry.getValue()));
+            }
+        }
+    }
+
     public void testIssue6965() {
         SearchResponse response = client().prepareSearch("idx")
                 .addAggregation(dateHistogram("histo").field("date").preZone("+01:00").interval(DateHistogram.Interval.MONTH).minDocCount(0))
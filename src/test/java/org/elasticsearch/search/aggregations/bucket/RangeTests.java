@@ -35,6 +35,7 @@ import java.util.List;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.*;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
 import static org.hamcrest.Matchers.equalTo;
@@ -168,6 +169,38 @@ public class RangeTests extends ElasticsearchIntegrationTest {
         assertThat(bucket.getDocCount(), equalTo(numDocs - 5L));
     }
 
+    @Test
+    public void singleValueField_WithQueryAndFractionalBounds() throws Exception {
+        SearchResponse response = client().prepareSearch("idx")
+                .setQuery(rangeQuery(SINGLE_VALUED_FIELD_NAME).lte(4))
+                .addAggregation(range("range")
+                        .field(SINGLE_VALUED_FIELD_NAME)
+                        .addUnboundedTo(2.5)
+                        .addRange(1.5, 3.5)
+                        .addUnboundedFrom(3.5))
+                .execute().actionGet();
+
+        assertSearchResponse(response);
+
+
+        Range range = response.getAggregations().get("range");
+        assertThat(range, notNullValue());
+        assertThat(range.getName(), equalTo("range"));
+        assertThat(range.getBuckets().size(), equalTo(3));
+
+        Range.Bucket bucket = range.getBucketByKey("*-2.5");
+        assertThat(bucket, notNullValue());
+        assertThat(bucket.getDocCount(), equalTo(2l));
+
+        bucket = range.getBucketByKey("1.5-3.5");
+        assertThat(bucket, notNullValue());
+        assertThat(bucket.getDocCount(), equalTo(2l));
+
+        bucket = range.getBucketByKey("3.5-*");
+        assertThat(bucket, notNullValue());
+        assertThat(bucket.getDocCount(), equalTo(1l));
+    }
+
     @Test
     public void singleValueField_WithFormat() throws Exception {
         SearchResponse response = client().prepareSearch("idx")
@@ -0,0 +1,136 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.cardinality;
+
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.RandomAccessOrds;
+import org.apache.lucene.search.IndexSearcher;
+import org.elasticsearch.index.fielddata.SortedBinaryDocValues;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+public class CardinalityAggregatorFactoryTests extends ElasticsearchTestCase {
+
+    private static final int PRECISION = 14;
+
+    @Test
+    public void testUseOrdinals() {
+        assertTrue(CardinalityAggregator.useOrdinals(1000, PRECISION, 1));
+        assertTrue(CardinalityAggregator.useOrdinals(10000, PRECISION, 1));
+        assertFalse(CardinalityAggregator.useOrdinals(1000000, PRECISION, 1));
+        // buckets that only see a few values each are cheap to count directly
+        assertFalse(CardinalityAggregator.useOrdinals(10000, PRECISION, 1000));
+    }
+
+    @Test
+    public void testHighCardinalityDoesNotLoadGlobalOrdinals() {
+        MockValuesSource valuesSource = new MockValuesSource(1000000, 2000000, 1500000, randomBoolean());
+        assertFalse(CardinalityAggregatorFactory.useGlobalOrdinals(valuesSource, null, PRECISION, 1));
+        assertEquals(0, valuesSource.globalMaxOrdCalls);
+    }
+
+    @Test
+    public void testLowCardinalityDoesNotNeedGlobalMaxOrd() {
+        MockValuesSource valuesSource = new MockValuesSource(100, 1000, 500, randomBoolean());
+        assertTrue(CardinalityAggregatorFactory.useGlobalOrdinals(valuesSource, null, PRECISION, 1));
+        assertEquals(0, valuesSource.globalMaxOrdCalls);
+    }
+
+    @Test
+    public void testLazyGlobalOrdinalsAreNotLoadedWhenInDoubt() {
+        MockValuesSource valuesSource = new MockValuesSource(1000, 1000000, 5000, false);
+        assertFalse(CardinalityAggregatorFactory.useGlobalOrdinals(valuesSource, null, PRECISION, 1));
+        assertEquals(0, valuesSource.globalMaxOrdCalls);
+    }
+
+    @Test
+    public void testEagerGlobalOrdinalsAreCheckedWhenInDoubt() {
+        MockValuesSource valuesSource = new MockValuesSource(1000, 1000000, 5000, true);
+        assertTrue(CardinalityAggregatorFactory.useGlobalOrdinals(valuesSource, null, PRECISION, 1));
+        assertEquals(1, valuesSource.globalMaxOrdCalls);
+
+        valuesSource = new MockValuesSource(1000, 1000000, 500000, true);
+        assertFalse(CardinalityAggregatorFactory.useGlobalOrdinals(valuesSource, null, PRECISION, 1));
+        assertEquals(1, valuesSource.globalMaxOrdCalls);
+    }
+
+    private static class MockValuesSource extends ValuesSource.Bytes.WithOrdinals {
+
+        private final long maxSegmentMaxOrd;
+        private final long sumSegmentMaxOrds;
+        private final long globalMaxOrd;
+        private final boolean eagerGlobalOrdinals;
+        int globalMaxOrdCalls;
+
+        MockValuesSource(long maxSegmentMaxOrd, long sumSegmentMaxOrds, long globalMaxOrd, boolean eagerGlobalOrdinals) {
+            this.maxSegmentMaxOrd = maxSegmentMaxOrd;
+            this.sumSegmentMaxOrds = sumSegmentMaxOrds;
+            this.globalMaxOrd = globalMaxOrd;
+            this.eagerGlobalOrdinals = eagerGlobalOrdinals;
+        }
+
+        @Override
+        public long globalMaxOrd(IndexSearcher indexSearcher) {
+            ++globalMaxOrdCalls;
+            return globalMaxOrd;
+        }
+
+        @Override
+        public long maxSegmentMaxOrd(IndexSearcher indexSearcher) {
+            return maxSegmentMaxOrd;
+        }
+
+        @Override
+        public long sumSegmentMaxOrds(IndexSearcher indexSearcher) {
+            return sumSegmentMaxOrds;
+        }
+
+        @Override
+        public boolean eagerGlobalOrdinals() {
+            return eagerGlobalOrdinals;
+        }
+
+        @Override
+        public RandomAccessOrds ordinalsValues() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setNextReader(IndexReaderContext reader) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RandomAccessOrds globalOrdinalsValues() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedBinaryDocValues bytesValues() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MetaData metaData() {
+            return MetaData.UNKNOWN;
+        }
+    }
+}
@@ -21,10 +21,15 @@ package org.elasticsearch.search.aggregations.metrics.cardinality;
 
 import com.carrotsearch.hppc.IntOpenHashSet;
 import com.carrotsearch.hppc.hash.MurmurHash3;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.test.ElasticsearchTestCase;
 import org.junit.Test;
 
+import java.io.IOException;
+
 import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MAX_PRECISION;
 import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MIN_PRECISION;
 import static org.hamcrest.Matchers.closeTo;
@@ -56,6 +61,23 @@ public class HyperLogLogPlusPlusTests extends ElasticsearchTestCase {
         assertEquals(runLen, HyperLogLogPlusPlus.decodeRunLen(encoded, p1));
     }
 
+    @Test
+    public void memoryUsageOfSparseBuckets() {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final long registers = HyperLogLogPlusPlus.memoryUsage(p);
+        long previous = 0;
+        for (long cardinality = 1; cardinality <= registers; cardinality += randomIntBetween(1, 100)) {
+            final long memoryUsage = HyperLogLogPlusPlus.memoryUsage(p, cardinality);
+            assertTrue(memoryUsage >= previous);
+            assertTrue(memoryUsage <= registers);
+            previous = memoryUsage;
+        }
+        assertEquals(registers, HyperLogLogPlusPlus.memoryUsage(p, registers));
+        if (p >= 8) {
+            assertTrue(HyperLogLogPlusPlus.memoryUsage(p, 1) < registers);
+        }
+    }
+
     @Test
     public void accuracy() {
         final long bucket = randomInt(20);
@@ -123,6 +145,47 @@ public class HyperLogLogPlusPlusTests extends ElasticsearchTestCase {
         assertEquals(1, counts.cardinality(0));
     }
 
+    @Test
+    public void manyBuckets() {
+        // most buckets only see a few values and should not be upgraded to hyperloglog, while the others should
+        final int p = randomIntBetween(10, MAX_PRECISION);
+        final int numBuckets = randomIntBetween(100, 1000);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        final IntOpenHashSet[] sets = new IntOpenHashSet[numBuckets];
+        for (int bucket = 0; bucket < numBuckets; ++bucket) {
+            sets[bucket] = new IntOpenHashSet();
+            final int numValues = randomBoolean() ? randomIntBetween(1, 10) : randomIntBetween(1, 10000);
+            for (int i = 0; i < numValues; ++i) {
+                final int n = randomInt(100000);
+                sets[bucket].add(n);
+                counts.collect(bucket, MurmurHash3.hash((long) n));
+            }
+        }
+        for (int bucket = 0; bucket < numBuckets; ++bucket) {
+            assertThat((double) counts.cardinality(bucket), closeTo(sets[bucket].size(), 0.1 * sets[bucket].size()));
+        }
+        counts.close();
+    }
+
+    @Test
+    public void serialization() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        final int numValues = randomBoolean() ? randomIntBetween(1, 10) : randomIntBetween(1, 100000);
+        for (int i = 0; i < numValues; ++i) {
+            counts.collect(0, MurmurHash3.hash((long) randomInt(100000)));
+        }
+        final Version version = randomBoolean() ? Version.CURRENT : Version.V_1_4_0;
+        final BytesStreamOutput out = new BytesStreamOutput();
+        out.setVersion(version);
+        counts.writeTo(0, out);
+        final BytesStreamInput in = new BytesStreamInput(out.bytes());
+        in.setVersion(version);
+        final HyperLogLogPlusPlus copy = HyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+        assertEquals(counts.precision(), copy.precision());
+        assertEquals(counts.cardinality(0), copy.cardinality(0));
+    }
+
     @Test
     public void precisionFromThreshold() {
         assertEquals(4, HyperLogLogPlusPlus.precisionFromThreshold(0));
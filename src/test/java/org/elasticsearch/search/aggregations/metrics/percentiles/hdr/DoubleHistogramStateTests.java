@@ -0,0 +1,190 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles.hdr;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class DoubleHistogramStateTests extends ElasticsearchTestCase {
+
+    private static final double[] QUANTILES = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999};
+
+    private static double[] randomLatencies(int numValues) {
+        final double[] values = new double[numValues];
+        for (int i = 0; i < numValues; ++i) {
+            // log-normal, like latencies in microseconds
+            values[i] = Math.floor(Math.exp(getRandom().nextGaussian() * 2 + 5));
+        }
+        return values;
+    }
+
+    private static void assertRelativeError(double[] sortedValues, DoubleHistogramState state) {
+        final double maxRelativeError = Math.pow(10, -state.numberOfSignificantValueDigits());
+        assertEquals(sortedValues.length, state.getTotalCount());
+        assertEquals(sortedValues[0], state.quantile(0), 0d);
+        assertEquals(sortedValues[sortedValues.length - 1], state.quantile(1), 0d);
+        for (double q : QUANTILES) {
+            final double exact = sortedValues[(int) Math.ceil(q * sortedValues.length) - 1];
+            assertThat(state.quantile(q), closeTo(exact, exact * maxRelativeError));
+        }
+    }
+
+    @Test
+    public void testRelativeError() {
+        final double[] values = randomLatencies(randomIntBetween(100, 100000));
+        final DoubleHistogramState state = new DoubleHistogramState(randomIntBetween(0, 5), BigArrays.NON_RECYCLING_INSTANCE);
+        for (double value : values) {
+            state.recordValue(value);
+        }
+        Arrays.sort(values);
+        assertRelativeError(values, state);
+        state.close();
+    }
+
+    @Test
+    public void testMerge() {
+        final double[] values = randomLatencies(randomIntBetween(100, 100000));
+        final int digits = randomIntBetween(0, 5);
+        final DoubleHistogramState[] states = new DoubleHistogramState[randomIntBetween(2, 10)];
+        for (int i = 0; i < states.length; ++i) {
+            states[i] = new DoubleHistogramState(digits, BigArrays.NON_RECYCLING_INSTANCE);
+        }
+        for (double value : values) {
+            states[randomInt(states.length - 1)].recordValue(value);
+        }
+        final DoubleHistogramState merged = new DoubleHistogramState(digits, BigArrays.NON_RECYCLING_INSTANCE);
+        for (DoubleHistogramState state : states) {
+            merged.add(state);
+        }
+        Arrays.sort(values);
+        assertRelativeError(values, merged);
+    }
+
+    @Test
+    public void testCdf() {
+        final double[] values = randomLatencies(randomIntBetween(100, 10000));
+        final DoubleHistogramState state = new DoubleHistogramState(3, BigArrays.NON_RECYCLING_INSTANCE);
+        for (double value : values) {
+            state.recordValue(value);
+        }
+        Arrays.sort(values);
+        assertEquals(0, state.cdf(values[0] - 1), 0d);
+        assertEquals(1, state.cdf(values[values.length - 1]), 0d);
+        double previous = 0;
+        for (double q : QUANTILES) {
+            final double cdf = state.cdf(values[(int) (q * values.length)]);
+            assertThat(cdf, greaterThanOrEqualTo(previous));
+            assertThat(cdf, lessThanOrEqualTo(1d));
+            previous = cdf;
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final DoubleHistogramState state = new DoubleHistogramState(3, BigArrays.NON_RECYCLING_INSTANCE);
+        assertTrue(Double.isNaN(state.quantile(0.5)));
+        assertTrue(Double.isNaN(state.cdf(1)));
+    }
+
+    @Test(expected = ElasticsearchIllegalArgumentException.class)
+    public void testNegativeValue() {
+        new DoubleHistogramState(3, BigArrays.NON_RECYCLING_INSTANCE).recordValue(-1);
+    }
+
+    @Test
+    public void testDynamicRange() {
+        final DoubleHistogramState state = new DoubleHistogramState(randomIntBetween(0, 5), BigArrays.NON_RECYCLING_INSTANCE);
+        state.recordValue(1e6);
+        // within 2^MAX_BINADES of each other, in both directions
+        state.recordValue(1e-6);
+        state.recordValue(1e12);
+        state.recordValue(0);
+        assertEquals(4, state.getTotalCount());
+        try {
+            state.recordValue(1e-300);
+            fail("values are too far apart");
+        } catch (ElasticsearchIllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("2^" + DoubleHistogramState.MAX_BINADES));
+        }
+        assertEquals(4, state.getTotalCount());
+        assertEquals(0, state.quantile(0), 0d);
+        assertEquals(1e12, state.quantile(1), 0d);
+    }
+
+    @Test
+    public void testCompactCopy() {
+        final double[] values = randomLatencies(randomIntBetween(0, 10000));
+        final DoubleHistogramState state = new DoubleHistogramState(randomIntBetween(0, 5), BigArrays.NON_RECYCLING_INSTANCE);
+        for (double value : values) {
+            state.recordValue(value);
+        }
+        final DoubleHistogramState copy = state.compactCopy();
+        assertEquals(state.getTotalCount(), copy.getTotalCount());
+        for (double q : QUANTILES) {
+            assertEquals(state.quantile(q), copy.quantile(q), 0d);
+        }
+        for (int i = 0; i < 10 && values.length > 0; ++i) {
+            final double value = values[randomInt(values.length - 1)];
+            assertEquals(state.cdf(value), copy.cdf(value), 0d);
+        }
+        try {
+            copy.recordValue(1);
+            fail("compact copies are read-only");
+        } catch (ElasticsearchIllegalStateException e) {
+            // expected
+        }
+        // but can be merged into other histograms
+        final DoubleHistogramState merged = new DoubleHistogramState(state.numberOfSignificantValueDigits(), BigArrays.NON_RECYCLING_INSTANCE);
+        merged.add(copy);
+        for (double q : QUANTILES) {
+            assertEquals(state.quantile(q), merged.quantile(q), 0d);
+        }
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        final double[] values = randomLatencies(randomIntBetween(0, 10000));
+        final DoubleHistogramState state = new DoubleHistogramState(randomIntBetween(0, 5), BigArrays.NON_RECYCLING_INSTANCE);
+        for (double value : values) {
+            state.recordValue(value);
+        }
+        final BytesStreamOutput out = new BytesStreamOutput();
+        DoubleHistogramState.write(state, out);
+        final DoubleHistogramState copy = DoubleHistogramState.read(new BytesStreamInput(out.bytes()));
+        assertEquals(state.numberOfSignificantValueDigits(), copy.numberOfSignificantValueDigits());
+        assertEquals(state.getTotalCount(), copy.getTotalCount());
+        for (double q : QUANTILES) {
+            assertEquals(state.quantile(q), copy.quantile(q), 0d);
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles.tdigest;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class TDigestStateTests extends ElasticsearchTestCase {
+
+    private static double[] randomValues(int numValues) {
+        final double[] values = new double[numValues];
+        final boolean gaussian = randomBoolean();
+        for (int i = 0; i < numValues; ++i) {
+            values[i] = gaussian ? getRandom().nextGaussian() : randomDouble() * 1000;
+        }
+        return values;
+    }
+
+    private static double exactCdf(double[] sortedValues, double x) {
+        int count = 0;
+        for (double v : sortedValues) {
+            if (v <= x) {
+                ++count;
+            }
+        }
+        return (double) count / sortedValues.length;
+    }
+
+    private static void assertAccurate(double[] sortedValues, TDigestState state) {
+        assertEquals(sortedValues.length, state.size());
+        assertEquals(sortedValues[0], state.quantile(0), 0d);
+        assertEquals(sortedValues[sortedValues.length - 1], state.quantile(1), 0d);
+        double previous = Double.NEGATIVE_INFINITY;
+        for (double q : new double[] {0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999}) {
+            final double estimate = state.quantile(q);
+            assertThat(estimate, greaterThanOrEqualTo(previous));
+            previous = estimate;
+            // the error is expressed in terms of rank, and is lower at the tails
+            assertThat(exactCdf(sortedValues, estimate), closeTo(q, 0.02));
+            assertThat(state.cdf(estimate), closeTo(q, 0.02));
+        }
+    }
+
+    @Test
+    public void testAccuracy() {
+        final double[] values = randomValues(randomIntBetween(1000, 100000));
+        final TDigestState state = new TDigestState(100);
+        for (double value : values) {
+            state.add(value);
+        }
+        Arrays.sort(values);
+        assertAccurate(values, state);
+        assertThat(state.centroidCount(), lessThan(values.length));
+    }
+
+    @Test
+    public void testMerge() {
+        final double[] values = randomValues(randomIntBetween(1000, 100000));
+        final TDigestState[] states = new TDigestState[randomIntBetween(2, 10)];
+        for (int i = 0; i < states.length; ++i) {
+            states[i] = new TDigestState(100);
+        }
+        for (double value : values) {
+            states[randomInt(states.length - 1)].add(value);
+        }
+        final TDigestState merged = new TDigestState(100);
+        for (TDigestState state : states) {
+            merged.add(state);
+        }
+        Arrays.sort(values);
+        assertAccurate(values, merged);
+    }
+
+    @Test
+    public void testEmpty() {
+        final TDigestState state = new TDigestState(100);
+        assertEquals(0, state.size());
+        assertTrue(Double.isNaN(state.quantile(0.5)));
+        assertTrue(Double.isNaN(state.cdf(0)));
+    }
+
+    @Test
+    public void testSingleValue() {
+        final TDigestState state = new TDigestState(100);
+        final double value = randomDouble();
+        final int count = randomIntBetween(1, 1000);
+        for (int i = 0; i < count; ++i) {
+            state.add(value);
+        }
+        assertEquals(value, state.quantile(randomDouble()), 0d);
+        assertEquals(0, state.cdf(value - 1), 0d);
+        assertEquals(1, state.cdf(value), 0d);
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        final double[] values = randomValues(randomIntBetween(1, 10000));
+        final TDigestState state = new TDigestState(randomIntBetween(10, 200));
+        for (double value : values) {
+            state.add(value);
+        }
+        final Version version = randomBoolean() ? Version.CURRENT : Version.V_1_4_0;
+        final BytesStreamOutput out = new BytesStreamOutput();
+        out.setVersion(version);
+        TDigestState.write(state, out);
+        final BytesStreamInput in = new BytesStreamInput(out.bytes());
+        in.setVersion(version);
+        final TDigestState copy = TDigestState.read(in);
+        assertEquals(state.compression(), copy.compression(), 0d);
+        assertEquals(state.size(), copy.size());
+        assertEquals(state.quantile(0), copy.quantile(0), 0d);
+        assertEquals(state.quantile(1), copy.quantile(1), 0d);
+        if (version.onOrAfter(Version.V_2_0_0)) {
+            // centroids are transferred as-is
+            assertEquals(state.centroidCount(), copy.centroidCount());
+            assertEquals(state.quantile(0.5), copy.quantile(0.5), 0d);
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.controller;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.InternalTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+
+public class ShardAggregationsReducerTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testTermOrder() throws Exception {
+        assertSameAsSingleReduce(Terms.Order.term(true));
+    }
+
+    @Test
+    public void testCountOrder() throws Exception {
+        assertSameAsSingleReduce(Terms.Order.count(false));
+    }
+
+    @Test
+    public void testNoAggregations() throws Exception {
+        ShardAggregationsReducer reducer = new ShardAggregationsReducer(2, BigArrays.NON_RECYCLING_INSTANCE, null);
+        for (int i = 0; i < 5; i++) {
+            reducer.add(new QuerySearchResult(i, new SearchShardTarget("node", "index", i)));
+        }
+        assertThat(reducer.numPartialReduces(), equalTo(0));
+        assertThat(reducer.reduce(), nullValue());
+    }
+
+    private void assertSameAsSingleReduce(Terms.Order order) throws Exception {
+        int numShards = randomIntBetween(1, 30);
+        int batchedReduceSize = randomIntBetween(2, 6);
+        int requiredSize = randomIntBetween(1, 5);
+        int shardSize = requiredSize + randomInt(5);
+        long minDocCount = randomIntBetween(1, 3);
+
+        List<InternalAggregations> shardAggregations = new ArrayList<>();
+        for (int shard = 0; shard < numShards; shard++) {
+            shardAggregations.add(randomShardTerms(order, requiredSize, shardSize, minDocCount));
+        }
+        InternalTerms expected = (InternalTerms) InternalAggregations.reduce(shardAggregations,
+                new ReduceContext(null, BigArrays.NON_RECYCLING_INSTANCE, null)).get("terms");
+
+        ShardAggregationsReducer reducer = new ShardAggregationsReducer(batchedReduceSize, BigArrays.NON_RECYCLING_INSTANCE, null);
+        for (int shard = 0; shard < numShards; shard++) {
+            QuerySearchResult result = new QuerySearchResult(shard, new SearchShardTarget("node", "index", shard));
+            result.aggregations(shardAggregations.get(shard));
+            reducer.add(result);
+            // the shard aggregations are released once handed over
+            assertThat(result.aggregations(), nullValue());
+        }
+        assertThat(reducer.numPartialReduces(), equalTo(numShards < batchedReduceSize ? 0 : 1 + (numShards - batchedReduceSize) / (batchedReduceSize - 1)));
+        InternalTerms actual = (InternalTerms) reducer.reduce().get("terms");
+
+        assertThat(actual.getDocCountError(), equalTo(expected.getDocCountError()));
+        assertThat(actual.getSumOfOtherDocCounts(), equalTo(expected.getSumOfOtherDocCounts()));
+        assertThat(actual.getBuckets().size(), equalTo(expected.getBuckets().size()));
+        for (int i = 0; i < expected.getBuckets().size(); i++) {
+            Terms.Bucket expectedBucket = expected.getBuckets().get(i);
+            Terms.Bucket actualBucket = actual.getBuckets().get(i);
+            assertThat(actualBucket.getDocCount(), equalTo(expectedBucket.getDocCount()));
+            if (order == Terms.Order.term(true)) {
+                assertThat(actualBucket.getKey(), equalTo(expectedBucket.getKey()));
+            }
+            // buckets with the same count may come out in a different order, compare errors by term
+            Terms.Bucket sameTerm = expected.getBucketByKey(actualBucket.getKey());
+            if (sameTerm != null) {
+                assertThat(((InternalTerms.Bucket) actualBucket).getDocCountError(), equalTo(((InternalTerms.Bucket) sameTerm).getDocCountError()));
+            }
+        }
+    }
+
+    private InternalAggregations randomShardTerms(Terms.Order order, int requiredSize, int shardSize, long minDocCount) {
+        // pick the top terms of the shard the way the terms aggregator does
+        List<InternalTerms.Bucket> candidates = new ArrayList<>();
+        int numTerms = randomInt(20);
+        for (int i = 0; i < numTerms; i++) {
+            String term = "term_" + randomInt(30);
+            candidates.add(new StringTerms.Bucket(new BytesRef(term), randomIntBetween(1, 50), InternalAggregations.EMPTY, true, 0));
+        }
+        Map<String, InternalTerms.Bucket> unique = new HashMap<>();
+        for (InternalTerms.Bucket bucket : candidates) {
+            unique.put(bucket.getKey(), bucket);
+        }
+        candidates = new ArrayList<>(unique.values());
+        final boolean byCount = order == Terms.Order.count(false);
+        Collections.sort(candidates, new Comparator<Terms.Bucket>() {
+            @Override
+            public int compare(Terms.Bucket o1, Terms.Bucket o2) {
+                int cmp = byCount ? Long.compare(o2.getDocCount(), o1.getDocCount()) : 0;
+                return cmp != 0 ? cmp : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        List<InternalTerms.Bucket> buckets = new ArrayList<>();
+        long otherDocCount = 0;
+        for (InternalTerms.Bucket bucket : candidates) {
+            if (buckets.size() < shardSize) {
+                buckets.add(bucket);
+            } else {
+                otherDocCount += bucket.getDocCount();
+            }
+        }
+        StringTerms terms = new StringTerms("terms", order, requiredSize, shardSize, minDocCount, buckets, true, 0, otherDocCount, null);
+        return new InternalAggregations(Collections.<InternalAggregation>singletonList(terms));
+    }
+}
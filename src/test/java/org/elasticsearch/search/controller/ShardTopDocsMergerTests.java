@@ -0,0 +1,131 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.controller;
+
+import org.apache.lucene.search.*;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class ShardTopDocsMergerTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testMergeByScore() throws Exception {
+        assertSameAsTopDocsMerge(null);
+    }
+
+    @Test
+    public void testMergeBySortField() throws Exception {
+        assertSameAsTopDocsMerge(new Sort(new SortField("field", SortField.Type.INT, randomBoolean())));
+    }
+
+    private void assertSameAsTopDocsMerge(Sort sort) throws Exception {
+        int numShards = randomIntBetween(1, 20);
+        int from = randomIntBetween(0, 20);
+        int size = randomIntBetween(0, 30);
+        boolean scrollSort = rarely();
+
+        TopDocs[] shardTopDocs = new TopDocs[numShards];
+        for (int shard = 0; shard < numShards; shard++) {
+            shardTopDocs[shard] = randomTopDocs(sort, randomIntBetween(0, from + size));
+        }
+        // TopDocs#merge sets the shard index on the docs, so compute the expected docs from copies
+        TopDocs[] copies = new TopDocs[numShards];
+        for (int shard = 0; shard < numShards; shard++) {
+            copies[shard] = copy(shardTopDocs[shard]);
+        }
+        ScoreDoc[] expected = TopDocs.merge(sort, scrollSort ? 0 : from, size, copies).scoreDocs;
+
+        ShardTopDocsMerger merger = new ShardTopDocsMerger(scrollSort);
+        List<Integer> arrivalOrder = new ArrayList<>();
+        for (int shard = 0; shard < numShards; shard++) {
+            arrivalOrder.add(shard);
+        }
+        Collections.shuffle(arrivalOrder, getRandom());
+        for (int shard : arrivalOrder) {
+            QuerySearchResult result = new QuerySearchResult(shard, new SearchShardTarget("node", "index", shard));
+            result.from(from).size(size);
+            result.topDocs(shardTopDocs[shard]);
+            merger.add(shard, result);
+            // the docs are released, the rest is kept
+            assertThat(result.topDocs().scoreDocs.length, equalTo(0));
+            assertThat(result.topDocs().totalHits, equalTo(shardTopDocs[shard].totalHits));
+            assertThat(result.topDocs() instanceof TopFieldDocs, equalTo(sort != null));
+        }
+
+        ScoreDoc[] actual = merger.sortedDocs();
+        assertThat(actual.length, equalTo(expected.length));
+        for (int i = 0; i < expected.length; i++) {
+            assertThat(actual[i].shardIndex, equalTo(expected[i].shardIndex));
+            assertThat(actual[i].doc, equalTo(expected[i].doc));
+        }
+    }
+
+    private TopDocs randomTopDocs(Sort sort, int numDocs) {
+        // few distinct values to exercise the tie breaking
+        if (sort == null) {
+            ScoreDoc[] docs = new ScoreDoc[numDocs];
+            for (int i = 0; i < numDocs; i++) {
+                docs[i] = new ScoreDoc(randomInt(1000), randomIntBetween(0, 5));
+            }
+            Arrays.sort(docs, new Comparator<ScoreDoc>() {
+                @Override
+                public int compare(ScoreDoc o1, ScoreDoc o2) {
+                    return Float.compare(o2.score, o1.score);
+                }
+            });
+            return new TopDocs(numDocs + randomInt(10), docs, numDocs == 0 ? Float.NaN : docs[0].score);
+        }
+        final boolean reverse = sort.getSort()[0].getReverse();
+        FieldDoc[] docs = new FieldDoc[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+            docs[i] = new FieldDoc(randomInt(1000), Float.NaN, new Object[]{randomIntBetween(0, 5)});
+        }
+        Arrays.sort(docs, new Comparator<FieldDoc>() {
+            @Override
+            public int compare(FieldDoc o1, FieldDoc o2) {
+                int cmp = ((Integer) o1.fields[0]).compareTo((Integer) o2.fields[0]);
+                return reverse ? -cmp : cmp;
+            }
+        });
+        return new TopFieldDocs(numDocs + randomInt(10), docs, sort.getSort(), Float.NaN);
+    }
+
+    private TopDocs copy(TopDocs topDocs) {
+        ScoreDoc[] docs = new ScoreDoc[topDocs.scoreDocs.length];
+        for (int i = 0; i < docs.length; i++) {
+            ScoreDoc doc = topDocs.scoreDocs[i];
+            docs[i] = doc instanceof FieldDoc ? new FieldDoc(doc.doc, doc.score, ((FieldDoc) doc).fields) : new ScoreDoc(doc.doc, doc.score);
+        }
+        if (topDocs instanceof TopFieldDocs) {
+            return new TopFieldDocs(topDocs.totalHits, docs, ((TopFieldDocs) topDocs).fields, topDocs.getMaxScore());
+        }
+        return new TopDocs(topDocs.totalHits, docs, topDocs.getMaxScore());
+    }
+}
@@ -19,10 +19,17 @@
 
 package org.elasticsearch.search.source;
 
+import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -100,4 +107,28 @@ public class SourceFetchingTests extends ElasticsearchIntegrationTest {
         assertThat(response.getHits().getAt(0).getSource().size(), equalTo(1));
         assertThat((String) response.getHits().getAt(0).getSource().get("field"), equalTo("value"));
     }
+
+    @Test
+    public void testSourceOfHitsInNonDocIdOrder() throws Exception {
+        assertAcked(prepareCreate("test").setSettings(SETTING_NUMBER_OF_SHARDS, 1));
+        ensureGreen();
+
+        int numDocs = randomIntBetween(10, 200);
+        List<IndexRequestBuilder> builders = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            builders.add(client().prepareIndex("test", "type1", Integer.toString(i)).setSource("num", i));
+        }
+        // several segments, and docs indexed in random order
+        indexRandom(true, builders);
+
+        // the hits are loaded in doc id order, and must be returned in the requested order
+        SortOrder order = randomFrom(SortOrder.values());
+        SearchResponse response = client().prepareSearch("test").addSort("num", order).setSize(numDocs).get();
+        assertThat(response.getHits().getHits().length, equalTo(numDocs));
+        for (int i = 0; i < numDocs; i++) {
+            int expected = order == SortOrder.ASC ? i : numDocs - 1 - i;
+            assertThat(response.getHits().getAt(i).getId(), equalTo(Integer.toString(expected)));
+            assertThat(response.getHits().getAt(i).getSource().get("num"), equalTo((Object) expected));
+        }
+    }
 }
@@ -104,6 +104,11 @@ public class MockBigArrays extends BigArrays {
         return new MockBigArrays(this.settings, this.recycler, this.breakerService, true);
     }
 
+    @Override
+    public BigArrays withoutCircuitBreakerAccounting() {
+        return new MockBigArrays(this.settings, this.recycler, null, false);
+    }
+
     @Override
     public ByteArray newByteArray(long size, boolean clearOnResize) {
         final ByteArrayWrapper array = new ByteArrayWrapper(super.newByteArray(size, clearOnResize), clearOnResize);
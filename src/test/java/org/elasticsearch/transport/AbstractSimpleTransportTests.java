@@ -194,6 +194,84 @@ public abstract class AbstractSimpleTransportTests extends ElasticsearchTestCase
         serviceA.removeHandler("sayHello");
     }
 
+    @Test
+    public void testActionStats() throws Exception {
+        serviceA.registerHandler("sayHello", new BaseTransportRequestHandler<StringMessageRequest>() {
+            @Override
+            public StringMessageRequest newInstance() {
+                return new StringMessageRequest();
+            }
+
+            @Override
+            public String executor() {
+                return ThreadPool.Names.GENERIC;
+            }
+
+            @Override
+            public void messageReceived(StringMessageRequest request, TransportChannel channel) throws Exception {
+                channel.sendResponse(new StringMessageResponse("hello " + request.message));
+            }
+        });
+
+        TransportFuture<StringMessageResponse> res = serviceB.submitRequest(nodeA, "sayHello",
+                new StringMessageRequest("moshe"), new FutureTransportResponseHandler<StringMessageResponse>() {
+            @Override
+            public StringMessageResponse newInstance() {
+                return new StringMessageResponse();
+            }
+        });
+        assertThat(res.txGet().message, equalTo("hello moshe"));
+
+        TransportStats.ActionStats sent = serviceB.stats().actions().get("sayHello");
+        assertThat(sent, notNullValue());
+        assertThat(sent.txCount(), equalTo(1l));
+        assertThat(sent.txSize().bytes(), greaterThan(0l));
+        assertThat(sent.rxCount(), equalTo(0l));
+        final long requestSize = sent.txSize().bytes();
+        assertBusy(new Runnable() {
+            @Override
+            public void run() {
+                TransportStats.ActionStats received = serviceA.stats().actions().get("sayHello");
+                assertThat(received, notNullValue());
+                assertThat(received.rxCount(), equalTo(1l));
+                assertThat(received.rxSize().bytes(), equalTo(requestSize));
+                assertThat(received.txCount(), equalTo(0l));
+            }
+        });
+
+        // requests for actions that are not registered are not tracked per action
+        TransportFuture<StringMessageResponse> unknown = serviceB.submitRequest(nodeA, "unknownAction",
+                new StringMessageRequest("moshe"), new FutureTransportResponseHandler<StringMessageResponse>() {
+            @Override
+            public StringMessageResponse newInstance() {
+                return new StringMessageResponse();
+            }
+        });
+        try {
+            unknown.txGet();
+            fail("TransportException expected");
+        } catch (TransportException ex) {
+
+        }
+        res = serviceB.submitRequest(nodeA, "sayHello",
+                new StringMessageRequest("moshe"), new FutureTransportResponseHandler<StringMessageResponse>() {
+            @Override
+            public StringMessageResponse newInstance() {
+                return new StringMessageResponse();
+            }
+        });
+        assertThat(res.txGet().message, equalTo("hello moshe"));
+        assertBusy(new Runnable() {
+            @Override
+            public void run() {
+                assertThat(serviceA.stats().actions().get("sayHello").rxCount(), equalTo(2l));
+                assertThat(serviceA.stats().actions().containsKey("unknownAction"), equalTo(false));
+            }
+        });
+
+        serviceA.removeHandler("sayHello");
+    }
+
     @Test
     public void testVoidMessageCompressed() {
         serviceA.registerHandler("sayHello", new BaseTransportRequestHandler<TransportRequest.Empty>() {
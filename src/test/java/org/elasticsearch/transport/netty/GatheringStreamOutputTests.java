@@ -0,0 +1,75 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport.netty;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class GatheringStreamOutputTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testGatheredBytesReadBack() throws Exception {
+        GatheringStreamOutput out = new GatheringStreamOutput(BigArrays.NON_RECYCLING_INSTANCE);
+        int numReferences = randomIntBetween(0, 10);
+        BytesReference[] references = new BytesReference[numReferences];
+        out.writeString("header");
+        for (int i = 0; i < numReferences; i++) {
+            // a mix of references that are copied and ones that are referenced
+            byte[] bytes = new byte[randomIntBetween(0, 3 * GatheringStreamOutput.MIN_REFERENCED_LENGTH)];
+            getRandom().nextBytes(bytes);
+            int offset = randomIntBetween(0, bytes.length);
+            references[i] = new BytesArray(bytes, offset, bytes.length - offset);
+            out.writeBytesReference(references[i]);
+            out.writeVInt(i);
+        }
+        out.writeBytesReference(null);
+        out.writeString("footer");
+        out.close();
+
+        ReleasableBytesReference written = out.bytes();
+        ChannelBuffer buffer = out.toChannelBuffer(written);
+        int totalLength = written.length();
+        for (BytesReference reference : references) {
+            if (reference.length() >= GatheringStreamOutput.MIN_REFERENCED_LENGTH) {
+                totalLength += reference.length();
+            }
+        }
+        assertThat(buffer.readableBytes(), equalTo(totalLength));
+
+        StreamInput in = new ChannelBufferStreamInput(buffer);
+        assertThat(in.readString(), equalTo("header"));
+        for (int i = 0; i < numReferences; i++) {
+            assertThat(in.readBytesReference(), equalTo(references[i]));
+            assertThat(in.readVInt(), equalTo(i));
+        }
+        assertThat(in.readBytesReference().length(), equalTo(0));
+        assertThat(in.readString(), equalTo("footer"));
+        assertThat(in.available(), equalTo(0));
+        written.close();
+    }
+}